@@ -7,6 +7,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
 import java.time.Duration;
+import java.util.Map;
 
 @Configuration
 @ConfigurationProperties( prefix = "pn.delivery")
@@ -42,10 +43,32 @@ public class PnDeliveryConfigs {
 
     private NotificationCostDao notificationCostDao;
 
+    private NotificationMonthOccupancyDao notificationMonthOccupancyDao;
+
+    private NotificationSubjectTrigramDao notificationSubjectTrigramDao;
+
     private Integer maxPageSize;
 
     private Costs costs;
 
+    private Search search;
+
+    private MonthOccupancy monthOccupancy;
+
+    private RecipientDenominationCache recipientDenominationCache;
+
+    private Cursor cursor;
+
+    private Sharding sharding;
+
+    private Partitioning partitioning;
+
+    private DataVault dataVault;
+
+    private NotificationCache notificationCache;
+
+    private NotificationHistoryCache notificationHistoryCache;
+
     @Data
     public static class Topics {
         private String newNotifications;
@@ -66,6 +89,104 @@ public class PnDeliveryConfigs {
         private String tableName;
     }
 
+    @Data
+    public static class NotificationMonthOccupancyDao {
+        private String tableName;
+    }
+
+    @Data
+    public static class NotificationSubjectTrigramDao {
+        private String tableName;
+    }
+
+    @Data
+    public static class Search {
+        private Integer parallelism;
+        private Integer executorPoolSize;
+        private Integer executorQueueSize;
+        private Long cacheMaxWeight;
+        private Duration cacheTtl;
+        private Integer maxFetchLimit;
+        private String senderOneIndexSince;
+        private String subjectIndexSince;
+        private String groupIndexSince;
+        private Integer exportPageSize;
+        private Boolean planHeader;
+        private Integer planQueryCost;
+    }
+
+    @Data
+    public static class MonthOccupancy {
+        private String indexedSince;
+        private String countedSince;
+        private Long cacheMaxSize;
+        private Duration cacheTtl;
+        private Duration writeLag;
+    }
+
+    @Data
+    public static class RecipientDenominationCache {
+        private Long maxSize;
+        private Duration ttl;
+    }
+
+    @Data
+    public static class Cursor {
+        private String hmacSecret;
+        private Boolean acceptLegacy;
+    }
+
+    @Data
+    public static class Sharding {
+        private Map<String, SenderSharding> senders;
+    }
+
+    /**
+     * since (yyyyMM) deve essere un mese non ancora iniziato quando la configurazione viene introdotta;
+     * shards non deve mai diminuire per i mesi già scritti
+     */
+    @Data
+    public static class SenderSharding {
+        private Integer shards;
+        private String since;
+    }
+
+    @Data
+    public static class Partitioning {
+        private Map<String, SenderPartitioning> senders;
+    }
+
+    /**
+     * since (yyyyMM) deve essere un mese non ancora iniziato quando la configurazione viene introdotta;
+     * la granularità di un mese già scritto non va cambiata
+     */
+    @Data
+    public static class SenderPartitioning {
+        private String granularity;
+        private String since;
+    }
+
+    @Data
+    public static class DataVault {
+        private Integer executorPoolSize;
+        private Integer executorQueueSize;
+        private Duration lookupTimeout;
+    }
+
+    @Data
+    public static class NotificationCache {
+        private Long heapMaxSize;
+        private Long clearDataMaxSize;
+        private Duration clearDataTtl;
+    }
+
+    @Data
+    public static class NotificationHistoryCache {
+        private Long maxSize;
+        private Duration ttl;
+        private Duration invalidationQuietPeriod;
+    }
+
     @Data
     public static class Costs {
         private String notification;
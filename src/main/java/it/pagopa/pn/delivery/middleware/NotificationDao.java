@@ -4,11 +4,13 @@ package it.pagopa.pn.delivery.middleware;
 
 import it.pagopa.pn.commons.abstractions.IdConflictException;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
 
+import java.time.Instant;
 import java.util.Optional;
 
 public interface NotificationDao {
@@ -19,6 +21,42 @@ public interface NotificationDao {
 
     Optional<InternalNotification> getNotificationByIun(String iun);
 
+    /**
+     * Come getNotificationByIun ma i destinatari restano identificati dagli identificativi opachi:
+     * codici fiscali e denominazioni non vengono letti dall'anagrafica di data-vault.
+     * recipientIds è valorizzato come in getNotificationByIun.
+     * La denominazione di ciascun destinatario è quella indicata dalla PA nella notifica, salvata con gli indirizzi,
+     * e non quella dell'anagrafica (getRecipientDenominationByInternalId) restituita da getNotificationByIun:
+     * le due coincidono alla creazione della notifica, ma l'anagrafica è condivisa tra le notifiche del destinatario.
+     *
+     * @param iun iun della notifica
+     * @param withAddresses se true vengono letti da data-vault denominazioni e indirizzi dei destinatari,
+     *                      altrimenti la lettura non effettua chiamate a data-vault
+     */
+    Optional<InternalNotification> getOpaqueNotificationByIun(String iun, boolean withAddresses);
+
+    /**
+     * Come getNotificationByIun ma valorizza notificationStatus con l'ultimo stato salvato sul record della notifica,
+     * letto sempre da DynamoDB. notificationStatus resta null per le notifiche senza ultimo stato salvato.
+     */
+    Optional<InternalNotification> getNotificationWithLastStatusByIun(String iun);
+
+    /**
+     * Salva l'ultimo stato sul record della notifica; al primo passaggio in VIEWED o EFFECTIVE_DATE
+     * salva anche la data di perfezionamento
+     *
+     * @param iun iun della notifica
+     * @param status nuovo stato
+     * @param timestamp istante del cambio di stato, cioè la data dell'elemento di timeline che lo ha causato
+     */
+    void updateLastStatus(String iun, NotificationStatus status, Instant timestamp);
+
+    /**
+     * Risolve con una sola lettura per chiave lo IUN della richiesta di notifica del mittente
+     * con il numero di protocollo e il token di idempotenza indicati
+     */
+    Optional<String> getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken);
+
     ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchForOneMonth(
             InputSearchNotificationDto inputSearchNotificationDto,
             String indexName,
@@ -26,6 +64,25 @@ public interface NotificationDao {
             int size,
             PnLastEvaluatedKey lastEvaluatedKey
     );
-}
 
+    /**
+     * Come searchForOneMonth ma legge dall'indice solo gli attributi chiave:
+     * le righe restituite contengono solo iun e sentAt e servono a calcolare le LastEvaluatedKey delle pagine successive
+     */
+    ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchKeysForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    );
 
+    /**
+     * Ricerca di una notifica per IUN completo: legge per chiave la riga di metadati del destinatario
+     * invece di interrogare le partizioni mensili
+     */
+    ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchByIun(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String iun
+    );
+}
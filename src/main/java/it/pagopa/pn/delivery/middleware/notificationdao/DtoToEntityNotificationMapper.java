@@ -15,10 +15,14 @@ import java.util.stream.Collectors;
 @Component
 public class DtoToEntityNotificationMapper {
 
+    // configurato una sola volta: la costruzione della TypeMap per ogni notifica è costosa
+    private final ModelMapper recipientMapper = buildRecipientMapper();
+
     public NotificationEntity dto2Entity(InternalNotification dto) {
         NotificationEntity.NotificationEntityBuilder builder = NotificationEntity.builder()
                 .iun( dto.getIun() )
                 .paNotificationId( dto.getPaProtocolNumber())
+                .idempotenceToken( dto.getIdempotenceToken() )
                 .senderDenomination( dto.getSenderDenomination() )
                 .senderTaxId( dto.getSenderTaxId() )
                 .subject( dto.getSubject() )
@@ -40,14 +44,17 @@ public class DtoToEntityNotificationMapper {
     private List<NotificationRecipientEntity> dto2RecipientsEntity(
             List<NotificationRecipient> recipients
     ) {
+        return recipients.stream()
+               .map( r -> recipientMapper.map( r, NotificationRecipientEntity.class ))
+               .collect(Collectors.toList());
+    }
+
+    private static ModelMapper buildRecipientMapper() {
         ModelMapper mapper = new ModelMapper();
         mapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
         mapper.createTypeMap( NotificationRecipient.class, NotificationRecipientEntity.class )
                 .addMapping( NotificationRecipient::getTaxId, NotificationRecipientEntity::setRecipientId );
-
-        return recipients.stream()
-               .map( r -> mapper.map( r, NotificationRecipientEntity.class ))
-               .collect(Collectors.toList());
+        return mapper;
     }
 
 
@@ -19,6 +19,9 @@ import java.util.stream.Collectors;
 @Component
 public class EntityToDtoNotificationMapper {
 
+    // configurato una sola volta: la costruzione della TypeMap per ogni notifica è costosa
+    private final ModelMapper recipientMapper = buildRecipientMapper();
+
     public InternalNotification entity2Dto(NotificationEntity entity) {
     	if ( entity.getPhysicalCommunicationType() == null ) {
             throw new PnInternalException(" Notification entity with iun " + entity.getIun() + " hash invalid physicalCommunicationType value");
@@ -27,7 +30,7 @@ public class EntityToDtoNotificationMapper {
     	List<String> recipientIds = entity.getRecipients().stream().map( NotificationRecipientEntity::getRecipientId )
                 .collect(Collectors.toList());
 
-        return new InternalNotification(FullSentNotification.builder()
+        InternalNotification notification = new InternalNotification(FullSentNotification.builder()
                 .senderDenomination( entity.getSenderDenomination() )
                 .senderTaxId( entity.getSenderTaxId() )
                 .notificationFeePolicy( FullSentNotification.NotificationFeePolicyEnum.fromValue( entity.getNotificationFeePolicy().getValue() ))
@@ -35,6 +38,7 @@ public class EntityToDtoNotificationMapper {
                 .subject( entity.getSubject() )
                 .sentAt( Date.from(entity.getSentAt()) )
                 .paProtocolNumber( entity.getPaNotificationId() )
+                .idempotenceToken( entity.getIdempotenceToken() )
                 .cancelledByIun( entity.getCancelledByIun() )
                 .cancelledIun( entity.getCancelledIun() )
                 .physicalCommunicationType( entity.getPhysicalCommunicationType() )
@@ -46,17 +50,25 @@ public class EntityToDtoNotificationMapper {
                 .paymentExpirationDate(entity.getPaymentExpirationDate())
                 .build()
         , Collections.emptyMap(), recipientIds );
+        // la data di perfezionamento non cambia una volta scritta, l'ultimo stato invece non viene mappato
+        if ( entity.getRefinementDate() != null ) {
+            notification.setRefinementDate( Date.from( entity.getRefinementDate() ) );
+        }
+        return notification;
     }
 
     private List<NotificationRecipient> entity2RecipientDto(List<NotificationRecipientEntity> recipients) {
+        return recipients.stream()
+                .map( r -> recipientMapper.map(r, NotificationRecipient.class))
+                .collect(Collectors.toList());
+    }
+
+    private static ModelMapper buildRecipientMapper() {
         ModelMapper mapper = new ModelMapper();
         mapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
         mapper.createTypeMap( NotificationRecipientEntity.class, NotificationRecipient.class )
                 .addMapping( NotificationRecipientEntity::getRecipientId, NotificationRecipient::setTaxId );
-
-        return recipients.stream()
-                .map( r -> mapper.map(r, NotificationRecipient.class))
-                .collect(Collectors.toList());
+        return mapper;
     }
 
     private NotificationDocument buildDocument(String key, String version, String sha256, String contentType, String title ) {
@@ -4,6 +4,7 @@ package it.pagopa.pn.delivery.middleware.notificationdao;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSearchRowEntity;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
@@ -25,4 +26,23 @@ public class EntityToDtoNotificationMetadataMapper {
                 .build();
     }
 
+    public NotificationSearchRow entity2Dto(NotificationSearchRowEntity entity) {
+        return NotificationSearchRow.builder()
+                .iun( entity.getIun_recipientId().substring(0 ,entity.getIun_recipientId().indexOf("##")) )
+                .sender( entity.getSenderId() )
+                .recipients( entity.getRecipientIds() )
+                .sentAt( Date.from(entity.getSentAt() ))
+                .subject( entity.getTableRow().get( NotificationSearchRowEntity.TABLE_ROW_SUBJECT ) )
+                .paProtocolNumber( entity.getTableRow().get( NotificationSearchRowEntity.TABLE_ROW_PA_PROTOCOL_NUMBER ) )
+                .notificationStatus( NotificationStatus.valueOf( entity.getNotificationStatus() ))
+                .build();
+    }
+
+    public NotificationSearchRow entity2KeyDto(NotificationSearchRowEntity entity) {
+        return NotificationSearchRow.builder()
+                .iun( entity.getIun_recipientId().substring(0 ,entity.getIun_recipientId().indexOf("##")) )
+                .sentAt( Date.from(entity.getSentAt() ))
+                .build();
+    }
+
 }
@@ -0,0 +1,109 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Stima la selettività dei filtri di ricerca (stato, gruppi, iun) per forma di query.
+ * <p>
+ * DynamoDB applica le filter expression dopo il limit: con un filtro selettivo una query con limit pari
+ * alla dimensione della pagina restituisce poche righe. La selettività osservata, mediata esponenzialmente,
+ * permette di aumentare il limit in modo da riempire la pagina con meno query, entro un limite massimo.
+ */
+@Component
+@Slf4j
+public class FilterSelectivityTracker {
+
+    private static final int DEFAULT_MAX_FETCH_LIMIT = 500;
+    private static final double SMOOTHING = 0.3;
+
+    private final int maxFetchLimit;
+    private final Cache<QueryShape, Double> selectivities;
+
+    public FilterSelectivityTracker(PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        this.maxFetchLimit = searchCfg != null && searchCfg.getMaxFetchLimit() != null ? searchCfg.getMaxFetchLimit() : DEFAULT_MAX_FETCH_LIMIT;
+        this.selectivities = Caffeine.newBuilder()
+                .maximumSize( 1000 )
+                .expireAfterAccess( Duration.ofHours( 1 ) )
+                .build();
+    }
+
+    /**
+     * Calcola il limit da impostare sulla query
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param indexName indice interrogato
+     * @param size numero di righe richieste
+     * @return limit della query, mai inferiore a size
+     */
+    public int fetchLimit(InputSearchNotificationDto inputSearchNotificationDto, String indexName, int size) {
+        QueryShape shape = QueryShape.of( inputSearchNotificationDto, indexName );
+        if ( shape == null ) {
+            return size;
+        }
+        Double selectivity = selectivities.getIfPresent( shape );
+        if ( selectivity == null ) {
+            return size;
+        }
+        double minSelectivity = 1.0 / maxFetchLimit;
+        long limit = (long) Math.ceil( size / Math.max( selectivity, minSelectivity ) );
+        return (int) Math.max( size, Math.min( limit, Math.max( maxFetchLimit, size ) ) );
+    }
+
+    /**
+     * Selettività osservata dei filtri di ricerca sull'indice indicato
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param indexName indice interrogato
+     * @return frazione degli elementi valutati che soddisfa i filtri, 1 se non ci sono filtri o non è ancora stata osservata
+     */
+    public double selectivity(InputSearchNotificationDto inputSearchNotificationDto, String indexName) {
+        QueryShape shape = QueryShape.of( inputSearchNotificationDto, indexName );
+        Double selectivity = shape != null ? selectivities.getIfPresent( shape ) : null;
+        return selectivity != null ? selectivity : 1.0;
+    }
+
+    /**
+     * Registra il risultato di una query che ha esaurito il proprio limit, cioè ha valutato esattamente limit elementi
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param indexName indice interrogato
+     * @param limit limit della query
+     * @param matched elementi restituiti dopo l'applicazione dei filtri
+     */
+    public void record(InputSearchNotificationDto inputSearchNotificationDto, String indexName, int limit, int matched) {
+        QueryShape shape = QueryShape.of( inputSearchNotificationDto, indexName );
+        if ( shape == null || limit <= 0 ) {
+            return;
+        }
+        double observed = Math.min( 1.0, (double) matched / limit );
+        selectivities.asMap().merge( shape, observed, (previous, current) -> SMOOTHING * current + ( 1 - SMOOTHING ) * previous );
+        log.debug( "Observed filter selectivity={} for shape={}", observed, shape );
+    }
+
+    @Value
+    static class QueryShape {
+        String indexName;
+        String status;
+        int groupsCount;
+        boolean iunMatch;
+
+        static QueryShape of(InputSearchNotificationDto inputSearchNotificationDto, String indexName) {
+            String status = inputSearchNotificationDto.getStatus() != null ? inputSearchNotificationDto.getStatus().toString() : null;
+            int groupsCount = inputSearchNotificationDto.getGroups() != null ? inputSearchNotificationDto.getGroups().size() : 0;
+            boolean iunMatch = inputSearchNotificationDto.getIunMatch() != null;
+            if ( status == null && groupsCount == 0 && !iunMatch ) {
+                return null;
+            }
+            return new QueryShape( indexName, status, groupsCount, iunMatch );
+        }
+    }
+}
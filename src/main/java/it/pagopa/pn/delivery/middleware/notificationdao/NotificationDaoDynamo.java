@@ -2,14 +2,27 @@ package it.pagopa.pn.delivery.middleware.notificationdao;
 
 
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import it.pagopa.pn.commons.abstractions.IdConflictException;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.AddressDto;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.AnalogDomicile;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
@@ -20,13 +33,16 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationDocumen
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationPhysicalAddress;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.springbootcfg.DataVaultExecutorConfig;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
+import it.pagopa.pn.delivery.utils.SingleFlight;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
@@ -39,25 +55,63 @@ public class NotificationDaoDynamo implements NotificationDao {
 	private final DtoToEntityNotificationMapper dto2entityMapper;
 	private final EntityToDtoNotificationMapper entity2DtoMapper;
 	private final PnDataVaultClientImpl pnDataVaultClient;
+	private final SubjectTrigramIndex subjectTrigramIndex;
+	private final NotificationEntityCache entityCache;
+	private final RecipientClearDataCache clearDataCache;
+	// letture concorrenti dello stesso iun, ad esempio destinatario, PA e delivery-push alla spedizione
+	private final SingleFlight<String, Optional<NotificationEntity>> entityLoads = new SingleFlight<>( "getNotificationEntityByIun" );
+	private final SingleFlight<String, RecipientClearDataCache.RecipientClearData> clearDataLoads = new SingleFlight<>( "getRecipientClearDataByIun" );
+	private final SingleFlight<String, List<NotificationRecipientAddressesDto>> addressesLoads = new SingleFlight<>( "getRecipientAddressesByIun" );
+	private final ExecutorService dataVaultExecutor;
+	private final Duration dataVaultLookupTimeout;
+	private final Timer denominationLookupTimer;
+	private final Timer addressesLookupTimer;
+
+	// numero massimo di query su una partizione per riempire una pagina filtrata per oggetto senza indice
+	private static final int MAX_SUBJECT_FILTER_QUERIES = 10;
+	private static final Duration DEFAULT_DATA_VAULT_LOOKUP_TIMEOUT = Duration.ofSeconds( 5 );
+	private static final String DATA_VAULT_LATENCY_METRIC = "pn.delivery.datavault.latency";
+	// stati che perfezionano la notifica: da questo momento decorrono i giorni di disponibilità dei documenti
+	private static final Set<NotificationStatus> REFINEMENT_STATUSES = EnumSet.of( NotificationStatus.VIEWED, NotificationStatus.EFFECTIVE_DATE );
 
 	public NotificationDaoDynamo(
 			NotificationEntityDao entityDao,
 			NotificationMetadataEntityDao metadataEntityDao, DtoToEntityNotificationMapper dto2entityMapper,
-			EntityToDtoNotificationMapper entity2DtoMapper, PnDataVaultClientImpl pnDataVaultClient) {
+			EntityToDtoNotificationMapper entity2DtoMapper, PnDataVaultClientImpl pnDataVaultClient,
+			SubjectTrigramIndex subjectTrigramIndex,
+			NotificationEntityCache entityCache, RecipientClearDataCache clearDataCache,
+			@Qualifier(DataVaultExecutorConfig.DATA_VAULT_EXECUTOR) ExecutorService dataVaultExecutor,
+			PnDeliveryConfigs cfg) {
 		this.entityDao = entityDao;
 		this.metadataEntityDao = metadataEntityDao;
 		this.dto2entityMapper = dto2entityMapper;
 		this.entity2DtoMapper = entity2DtoMapper;
 		this.pnDataVaultClient = pnDataVaultClient;
+		this.subjectTrigramIndex = subjectTrigramIndex;
+		this.entityCache = entityCache;
+		this.clearDataCache = clearDataCache;
+		this.dataVaultExecutor = dataVaultExecutor;
+		PnDeliveryConfigs.DataVault dataVaultCfg = cfg.getDataVault();
+		this.dataVaultLookupTimeout = dataVaultCfg != null && dataVaultCfg.getLookupTimeout() != null
+				? dataVaultCfg.getLookupTimeout() : DEFAULT_DATA_VAULT_LOOKUP_TIMEOUT;
+		this.denominationLookupTimer = Metrics.timer( DATA_VAULT_LATENCY_METRIC, "operation", "getRecipientDenominationByInternalId" );
+		this.addressesLookupTimer = Metrics.timer( DATA_VAULT_LATENCY_METRIC, "operation", "getNotificationAddressesByIun" );
 	}
 
 	@Override
 	public void addNotification(InternalNotification internalNotification) throws IdConflictException {
 
 		List<NotificationRecipientAddressesDto> recipientAddressesDtoList = new ArrayList<>();
+		List<BaseRecipientDto> baseRecipientDtoList = new ArrayList<>();
 		List<NotificationRecipient> cleanedRecipientList = new ArrayList<>();
 		for ( NotificationRecipient recipient  : internalNotification.getRecipients()) {
-			String opaqueTaxId = pnDataVaultClient.ensureRecipientByExternalId( RecipientType.fromValue( recipient.getRecipientType().getValue() ), recipient.getTaxId() );
+			RecipientType recipientType = RecipientType.fromValue( recipient.getRecipientType().getValue() );
+			String opaqueTaxId = pnDataVaultClient.ensureRecipientByExternalId( recipientType, recipient.getTaxId() );
+			baseRecipientDtoList.add( new BaseRecipientDto()
+					.recipientType( recipientType )
+					.internalId( opaqueTaxId )
+					.taxId( recipient.getTaxId() )
+					.denomination( recipient.getDenomination() ) );
 			recipient.setTaxId( opaqueTaxId );
 			NotificationRecipientAddressesDto recipientAddressesDto = new NotificationRecipientAddressesDto()
 					.denomination( recipient.getDenomination() )
@@ -71,7 +125,13 @@ public class NotificationDaoDynamo implements NotificationDao {
 		internalNotification.setRecipients( cleanedRecipientList );
 
 		NotificationEntity entity = dto2entityMapper.dto2Entity( internalNotification );
+		entity.setLastStatus( NotificationStatus.IN_VALIDATION.toString() );
+		entity.setLastStatusTimestamp( entity.getSentAt().toEpochMilli() );
 		entityDao.putIfAbsent( entity );
+
+		// la PA interroga lo stato subito dopo l'inserimento: entity e dati in chiaro sono già noti
+		entityCache.put( entity );
+		clearDataCache.put( internalNotification.getIun(), new RecipientClearDataCache.RecipientClearData( baseRecipientDtoList, recipientAddressesDtoList ) );
 	}
 
 	private NotificationRecipient removeConfidantialInfo(NotificationRecipient recipient) {
@@ -100,12 +160,43 @@ public class NotificationDaoDynamo implements NotificationDao {
 
 	@Override
 	public Optional<InternalNotification> getNotificationByIun(String iun) {
+		Optional<InternalNotification> daoResult = getEntityByIun( iun )
+				.map( entity2DtoMapper::entity2Dto );
+
+		if(daoResult.isPresent()) {
+			handleRecipients(daoResult.get());
+			handleDocuments(daoResult.get());
+		}
+		return daoResult;
+	}
+
+	@Override
+	public Optional<InternalNotification> getOpaqueNotificationByIun(String iun, boolean withAddresses) {
+		Optional<InternalNotification> daoResult = getEntityByIun( iun )
+				.map( entity2DtoMapper::entity2Dto );
+
+		if(daoResult.isPresent()) {
+			daoResult.get().setRecipientIds( daoResult.get().getRecipients().stream()
+					.map( NotificationRecipient::getTaxId )
+					.collect( Collectors.toList() ) );
+			if ( withAddresses ) {
+				handleRecipientAddresses(daoResult.get());
+			}
+			handleDocuments(daoResult.get());
+		}
+		return daoResult;
+	}
+
+	@Override
+	public Optional<InternalNotification> getNotificationWithLastStatusByIun(String iun) {
 		Key keyToSearch = Key.builder()
 				.partitionValue(iun)
 				.build();
-		Optional<InternalNotification> daoResult = entityDao.get( keyToSearch )
-				.map( entity2DtoMapper::entity2Dto );
+		// l'ultimo stato cambia nel tempo: l'entity non è letta dalla cache ma la aggiorna
+		Optional<NotificationEntity> entity = entityDao.get( keyToSearch );
+		entity.ifPresent( entityCache::put );
 
+		Optional<InternalNotification> daoResult = entity.map( this::entity2DtoWithLastStatus );
 		if(daoResult.isPresent()) {
 			handleRecipients(daoResult.get());
 			handleDocuments(daoResult.get());
@@ -113,6 +204,67 @@ public class NotificationDaoDynamo implements NotificationDao {
 		return daoResult;
 	}
 
+	private InternalNotification entity2DtoWithLastStatus(NotificationEntity entity) {
+		InternalNotification notification = entity2DtoMapper.entity2Dto( entity );
+		if ( entity.getLastStatus() != null ) {
+			notification.setNotificationStatus( NotificationStatus.fromValue( entity.getLastStatus() ) );
+		}
+		return notification;
+	}
+
+	@Override
+	public void updateLastStatus(String iun, NotificationStatus status, Instant timestamp) {
+		entityDao.updateLastStatus( iun, status.toString(), timestamp, REFINEMENT_STATUSES.contains( status ) );
+	}
+
+	@Override
+	public Optional<String> getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken) {
+		return entityDao.getIunByRequest( senderPaId, paProtocolNumber, idempotenceToken );
+	}
+
+	private Optional<NotificationEntity> getEntityByIun(String iun) {
+		Key keyToSearch = Key.builder()
+				.partitionValue(iun)
+				.build();
+		return entityCache.get( iun, () -> entityLoads.execute( iun, () -> entityDao.get( keyToSearch ) ) );
+	}
+
+	/**
+	 * Completa i destinatari con denominazioni e indirizzi, lasciando gli identificativi opachi al posto dei codici fiscali.
+	 * La denominazione è quella della notifica, salvata con gli indirizzi, non quella dell'anagrafica di data-vault
+	 */
+	private void handleRecipientAddresses(InternalNotification daoResult) {
+		String iun = daoResult.getIun();
+		RecipientClearDataCache.RecipientClearData cachedClearData = clearDataCache.getIfPresent( iun );
+		List<NotificationRecipientAddressesDto> notificationRecipientAddressesDtoList = cachedClearData != null
+				? cachedClearData.getAddresses()
+				: addressesLoads.execute( iun, () -> loadRecipientAddresses( iun ) );
+
+		int recipientIndex = 0;
+		for ( NotificationRecipient recipient : daoResult.getRecipients() ) {
+			NotificationRecipientAddressesDto clearDataAddresses =
+					recipientIndex < notificationRecipientAddressesDtoList.size()
+					? notificationRecipientAddressesDtoList.get( recipientIndex ) : null;
+
+			if ( clearDataAddresses != null ) {
+				recipient.setDenomination( clearDataAddresses.getDenomination() );
+				recipient.setDigitalDomicile( setNotificationDigitalAddress( clearDataAddresses.getDigitalAddress() ));
+				recipient.setPhysicalAddress( setNotificationPhysicalAddress( clearDataAddresses.getPhysicalAddress() ) );
+			} else {
+				log.error( "Unable to find any recipient addresses from data-vault for recipient={}", recipient.getTaxId() );
+			}
+			recipientIndex += 1;
+		}
+	}
+
+	private List<NotificationRecipientAddressesDto> loadRecipientAddresses(String iun) {
+		CompletableFuture<List<NotificationRecipientAddressesDto>> addressesFuture = lookupDataVault( addressesLookupTimer,
+				() -> pnDataVaultClient.getNotificationAddressesByIun( iun ) );
+		awaitDataVault( iun, addressesFuture );
+		List<NotificationRecipientAddressesDto> addresses = addressesFuture.join();
+		return addresses != null ? addresses : Collections.emptyList();
+	}
+
 	private void handleRecipients(InternalNotification daoResult) {
 		List<NotificationRecipient> daoNotificationRecipientList = daoResult.getRecipients();
 
@@ -120,10 +272,10 @@ public class NotificationDaoDynamo implements NotificationDao {
 				.map(NotificationRecipient::getTaxId)
 				.collect(Collectors.toSet());
 
-		List<BaseRecipientDto> baseRecipientDtoList =
-				pnDataVaultClient.getRecipientDenominationByInternalId( new ArrayList<>(opaqueIds) );
-
-		List<NotificationRecipientAddressesDto> notificationRecipientAddressesDtoList = pnDataVaultClient.getNotificationAddressesByIun( daoResult.getIun() );
+		RecipientClearDataCache.RecipientClearData clearData = clearDataCache.get( daoResult.getIun(),
+				() -> clearDataLoads.execute( daoResult.getIun(), () -> loadRecipientClearData( daoResult.getIun(), opaqueIds ) ) );
+		List<BaseRecipientDto> baseRecipientDtoList = clearData.getBaseRecipients();
+		List<NotificationRecipientAddressesDto> notificationRecipientAddressesDtoList = clearData.getAddresses();
 		List<String> opaqueRecipientsIds = new ArrayList<>();
 
 		int recipientIndex = 0;
@@ -158,6 +310,49 @@ public class NotificationDaoDynamo implements NotificationDao {
 		daoResult.setRecipientIds( opaqueRecipientsIds );
 	}
 
+	private RecipientClearDataCache.RecipientClearData loadRecipientClearData(String iun, Set<String> opaqueIds) {
+		// denominazioni e indirizzi sono letti da data-vault con due chiamate indipendenti, eseguite in parallelo
+		CompletableFuture<List<BaseRecipientDto>> baseRecipientsFuture = lookupDataVault( denominationLookupTimer,
+				() -> pnDataVaultClient.getRecipientDenominationByInternalId( new ArrayList<>(opaqueIds) ) );
+		CompletableFuture<List<NotificationRecipientAddressesDto>> addressesFuture = lookupDataVault( addressesLookupTimer,
+				() -> pnDataVaultClient.getNotificationAddressesByIun( iun ) );
+		awaitDataVault( iun, baseRecipientsFuture, addressesFuture );
+		return new RecipientClearDataCache.RecipientClearData( baseRecipientsFuture.join(), addressesFuture.join() );
+	}
+
+	/**
+	 * Se il pool è saturo la chiamata viene rifiutata subito, senza attendere il timeout
+	 */
+	private <T> CompletableFuture<T> lookupDataVault(Timer timer, Supplier<T> lookup) {
+		try {
+			return CompletableFuture.supplyAsync( () -> timer.record( lookup ), dataVaultExecutor );
+		} catch ( RejectedExecutionException ex ) {
+			throw new PnInternalException( "Data-vault lookup rejected: executor saturated", ex );
+		}
+	}
+
+	/**
+	 * Attende le chiamate a data-vault entro un timeout complessivo.
+	 * Il timeout limita solo l'attesa del thread della richiesta: la cancellazione di una CompletableFuture
+	 * non interrompe la chiamata HTTP, che continua a occupare un thread del pool fino al timeout del client data-vault.
+	 */
+	private void awaitDataVault(String iun, CompletableFuture<?>... lookups) {
+		try {
+			CompletableFuture.allOf( lookups ).get( dataVaultLookupTimeout.toMillis(), TimeUnit.MILLISECONDS );
+		} catch ( TimeoutException ex ) {
+			Arrays.stream( lookups ).forEach( lookup -> lookup.cancel( false ) );
+			throw new PnInternalException( "Data-vault lookup timed out for iun=" + iun + " after " + dataVaultLookupTimeout, ex );
+		} catch ( ExecutionException ex ) {
+			if ( ex.getCause() instanceof RuntimeException ) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw new PnInternalException( "Data-vault lookup failed for iun=" + iun, ex.getCause() );
+		} catch ( InterruptedException ex ) {
+			Thread.currentThread().interrupt();
+			throw new PnInternalException( "Interrupted while waiting data-vault lookup for iun=" + iun, ex );
+		}
+	}
+
 	private void handleDocuments(InternalNotification daoResult) {
 		int docIdx = 0;
 		if ( daoResult.getDocuments() != null ) {
@@ -190,18 +385,85 @@ public class NotificationDaoDynamo implements NotificationDao {
 
 	@Override
 	public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
+		if ( inputSearchNotificationDto.getSubjectRegExp() != null ) {
+			return searchBySubjectForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, false );
+		}
 		return this.metadataEntityDao.searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey );
 	}
 
+	@Override
+	public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchKeysForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
+		if ( inputSearchNotificationDto.getSubjectRegExp() != null ) {
+			return searchBySubjectForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, true );
+		}
+		return this.metadataEntityDao.searchKeysForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey );
+	}
+
+	@Override
+	public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchByIun(InputSearchNotificationDto inputSearchNotificationDto, String iun) {
+		String recipientId = searchRecipientId( inputSearchNotificationDto, iun );
+		if ( recipientId == null ) {
+			return ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+					.resultsPage( new ArrayList<>() )
+					.moreResult( false )
+					.build();
+		}
+		return this.metadataEntityDao.searchByIunRecipientId( inputSearchNotificationDto, iun + "##" + recipientId );
+	}
+
+	/**
+	 * Destinatario della riga di metadati da leggere: il destinatario stesso o quello indicato dal mittente nel filtro,
+	 * altrimenti il primo destinatario della notifica, se inviata dal mittente che effettua la ricerca
+	 */
+	private String searchRecipientId(InputSearchNotificationDto inputSearchNotificationDto, String iun) {
+		if ( !inputSearchNotificationDto.isBySender() ) {
+			return inputSearchNotificationDto.getSenderReceiverId();
+		}
+		if ( inputSearchNotificationDto.getFilterId() != null ) {
+			return inputSearchNotificationDto.getFilterId();
+		}
+		return getEntityByIun( iun )
+				.filter( entity -> inputSearchNotificationDto.getSenderReceiverId().equals( entity.getSenderPaId() ) )
+				.filter( entity -> entity.getRecipients() != null && !entity.getRecipients().isEmpty() )
+				.map( entity -> entity.getRecipients().get( 0 ).getRecipientId() )
+				.orElse( null );
+	}
+
+	/**
+	 * Ricerca per oggetto: se la partizione è coperta dall'indice per trigrammi vengono lette solo le notifiche candidate,
+	 * altrimenti l'espressione regolare viene applicata alle righe lette dall'indice di ricerca
+	 * proseguendo la query finché la pagina non è completa o la partizione esaurita
+	 */
+	private ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchBySubjectForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey, boolean keysOnly) {
+		Predicate<String> matchSubject = buildRegexpPredicate( inputSearchNotificationDto.getSubjectRegExp() );
+		if ( subjectTrigramIndex.supports( inputSearchNotificationDto, indexName, partitionValue ) ) {
+			return subjectTrigramIndex.searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, matchSubject, keysOnly );
+		}
+
+		// l'oggetto non è tra gli attributi chiave: servono le righe complete anche per il solo calcolo delle LastEvaluatedKey
+		List<NotificationSearchRow> rows = new ArrayList<>();
+		PnLastEvaluatedKey startKey = lastEvaluatedKey;
+		ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> oneQueryResult;
+		int queries = 0;
+		do {
+			oneQueryResult = this.metadataEntityDao.searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size - rows.size(), startKey );
+			oneQueryResult.getResultsPage().stream()
+					.filter( row -> matchSubject.test( row.getSubject() ) )
+					.forEach( rows::add );
+			List<PnLastEvaluatedKey> nextPagesKey = oneQueryResult.getNextPagesKey();
+			startKey = nextPagesKey != null && !nextPagesKey.isEmpty() ? nextPagesKey.get( 0 ) : null;
+			queries += 1;
+		} while ( rows.size() < size && startKey != null && queries < MAX_SUBJECT_FILTER_QUERIES );
+
+		return ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+				.resultsPage( rows )
+				.nextPagesKey( oneQueryResult.getNextPagesKey() )
+				.moreResult( startKey != null )
+				.build();
+	}
+
 
 	Predicate<String> buildRegexpPredicate(String subjectRegExp) {
-		Predicate<String> matchSubject;
-		if (subjectRegExp != null) {
-			matchSubject = Objects::nonNull;
-			matchSubject = matchSubject.and(Pattern.compile("^" + subjectRegExp + "$").asMatchPredicate());
-		} else {
-			matchSubject = x -> true;
-		}
-		return matchSubject;
+		return SearchFilters.subjectPredicate( subjectRegExp );
 	}
 }
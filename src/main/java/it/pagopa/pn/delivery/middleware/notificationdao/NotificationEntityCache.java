@@ -0,0 +1,101 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Cache delle notifiche per iun, nello heap.
+ * <p>
+ * Dopo l'inserimento i dati della NotificationEntity non cambiano, quindi le entry non scadono: sono rimosse solo
+ * per dimensione. Fanno eccezione l'ultimo stato e la data di perfezionamento, che possono non essere aggiornati:
+ * chi li usa rilegge l'entity da DynamoDB (vedi NotificationDao.getNotificationWithLastStatusByIun).
+ * L'entity non contiene dati personali in chiaro dei destinatari, che restano su data-vault.
+ * In cache l'entity è memorizzata serializzata e ogni lettura ne restituisce una nuova copia,
+ * quindi le modifiche di una richiesta non sono visibili alle altre.
+ */
+@Component
+@Slf4j
+public class NotificationEntityCache {
+
+    public static final String HEAP_CACHE_NAME = "pnDeliveryNotificationEntity";
+
+    private static final long DEFAULT_HEAP_MAX_SIZE = 10_000L;
+
+    private final Cache<String, byte[]> heap;
+    private final ObjectWriter entityWriter;
+    private final ObjectReader entityReader;
+
+    public NotificationEntityCache(ObjectMapper objectMapper, PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.NotificationCache cacheCfg = cfg.getNotificationCache();
+        long heapMaxSize = cacheCfg != null && cacheCfg.getHeapMaxSize() != null ? cacheCfg.getHeapMaxSize() : DEFAULT_HEAP_MAX_SIZE;
+        // la serializzazione non deve dipendere dai moduli registrati sull'ObjectMapper ricevuto
+        ObjectMapper copyMapper = objectMapper.copy().findAndRegisterModules();
+        this.entityWriter = copyMapper.writerFor( NotificationEntity.class );
+        this.entityReader = copyMapper.readerFor( NotificationEntity.class );
+
+        log.info( "Create notification entity cache with heapMaxSize={}", heapMaxSize );
+        this.heap = Caffeine.newBuilder()
+                .maximumSize( Math.max( heapMaxSize, 0 ) )
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor( Metrics.globalRegistry, heap, HEAP_CACHE_NAME );
+    }
+
+    /**
+     * Restituisce una copia dell'entity in cache, altrimenti la legge con il loader e la memorizza.
+     * Le notifiche non trovate non sono memorizzate, perché possono essere inserite subito dopo.
+     *
+     * @param iun iun della notifica
+     * @param loader lettura da DynamoDB in caso di cache miss
+     * @return entity della notifica
+     */
+    public Optional<NotificationEntity> get(String iun, Supplier<Optional<NotificationEntity>> loader) {
+        byte[] cached = heap.getIfPresent( iun );
+        if ( cached != null ) {
+            NotificationEntity entity = read( iun, cached );
+            if ( entity != null ) {
+                return Optional.of( entity );
+            }
+        }
+        Optional<NotificationEntity> loaded = loader.get();
+        loaded.ifPresent( this::put );
+        return loaded;
+    }
+
+    /**
+     * Memorizza l'entity appena inserita o letta da DynamoDB.
+     * Le modifiche successive all'entity ricevuta non modificano la cache.
+     */
+    public void put(NotificationEntity entity) {
+        try {
+            heap.put( entity.getIun(), entityWriter.writeValueAsBytes( entity ) );
+        } catch ( JsonProcessingException ex ) {
+            log.warn( "Unable to cache notification iun={}", entity.getIun(), ex );
+            heap.invalidate( entity.getIun() );
+        }
+    }
+
+    private NotificationEntity read(String iun, byte[] cached) {
+        try {
+            return entityReader.readValue( cached );
+        } catch ( IOException ex ) {
+            log.warn( "Unable to read cached notification iun={}", iun, ex );
+            heap.invalidate( iun );
+            return null;
+        }
+    }
+}
@@ -4,6 +4,33 @@ import it.pagopa.pn.commons.abstractions.KeyValueStore;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.time.Instant;
+import java.util.Optional;
+
 public interface NotificationEntityDao extends KeyValueStore<Key, NotificationEntity> {
     String IMPLEMENTATION_TYPE_PROPERTY_NAME = "pn.middleware.impl.notification-dao";
+
+    /**
+     * Aggiorna l'ultimo stato sul record della notifica senza riscriverne gli altri attributi.
+     * L'aggiornamento viene ignorato se sul record è già salvato uno stato con istante successivo;
+     * la data di perfezionamento viene comunque salvata se non ancora valorizzata.
+     *
+     * @param iun iun della notifica
+     * @param lastStatus nuovo stato
+     * @param lastStatusTimestamp istante del cambio di stato
+     * @param refinement se true e la data di perfezionamento non è ancora valorizzata, viene impostata a lastStatusTimestamp
+     */
+    void updateLastStatus(String iun, String lastStatus, Instant lastStatusTimestamp, boolean refinement);
+
+    /**
+     * Legge lo IUN della richiesta di notifica dall'elemento di ricerca scritto all'inserimento.
+     * Se più notifiche hanno stesso protocollo e token (ad esempio una notifica e la sua rettifica)
+     * viene restituita l'ultima inserita
+     *
+     * @param senderPaId mittente della notifica
+     * @param paProtocolNumber numero di protocollo
+     * @param idempotenceToken token usato per distinguere richieste con lo stesso numero di protocollo, può essere null
+     * @return IUN della notifica, vuoto se la richiesta non esiste o è stata inserita prima che lo IUN fosse salvato
+     */
+    Optional<String> getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken);
 }
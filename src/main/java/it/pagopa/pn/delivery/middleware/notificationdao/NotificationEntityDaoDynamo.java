@@ -15,24 +15,38 @@ import org.springframework.stereotype.Component;
 import software.amazon.awssdk.core.pagination.sync.SdkIterable;
 import software.amazon.awssdk.enhanced.dynamodb.*;
 import software.amazon.awssdk.enhanced.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
 import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationEntity> implements NotificationEntityDao {
+    // distingue l'elemento di ricerca per richiesta dall'elemento di controllo, che ha lo stesso formato
+    private static final String REQUEST_LOOKUP_PREFIX = "REQUEST##";
+
     private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
     private final DynamoDbTable<NotificationEntity> dynamoDbTable;
     private final DynamoDbTable<NotificationCostEntity> dynamoDbCostTable;
     private final EntityToDtoNotificationMapper entity2DtoMapper;
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
 
-    public NotificationEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, PnDeliveryConfigs cfg, EntityToDtoNotificationMapper entity2DtoMapper) {
+    public NotificationEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, DynamoDbClient dynamoDbClient, PnDeliveryConfigs cfg, EntityToDtoNotificationMapper entity2DtoMapper) {
         super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationEntity.class)));
         this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName( cfg );
         this.entity2DtoMapper = entity2DtoMapper;
         this.dynamoDbTable = dynamoDbEnhancedClient.table(tableName( cfg), TableSchema.fromClass(NotificationEntity.class));
         this.dynamoDbCostTable = dynamoDbEnhancedClient.table( costTableName(cfg), TableSchema.fromClass(NotificationCostEntity.class));
@@ -58,6 +72,14 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
 
         NotificationEntity controlNotificationEntity = NotificationEntity.builder()
                 .iun( getControlIun(notificationEntity) )
+                .controlledIun( notificationEntity.getIun() )
+                .build();
+
+        // elemento di ricerca per (mittente, protocollo, token di idempotenza): scritto senza condizione,
+        // l'unicità resta quella dell'elemento di controllo e la ricerca restituisce l'ultima richiesta inserita
+        NotificationEntity requestLookupEntity = NotificationEntity.builder()
+                .iun( getRequestLookupIun( notificationEntity.getSenderPaId(), notificationEntity.getPaNotificationId(), notificationEntity.getIdempotenceToken() ) )
+                .controlledIun( notificationEntity.getIun() )
                 .build();
 
         List<NotificationCostEntity> notificationCostEntityList = getNotificationCostEntities( notificationEntity );
@@ -69,7 +91,11 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
                 .conditionExpression( conditionExpressionPut )
                 .build();
 
-        TransactWriteItemsEnhancedRequest enhancedRequest = createTransactWriteItems( request1, request2, costRequestList );
+        PutItemEnhancedRequest<NotificationEntity> request3 = PutItemEnhancedRequest.builder( NotificationEntity.class )
+                .item( requestLookupEntity )
+                .build();
+
+        TransactWriteItemsEnhancedRequest enhancedRequest = createTransactWriteItems( request1, request2, request3, costRequestList );
 
         try {
             dynamoDbEnhancedClient.transactWriteItems( enhancedRequest );
@@ -79,10 +105,63 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
         }
     }
 
-    private TransactWriteItemsEnhancedRequest createTransactWriteItems(PutItemEnhancedRequest<NotificationEntity> request1, PutItemEnhancedRequest<NotificationEntity> request2, List<PutItemEnhancedRequest<NotificationCostEntity>> costRequestList) {
+    @Override
+    public void updateLastStatus(String iun, String lastStatus, Instant lastStatusTimestamp, boolean refinement) {
+        // l'enhanced client non supporta if_not_exists: la data di perfezionamento resta quella del primo passaggio
+        String refinementUpdate = NotificationEntity.FIELD_REFINEMENT_DATE
+                + " = if_not_exists(" + NotificationEntity.FIELD_REFINEMENT_DATE + ", :refinementDate)";
+        String updateExpression = "SET " + NotificationEntity.FIELD_LAST_STATUS + " = :lastStatus, "
+                + NotificationEntity.FIELD_LAST_STATUS_TIMESTAMP + " = :timestamp";
+        if ( refinement ) {
+            updateExpression += ", " + refinementUpdate;
+        }
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put( ":lastStatus", AttributeValue.builder().s( lastStatus ).build() );
+        values.put( ":timestamp", AttributeValue.builder().n( Long.toString( lastStatusTimestamp.toEpochMilli() ) ).build() );
+        if ( refinement ) {
+            values.put( ":refinementDate", AttributeValue.builder().s( lastStatusTimestamp.toString() ).build() );
+        }
+        // un aggiornamento rielaborato o arrivato in ritardo non sovrascrive uno stato più recente
+        UpdateItemRequest request = UpdateItemRequest.builder()
+                .tableName( tableName )
+                .key( Map.of( NotificationEntity.FIELD_IUN, AttributeValue.builder().s( iun ).build() ) )
+                .updateExpression( updateExpression )
+                .conditionExpression( "attribute_exists(" + NotificationEntity.FIELD_IUN + ") AND ("
+                        + "attribute_not_exists(" + NotificationEntity.FIELD_LAST_STATUS_TIMESTAMP + ") OR "
+                        + NotificationEntity.FIELD_LAST_STATUS_TIMESTAMP + " <= :timestamp)" )
+                .expressionAttributeValues( values )
+                .build();
+        try {
+            dynamoDbClient.updateItem( request );
+        } catch ( ConditionalCheckFailedException ex ) {
+            log.warn( "Last status={} not saved for iun={}: notification missing or newer status already saved", lastStatus, iun );
+            if ( refinement ) {
+                // la data di perfezionamento va comunque salvata, anche se lo stato è già stato superato
+                dynamoDbClient.updateItem( UpdateItemRequest.builder()
+                        .tableName( tableName )
+                        .key( Map.of( NotificationEntity.FIELD_IUN, AttributeValue.builder().s( iun ).build() ) )
+                        .updateExpression( "SET " + refinementUpdate )
+                        .conditionExpression( "attribute_exists(" + NotificationEntity.FIELD_IUN + ")" )
+                        .expressionAttributeValues( Map.of( ":refinementDate", values.get( ":refinementDate" ) ) )
+                        .build() );
+            }
+        }
+    }
+
+    @Override
+    public Optional<String> getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken) {
+        Key requestLookupKey = Key.builder()
+                .partitionValue( getRequestLookupIun( senderPaId, paProtocolNumber, idempotenceToken ) )
+                .build();
+        return get( requestLookupKey ).map( NotificationEntity::getControlledIun );
+    }
+
+    private TransactWriteItemsEnhancedRequest createTransactWriteItems(PutItemEnhancedRequest<NotificationEntity> request1, PutItemEnhancedRequest<NotificationEntity> request2,
+                                                                       PutItemEnhancedRequest<NotificationEntity> request3, List<PutItemEnhancedRequest<NotificationCostEntity>> costRequestList) {
         TransactWriteItemsEnhancedRequest.Builder requestBuilder = TransactWriteItemsEnhancedRequest.builder();
         requestBuilder.addPutItem( dynamoDbTable, request1 );
         requestBuilder.addPutItem( dynamoDbTable, request2 );
+        requestBuilder.addPutItem( dynamoDbTable, request3 );
         for (PutItemEnhancedRequest<NotificationCostEntity> putItemCost : costRequestList  ) {
             requestBuilder.addPutItem( dynamoDbCostTable, putItemCost );
         }
@@ -125,4 +204,11 @@ public class NotificationEntityDaoDynamo extends AbstractDynamoKeyValueStore<Not
                 + "##" + notificationEntity.getCancelledIun();
     }
 
+    @NotNull
+    private String getRequestLookupIun(String senderPaId, String paProtocolNumber, String idempotenceToken) {
+        return REQUEST_LOOKUP_PREFIX + senderPaId
+                + "##" + paProtocolNumber
+                + "##" + idempotenceToken;
+    }
+
 }
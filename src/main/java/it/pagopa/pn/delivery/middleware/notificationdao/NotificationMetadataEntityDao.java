@@ -11,6 +11,8 @@ import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.util.List;
+
 public interface NotificationMetadataEntityDao extends KeyValueStore<Key, NotificationMetadataEntity> {
     String IMPLEMENTATION_TYPE_PROPERTY_NAME = "pn.middleware.impl.notification-dao";
 
@@ -21,4 +23,37 @@ public interface NotificationMetadataEntityDao extends KeyValueStore<Key, Notifi
             int size,
             PnLastEvaluatedKey lastEvaluatedKey
     );
+
+    /**
+     * Come searchForOneMonth ma legge dall'indice solo gli attributi chiave:
+     * le righe restituite contengono solo iun e sentAt e servono a calcolare le LastEvaluatedKey delle pagine successive
+     */
+    ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchKeysForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    );
+
+    /**
+     * Legge per chiave di partizione della tabella le righe di metadati di una notifica per un destinatario,
+     * applicando in applicazione gli stessi filtri della ricerca per mese
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param iunRecipientId chiave iun##recipientId
+     * @return pagina con al più una riga e senza LastEvaluatedKey
+     */
+    ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchByIunRecipientId(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String iunRecipientId
+    );
+
+    /**
+     * Legge per chiave le righe di metadati indicate
+     *
+     * @param keys chiavi iun_recipientId - sentAt
+     * @return righe trovate, in ordine qualsiasi
+     */
+    List<NotificationMetadataEntity> batchGet( List<Key> keys );
 }
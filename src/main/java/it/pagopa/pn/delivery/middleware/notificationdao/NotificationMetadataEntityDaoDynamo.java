@@ -7,33 +7,49 @@ import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSearchRowEntity;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.core.pagination.sync.SdkIterable;
 import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationMetadataEntity> implements NotificationMetadataEntityDao {
+    // numero massimo di chiavi di una BatchGetItem
+    private static final int MAX_BATCH_GET_SIZE = 100;
+
     private DynamoDbEnhancedClient dynamoDbEnhancedClient;
     private EntityToDtoNotificationMetadataMapper entityToDto;
     private PnDataVaultClientImpl dataVaultClient;
+    private final DynamoDbTable<NotificationSearchRowEntity> searchRowTable;
+    private final FilterSelectivityTracker filterSelectivityTracker;
+    private final SenderMonthShards senderMonthShards;
 
-    protected NotificationMetadataEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, EntityToDtoNotificationMetadataMapper entityToDto, PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient) {
+    protected NotificationMetadataEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, EntityToDtoNotificationMetadataMapper entityToDto, PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient,
+                                                  FilterSelectivityTracker filterSelectivityTracker, SenderMonthShards senderMonthShards) {
         super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationMetadataEntity.class)));
+        this.searchRowTable = dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationSearchRowEntity.class));
+        this.filterSelectivityTracker = filterSelectivityTracker;
+        this.senderMonthShards = senderMonthShards;
         this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
         this.entityToDto = entityToDto;
         this.dataVaultClient = dataVaultClient;
@@ -51,6 +67,40 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
             int size,
             PnLastEvaluatedKey lastEvaluatedKey
     ) {
+        return searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, false );
+    }
+
+    @Override
+    public ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchKeysForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey
+    ) {
+        return searchForOneMonth( inputSearchNotificationDto, indexName, partitionValue, size, lastEvaluatedKey, true );
+    }
+
+    private ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey,
+            boolean keysOnly
+    ) {
+        if ( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP.equals( indexName ) ) {
+            return searchGroupsForOneMonth( inputSearchNotificationDto, partitionValue, size, lastEvaluatedKey, keysOnly );
+        }
+        if ( NotificationMetadataEntity.INDEX_SENDER_ID.equals( indexName ) || NotificationMetadataEntity.INDEX_SENDER_ID_ONE.equals( indexName ) ) {
+            // la partizione mensile di un mittente con molte notifiche è suddivisa in shard
+            List<String> shardPartitions = senderMonthShards.readPartitions( partitionValue );
+            if ( shardPartitions.size() > 1 ) {
+                return mergePartitionsForOneMonth( inputSearchNotificationDto, indexName, partitionValue, shardPartitions, size,
+                        lastEvaluatedKey, keysOnly, requestBuilder -> addFilterExpression( inputSearchNotificationDto, requestBuilder ) );
+            }
+        }
+
         Instant startDate = inputSearchNotificationDto.getStartDate();
         Instant endDate = inputSearchNotificationDto.getEndDate();
 
@@ -65,43 +115,71 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         QueryConditional betweenConditional = QueryConditional
                 .sortBetween( key1, key2 );
 
-        DynamoDbIndex<NotificationMetadataEntity> index = table.index( indexName );
+        DynamoDbIndex<NotificationSearchRowEntity> index = searchRowTable.index( indexName );
 
         QueryEnhancedRequest.Builder requestBuilder = QueryEnhancedRequest.builder();
 
+        // i filtri sono applicati dopo il limit: in base alla selettività osservata
+        // vengono valutati più elementi per riempire la pagina con una sola query
+        int fetchLimit = filterSelectivityTracker.fetchLimit( inputSearchNotificationDto, indexName, size );
+
         requestBuilder.queryConditional( queryConditional )
                 .queryConditional( betweenConditional )
-                .limit( size )
+                .limit( fetchLimit )
                 .scanIndexForward( false );
 
         // aggiunta dei filtri alla query: status, groups, iun
         addFilterExpression(inputSearchNotificationDto, requestBuilder);
 
+        // vengono letti solo gli attributi necessari alla riga di ricerca, per il solo calcolo
+        // delle LastEvaluatedKey solo quelli chiave: i filtri sono comunque valutati sull'intero elemento
+        addProjection( requestBuilder, keysOnly );
+
         // se query su partizione precedente ha restituito una LEK
         // recupero nome dell'attributo in base all'indice di ricerca ed imposto
         // l'ultimo elemento valutato nella query precedente come exclusiveStartKey della query che segue
         if( lastEvaluatedKey != null && !lastEvaluatedKey.getInternalLastEvaluatedKey().isEmpty() ) {
             String attributeName = retrieveAttributeName( indexName );
-            if ( lastEvaluatedKey.getInternalLastEvaluatedKey().get( attributeName ).s().equals( partitionValue ) ) {
+            AttributeValue lastEvaluatedPartition = lastEvaluatedKey.getInternalLastEvaluatedKey().get( attributeName );
+            if ( lastEvaluatedPartition != null && partitionValue.equals( lastEvaluatedPartition.s() ) ) {
                 requestBuilder.exclusiveStartKey(lastEvaluatedKey.getInternalLastEvaluatedKey());
             }
         }
 
         // eseguo la query
-        SdkIterable<Page<NotificationMetadataEntity>> notificationMetadataPages = index.query( requestBuilder.build() );
+        SdkIterable<Page<NotificationSearchRowEntity>> notificationMetadataPages = index.query( requestBuilder.build() );
 
         // recupero i risultati della query
-        Page<NotificationMetadataEntity> page = notificationMetadataPages.iterator().next();
+        Page<NotificationSearchRowEntity> page = notificationMetadataPages.iterator().next();
+
+        List<NotificationSearchRowEntity> items = page.items();
+        Map<String, AttributeValue> pageLastEvaluatedKey = page.lastEvaluatedKey();
+        boolean limitReached = pageLastEvaluatedKey != null && !pageLastEvaluatedKey.isEmpty();
+        if ( limitReached ) {
+            filterSelectivityTracker.record( inputSearchNotificationDto, indexName, fetchLimit, countDistinctIun( items ) );
+        }
+
+        // se la query ha restituito più notifiche di quelle richieste la pagina viene troncata
+        // e la LEK viene ricostruita a partire dall'ultimo elemento restituito
+        int boundary = pageBoundary( items, size );
+        if ( boundary < items.size() ) {
+            items = items.subList( 0, boundary );
+            pageLastEvaluatedKey = lastEvaluatedKeyOf( items.get( boundary - 1 ), indexName, partitionValue );
+        } else if ( !limitReached && !items.isEmpty() && countDistinctIun( items ) == size ) {
+            // come per una query con limit pari a size, una pagina completa restituisce sempre la LEK:
+            // la ricerca multi pagina prosegue dalla LEK invece di ripetere la query sulla stessa partizione
+            pageLastEvaluatedKey = lastEvaluatedKeyOf( items.get( items.size() - 1 ), indexName, partitionValue );
+        }
 
         // imposto i risultati della query mappandoli da NotificationMetadata a NotificationSearchRow
         ResultPaginationDto.ResultPaginationDtoBuilder<NotificationSearchRow,PnLastEvaluatedKey> resultPaginationDtoBuilder = ResultPaginationDto.builder();
-        resultPaginationDtoBuilder.resultsPage( fromNotificationMetadataToNotificationSearchRow( page.items() )).moreResult( false );
+        resultPaginationDtoBuilder.resultsPage( fromNotificationMetadataToNotificationSearchRow( items, keysOnly )).moreResult( false );
 
         // imposto la LEK in base al risultato della query
-        if ( page.lastEvaluatedKey() != null && !page.lastEvaluatedKey().isEmpty()) {
+        if ( pageLastEvaluatedKey != null && !pageLastEvaluatedKey.isEmpty()) {
             PnLastEvaluatedKey pnLastEvaluatedKey = new PnLastEvaluatedKey();
             pnLastEvaluatedKey.setExternalLastEvaluatedKey( partitionValue  );
-            pnLastEvaluatedKey.setInternalLastEvaluatedKey( page.lastEvaluatedKey() );
+            pnLastEvaluatedKey.setInternalLastEvaluatedKey( pageLastEvaluatedKey );
             List<PnLastEvaluatedKey> lastEvaluatedKeyList = new ArrayList<>();
             lastEvaluatedKeyList.add( pnLastEvaluatedKey );
             resultPaginationDtoBuilder.nextPagesKey( lastEvaluatedKeyList )
@@ -110,6 +188,160 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         return resultPaginationDtoBuilder.build();
     }
 
+    /**
+     * Ricerca per i gruppi del mittente: interroga la partizione senderId##gruppo##mese di ciascun gruppo
+     * e fonde i risultati per sentAt decrescente.
+     */
+    private ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchGroupsForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey,
+            boolean keysOnly
+    ) {
+        String senderId = partitionValue.substring( 0, partitionValue.lastIndexOf( "##" ) );
+        String creationMonth = partitionValue.substring( partitionValue.lastIndexOf( "##" ) + 2 );
+        List<String> groupPartitions = new LinkedHashSet<>( inputSearchNotificationDto.getGroups() ).stream()
+                .map( group -> senderId + "##" + group + "##" + creationMonth )
+                .collect( Collectors.toList() );
+        // il gruppo è determinato dalla partizione: restano i filtri su stato e iun
+        return mergePartitionsForOneMonth( inputSearchNotificationDto, NotificationMetadataEntity.INDEX_SENDER_ID_GROUP, partitionValue,
+                groupPartitions, size, lastEvaluatedKey, keysOnly, requestBuilder -> {
+                    addStatusFilterExpression( inputSearchNotificationDto, requestBuilder );
+                    addIunFilterExpression( inputSearchNotificationDto, requestBuilder );
+                } );
+    }
+
+    /**
+     * Interroga le partizioni fisiche che compongono una partizione logica (i gruppi del mittente o gli shard
+     * del mese) e fonde i risultati con un merge a k vie per sentAt decrescente. Se la query di una partizione
+     * si è interrotta per il limit, la pagina contiene solo gli elementi più recenti dell'ultimo elemento valutato
+     * da quella query, in modo che l'ordine sia lo stesso di un'unica query su tutte le partizioni.
+     * La LEK restituita riporta la partizione logica.
+     */
+    private ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> mergePartitionsForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            List<String> queryPartitions,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey,
+            boolean keysOnly,
+            Consumer<QueryEnhancedRequest.Builder> filters
+    ) {
+        SearchPosition startPosition = null;
+        if ( lastEvaluatedKey != null && lastEvaluatedKey.getInternalLastEvaluatedKey() != null ) {
+            AttributeValue lastEvaluatedPartition = lastEvaluatedKey.getInternalLastEvaluatedKey().get( retrieveAttributeName( indexName ) );
+            if ( lastEvaluatedPartition != null && partitionValue.equals( lastEvaluatedPartition.s() ) ) {
+                startPosition = SearchPosition.of( lastEvaluatedKey.getInternalLastEvaluatedKey() );
+            }
+        }
+        String upperSortValue = startPosition != null ? startPosition.getSentAt().toString() : inputSearchNotificationDto.getEndDate().toString();
+
+        DynamoDbIndex<NotificationSearchRowEntity> index = searchRowTable.index( indexName );
+        int fetchLimit = filterSelectivityTracker.fetchLimit( inputSearchNotificationDto, indexName, size );
+
+        List<Iterator<NotificationSearchRowEntity>> partitionItems = new ArrayList<>();
+        SearchPosition boundary = null;
+        for ( String queryPartition : queryPartitions ) {
+            Key.Builder builder = Key.builder().partitionValue( queryPartition );
+            QueryEnhancedRequest.Builder requestBuilder = QueryEnhancedRequest.builder()
+                    .queryConditional( QueryConditional.sortBetween(
+                            builder.sortValue( inputSearchNotificationDto.getStartDate().toString() ).build(),
+                            builder.sortValue( upperSortValue ).build() ) )
+                    .limit( fetchLimit )
+                    .scanIndexForward( false );
+            filters.accept( requestBuilder );
+            addProjection( requestBuilder, keysOnly );
+
+            Page<NotificationSearchRowEntity> page = index.query( requestBuilder.build() ).iterator().next();
+            final SearchPosition start = startPosition;
+            // a parità di sentAt l'ordine della query non è quello di SearchPosition: ogni lista viene riordinata
+            partitionItems.add( page.items().stream()
+                    .filter( item -> start == null || SearchPosition.of( item ).compareTo( start ) < 0 )
+                    .sorted( Comparator.comparing( (NotificationSearchRowEntity item) -> SearchPosition.of( item ) ).reversed() )
+                    .iterator() );
+
+            Map<String, AttributeValue> pageLastEvaluatedKey = page.lastEvaluatedKey();
+            if ( pageLastEvaluatedKey != null && !pageLastEvaluatedKey.isEmpty() ) {
+                filterSelectivityTracker.record( inputSearchNotificationDto, indexName, fetchLimit, countDistinctIun( page.items() ) );
+                SearchPosition partitionBoundary = SearchPosition.of( pageLastEvaluatedKey );
+                if ( boundary == null || partitionBoundary.compareTo( boundary ) > 0 ) {
+                    boundary = partitionBoundary;
+                }
+            }
+        }
+
+        List<NotificationSearchRowEntity> items = mergeByPosition( partitionItems, boundary, size );
+        boolean moreResult = boundary != null || countDistinctIun( items ) >= size;
+
+        ResultPaginationDto.ResultPaginationDtoBuilder<NotificationSearchRow,PnLastEvaluatedKey> resultPaginationDtoBuilder = ResultPaginationDto.builder();
+        resultPaginationDtoBuilder.resultsPage( fromNotificationMetadataToNotificationSearchRow( items, keysOnly ) ).moreResult( moreResult );
+        if ( moreResult ) {
+            SearchPosition lastPosition = items.isEmpty() ? boundary : SearchPosition.of( items.get( items.size() - 1 ) );
+            PnLastEvaluatedKey pnLastEvaluatedKey = new PnLastEvaluatedKey();
+            pnLastEvaluatedKey.setExternalLastEvaluatedKey( partitionValue );
+            pnLastEvaluatedKey.setInternalLastEvaluatedKey( lastEvaluatedKeyOf( lastPosition, indexName, partitionValue ) );
+            List<PnLastEvaluatedKey> lastEvaluatedKeyList = new ArrayList<>();
+            lastEvaluatedKeyList.add( pnLastEvaluatedKey );
+            resultPaginationDtoBuilder.nextPagesKey( lastEvaluatedKeyList );
+        }
+        return resultPaginationDtoBuilder.build();
+    }
+
+    /**
+     * Merge a k vie di liste ordinate per posizione decrescente: si ferma alla prima posizione precedente
+     * al cutoff o quando la pagina conterrebbe più di size notifiche distinte
+     */
+    private static List<NotificationSearchRowEntity> mergeByPosition(List<Iterator<NotificationSearchRowEntity>> partitionItems, SearchPosition cutoff, int size) {
+        PriorityQueue<MergeHead> heads = new PriorityQueue<>( Comparator.comparing( MergeHead::getPosition ).reversed() );
+        partitionItems.forEach( remaining -> MergeHead.next( remaining ).ifPresent( heads::add ) );
+
+        List<NotificationSearchRowEntity> items = new ArrayList<>();
+        Set<String> iuns = new HashSet<>();
+        while ( !heads.isEmpty() ) {
+            MergeHead head = heads.poll();
+            if ( cutoff != null && head.getPosition().compareTo( cutoff ) < 0 ) {
+                break;
+            }
+            if ( iuns.add( iunOf( head.getItem() ) ) && iuns.size() > size ) {
+                break;
+            }
+            items.add( head.getItem() );
+            MergeHead.next( head.getRemaining() ).ifPresent( heads::add );
+        }
+        return items;
+    }
+
+    /**
+     * Restituisce il numero di elementi, nell'ordine della query, che contengono al più size notifiche distinte
+     */
+    private static int pageBoundary(List<NotificationSearchRowEntity> items, int size) {
+        Set<String> iuns = new HashSet<>();
+        for ( int i = 0; i < items.size(); i++ ) {
+            if ( iuns.add( iunOf( items.get( i ) ) ) && iuns.size() > size ) {
+                return i;
+            }
+        }
+        return items.size();
+    }
+
+    private static int countDistinctIun(List<NotificationSearchRowEntity> items) {
+        return (int) items.stream().map( NotificationMetadataEntityDaoDynamo::iunOf ).distinct().count();
+    }
+
+    private Map<String, AttributeValue> lastEvaluatedKeyOf(NotificationSearchRowEntity entity, String indexName, String partitionValue) {
+        return lastEvaluatedKeyOf( SearchPosition.of( entity ), indexName, partitionValue );
+    }
+
+    private Map<String, AttributeValue> lastEvaluatedKeyOf(SearchPosition position, String indexName, String partitionValue) {
+        Map<String, AttributeValue> lastEvaluatedKey = new HashMap<>();
+        lastEvaluatedKey.put( NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s( position.getIunRecipientId() ).build() );
+        lastEvaluatedKey.put( NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s( position.getSentAt().toString() ).build() );
+        lastEvaluatedKey.put( retrieveAttributeName( indexName ), AttributeValue.builder().s( partitionValue ).build() );
+        return lastEvaluatedKey;
+    }
+
     private String retrieveAttributeName(String indexName) {
         String attributeName;
         switch ( indexName ) {
@@ -119,6 +351,11 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
                 attributeName = NotificationMetadataEntity.FIELD_RECIPIENT_ID_CREATION_MONTH; break;
             case NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID:
                 attributeName = NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID; break;
+            case NotificationMetadataEntity.INDEX_SENDER_ID_ONE:
+                attributeName = NotificationMetadataEntity.FIELD_SENDER_ID_ONE_CREATION_MONTH; break;
+            // la ricerca per gruppi fonde più partizioni dell'indice: la LEK riporta la partizione senderId##mese
+            case NotificationMetadataEntity.INDEX_SENDER_ID_GROUP:
+                attributeName = NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH; break;
             default: {
                 String msg = String.format( "Unable to retrieve attributeName by indexName=%s", indexName );
                 log.error( msg );
@@ -128,6 +365,18 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         return attributeName;
     }
 
+    private void addProjection(QueryEnhancedRequest.Builder requestBuilder, boolean keysOnly) {
+        requestBuilder.attributesToProject( NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, NotificationMetadataEntity.FIELD_SENT_AT );
+        if ( !keysOnly ) {
+            requestBuilder.addAttributeToProject( NotificationMetadataEntity.FIELD_SENDER_ID )
+                    .addAttributeToProject( NotificationMetadataEntity.FIELD_RECIPIENT_IDS )
+                    .addAttributeToProject( NotificationMetadataEntity.FIELD_NOTIFICATION_STATUS )
+                    .addNestedAttributesToProject(
+                            NestedAttributeName.create( NotificationMetadataEntity.FIELD_TABLE_ROW, NotificationSearchRowEntity.TABLE_ROW_SUBJECT ),
+                            NestedAttributeName.create( NotificationMetadataEntity.FIELD_TABLE_ROW, NotificationSearchRowEntity.TABLE_ROW_PA_PROTOCOL_NUMBER ) );
+        }
+    }
+
     private void addFilterExpression(InputSearchNotificationDto inputSearchNotificationDto,
                                      QueryEnhancedRequest.Builder requestBuilder) {
         addStatusFilterExpression(inputSearchNotificationDto, requestBuilder);
@@ -187,14 +436,58 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
         }
     }
 
-    private List<NotificationSearchRow> fromNotificationMetadataToNotificationSearchRow(List<NotificationMetadataEntity> metadataEntityList) {
+    private List<NotificationSearchRow> fromNotificationMetadataToNotificationSearchRow(List<NotificationSearchRowEntity> metadataEntityList, boolean keysOnly) {
         List<NotificationSearchRow> result = new ArrayList<>();
-        Map<String, NotificationMetadataEntity> metadataEntityMap = new HashMap<String,NotificationMetadataEntity>();
-        for ( NotificationMetadataEntity entity : metadataEntityList ) {
-            metadataEntityMap.putIfAbsent(entity.getTableRow().get("iun"), entity);
+        Map<String, NotificationSearchRowEntity> metadataEntityMap = new HashMap<String,NotificationSearchRowEntity>();
+        for ( NotificationSearchRowEntity entity : metadataEntityList ) {
+            metadataEntityMap.putIfAbsent(iunOf( entity ), entity);
+        }
+        metadataEntityMap.values().stream().sorted( Comparator.comparing( NotificationSearchRowEntity::getSentAt ).reversed() )
+                .forEach( entity -> result.add( keysOnly ? entityToDto.entity2KeyDto( entity ) : entityToDto.entity2Dto( entity )) );
+        return result;
+    }
+
+    private static String iunOf(NotificationSearchRowEntity entity) {
+        String iunRecipientId = entity.getIun_recipientId();
+        return iunRecipientId.substring( 0, iunRecipientId.indexOf( "##" ) );
+    }
+
+    @Override
+    public ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchByIunRecipientId(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String iunRecipientId
+    ) {
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                .queryConditional( QueryConditional.keyEqualTo( Key.builder().partitionValue( iunRecipientId ).build() ) )
+                .build();
+        Predicate<String> matchSubject = SearchFilters.subjectPredicate( inputSearchNotificationDto.getSubjectRegExp() );
+        // la chiave garantisce il destinatario, il mittente va verificato
+        List<NotificationSearchRow> rows = table.query( request ).items().stream()
+                .filter( entity -> !inputSearchNotificationDto.isBySender() || inputSearchNotificationDto.getSenderReceiverId().equals( entity.getSenderId() ) )
+                .filter( entity -> SearchFilters.matches( inputSearchNotificationDto, entity, matchSubject ) )
+                .limit( 1 )
+                .map( entityToDto::entity2Dto )
+                .collect( Collectors.toList() );
+        return ResultPaginationDto.<NotificationSearchRow,PnLastEvaluatedKey>builder()
+                .resultsPage( rows )
+                .moreResult( false )
+                .build();
+    }
+
+    @Override
+    public List<NotificationMetadataEntity> batchGet(List<Key> keys) {
+        List<NotificationMetadataEntity> result = new ArrayList<>();
+        for ( int from = 0; from < keys.size(); from += MAX_BATCH_GET_SIZE ) {
+            ReadBatch.Builder<NotificationMetadataEntity> readBatch = ReadBatch.builder( NotificationMetadataEntity.class )
+                    .mappedTableResource( table );
+            keys.subList( from, Math.min( from + MAX_BATCH_GET_SIZE, keys.size() ) ).forEach( readBatch::addGetItem );
+            // le pagine successive contengono le chiavi non elaborate dalla richiesta precedente
+            dynamoDbEnhancedClient.batchGetItem( BatchGetItemEnhancedRequest.builder()
+                            .readBatches( readBatch.build() )
+                            .build() )
+                    .resultsForTable( table )
+                    .forEach( result::add );
         }
-        metadataEntityMap.values().stream().sorted( Comparator.comparing( NotificationMetadataEntity::getSentAt ).reversed() )
-                .forEach( entity -> result.add( entityToDto.entity2Dto( entity )) );
         return result;
     }
 
@@ -206,4 +499,47 @@ public class NotificationMetadataEntityDaoDynamo extends AbstractDynamoKeyValueS
                 .build();
         table.putItem( request );
     }
+
+    /**
+     * Posizione di un elemento nell'ordine di ricerca: sentAt decrescente, a parità di sentAt iun_recipientId decrescente
+     */
+    @Value
+    private static class SearchPosition implements Comparable<SearchPosition> {
+        Instant sentAt;
+        String iunRecipientId;
+
+        static SearchPosition of(NotificationSearchRowEntity entity) {
+            return new SearchPosition( entity.getSentAt(), entity.getIun_recipientId() );
+        }
+
+        static SearchPosition of(Map<String, AttributeValue> lastEvaluatedKey) {
+            return new SearchPosition(
+                    Instant.parse( lastEvaluatedKey.get( NotificationMetadataEntity.FIELD_SENT_AT ).s() ),
+                    lastEvaluatedKey.get( NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID ).s() );
+        }
+
+        @Override
+        public int compareTo(SearchPosition other) {
+            int bySentAt = sentAt.compareTo( other.sentAt );
+            return bySentAt != 0 ? bySentAt : iunRecipientId.compareTo( other.iunRecipientId );
+        }
+    }
+
+    /**
+     * Primo elemento non ancora fuso di una partizione
+     */
+    @Value
+    private static class MergeHead {
+        NotificationSearchRowEntity item;
+        SearchPosition position;
+        Iterator<NotificationSearchRowEntity> remaining;
+
+        static Optional<MergeHead> next(Iterator<NotificationSearchRowEntity> remaining) {
+            if ( !remaining.hasNext() ) {
+                return Optional.empty();
+            }
+            NotificationSearchRowEntity item = remaining.next();
+            return Optional.of( new MergeHead( item, SearchPosition.of( item ), remaining ) );
+        }
+    }
 }
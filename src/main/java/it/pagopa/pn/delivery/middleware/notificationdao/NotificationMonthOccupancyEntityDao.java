@@ -0,0 +1,30 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMonthOccupancyEntity;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.util.Map;
+
+public interface NotificationMonthOccupancyEntityDao extends KeyValueStore<Key, NotificationMonthOccupancyEntity> {
+    String IMPLEMENTATION_TYPE_PROPERTY_NAME = "pn.middleware.impl.notification-dao";
+
+    /**
+     * @param indexName_cxId chiave indice##cxId
+     * @return mesi occupati con il numero di notifiche contate in ciascun mese, 0 se non ancora contate
+     */
+    Map<String, Long> countNotificationsByMonth( String indexName_cxId );
+
+    /**
+     * Registra il mese come occupato e somma in modo atomico il numero di notifiche indicato,
+     * senza sovrascrivere il conteggio già presente.
+     * L'incremento non è idempotente: se la stessa transizione di stato viene rielaborata la notifica è contata
+     * più volte. Il conteggio è quindi approssimato per eccesso e va usato solo come stima di costo,
+     * mai per decidere che un mese non contiene notifiche.
+     *
+     * @param indexName_cxId chiave indice##cxId
+     * @param creationMonth mese nel formato yyyyMM
+     * @param notificationsCount notifiche da aggiungere al conteggio, 0 per la sola registrazione del mese
+     */
+    void addNotifications( String indexName_cxId, String creationMonth, long notificationsCount );
+}
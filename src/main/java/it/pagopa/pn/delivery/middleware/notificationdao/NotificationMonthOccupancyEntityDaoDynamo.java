@@ -0,0 +1,84 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.IdConflictException;
+import it.pagopa.pn.commons.abstractions.impl.AbstractDynamoKeyValueStore;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMonthOccupancyEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@Slf4j
+public class NotificationMonthOccupancyEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationMonthOccupancyEntity> implements NotificationMonthOccupancyEntityDao {
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+
+    protected NotificationMonthOccupancyEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, DynamoDbClient dynamoDbClient, PnDeliveryConfigs cfg) {
+        super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationMonthOccupancyEntity.class)));
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName( cfg );
+    }
+
+    private static String tableName( PnDeliveryConfigs cfg ) {
+        return cfg.getNotificationMonthOccupancyDao().getTableName();
+    }
+
+    @Override
+    public Map<String, Long> countNotificationsByMonth(String indexName_cxId) {
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                .queryConditional( QueryConditional.keyEqualTo( Key.builder().partitionValue( indexName_cxId ).build() ) )
+                .attributesToProject( NotificationMonthOccupancyEntity.FIELD_CREATION_MONTH, NotificationMonthOccupancyEntity.FIELD_NOTIFICATIONS_COUNT )
+                .build();
+        Map<String, Long> counts = new HashMap<>();
+        table.query( request ).items().forEach( entity -> counts.put( entity.getCreationMonth(),
+                entity.getNotificationsCount() != null ? entity.getNotificationsCount() : 0L ) );
+        return counts;
+    }
+
+    @Override
+    public void addNotifications(String indexName_cxId, String creationMonth, long notificationsCount) {
+        // l'enhanced client non supporta l'ADD: con la UpdateItem l'elemento viene creato se assente
+        // e il conteggio viene incrementato senza leggere il valore corrente.
+        // Nessuna condizione rende l'ADD idempotente: una rielaborazione dell'evento incrementa di nuovo
+        // il conteggio, che resta una stima per eccesso (vedi NotificationMonthOccupancyEntityDao)
+        UpdateItemRequest request = UpdateItemRequest.builder()
+                .tableName( tableName )
+                .key( Map.of(
+                        NotificationMonthOccupancyEntity.FIELD_INDEX_NAME_CX_ID, AttributeValue.builder().s( indexName_cxId ).build(),
+                        NotificationMonthOccupancyEntity.FIELD_CREATION_MONTH, AttributeValue.builder().s( creationMonth ).build() ) )
+                .updateExpression( "ADD " + NotificationMonthOccupancyEntity.FIELD_NOTIFICATIONS_COUNT + " :count" )
+                .expressionAttributeValues( Map.of( ":count", AttributeValue.builder().n( Long.toString( notificationsCount ) ).build() ) )
+                .build();
+        dynamoDbClient.updateItem( request );
+    }
+
+    @Override
+    public void putIfAbsent(NotificationMonthOccupancyEntity entity) throws IdConflictException {
+        PutItemEnhancedRequest<NotificationMonthOccupancyEntity> request = PutItemEnhancedRequest.builder( NotificationMonthOccupancyEntity.class )
+                .item( entity )
+                .conditionExpression( Expression.builder()
+                        .expression( "attribute_not_exists(" + NotificationMonthOccupancyEntity.FIELD_INDEX_NAME_CX_ID + ")" )
+                        .build() )
+                .build();
+        try {
+            table.putItem( request );
+        } catch ( ConditionalCheckFailedException ex ) {
+            throw new IdConflictException( entity );
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.KeyValueStore;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTrigramEntity;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface NotificationSubjectTrigramEntityDao extends KeyValueStore<Key, NotificationSubjectTrigramEntity> {
+    String IMPLEMENTATION_TYPE_PROPERTY_NAME = "pn.middleware.impl.notification-dao";
+
+    /**
+     * Elenca le chiavi sentAt##iun_recipientId di una partizione comprese tra i due estremi inclusi,
+     * a partire dalla più recente
+     *
+     * @param senderId_creationMonth_trigram partizione senderId##yyyyMM##trigramma
+     * @param fromSortKey estremo inferiore
+     * @param toSortKey estremo superiore
+     * @param limit numero massimo di chiavi lette
+     * @return chiavi in ordine decrescente
+     */
+    List<String> listPostings( String senderId_creationMonth_trigram, String fromSortKey, String toSortKey, int limit );
+
+    void putAll( Collection<NotificationSubjectTrigramEntity> entities );
+}
@@ -0,0 +1,85 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.abstractions.IdConflictException;
+import it.pagopa.pn.commons.abstractions.impl.AbstractDynamoKeyValueStore;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTrigramEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.*;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Component
+@Slf4j
+public class NotificationSubjectTrigramEntityDaoDynamo extends AbstractDynamoKeyValueStore<NotificationSubjectTrigramEntity> implements NotificationSubjectTrigramEntityDao {
+
+    // numero massimo di elementi di una BatchWriteItem
+    private static final int MAX_BATCH_WRITE_SIZE = 25;
+
+    private final DynamoDbEnhancedClient dynamoDbEnhancedClient;
+
+    protected NotificationSubjectTrigramEntityDaoDynamo(DynamoDbEnhancedClient dynamoDbEnhancedClient, PnDeliveryConfigs cfg) {
+        super(dynamoDbEnhancedClient.table(tableName( cfg ), TableSchema.fromClass(NotificationSubjectTrigramEntity.class)));
+        this.dynamoDbEnhancedClient = dynamoDbEnhancedClient;
+    }
+
+    private static String tableName( PnDeliveryConfigs cfg ) {
+        return cfg.getNotificationSubjectTrigramDao().getTableName();
+    }
+
+    @Override
+    public List<String> listPostings(String senderId_creationMonth_trigram, String fromSortKey, String toSortKey, int limit) {
+        Key.Builder builder = Key.builder().partitionValue( senderId_creationMonth_trigram );
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+                .queryConditional( QueryConditional.sortBetween(
+                        builder.sortValue( fromSortKey ).build(),
+                        builder.sortValue( toSortKey ).build() ) )
+                .attributesToProject( NotificationSubjectTrigramEntity.FIELD_SENT_AT_IUN_RECIPIENT_ID )
+                .scanIndexForward( false )
+                .limit( limit )
+                .build();
+        return table.query( request ).items().stream()
+                .limit( limit )
+                .map( NotificationSubjectTrigramEntity::getSentAt_iunRecipientId )
+                .collect( Collectors.toList() );
+    }
+
+    @Override
+    public void putAll(Collection<NotificationSubjectTrigramEntity> entities) {
+        List<NotificationSubjectTrigramEntity> items = new ArrayList<>( entities );
+        for ( int from = 0; from < items.size(); from += MAX_BATCH_WRITE_SIZE ) {
+            WriteBatch.Builder<NotificationSubjectTrigramEntity> writeBatch = WriteBatch.builder( NotificationSubjectTrigramEntity.class )
+                    .mappedTableResource( table );
+            items.subList( from, Math.min( from + MAX_BATCH_WRITE_SIZE, items.size() ) ).forEach( writeBatch::addPutItem );
+            BatchWriteResult result = dynamoDbEnhancedClient.batchWriteItem( BatchWriteItemEnhancedRequest.builder()
+                    .writeBatches( writeBatch.build() )
+                    .build() );
+            // gli elementi non elaborati per throttling vengono scritti singolarmente
+            result.unprocessedPutItemsForTable( table ).forEach( table::putItem );
+        }
+    }
+
+    @Override
+    public void putIfAbsent(NotificationSubjectTrigramEntity entity) throws IdConflictException {
+        PutItemEnhancedRequest<NotificationSubjectTrigramEntity> request = PutItemEnhancedRequest.builder( NotificationSubjectTrigramEntity.class )
+                .item( entity )
+                .conditionExpression( Expression.builder()
+                        .expression( "attribute_not_exists(" + NotificationSubjectTrigramEntity.FIELD_SENDER_ID_CREATION_MONTH_TRIGRAM + ")" )
+                        .build() )
+                .build();
+        try {
+            table.putItem( request );
+        } catch ( ConditionalCheckFailedException ex ) {
+            throw new IdConflictException( entity );
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.NotificationRecipientAddressesDto;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cache dei dati in chiaro dei destinatari di una notifica letti da data-vault: denominazioni, codici fiscali e indirizzi.
+ * <p>
+ * Essendo dati personali sono mantenuti solo nello heap, separati dalle entity delle notifiche,
+ * con una scadenza breve e una dimensione limitata.
+ */
+@Component
+public class RecipientClearDataCache {
+
+    public static final String CACHE_NAME = "pnDeliveryRecipientClearData";
+
+    private static final long DEFAULT_MAX_SIZE = 10_000L;
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds( 30 );
+
+    private final boolean enabled;
+    private final Cache<String, RecipientClearData> cache;
+
+    public RecipientClearDataCache(PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.NotificationCache cacheCfg = cfg.getNotificationCache();
+        long maxSize = cacheCfg != null && cacheCfg.getClearDataMaxSize() != null ? cacheCfg.getClearDataMaxSize() : DEFAULT_MAX_SIZE;
+        Duration ttl = cacheCfg != null && cacheCfg.getClearDataTtl() != null ? cacheCfg.getClearDataTtl() : DEFAULT_TTL;
+        this.enabled = maxSize > 0 && !ttl.isZero();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( Math.max( maxSize, 0 ) )
+                .expireAfterWrite( ttl )
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor( Metrics.globalRegistry, cache, CACHE_NAME );
+    }
+
+    /**
+     * Restituisce i dati in chiaro in cache per la notifica, altrimenti li legge da data-vault e li memorizza
+     *
+     * @param iun iun della notifica
+     * @param loader lettura da data-vault in caso di cache miss
+     * @return dati in chiaro dei destinatari
+     */
+    public RecipientClearData get(String iun, Supplier<RecipientClearData> loader) {
+        if ( !enabled ) {
+            return loader.get();
+        }
+        RecipientClearData cached = cache.getIfPresent( iun );
+        if ( cached != null ) {
+            return cached;
+        }
+        RecipientClearData loaded = loader.get();
+        cache.put( iun, loaded );
+        return loaded;
+    }
+
+    /**
+     * @return i dati in chiaro in cache per la notifica, null se non presenti
+     */
+    public RecipientClearData getIfPresent(String iun) {
+        return enabled ? cache.getIfPresent( iun ) : null;
+    }
+
+    /**
+     * Memorizza i dati in chiaro appena salvati su data-vault per una nuova notifica
+     */
+    public void put(String iun, RecipientClearData clearData) {
+        if ( enabled ) {
+            cache.put( iun, clearData );
+        }
+    }
+
+    /**
+     * Dati in chiaro dei destinatari, nell'ordine in cui li restituisce data-vault
+     */
+    @Value
+    public static class RecipientClearData {
+        List<BaseRecipientDto> baseRecipients;
+        List<NotificationRecipientAddressesDto> addresses;
+
+        public RecipientClearData(List<BaseRecipientDto> baseRecipients, List<NotificationRecipientAddressesDto> addresses) {
+            this.baseRecipients = baseRecipients != null ? Collections.unmodifiableList( baseRecipients ) : Collections.emptyList();
+            this.addresses = addresses != null ? Collections.unmodifiableList( addresses ) : Collections.emptyList();
+        }
+    }
+}
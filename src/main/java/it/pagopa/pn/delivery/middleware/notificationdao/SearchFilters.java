@@ -0,0 +1,53 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSearchRowEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Filtri di ricerca valutati in applicazione sulle righe di metadati lette per chiave,
+ * equivalenti a range di date e filter expression delle query sugli indici di ricerca
+ */
+final class SearchFilters {
+
+    private SearchFilters() {
+    }
+
+    static boolean matches(InputSearchNotificationDto inputSearchNotificationDto, NotificationMetadataEntity entity, Predicate<String> matchSubject) {
+        Instant sentAt = entity.getSentAt();
+        if ( sentAt.isBefore( inputSearchNotificationDto.getStartDate() ) || sentAt.isAfter( inputSearchNotificationDto.getEndDate() ) ) {
+            return false;
+        }
+        // nelle ricerche del destinatario filterId è il mittente, garantito dalla chiave solo sulla partizione sender##recipient
+        if ( !inputSearchNotificationDto.isBySender() && inputSearchNotificationDto.getFilterId() != null
+                && !inputSearchNotificationDto.getFilterId().equals( entity.getSenderId() ) ) {
+            return false;
+        }
+        if ( inputSearchNotificationDto.getStatus() != null && !inputSearchNotificationDto.getStatus().toString().equals( entity.getNotificationStatus() ) ) {
+            return false;
+        }
+        if ( inputSearchNotificationDto.getGroups() != null && !inputSearchNotificationDto.getGroups().contains( entity.getNotificationGroup() ) ) {
+            return false;
+        }
+        if ( inputSearchNotificationDto.getIunMatch() != null && !entity.getIun_recipientId().startsWith( inputSearchNotificationDto.getIunMatch() ) ) {
+            return false;
+        }
+        return matchSubject.test( entity.getTableRow().get( NotificationSearchRowEntity.TABLE_ROW_SUBJECT ) );
+    }
+
+    static Predicate<String> subjectPredicate(String subjectRegExp) {
+        Predicate<String> matchSubject;
+        if (subjectRegExp != null) {
+            matchSubject = Objects::nonNull;
+            matchSubject = matchSubject.and(Pattern.compile("^" + subjectRegExp + "$").asMatchPredicate());
+        } else {
+            matchSubject = x -> true;
+        }
+        return matchSubject;
+    }
+}
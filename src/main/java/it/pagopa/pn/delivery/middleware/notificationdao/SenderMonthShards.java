@@ -0,0 +1,102 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.svc.search.PartitionGranularity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suddivisione in shard delle partizioni mensili dei mittenti con molte notifiche.
+ * <p>
+ * Per i mittenti configurati, a partire dal mese indicato, le chiavi senderId_creationMonth e
+ * senderIdOne_creationMonth sono scritte nella forma senderId##yyyyMM##shard, con shard calcolato
+ * dallo iun: tutte le righe di una notifica sono nello stesso shard. Le ricerche continuano a usare
+ * la partizione logica senderId##yyyyMM, che il DAO espande negli shard.
+ * Se la partizione del mittente è suddivisa in bucket giornalieri o settimanali, al posto del mese
+ * c'è l'etichetta del bucket, che inizia con il mese.
+ * <p>
+ * Dal mese since le ricerche leggono solo gli shard: since deve essere un mese non ancora iniziato
+ * quando la configurazione viene introdotta, altrimenti le notifiche già scritte in quel mese sulla
+ * partizione senderId##yyyyMM non sono più trovate. Per lo stesso motivo il numero di shard non deve
+ * mai diminuire: gli shard oltre il nuovo numero non verrebbero più letti.
+ */
+@Component
+@Slf4j
+public class SenderMonthShards {
+
+    private static final String SEPARATOR = "##";
+
+    private final Map<String, PnDeliveryConfigs.SenderSharding> senders;
+
+    public SenderMonthShards(PnDeliveryConfigs cfg, Clock clock) {
+        PnDeliveryConfigs.Sharding shardingCfg = cfg.getSharding();
+        this.senders = shardingCfg != null && shardingCfg.getSenders() != null ? shardingCfg.getSenders() : Collections.emptyMap();
+        String currentMonth = PartitionGranularity.MONTH.bucketOf( clock.instant() );
+        this.senders.forEach( (senderId, sharding) -> {
+            if ( sharding.getShards() == null || sharding.getShards() <= 1 ) {
+                return;
+            }
+            if ( sharding.getSince() == null ) {
+                throw new PnInternalException( "Missing sharding since month for senderId=" + senderId
+                        + ": notifications already written on unsharded partitions would not be searchable" );
+            }
+            if ( sharding.getSince().compareTo( currentMonth ) <= 0 ) {
+                log.warn( "Sharding of senderId={} started in since={}: notifications of that month written before the configuration are not searchable",
+                        senderId, sharding.getSince() );
+            }
+        } );
+    }
+
+    /**
+     * @return numero di shard della partizione del mittente per il mese indicato, 1 se la partizione non è suddivisa
+     */
+    public int shardsOf(String senderId, String creationMonth) {
+        PnDeliveryConfigs.SenderSharding sharding = senders.get( senderId );
+        if ( sharding == null || sharding.getShards() == null || sharding.getShards() <= 1 ) {
+            return 1;
+        }
+        if ( sharding.getSince() != null && creationMonth.compareTo( sharding.getSince() ) < 0 ) {
+            return 1;
+        }
+        return sharding.getShards();
+    }
+
+    /**
+     * Partizione su cui scrivere le righe di una notifica
+     *
+     * @param senderId mittente
+     * @param creationMonth mese yyyyMM
+     * @param iun iun della notifica
+     * @return senderId##yyyyMM, o senderId##yyyyMM##shard se la partizione è suddivisa
+     */
+    public String writePartition(String senderId, String creationMonth, String iun) {
+        String partitionValue = senderId + SEPARATOR + creationMonth;
+        int shards = shardsOf( senderId, creationMonth );
+        return shards > 1 ? partitionValue + SEPARATOR + Math.floorMod( iun.hashCode(), shards ) : partitionValue;
+    }
+
+    /**
+     * Partizioni fisiche da interrogare per la partizione logica senderId##yyyyMM
+     *
+     * @return la partizione stessa se non è suddivisa, altrimenti i suoi shard
+     */
+    public List<String> readPartitions(String partitionValue) {
+        int separatorIndex = partitionValue.lastIndexOf( SEPARATOR );
+        int shards = shardsOf( partitionValue.substring( 0, separatorIndex ), partitionValue.substring( separatorIndex + SEPARATOR.length() ) );
+        if ( shards <= 1 ) {
+            return Collections.singletonList( partitionValue );
+        }
+        List<String> partitions = new ArrayList<>( shards );
+        for ( int shard = 0; shard < shards; shard++ ) {
+            partitions.add( partitionValue + SEPARATOR + shard );
+        }
+        return partitions;
+    }
+}
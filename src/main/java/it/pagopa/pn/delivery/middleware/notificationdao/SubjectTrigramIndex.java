@@ -0,0 +1,311 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSearchRowEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSubjectTrigramEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Indice invertito per trigrammi dell'oggetto delle notifiche, partizionato per mittente e mese.
+ * <p>
+ * Viene scritto da StatusService al passaggio nello stato ACCEPTED, l'unico momento in cui l'oggetto può cambiare,
+ * a partire dalla riga di metadati del primo destinatario.
+ * Nelle ricerche per mittente con subjectRegExp restringe le notifiche candidate all'intersezione
+ * dei trigrammi richiesti dall'espressione regolare: le righe di metadati dei candidati vengono lette
+ * per chiave e l'espressione regolare e gli altri filtri vengono verificati in applicazione.
+ * Le liste dei trigrammi sono lette a finestre, dalla più recente, con al massimo search.max-fetch-limit chiavi
+ * per lista: la ricerca si ferma alla finestra che completa la pagina e le pagine successive ripartono dalla LEK.
+ * I mesi precedenti a search.subject-index-since non sono indicizzati e vengono cercati senza indice.
+ */
+@Component
+@Slf4j
+public class SubjectTrigramIndex {
+
+    private static final String SEPARATOR = "##";
+    private static final int MAX_BATCH_GET_SIZE = 100;
+    private static final int DEFAULT_MAX_CANDIDATES = 500;
+    private static final int CREATION_MONTH_LENGTH = 6;
+
+    private final NotificationSubjectTrigramEntityDao trigramEntityDao;
+    private final NotificationMetadataEntityDao metadataEntityDao;
+    private final EntityToDtoNotificationMetadataMapper entityToDto;
+    private final String indexedSince;
+    private final int maxCandidates;
+    // numero di chiavi osservato per lista sull'intera finestra, usato per leggere per prima la lista più selettiva
+    private final Cache<String, Integer> postingsCounts;
+
+    public SubjectTrigramIndex(NotificationSubjectTrigramEntityDao trigramEntityDao, NotificationMetadataEntityDao metadataEntityDao,
+                               EntityToDtoNotificationMetadataMapper entityToDto, PnDeliveryConfigs cfg) {
+        this.trigramEntityDao = trigramEntityDao;
+        this.metadataEntityDao = metadataEntityDao;
+        this.entityToDto = entityToDto;
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        this.indexedSince = searchCfg != null ? searchCfg.getSubjectIndexSince() : null;
+        this.maxCandidates = searchCfg != null && searchCfg.getMaxFetchLimit() != null ? searchCfg.getMaxFetchLimit() : DEFAULT_MAX_CANDIDATES;
+        this.postingsCounts = Caffeine.newBuilder()
+                .maximumSize( 10000 )
+                .expireAfterAccess( Duration.ofHours( 1 ) )
+                .build();
+    }
+
+    /**
+     * Indicizza l'oggetto della notifica. La scrittura è idempotente: un aggiornamento di stato
+     * rielaborato riscrive gli stessi elementi
+     *
+     * @param metadataEntity riga di metadati del primo destinatario
+     */
+    public void indexSubject(NotificationMetadataEntity metadataEntity) {
+        String iunRecipientId = metadataEntity.getIun_recipientId();
+        String iun = iunRecipientId.substring( 0, iunRecipientId.indexOf( SEPARATOR ) );
+        Set<String> trigrams = SubjectTrigrams.of( metadataEntity.getTableRow().get( NotificationSearchRowEntity.TABLE_ROW_SUBJECT ) );
+        String sortKey = metadataEntity.getSentAt().toString() + SEPARATOR + iunRecipientId;
+        // la partizione dei trigrammi è quella logica del mittente, anche se la riga è scritta su uno shard
+        String partitionValue = metadataEntity.getSenderId() + SEPARATOR + creationMonthOf( metadataEntity.getSentAt() );
+        List<NotificationSubjectTrigramEntity> postings = trigrams.stream()
+                .map( trigram -> NotificationSubjectTrigramEntity.builder()
+                        .senderId_creationMonth_trigram( partitionValue + SEPARATOR + trigram )
+                        .sentAt_iunRecipientId( sortKey )
+                        .build() )
+                .collect( Collectors.toList() );
+        log.debug( "Index subject of iun={} with trigramsCount={}", iun, postings.size() );
+        trigramEntityDao.putAll( postings );
+    }
+
+    /**
+     * @return true se la ricerca sulla partizione può essere risolta con l'indice
+     */
+    public boolean supports(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue) {
+        if ( indexedSince == null || !inputSearchNotificationDto.isBySender() || inputSearchNotificationDto.getFilterId() != null ) {
+            return false;
+        }
+        if ( !NotificationMetadataEntity.INDEX_SENDER_ID.equals( indexName ) && !NotificationMetadataEntity.INDEX_SENDER_ID_ONE.equals( indexName ) ) {
+            return false;
+        }
+        String month = partitionValue.substring( partitionValue.lastIndexOf( SEPARATOR ) + SEPARATOR.length() );
+        // l'indice è mensile: le partizioni suddivise in bucket giornalieri o settimanali sono interrogate sull'indice del mittente
+        if ( month.length() != CREATION_MONTH_LENGTH ) {
+            return false;
+        }
+        return month.compareTo( indexedSince ) >= 0
+                && !SubjectTrigrams.requiredBy( inputSearchNotificationDto.getSubjectRegExp() ).isEmpty();
+    }
+
+    /**
+     * Ricerca sulla partizione mensile di un mittente le notifiche il cui oggetto soddisfa subjectRegExp.
+     * Le righe e la LastEvaluatedKey restituite hanno lo stesso formato di quelle della ricerca sull'indice del mittente.
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param indexName indice del mittente interrogato per la partizione
+     * @param partitionValue partizione senderId##yyyyMM
+     * @param size numero massimo di righe richieste
+     * @param lastEvaluatedKey LastEvaluatedKey da cui proseguire la ricerca
+     * @param matchSubject predicato dell'espressione regolare sull'oggetto
+     * @param keysOnly true se delle righe servono solo iun e sentAt
+     * @return pagina di risultati
+     */
+    public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchForOneMonth(
+            InputSearchNotificationDto inputSearchNotificationDto,
+            String indexName,
+            String partitionValue,
+            int size,
+            PnLastEvaluatedKey lastEvaluatedKey,
+            Predicate<String> matchSubject,
+            boolean keysOnly
+    ) {
+        String partitionAttributeName = NotificationMetadataEntity.INDEX_SENDER_ID_ONE.equals( indexName )
+                ? NotificationMetadataEntity.FIELD_SENDER_ID_ONE_CREATION_MONTH
+                : NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH;
+        String upperBound = upperBoundExclusive( lastEvaluatedKey, partitionAttributeName, partitionValue );
+
+        List<NotificationSearchRow> rows = new ArrayList<>();
+        int scanLimit = Math.max( maxCandidates, size );
+        int consumed = 0;
+        String lastConsumed = null;
+        boolean exhausted = false;
+        while ( rows.size() < size && consumed < scanLimit ) {
+            CandidateWindow window = listCandidates( inputSearchNotificationDto, partitionValue, upperBound );
+            List<String> candidates = window.getCandidates();
+            int windowConsumed = 0;
+            while ( windowConsumed < candidates.size() && rows.size() < size && consumed < scanLimit ) {
+                List<String> batch = candidates.subList( windowConsumed,
+                        Math.min( candidates.size(), windowConsumed + Math.min( MAX_BATCH_GET_SIZE, scanLimit - consumed ) ) );
+                Map<String, NotificationMetadataEntity> entities = metadataEntityDao.batchGet( batch.stream()
+                                .map( SubjectTrigramIndex::metadataKeyOf )
+                                .collect( Collectors.toList() ) )
+                        .stream()
+                        .collect( Collectors.toMap( NotificationMetadataEntity::getIun_recipientId, entity -> entity, (e1, e2) -> e1 ) );
+                for ( String candidate : batch ) {
+                    windowConsumed += 1;
+                    consumed += 1;
+                    lastConsumed = candidate;
+                    NotificationMetadataEntity entity = entities.get( iunRecipientIdOf( candidate ) );
+                    if ( entity != null && SearchFilters.matches( inputSearchNotificationDto, entity, matchSubject ) ) {
+                        rows.add( keysOnly ? toKeyRow( entity ) : entityToDto.entity2Dto( entity ) );
+                        if ( rows.size() == size ) {
+                            break;
+                        }
+                    }
+                }
+            }
+            if ( windowConsumed < candidates.size() ) {
+                break;
+            }
+            if ( window.getLowerBound() == null ) {
+                exhausted = true;
+                break;
+            }
+            // finestra esaurita: la ricerca prosegue sotto il suo estremo inferiore, che è anche il punto di ripresa
+            upperBound = window.getLowerBound();
+            lastConsumed = upperBound;
+        }
+        log.debug( "Subject index search on partitionValue={} consumed={} rows={} exhausted={}", partitionValue, consumed, rows.size(), exhausted );
+
+        ResultPaginationDto.ResultPaginationDtoBuilder<NotificationSearchRow, PnLastEvaluatedKey> resultBuilder = ResultPaginationDto.builder();
+        resultBuilder.resultsPage( rows ).moreResult( false );
+        // una pagina completa restituisce sempre la LEK, anche se i candidati sono esauriti
+        if ( lastConsumed != null && ( !exhausted || ( !rows.isEmpty() && rows.size() == size ) ) ) {
+            Map<String, AttributeValue> internalLastEvaluatedKey = new HashMap<>();
+            internalLastEvaluatedKey.put( NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s( iunRecipientIdOf( lastConsumed ) ).build() );
+            internalLastEvaluatedKey.put( NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s( sentAtOf( lastConsumed ) ).build() );
+            internalLastEvaluatedKey.put( partitionAttributeName, AttributeValue.builder().s( partitionValue ).build() );
+            PnLastEvaluatedKey pnLastEvaluatedKey = new PnLastEvaluatedKey();
+            pnLastEvaluatedKey.setExternalLastEvaluatedKey( partitionValue );
+            pnLastEvaluatedKey.setInternalLastEvaluatedKey( internalLastEvaluatedKey );
+            resultBuilder.nextPagesKey( new ArrayList<>( Collections.singletonList( pnLastEvaluatedKey ) ) ).moreResult( true );
+        }
+        return resultBuilder.build();
+    }
+
+    /**
+     * Interseca le liste dei trigrammi richiesti sulla finestra più recente sotto upperBoundExclusive.
+     * <p>
+     * Ogni lista è letta con al massimo maxCandidates chiavi oltre all'estremo superiore, a partire dalla più selettiva osservata;
+     * le successive solo tra la chiave minima e la massima dei candidati rimasti. Se una lista viene troncata
+     * l'intersezione è esatta solo fino alla sua ultima chiave letta, che diventa l'estremo inferiore della finestra.
+     */
+    private CandidateWindow listCandidates(InputSearchNotificationDto inputSearchNotificationDto, String partitionValue, String upperBoundExclusive) {
+        String fromSortKey = inputSearchNotificationDto.getStartDate().toString();
+        String toSortKey = inputSearchNotificationDto.getEndDate().toString() + SEPARATOR + Character.MAX_VALUE;
+        if ( upperBoundExclusive != null && upperBoundExclusive.compareTo( toSortKey ) < 0 ) {
+            toSortKey = upperBoundExclusive;
+        }
+        List<String> trigrams = new ArrayList<>( SubjectTrigrams.requiredBy( inputSearchNotificationDto.getSubjectRegExp() ) );
+        trigrams.sort( Comparator.comparingInt( trigram -> estimatedPostingsCount( partitionValue + SEPARATOR + trigram ) ) );
+
+        // l'estremo superiore è incluso nella query e può essere la chiave della LEK, già restituita
+        int postingsLimit = maxCandidates + 1;
+        Set<String> candidates = null;
+        String lowerBound = null;
+        for ( String trigram : trigrams ) {
+            String trigramPartition = partitionValue + SEPARATOR + trigram;
+            boolean wholeWindow = candidates == null;
+            String readFrom = wholeWindow ? fromSortKey : Collections.min( candidates );
+            String readTo = wholeWindow ? toSortKey : Collections.max( candidates );
+            List<String> postings = trigramEntityDao.listPostings( trigramPartition, readFrom, readTo, postingsLimit );
+            boolean truncated = postings.size() >= postingsLimit;
+            if ( truncated ) {
+                postingsCounts.put( trigramPartition, Integer.MAX_VALUE );
+                String lastRead = postings.get( postings.size() - 1 );
+                if ( lowerBound == null || lastRead.compareTo( lowerBound ) > 0 ) {
+                    lowerBound = lastRead;
+                }
+            } else if ( wholeWindow ) {
+                postingsCounts.put( trigramPartition, postings.size() );
+            }
+            Set<String> postingsSet = postings.stream()
+                    .filter( posting -> upperBoundExclusive == null || posting.compareTo( upperBoundExclusive ) < 0 )
+                    .collect( Collectors.toCollection( HashSet::new ) );
+            if ( candidates == null ) {
+                candidates = postingsSet;
+            } else {
+                candidates.retainAll( postingsSet );
+            }
+            String windowLowerBound = lowerBound;
+            if ( windowLowerBound != null ) {
+                candidates.removeIf( candidate -> candidate.compareTo( windowLowerBound ) < 0 );
+            }
+            if ( candidates.isEmpty() ) {
+                break;
+            }
+        }
+        List<String> sortedCandidates = candidates == null ? Collections.emptyList() : candidates.stream()
+                .sorted( Comparator.reverseOrder() )
+                .collect( Collectors.toList() );
+        return new CandidateWindow( sortedCandidates, lowerBound );
+    }
+
+    /**
+     * Le liste mai lette vengono provate prima di quelle già osservate come troncate
+     */
+    private int estimatedPostingsCount(String trigramPartition) {
+        Integer count = postingsCounts.getIfPresent( trigramPartition );
+        return count != null ? count : maxCandidates;
+    }
+
+    private static String creationMonthOf(Instant sentAt) {
+        String sentAtString = sentAt.toString();
+        return sentAtString.substring( 0, 4 ) + sentAtString.substring( 5, 7 );
+    }
+
+    private static String upperBoundExclusive(PnLastEvaluatedKey lastEvaluatedKey, String partitionAttributeName, String partitionValue) {
+        if ( lastEvaluatedKey == null || lastEvaluatedKey.getInternalLastEvaluatedKey() == null ) {
+            return null;
+        }
+        Map<String, AttributeValue> internalLastEvaluatedKey = lastEvaluatedKey.getInternalLastEvaluatedKey();
+        AttributeValue lastEvaluatedPartition = internalLastEvaluatedKey.get( partitionAttributeName );
+        if ( lastEvaluatedPartition == null || !partitionValue.equals( lastEvaluatedPartition.s() ) ) {
+            return null;
+        }
+        return internalLastEvaluatedKey.get( NotificationMetadataEntity.FIELD_SENT_AT ).s()
+                + SEPARATOR + internalLastEvaluatedKey.get( NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID ).s();
+    }
+
+    private static NotificationSearchRow toKeyRow(NotificationMetadataEntity entity) {
+        return NotificationSearchRow.builder()
+                .iun( entity.getIun_recipientId().substring( 0, entity.getIun_recipientId().indexOf( SEPARATOR ) ) )
+                .sentAt( Date.from( entity.getSentAt() ) )
+                .build();
+    }
+
+    private static Key metadataKeyOf(String candidate) {
+        return Key.builder()
+                .partitionValue( iunRecipientIdOf( candidate ) )
+                .sortValue( sentAtOf( candidate ) )
+                .build();
+    }
+
+    private static String sentAtOf(String candidate) {
+        return candidate.substring( 0, candidate.indexOf( SEPARATOR ) );
+    }
+
+    private static String iunRecipientIdOf(String candidate) {
+        return candidate.substring( candidate.indexOf( SEPARATOR ) + SEPARATOR.length() );
+    }
+
+    /**
+     * Candidati di una finestra in ordine decrescente; lowerBound è l'estremo inferiore incluso della finestra,
+     * null se la finestra arriva fino all'inizio dell'intervallo di ricerca
+     */
+    @Value
+    private static class CandidateWindow {
+        List<String> candidates;
+        String lowerBound;
+    }
+}
@@ -0,0 +1,108 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Estrazione dei trigrammi dall'oggetto delle notifiche e dalle espressioni regolari di ricerca.
+ * I caratteri sono normalizzati singolarmente in minuscolo, quindi l'indice restituisce un sovrainsieme
+ * delle notifiche che soddisfano l'espressione regolare, che va comunque verificata sull'oggetto.
+ */
+public final class SubjectTrigrams {
+
+    static final int TRIGRAM_LENGTH = 3;
+    static final int MAX_REQUIRED_TRIGRAMS = 8;
+
+    private SubjectTrigrams() {
+    }
+
+    /**
+     * @param subject oggetto della notifica
+     * @return trigrammi distinti dell'oggetto normalizzato
+     */
+    public static Set<String> of(String subject) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if ( subject != null ) {
+            addTrigrams( normalize( subject ), trigrams, Integer.MAX_VALUE );
+        }
+        return trigrams;
+    }
+
+    /**
+     * Calcola, in modo conservativo, i trigrammi presenti in ogni stringa che soddisfa l'espressione regolare.
+     * Sono considerate solo le sequenze di caratteri letterali: alternative, gruppi, classi di caratteri
+     * e quantificatori interrompono la sequenza. Gli escape seguiti da una lettera o una cifra
+     * (classi come \d, ottali \0nn, esadecimali \xhh e \\uhhhh, quotazione \Q...\E) non vengono interpretati:
+     * in loro presenza non è richiesto alcun trigramma.
+     *
+     * @param subjectRegExp espressione regolare di ricerca
+     * @return trigrammi richiesti, insieme vuoto se l'espressione non ne garantisce nessuno
+     */
+    public static Set<String> requiredBy(String subjectRegExp) {
+        if ( subjectRegExp == null || subjectRegExp.indexOf( '|' ) >= 0 || subjectRegExp.indexOf( '(' ) >= 0 ) {
+            return Collections.emptySet();
+        }
+        Set<String> trigrams = new LinkedHashSet<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while ( i < subjectRegExp.length() ) {
+            char c = subjectRegExp.charAt( i );
+            if ( c == '\\' ) {
+                // solo i caratteri non alfanumerici preceduti da \ sono letterali: gli altri escape possono
+                // consumare i caratteri successivi (\0nn, \xhh, \\uhhhh, \Q...\E), quindi la sequenza non è affidabile
+                if ( i + 1 >= subjectRegExp.length() || Character.isLetterOrDigit( subjectRegExp.charAt( i + 1 ) ) ) {
+                    return Collections.emptySet();
+                }
+                literal.append( subjectRegExp.charAt( i + 1 ) );
+                i += 2;
+            } else if ( c == '*' || c == '?' || c == '{' ) {
+                // il carattere precedente può mancare
+                if ( literal.length() > 0 ) {
+                    literal.setLength( literal.length() - 1 );
+                }
+                flush( literal, trigrams );
+                i = c == '{' ? skipTo( subjectRegExp, i, '}' ) : i + 1;
+            } else if ( c == '[' ) {
+                flush( literal, trigrams );
+                i = skipTo( subjectRegExp, i, ']' );
+            } else if ( c == '+' || c == '.' || c == '^' || c == '$' ) {
+                flush( literal, trigrams );
+                i += 1;
+            } else {
+                literal.append( c );
+                i += 1;
+            }
+        }
+        flush( literal, trigrams );
+        return trigrams;
+    }
+
+    private static int skipTo(String regExp, int from, char closing) {
+        int i = from + 1;
+        while ( i < regExp.length() && regExp.charAt( i ) != closing ) {
+            i += regExp.charAt( i ) == '\\' ? 2 : 1;
+        }
+        return i + 1;
+    }
+
+    private static void flush(StringBuilder literal, Set<String> trigrams) {
+        addTrigrams( normalize( literal ), trigrams, MAX_REQUIRED_TRIGRAMS );
+        literal.setLength( 0 );
+    }
+
+    private static void addTrigrams(String text, Set<String> trigrams, int maxTrigrams) {
+        for ( int i = 0; i + TRIGRAM_LENGTH <= text.length() && trigrams.size() < maxTrigrams; i++ ) {
+            trigrams.add( text.substring( i, i + TRIGRAM_LENGTH ) );
+        }
+    }
+
+    // normalizzazione carattere per carattere: non dipende dal contesto, come invece String.toLowerCase
+    private static String normalize(CharSequence text) {
+        StringBuilder normalized = new StringBuilder( text.length() );
+        for ( int i = 0; i < text.length(); i++ ) {
+            normalized.append( Character.toLowerCase( text.charAt( i ) ) );
+        }
+        return normalized.toString();
+    }
+}
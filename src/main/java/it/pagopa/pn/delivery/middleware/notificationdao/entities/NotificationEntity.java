@@ -37,6 +37,11 @@ public class NotificationEntity {
     public static final String FIELD_DOCUMENTS = "documents";
     public static final String FIELD_AMOUNT = "amount";
     public static final String FIELD_PAYMENT_EXPIRATION_DATE = "paymentExpirationDate";
+    public static final String FIELD_IDEMPOTENCE_TOKEN = "idempotenceToken";
+    public static final String FIELD_CONTROLLED_IUN = "controlledIun";
+    public static final String FIELD_LAST_STATUS = "lastStatus";
+    public static final String FIELD_LAST_STATUS_TIMESTAMP = "lastStatusTimestamp";
+    public static final String FIELD_REFINEMENT_DATE = "refinementDate";
 
     @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_IUN)})) private String iun;
     @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_PA_NOTIFICATION_ID)})) private String paNotificationId;
@@ -55,5 +60,16 @@ public class NotificationEntity {
 
     @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_AMOUNT)})) private Integer amount;
     @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_PAYMENT_EXPIRATION_DATE)})) private String paymentExpirationDate;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_IDEMPOTENCE_TOKEN)})) private String idempotenceToken;
+
+    // valorizzato solo sugli elementi di controllo e di ricerca della richiesta di notifica: IUN della notifica
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_CONTROLLED_IUN)})) private String controlledIun;
+
+    // ultimo stato, aggiornato a ogni cambio di stato: va letto da DynamoDB e non dalle entity in cache
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_LAST_STATUS)})) private String lastStatus;
+    // epoch millis: confrontato come numero nella condizione che impedisce di sovrascrivere uno stato più recente
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_LAST_STATUS_TIMESTAMP)})) private Long lastStatusTimestamp;
+    // primo passaggio in VIEWED o EFFECTIVE_DATE, scritto una sola volta
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_REFINEMENT_DATE)})) private Instant refinementDate;
 
 }
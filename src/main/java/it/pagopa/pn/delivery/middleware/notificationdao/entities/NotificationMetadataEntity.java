@@ -22,6 +22,8 @@ public class NotificationMetadataEntity {
     public static final String INDEX_SENDER_ID = "senderId";
     public static final String INDEX_SENDER_ID_RECIPIENT_ID = "senderId_recipientId";
     public static final String INDEX_RECIPIENT_ID = "recipientId";
+    public static final String INDEX_SENDER_ID_ONE = "senderIdOne";
+    public static final String INDEX_SENDER_ID_GROUP = "senderIdGroup";
     public static final String FIELD_RECIPIENT_IDS = "recipientIds";
     public static final String FIELD_RECIPIENT_ONE = "recipientOne";
     public static final String FIELD_NOTIFICATION_GROUP = "notificationGroup";
@@ -30,6 +32,8 @@ public class NotificationMetadataEntity {
     public static final String FIELD_SENDER_ID_CREATION_MONTH = "senderId_creationMonth";
     public static final String FIELD_RECIPIENT_ID_CREATION_MONTH = "recipientId_creationMonth";
     public static final String FIELD_SENDER_ID_RECIPIENT_ID = "senderId_recipientId";
+    public static final String FIELD_SENDER_ID_ONE_CREATION_MONTH = "senderIdOne_creationMonth";
+    public static final String FIELD_SENDER_ID_GROUP_CREATION_MONTH = "senderId_group_creationMonth";
 
 
     private String iun_recipientId;
@@ -44,6 +48,8 @@ public class NotificationMetadataEntity {
     private String senderId_creationMonth;
     private String recipientId_creationMonth;
     private String senderId_recipientId;
+    private String senderIdOne_creationMonth;
+    private String senderId_group_creationMonth;
 
 
     @DynamoDbPartitionKey
@@ -57,7 +63,7 @@ public class NotificationMetadataEntity {
     }
 
     @DynamoDbSortKey
-    @DynamoDbSecondarySortKey( indexNames = {INDEX_SENDER_ID, INDEX_SENDER_ID_RECIPIENT_ID, INDEX_RECIPIENT_ID})
+    @DynamoDbSecondarySortKey( indexNames = {INDEX_SENDER_ID, INDEX_SENDER_ID_RECIPIENT_ID, INDEX_RECIPIENT_ID, INDEX_SENDER_ID_ONE, INDEX_SENDER_ID_GROUP})
     @DynamoDbAttribute(value = FIELD_SENT_AT)
     public Instant getSentAt() {
         return sentAt;
@@ -157,4 +163,24 @@ public class NotificationMetadataEntity {
     public void setSenderId_recipientId(String senderId_recipientId) {
         this.senderId_recipientId = senderId_recipientId;
     }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_SENDER_ID_ONE })
+    @DynamoDbAttribute(value = FIELD_SENDER_ID_ONE_CREATION_MONTH)
+    public String getSenderIdOne_creationMonth() {
+        return senderIdOne_creationMonth;
+    }
+
+    public void setSenderIdOne_creationMonth(String senderIdOne_creationMonth) {
+        this.senderIdOne_creationMonth = senderIdOne_creationMonth;
+    }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_SENDER_ID_GROUP })
+    @DynamoDbAttribute(value = FIELD_SENDER_ID_GROUP_CREATION_MONTH)
+    public String getSenderId_group_creationMonth() {
+        return senderId_group_creationMonth;
+    }
+
+    public void setSenderId_group_creationMonth(String senderId_group_creationMonth) {
+        this.senderId_group_creationMonth = senderId_group_creationMonth;
+    }
 }
@@ -0,0 +1,24 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@Data
+@DynamoDbBean
+public class NotificationMonthOccupancyEntity {
+    public static final String FIELD_INDEX_NAME_CX_ID = "indexName_cxId";
+    public static final String FIELD_CREATION_MONTH = "creationMonth";
+    public static final String FIELD_NOTIFICATIONS_COUNT = "notificationsCount";
+
+    @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_INDEX_NAME_CX_ID)})) private String indexName_cxId;
+    @Getter(onMethod=@__({@DynamoDbSortKey, @DynamoDbAttribute(FIELD_CREATION_MONTH)})) private String creationMonth;
+    @Getter(onMethod=@__({@DynamoDbAttribute(FIELD_NOTIFICATIONS_COUNT)})) private Long notificationsCount;
+}
@@ -0,0 +1,147 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity.*;
+
+/**
+ * Vista ridotta di {@link NotificationMetadataEntity} utilizzata dalle query di ricerca:
+ * contiene solo gli attributi necessari a costruire una riga di ricerca più le chiavi degli indici,
+ * che servono allo schema per costruire le query ma non vengono lette.
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@DynamoDbBean
+public class NotificationSearchRowEntity {
+
+    public static final String TABLE_ROW_SUBJECT = "subject";
+    public static final String TABLE_ROW_PA_PROTOCOL_NUMBER = "paProtocolNumber";
+
+    private String iun_recipientId;
+    private Instant sentAt;
+    private String senderId;
+    private List<String> recipientIds;
+    private String notificationStatus;
+    private Map<String,String> tableRow;
+    private String senderId_creationMonth;
+    private String recipientId_creationMonth;
+    private String senderId_recipientId;
+    private String senderIdOne_creationMonth;
+    private String senderId_group_creationMonth;
+
+
+    @DynamoDbPartitionKey
+    @DynamoDbAttribute(value = FIELD_IUN_RECIPIENT_ID)
+    public String getIun_recipientId() {
+        return iun_recipientId;
+    }
+
+    public void setIun_recipientId(String iun_recipientId) {
+        this.iun_recipientId = iun_recipientId;
+    }
+
+    @DynamoDbSortKey
+    @DynamoDbSecondarySortKey( indexNames = {INDEX_SENDER_ID, INDEX_SENDER_ID_RECIPIENT_ID, INDEX_RECIPIENT_ID, INDEX_SENDER_ID_ONE, INDEX_SENDER_ID_GROUP})
+    @DynamoDbAttribute(value = FIELD_SENT_AT)
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(Instant sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    @DynamoDbAttribute(value = FIELD_SENDER_ID)
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(String senderId) {
+        this.senderId = senderId;
+    }
+
+    @DynamoDbAttribute(value = FIELD_RECIPIENT_IDS)
+    public List<String> getRecipientIds() {
+        return recipientIds;
+    }
+
+    public void setRecipientIds(List<String> recipientIds) {
+        this.recipientIds = recipientIds;
+    }
+
+    @DynamoDbAttribute(value = FIELD_NOTIFICATION_STATUS)
+    public String getNotificationStatus() {
+        return notificationStatus;
+    }
+
+    public void setNotificationStatus(String notificationStatus) {
+        this.notificationStatus = notificationStatus;
+    }
+
+    @DynamoDbAttribute(value = FIELD_TABLE_ROW)
+    public Map<String, String> getTableRow() {
+        return tableRow;
+    }
+
+    public void setTableRow(Map<String, String> tableRow) {
+        this.tableRow = tableRow;
+    }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_SENDER_ID })
+    @DynamoDbAttribute(value = FIELD_SENDER_ID_CREATION_MONTH)
+    public String getSenderId_creationMonth() {
+        return senderId_creationMonth;
+    }
+
+    public void setSenderId_creationMonth(String senderId_creationMonth) {
+        this.senderId_creationMonth = senderId_creationMonth;
+    }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_RECIPIENT_ID })
+    @DynamoDbAttribute(value = FIELD_RECIPIENT_ID_CREATION_MONTH)
+    public String getRecipientId_creationMonth() {
+        return recipientId_creationMonth;
+    }
+
+    public void setRecipientId_creationMonth(String recipientId_creationMonth) {
+        this.recipientId_creationMonth = recipientId_creationMonth;
+    }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_SENDER_ID_RECIPIENT_ID })
+    @DynamoDbAttribute(value = FIELD_SENDER_ID_RECIPIENT_ID)
+    public String getSenderId_recipientId() {
+        return senderId_recipientId;
+    }
+
+    public void setSenderId_recipientId(String senderId_recipientId) {
+        this.senderId_recipientId = senderId_recipientId;
+    }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_SENDER_ID_ONE })
+    @DynamoDbAttribute(value = FIELD_SENDER_ID_ONE_CREATION_MONTH)
+    public String getSenderIdOne_creationMonth() {
+        return senderIdOne_creationMonth;
+    }
+
+    public void setSenderIdOne_creationMonth(String senderIdOne_creationMonth) {
+        this.senderIdOne_creationMonth = senderIdOne_creationMonth;
+    }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = { INDEX_SENDER_ID_GROUP })
+    @DynamoDbAttribute(value = FIELD_SENDER_ID_GROUP_CREATION_MONTH)
+    public String getSenderId_group_creationMonth() {
+        return senderId_group_creationMonth;
+    }
+
+    public void setSenderId_group_creationMonth(String senderId_group_creationMonth) {
+        this.senderId_group_creationMonth = senderId_group_creationMonth;
+    }
+}
@@ -0,0 +1,27 @@
+package it.pagopa.pn.delivery.middleware.notificationdao.entities;
+
+import lombok.*;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
+
+/**
+ * Elemento dell'indice invertito per trigrammi dell'oggetto delle notifiche.
+ * La partizione è senderId##yyyyMM##trigramma, la chiave di ordinamento sentAt##iun_recipientId
+ * della riga di metadati del primo destinatario.
+ */
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+@Data
+@DynamoDbBean
+public class NotificationSubjectTrigramEntity {
+    public static final String FIELD_SENDER_ID_CREATION_MONTH_TRIGRAM = "senderId_creationMonth_trigram";
+    public static final String FIELD_SENT_AT_IUN_RECIPIENT_ID = "sentAt_iunRecipientId";
+
+    @Getter(onMethod=@__({@DynamoDbPartitionKey, @DynamoDbAttribute(FIELD_SENDER_ID_CREATION_MONTH_TRIGRAM)})) private String senderId_creationMonth_trigram;
+    @Getter(onMethod=@__({@DynamoDbSortKey, @DynamoDbAttribute(FIELD_SENT_AT_IUN_RECIPIENT_ID)})) private String sentAt_iunRecipientId;
+}
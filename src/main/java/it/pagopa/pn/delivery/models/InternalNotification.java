@@ -6,6 +6,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import lombok.*;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -64,4 +65,7 @@ public class InternalNotification extends FullSentNotification {
 
     public void setRecipientIds( List<String> recipientIds ) { this.recipientIds = recipientIds; }
 
+    @Schema( description = "Data di perfezionamento della notifica, per decorrenza termini o per presa visione")
+    private Date refinementDate;
+
 }
@@ -15,4 +15,6 @@ public class ResultPaginationDto<R,K> {
     private List<R> resultsPage;
     private boolean moreResult;
     private List<K> nextPagesKey;
+    // piano di esecuzione della ricerca, valorizzato solo se ne è abilitata la restituzione
+    private String searchPlan;
 }
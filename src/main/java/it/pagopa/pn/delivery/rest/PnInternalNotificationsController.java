@@ -5,7 +5,6 @@ import it.pagopa.pn.commons.log.PnAuditLogEvent;
 import it.pagopa.pn.commons.log.PnAuditLogEventType;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.api.InternalOnlyApi;
-import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.RequestUpdateStatusDto;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.SentNotification;
 import it.pagopa.pn.delivery.models.InternalNotification;
@@ -37,16 +36,11 @@ public class PnInternalNotificationsController implements InternalOnlyApi {
 
     @Override
     public ResponseEntity<SentNotification> getSentNotificationPrivate(String iun) {
-        InternalNotification notification = retrieveSvc.getNotificationInformation(iun, false);
+        // delivery-push usa gli identificativi opachi dei destinatari: non servono i codici fiscali da data-vault
+        InternalNotification notification = retrieveSvc.getOpaqueNotificationInformation(iun, true);
         ModelMapper mapper = modelMapperFactory.createModelMapper(InternalNotification.class, SentNotification.class);
         SentNotification sentNotification = mapper.map(notification, SentNotification.class);
 
-        int recIdx = 0;
-        for (NotificationRecipient rec : sentNotification.getRecipients()) {
-            rec.setTaxId(notification.getRecipientIds().get(recIdx));
-            recIdx += 1;
-        }
-
         return ResponseEntity.ok(sentNotification);
     }
 
@@ -0,0 +1,205 @@
+package it.pagopa.pn.delivery.rest;
+
+import it.pagopa.pn.api.rest.PnDeliveryRestConstants;
+import it.pagopa.pn.commons.exceptions.PnValidationException;
+import it.pagopa.pn.commons.log.PnAuditLogBuilder;
+import it.pagopa.pn.commons.log.PnAuditLogEvent;
+import it.pagopa.pn.commons.log.PnAuditLogEventType;
+import it.pagopa.pn.delivery.exception.PnNotFoundException;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.CxTypeAuthFleet;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchResponse;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.rest.dto.ResErrorDto;
+import it.pagopa.pn.delivery.rest.utils.HandleNotFound;
+import it.pagopa.pn.delivery.rest.utils.HandleValidation;
+import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
+import it.pagopa.pn.delivery.svc.search.SearchProgressListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Ricerca progressiva delle notifiche tramite Server-Sent Events.
+ * <p>
+ * La ricerca è la stessa di searchSentNotification e searchReceivedNotification, ma le righe della pagina
+ * vengono inviate al client al termine di ciascuna query sulle partizioni mensili:
+ * <ul>
+ *     <li>{@value #ROWS_EVENT}: righe restituite dall'ultima query, nell'ordine della pagina</li>
+ *     <li>{@value #NEXT_PAGES_KEY_EVENT}: chiavi delle pagine successive calcolate fino a quel momento</li>
+ *     <li>{@value #END_EVENT}: moreResult e nextPagesKey definitivi, come nella risposta della ricerca</li>
+ * </ul>
+ */
+@RestController
+@Slf4j
+public class PnNotificationSearchStreamController {
+
+    public static final String SEARCH_SENT_NOTIFICATIONS_STREAM_PATH = "/delivery/notifications/sent/stream";
+    public static final String SEARCH_RECEIVED_NOTIFICATIONS_STREAM_PATH = "/delivery/notifications/received/stream";
+    public static final String ROWS_EVENT = "rows";
+    public static final String NEXT_PAGES_KEY_EVENT = "nextPagesKey";
+    public static final String END_EVENT = "end";
+    public static final String VALIDATION_ERROR_STATUS = "Validation error";
+    public static final String NOT_FOUND_ERROR_STATUS = "Not Found Error";
+
+    private final NotificationRetrieverService retrieveSvc;
+
+    public PnNotificationSearchStreamController(NotificationRetrieverService retrieveSvc) {
+        this.retrieveSvc = retrieveSvc;
+    }
+
+    @GetMapping(path = SEARCH_SENT_NOTIFICATIONS_STREAM_PATH, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> searchSentNotificationStream(
+            @RequestHeader(PnDeliveryRestConstants.UID_HEADER) String xPagopaPnUid,
+            @RequestHeader(PnDeliveryRestConstants.CX_TYPE_HEADER) CxTypeAuthFleet xPagopaPnCxType,
+            @RequestHeader(PnDeliveryRestConstants.CX_ID_HEADER) String xPagopaPnCxId,
+            @RequestHeader(value = PnDeliveryRestConstants.CX_GROUPS_HEADER, required = false) List<String> xPagopaPnCxGroups,
+            @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+            @RequestParam("endDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+            @RequestParam(value = "recipientId", required = false) String recipientId,
+            @RequestParam(value = "status", required = false) NotificationStatus status,
+            @RequestParam(value = "subjectRegExp", required = false) String subjectRegExp,
+            @RequestParam(value = "iunMatch", required = false) String iunMatch,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "nextPagesKey", required = false) String nextPagesKey) {
+        InputSearchNotificationDto searchDto = new InputSearchNotificationDto.Builder()
+                .bySender(true)
+                .senderReceiverId(xPagopaPnCxId)
+                .startDate(startDate.toInstant())
+                .endDate(endDate.toInstant())
+                .filterId(recipientId)
+                .status(status)
+                .groups( xPagopaPnCxGroups != null && !xPagopaPnCxGroups.isEmpty() ? xPagopaPnCxGroups : null )
+                .subjectRegExp(subjectRegExp)
+                .iunMatch(iunMatch)
+                .size(size)
+                .nextPagesKey(nextPagesKey)
+                .build();
+        return searchStream( searchDto, null );
+    }
+
+    @GetMapping(path = SEARCH_RECEIVED_NOTIFICATIONS_STREAM_PATH, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> searchReceivedNotificationStream(
+            @RequestHeader(PnDeliveryRestConstants.UID_HEADER) String xPagopaPnUid,
+            @RequestHeader(PnDeliveryRestConstants.CX_TYPE_HEADER) CxTypeAuthFleet xPagopaPnCxType,
+            @RequestHeader(PnDeliveryRestConstants.CX_ID_HEADER) String xPagopaPnCxId,
+            @RequestHeader(value = PnDeliveryRestConstants.CX_GROUPS_HEADER, required = false) List<String> xPagopaPnCxGroups,
+            @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+            @RequestParam("endDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+            @RequestParam(value = "mandateId", required = false) String mandateId,
+            @RequestParam(value = "senderId", required = false) String senderId,
+            @RequestParam(value = "status", required = false) NotificationStatus status,
+            @RequestParam(value = "subjectRegExp", required = false) String subjectRegExp,
+            @RequestParam(value = "iunMatch", required = false) String iunMatch,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "nextPagesKey", required = false) String nextPagesKey) {
+        PnAuditLogBuilder auditLogBuilder = new PnAuditLogBuilder();
+        PnAuditLogEvent logEvent = auditLogBuilder
+                .before(PnAuditLogEventType.AUD_NT_VIEW_RPC, "getReceivedNotification")
+                .cxId(xPagopaPnCxId)
+                .cxType(xPagopaPnCxType.toString())
+                .iun(iunMatch)
+                .uid(xPagopaPnUid)
+                .build();
+        InputSearchNotificationDto searchDto = new InputSearchNotificationDto.Builder()
+                .bySender(false)
+                .senderReceiverId(xPagopaPnCxId)
+                .startDate(startDate.toInstant())
+                .endDate(endDate.toInstant())
+                .mandateId(mandateId)
+                .filterId(senderId)
+                .status(status)
+                .subjectRegExp(subjectRegExp)
+                .iunMatch(iunMatch)
+                .size(size)
+                .nextPagesKey(nextPagesKey)
+                .build();
+        return searchStream( searchDto, logEvent );
+    }
+
+    /**
+     * La ricerca viene eseguita alla sottoscrizione, fuori dai thread dell'event loop:
+     * gli errori che precedono il primo evento sono gestiti dagli ExceptionHandler del controller.
+     * Se il client chiude la connessione la ricerca si interrompe prima della query sulla partizione successiva.
+     */
+    private Flux<ServerSentEvent<Object>> searchStream(InputSearchNotificationDto searchDto, PnAuditLogEvent logEvent) {
+        return Flux.<ServerSentEvent<Object>>create( sink -> {
+                    SinkProgressListener listener = new SinkProgressListener( sink );
+                    sink.onDispose( listener::cancel );
+                    ResultPaginationDto<NotificationSearchRow, String> result;
+                    try {
+                        result = retrieveSvc.searchNotification( searchDto, listener );
+                    } catch ( CancellationException e ) {
+                        log.debug( "Search stream cancelled by the client" );
+                        return;
+                    }
+                    NotificationSearchResponse end = NotificationSearchResponse.builder()
+                            .moreResult( result.isMoreResult() )
+                            .nextPagesKey( result.getNextPagesKey() )
+                            .build();
+                    sink.next( event( END_EVENT, end ) );
+                    if ( logEvent != null ) {
+                        logEvent.generateSuccess().log();
+                    }
+                    sink.complete();
+                })
+                .subscribeOn( Schedulers.boundedElastic() );
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder( data )
+                .event( name )
+                .build();
+    }
+
+    @ExceptionHandler({PnValidationException.class})
+    public ResponseEntity<ResErrorDto> handleValidationException(PnValidationException ex){
+        return HandleValidation.handleValidationException(ex, VALIDATION_ERROR_STATUS);
+    }
+
+    @ExceptionHandler({PnNotFoundException.class})
+    public ResponseEntity<ResErrorDto> handleNotFoundException(PnNotFoundException ex){
+        return HandleNotFound.handleNotFoundException(ex, NOT_FOUND_ERROR_STATUS);
+    }
+
+    private static class SinkProgressListener implements SearchProgressListener<String> {
+
+        private final FluxSink<ServerSentEvent<Object>> sink;
+        private volatile boolean cancelled;
+
+        private SinkProgressListener(FluxSink<ServerSentEvent<Object>> sink) {
+            this.sink = sink;
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void onRows(List<NotificationSearchRow> rows) {
+            sink.next( event( ROWS_EVENT, rows ) );
+        }
+
+        @Override
+        public void onNextPagesKey(List<String> nextPagesKey) {
+            sink.next( event( NEXT_PAGES_KEY_EVENT, nextPagesKey ) );
+        }
+    }
+}
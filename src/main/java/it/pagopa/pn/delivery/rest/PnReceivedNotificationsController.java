@@ -14,6 +14,7 @@ import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.rest.dto.ResErrorDto;
 import it.pagopa.pn.delivery.rest.utils.HandleNotFound;
 import it.pagopa.pn.delivery.rest.utils.HandleValidation;
+import it.pagopa.pn.delivery.rest.utils.SearchPlanHeader;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.ModelMapperFactory;
@@ -73,7 +74,7 @@ public class PnReceivedNotificationsController implements RecipientReadApi {
         NotificationSearchResponse response = mapper.map(serviceResult, NotificationSearchResponse.class);
         logEvent.generateSuccess().log();
 
-        return ResponseEntity.ok(response);
+        return SearchPlanHeader.ok( response, serviceResult.getSearchPlan() );
     }
 
     @Override
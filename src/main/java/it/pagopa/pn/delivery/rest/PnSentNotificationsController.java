@@ -3,14 +3,18 @@ package it.pagopa.pn.delivery.rest;
 
 import it.pagopa.pn.commons.exceptions.PnInternalException;
 import it.pagopa.pn.commons.exceptions.PnValidationException;
+import it.pagopa.pn.delivery.exception.PnNotFoundException;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.api.SenderReadB2BApi;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.api.SenderReadWebApi;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.rest.dto.ConstraintViolationImpl;
 import it.pagopa.pn.delivery.rest.dto.ResErrorDto;
+import it.pagopa.pn.delivery.rest.utils.HandleNotFound;
 import it.pagopa.pn.delivery.rest.utils.HandleValidation;
+import it.pagopa.pn.delivery.rest.utils.SearchPlanHeader;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.ModelMapperFactory;
@@ -24,6 +28,7 @@ import org.springframework.web.context.request.NativeWebRequest;
 
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -36,6 +41,7 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
     private final NotificationAttachmentService notificationAttachmentService;
     private final ModelMapperFactory modelMapperFactory;
     public static final String VALIDATION_ERROR_STATUS = "Validation error";
+    public static final String NOT_FOUND_ERROR_STATUS = "Not Found Error";
 
     public PnSentNotificationsController(NotificationRetrieverService retrieveSvc, NotificationAttachmentService notificationAttachmentService, ModelMapperFactory modelMapperFactory) {
         this.retrieveSvc = retrieveSvc;
@@ -62,7 +68,7 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
                 .endDate(endDate.toInstant())
                 .filterId(recipientId)
                 .status(status)
-                //.groups( groups != null ? Arrays.asList( groups ) : null )
+                .groups( xPagopaPnCxGroups != null && !xPagopaPnCxGroups.isEmpty() ? xPagopaPnCxGroups : null )
                 .subjectRegExp(subjectRegExp)
                 .iunMatch(iunMatch)
                 .size(size)
@@ -73,7 +79,7 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
 
         ModelMapper mapper = modelMapperFactory.createModelMapper(ResultPaginationDto.class, NotificationSearchResponse.class );
         NotificationSearchResponse response = mapper.map( serviceResult, NotificationSearchResponse.class );
-        return ResponseEntity.ok( response );
+        return SearchPlanHeader.ok( response, serviceResult.getSearchPlan() );
     }
 
     @ExceptionHandler({PnValidationException.class})
@@ -81,6 +87,11 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
         return HandleValidation.handleValidationException(ex, VALIDATION_ERROR_STATUS);
     }
 
+    @ExceptionHandler({PnNotFoundException.class})
+    public ResponseEntity<ResErrorDto> handleNotFoundException(PnNotFoundException ex){
+        return HandleNotFound.handleNotFoundException(ex, NOT_FOUND_ERROR_STATUS);
+    }
+
     @Override
     public Optional<NativeWebRequest> getRequest() {
         return SenderReadB2BApi.super.getRequest();
@@ -89,8 +100,17 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
     @Override
     @ExceptionHandler({PnInternalException.class})
     public ResponseEntity<NewNotificationRequestStatusResponse> getNotificationRequestStatus(String xPagopaPnUid, CxTypeAuthFleet xPagopaPnCxType, String xPagopaPnCxId, List<String> xPagopaPnCxGroups, String notificationRequestId, String paProtocolNumber, String idempotenceToken) {
-        String iun = new String(Base64Utils.decodeFromString(notificationRequestId), StandardCharsets.UTF_8);
-        InternalNotification internalNotification = retrieveSvc.getNotificationInformation( iun, true );
+        String iun;
+        if ( notificationRequestId != null ) {
+            iun = new String(Base64Utils.decodeFromString(notificationRequestId), StandardCharsets.UTF_8);
+        } else if ( paProtocolNumber != null ) {
+            iun = retrieveSvc.getIunByRequest( xPagopaPnCxId, paProtocolNumber, idempotenceToken );
+            notificationRequestId = Base64Utils.encodeToString( iun.getBytes(StandardCharsets.UTF_8) );
+        } else {
+            throw new PnValidationException( "notificationRequestId", Collections.singleton(
+                    new ConstraintViolationImpl<>( "Either notificationRequestId or paProtocolNumber is required" ) ) );
+        }
+        InternalNotification internalNotification = retrieveSvc.getNotificationWithLastStatus( iun );
 
         ModelMapper mapper = modelMapperFactory.createModelMapper(
                 InternalNotification.class,
@@ -107,6 +127,8 @@ public class PnSentNotificationsController implements SenderReadB2BApi,SenderRea
                 &&  !internalNotification.getNotificationStatusHistory().isEmpty()  ) {
             lastStatus = internalNotification.getNotificationStatusHistory().get(
                     internalNotification.getNotificationStatusHistory().size() - 1 ).getStatus();
+        } else if ( internalNotification.getNotificationStatus() != null ) {
+            lastStatus = internalNotification.getNotificationStatus();
         } else {
             log.error( "No status history for notificationRequestId={}", notificationRequestId );
             lastStatus = NotificationStatus.IN_VALIDATION;
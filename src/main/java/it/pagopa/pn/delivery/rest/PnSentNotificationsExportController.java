@@ -0,0 +1,96 @@
+package it.pagopa.pn.delivery.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import it.pagopa.pn.api.rest.PnDeliveryRestConstants;
+import it.pagopa.pn.commons.exceptions.PnValidationException;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.CxTypeAuthFleet;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.rest.dto.ResErrorDto;
+import it.pagopa.pn.delivery.rest.utils.GzipNdjsonEncoder;
+import it.pagopa.pn.delivery.rest.utils.HandleValidation;
+import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
+import it.pagopa.pn.delivery.svc.search.NotificationSearchExport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Esportazione in streaming delle notifiche inviate.
+ * L'operazione è descritta in api-internal-web-pa-v1.yaml ma è mappata direttamente dal controller:
+ * l'interfaccia generata restituirebbe l'intera risposta in un unico oggetto.
+ */
+@RestController
+@Slf4j
+public class PnSentNotificationsExportController {
+
+    public static final String EXPORT_SENT_NOTIFICATIONS_PATH = "/delivery/notifications/sent/export";
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String VALIDATION_ERROR_STATUS = "Validation error";
+
+    private final NotificationRetrieverService retrieveSvc;
+    private final ObjectWriter rowWriter;
+
+    public PnSentNotificationsExportController(NotificationRetrieverService retrieveSvc, ObjectMapper objectMapper) {
+        this.retrieveSvc = retrieveSvc;
+        this.rowWriter = objectMapper.writerFor( NotificationSearchRow.class );
+    }
+
+    @GetMapping(path = EXPORT_SENT_NOTIFICATIONS_PATH, produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<Flux<DataBuffer>> exportSentNotifications(
+            @RequestHeader(PnDeliveryRestConstants.UID_HEADER) String xPagopaPnUid,
+            @RequestHeader(PnDeliveryRestConstants.CX_TYPE_HEADER) CxTypeAuthFleet xPagopaPnCxType,
+            @RequestHeader(PnDeliveryRestConstants.CX_ID_HEADER) String xPagopaPnCxId,
+            @RequestHeader(value = PnDeliveryRestConstants.CX_GROUPS_HEADER, required = false) List<String> xPagopaPnCxGroups,
+            @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date startDate,
+            @RequestParam("endDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date endDate,
+            @RequestParam(value = "status", required = false) NotificationStatus status) {
+        NotificationSearchExport export = retrieveSvc.exportSentNotifications(
+                xPagopaPnCxId,
+                startDate.toInstant(),
+                endDate.toInstant(),
+                status,
+                xPagopaPnCxGroups != null && !xPagopaPnCxGroups.isEmpty() ? xPagopaPnCxGroups : null );
+
+        // le pagine vengono lette solo quando il client ha consumato le precedenti,
+        // le query bloccanti sono eseguite fuori dai thread dell'event loop
+        Flux<DataBuffer> body = Flux.defer( () -> {
+                    GzipNdjsonEncoder encoder = new GzipNdjsonEncoder( rowWriter );
+                    return Flux.<List<NotificationSearchRow>>generate( sink -> {
+                                List<NotificationSearchRow> page = export.nextPage();
+                                if ( page.isEmpty() ) {
+                                    sink.complete();
+                                } else {
+                                    sink.next( page );
+                                }
+                            })
+                            .map( encoder::encode )
+                            .concatWith( Mono.fromSupplier( encoder::finish ) );
+                })
+                .doOnError( ex -> log.error( "Export sent notifications interrupted - senderId={}", xPagopaPnCxId, ex ) )
+                .map( DefaultDataBufferFactory.sharedInstance::wrap )
+                .subscribeOn( Schedulers.boundedElastic() );
+
+        return ResponseEntity.ok()
+                .contentType( MediaType.parseMediaType( APPLICATION_NDJSON_VALUE ) )
+                .header( HttpHeaders.CONTENT_ENCODING, "gzip" )
+                .body( body );
+    }
+
+    @ExceptionHandler({PnValidationException.class})
+    public ResponseEntity<ResErrorDto> handleValidationException(PnValidationException ex){
+        return HandleValidation.handleValidationException(ex, VALIDATION_ERROR_STATUS);
+    }
+}
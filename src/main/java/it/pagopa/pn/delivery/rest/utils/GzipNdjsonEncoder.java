@@ -0,0 +1,67 @@
+package it.pagopa.pn.delivery.rest.utils;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Codifica in NDJSON compresso gzip una sequenza di pagine di oggetti.
+ * Ogni pagina produce un blocco di byte decomprimibile appena ricevuto, così la risposta può essere
+ * scritta in modo incrementale mantenendo in memoria solo la pagina corrente.
+ */
+public class GzipNdjsonEncoder {
+
+    private static final byte NEW_LINE = '\n';
+
+    private final ObjectWriter objectWriter;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final GZIPOutputStream gzip;
+
+    public GzipNdjsonEncoder(ObjectWriter objectWriter) {
+        this.objectWriter = objectWriter;
+        try {
+            this.gzip = new GZIPOutputStream( buffer, true );
+        } catch ( IOException ex ) {
+            throw new UncheckedIOException( ex );
+        }
+    }
+
+    /**
+     * @param page oggetti da codificare, uno per riga
+     * @return blocco compresso contenente le righe della pagina
+     */
+    public byte[] encode(List<?> page) {
+        try {
+            for ( Object item : page ) {
+                gzip.write( objectWriter.writeValueAsBytes( item ) );
+                gzip.write( NEW_LINE );
+            }
+            gzip.flush();
+            return drain();
+        } catch ( IOException ex ) {
+            throw new UncheckedIOException( ex );
+        }
+    }
+
+    /**
+     * @return blocco finale del flusso compresso
+     */
+    public byte[] finish() {
+        try {
+            gzip.finish();
+            return drain();
+        } catch ( IOException ex ) {
+            throw new UncheckedIOException( ex );
+        }
+    }
+
+    private byte[] drain() {
+        byte[] chunk = buffer.toByteArray();
+        buffer.reset();
+        return chunk;
+    }
+}
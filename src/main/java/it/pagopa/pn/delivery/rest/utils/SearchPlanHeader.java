@@ -0,0 +1,20 @@
+package it.pagopa.pn.delivery.rest.utils;
+
+import org.springframework.http.ResponseEntity;
+
+public class SearchPlanHeader {
+    public static final String SEARCH_PLAN_HEADER = "x-pagopa-pn-search-plan";
+
+    private SearchPlanHeader(){}
+
+    /**
+     * Risposta della ricerca con il piano di esecuzione nell'header di debug, se presente
+     */
+    public static <T> ResponseEntity<T> ok(T body, String searchPlan) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if ( searchPlan != null ) {
+            builder.header( SEARCH_PLAN_HEADER, searchPlan );
+        }
+        return builder.body( body );
+    }
+}
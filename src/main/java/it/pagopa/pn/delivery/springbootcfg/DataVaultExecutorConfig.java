@@ -0,0 +1,59 @@
+package it.pagopa.pn.delivery.springbootcfg;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Configuration
+public class DataVaultExecutorConfig {
+
+    public static final String DATA_VAULT_EXECUTOR = "dataVaultExecutor";
+
+    private static final int DEFAULT_POOL_SIZE = 16;
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+
+    @Bean( name = DATA_VAULT_EXECUTOR, destroyMethod = "shutdown" )
+    public ExecutorService dataVaultExecutor(PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.DataVault dataVaultCfg = cfg.getDataVault();
+        int poolSize = dataVaultCfg != null && dataVaultCfg.getExecutorPoolSize() != null
+                ? dataVaultCfg.getExecutorPoolSize() : DEFAULT_POOL_SIZE;
+        int queueSize = dataVaultCfg != null && dataVaultCfg.getExecutorQueueSize() != null
+                ? dataVaultCfg.getExecutorQueueSize() : DEFAULT_QUEUE_SIZE;
+        log.info( "Create data-vault executor with poolSize={} queueSize={}", poolSize, queueSize );
+        AtomicInteger threadIdx = new AtomicInteger();
+        // a coda piena la chiamata viene rifiutata: eseguirla sul thread della richiesta la sottrarrebbe al timeout
+        // e terrebbe occupato il thread per tutta la durata della chiamata a data-vault
+        return new ThreadPoolExecutor( poolSize, poolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( queueSize ),
+                runnable -> {
+                    Thread thread = new Thread( runnable, "data-vault-" + threadIdx.incrementAndGet() );
+                    thread.setDaemon( true );
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy() ) {
+            @Override
+            public void execute(Runnable command) {
+                // propago il trace id della richiesta anche ai thread del pool
+                Map<String, String> mdc = MDC.getCopyOfContextMap();
+                super.execute( () -> {
+                    if ( mdc != null ) {
+                        MDC.setContextMap( mdc );
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        MDC.clear();
+                    }
+                });
+            }
+        };
+    }
+}
@@ -3,12 +3,15 @@ package it.pagopa.pn.delivery.svc;
 import java.time.Instant;
 import java.util.List;
 import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class IunGenerator {
 
     private static final char[] IUN_CHARS = new char[] {'A','D','E','G','H','J','K','L','M','N','P','Q','R','T','U','V','W','X','Y','Z'};
     private static final List<String> INVALID_PAIRS = List.of("UV", "VU", "HN", "NH");
     private static final String SEPARATOR = "-";
+    private static final Pattern IUN_PATTERN = Pattern.compile( "^([A-Z]{4}-[A-Z]{4}-[A-Z]{4})-(\\d{6})-([A-Z])-\\d+$" );
 
     private Random randomNumberGenerator = new Random();
 
@@ -21,7 +24,35 @@ public class IunGenerator {
         return randStringPart + SEPARATOR + monthPart + SEPARATOR + controlChar + SEPARATOR + "1";
     }
 
+    /**
+     * Verifica che la stringa sia uno IUN completo: formato, caratteri ammessi e carattere di controllo
+     *
+     * @param iun stringa da verificare
+     * @return true se la stringa è uno IUN ben formato
+     */
+    public static boolean isWellFormedIun(String iun) {
+        if ( iun == null ) {
+            return false;
+        }
+        Matcher matcher = IUN_PATTERN.matcher( iun );
+        if ( !matcher.matches() ) {
+            return false;
+        }
+        String randStringPart = matcher.group( 1 );
+        for (int i = 0; i < randStringPart.length(); i++) {
+            char singleChar = randStringPart.charAt( i );
+            if ( singleChar != SEPARATOR.charAt( 0 ) && new String(IUN_CHARS).indexOf( singleChar ) < 0 ) {
+                return false;
+            }
+        }
+        return computeControlChar( randStringPart, matcher.group( 2 ) ) == matcher.group( 3 ).charAt( 0 );
+    }
+
     protected char generateControlChar(String randStringPart, String monthPart) {
+        return computeControlChar( randStringPart, monthPart );
+    }
+
+    private static char computeControlChar(String randStringPart, String monthPart) {
         int sum=0;
         for (int i = 0; i < randStringPart.length(); i++) {
             char singleChar = randStringPart.charAt( i );
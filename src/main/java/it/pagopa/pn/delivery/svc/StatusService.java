@@ -7,12 +7,19 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.RequestUpdateStatusDto;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.SenderMonthShards;
+import it.pagopa.pn.delivery.middleware.notificationdao.SubjectTrigramIndex;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.search.MonthOccupancyIndex;
+import it.pagopa.pn.delivery.svc.search.NotificationHistoryCache;
+import it.pagopa.pn.delivery.svc.search.PartitionGranularityResolver;
+import it.pagopa.pn.delivery.svc.search.SearchResultCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,15 +33,44 @@ public class StatusService {
     private final NotificationDao notificationDao;
     private final NotificationMetadataEntityDao notificationMetadataEntityDao;
     private final PnDataVaultClientImpl dataVaultClient;
+    private final MonthOccupancyIndex monthOccupancyIndex;
+    private final SearchResultCache searchResultCache;
+    private final SubjectTrigramIndex subjectTrigramIndex;
+    private final SenderMonthShards senderMonthShards;
+    private final PartitionGranularityResolver partitionGranularityResolver;
+    private final NotificationHistoryCache notificationHistoryCache;
+    private final Clock clock;
 
     public StatusService(NotificationDao notificationDao,
-                         NotificationMetadataEntityDao notificationMetadataEntityDao, PnDataVaultClientImpl dataVaultClient) {
+                         NotificationMetadataEntityDao notificationMetadataEntityDao, PnDataVaultClientImpl dataVaultClient,
+                         MonthOccupancyIndex monthOccupancyIndex, SearchResultCache searchResultCache,
+                         SubjectTrigramIndex subjectTrigramIndex, SenderMonthShards senderMonthShards,
+                         PartitionGranularityResolver partitionGranularityResolver,
+                         NotificationHistoryCache notificationHistoryCache, Clock clock) {
         this.notificationDao = notificationDao;
         this.notificationMetadataEntityDao = notificationMetadataEntityDao;
         this.dataVaultClient = dataVaultClient;
+        this.monthOccupancyIndex = monthOccupancyIndex;
+        this.searchResultCache = searchResultCache;
+        this.subjectTrigramIndex = subjectTrigramIndex;
+        this.senderMonthShards = senderMonthShards;
+        this.partitionGranularityResolver = partitionGranularityResolver;
+        this.notificationHistoryCache = notificationHistoryCache;
+        this.clock = clock;
     }
     
     public void updateStatus(RequestUpdateStatusDto dto) {
+        // il nuovo stato cambia timeline e storico degli stati restituiti da delivery-push:
+        // la cache viene invalidata anche al termine, per le letture concorrenti all'elaborazione
+        notificationHistoryCache.invalidate( dto.getIun() );
+        try {
+            updateNotificationStatus( dto );
+        } finally {
+            notificationHistoryCache.invalidate( dto.getIun() );
+        }
+    }
+
+    private void updateNotificationStatus(RequestUpdateStatusDto dto) {
         Optional<InternalNotification> notificationOptional = notificationDao.getNotificationByIun(dto.getIun());
         
         if (notificationOptional.isPresent()) {
@@ -43,11 +79,61 @@ public class StatusService {
 
             List<NotificationMetadataEntity> nextMetadataEntry = computeMetadataEntry(dto.getNextStatus(), notification);
             nextMetadataEntry.forEach( notificationMetadataEntityDao::put );
+            boolean accepted = NotificationStatus.ACCEPTED.equals( dto.getNextStatus() );
+            registerOccupiedMonths( notification, nextMetadataEntry, accepted );
+            if ( accepted && !nextMetadataEntry.isEmpty() ) {
+                // l'oggetto non cambia dopo l'accettazione: viene indicizzato una volta, sulla riga del primo destinatario
+                subjectTrigramIndex.indexSubject( nextMetadataEntry.get( 0 ) );
+            }
+            invalidateSearchResults( notification, nextMetadataEntry );
+            // salvato per ultimo: il polling della PA vede il nuovo stato quando le righe di ricerca sono già scritte
+            notificationDao.updateLastStatus( dto.getIun(), dto.getNextStatus(), statusTimestamp( dto ) );
         } else {
             throw new PnInternalException("Try to update status for non existing iun=" + dto.getIun());
         }
     }
 
+    /**
+     * Istante del cambio di stato: la data dell'elemento di timeline, così un aggiornamento rielaborato
+     * o arrivato in ritardo non sovrascrive uno stato più recente e la data di perfezionamento non dipende
+     * dai ritardi di elaborazione. Se il chiamante non la valorizza viene usato l'istante di elaborazione.
+     */
+    private Instant statusTimestamp(RequestUpdateStatusDto dto) {
+        if ( dto.getTimestamp() != null ) {
+            return dto.getTimestamp().toInstant();
+        }
+        log.debug( "Update status for iun={} without timeline timestamp: using processing instant", dto.getIun() );
+        return clock.instant();
+    }
+
+    /**
+     * Registra i mesi occupati sugli indici di ricerca. Le notifiche vengono contate una sola volta,
+     * al passaggio nello stato ACCEPTED: i conteggi sono le statistiche usate da SearchPlanner.
+     * Se l'aggiornamento di stato viene rielaborato la notifica è contata di nuovo, quindi i conteggi
+     * sono approssimati per eccesso; l'occupazione del mese invece è idempotente.
+     */
+    private void registerOccupiedMonths(InternalNotification notification, List<NotificationMetadataEntity> metadataEntries, boolean accepted) {
+        String creationMonth = extractCreationMonth( notification.getSentAt().toInstant() );
+        long notificationsCount = accepted ? 1 : 0;
+        String senderId = notification.getSenderPaId();
+        monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, senderId, creationMonth, notificationsCount );
+        if ( notification.getGroup() != null ) {
+            monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP,
+                    createConcatenation( senderId, notification.getGroup() ), creationMonth, notificationsCount );
+        }
+        for ( NotificationMetadataEntity entry : metadataEntries ) {
+            monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_RECIPIENT_ID, entry.getRecipientId(), creationMonth, notificationsCount );
+            monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID, entry.getSenderId_recipientId(), creationMonth, notificationsCount );
+        }
+    }
+
+    private void invalidateSearchResults(InternalNotification notification, List<NotificationMetadataEntity> metadataEntries) {
+        searchResultCache.invalidate( notification.getSenderPaId() );
+        for ( NotificationMetadataEntity entry : metadataEntries ) {
+            searchResultCache.invalidate( entry.getRecipientId() );
+        }
+    }
+
     private List<NotificationMetadataEntity> computeMetadataEntry(NotificationStatus lastStatus, InternalNotification notification) {
         String creationMonth = extractCreationMonth( notification.getSentAt().toInstant() );
 
@@ -69,6 +155,9 @@ public class StatusService {
             String creationMonth
     ) {
         int recipientIndex = recipientsIds.indexOf( recipientId );
+        // per i mittenti configurati la partizione mensile è suddivisa in bucket giornalieri o settimanali e in shard
+        String senderBucket = partitionGranularityResolver.bucketOf( notification.getSenderPaId(), notification.getSentAt().toInstant() );
+        String senderPartition = senderMonthShards.writePartition( notification.getSenderPaId(), senderBucket, notification.getIun() );
 
         return NotificationMetadataEntity.builder()
                 .notificationStatus( lastStatus.toString() )
@@ -83,10 +172,14 @@ public class StatusService {
                         Map.entry( "paProtocolNumber", notification.getPaProtocolNumber() ),
                         Map.entry( "subject", notification.getSubject())  ) )
                 .senderId_recipientId( createConcatenation( notification.getSenderPaId(), recipientId  ) )
-                .senderId_creationMonth( createConcatenation( notification.getSenderPaId(), creationMonth ) )
+                .senderId_creationMonth( senderPartition )
                 .recipientId_creationMonth( createConcatenation( recipientId , creationMonth ) )
                 .iun_recipientId( createConcatenation( notification.getIun(), recipientId ) )
                 .recipientOne( recipientIndex <= 0 )
+                .senderIdOne_creationMonth( recipientIndex <= 0 ? senderPartition : null )
+                .senderId_group_creationMonth( recipientIndex <= 0 && notification.getGroup() != null
+                        ? createConcatenation( createConcatenation( notification.getSenderPaId(), notification.getGroup() ), senderBucket )
+                        : null )
                 .build();
     }
 
@@ -0,0 +1,175 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMonthOccupancyEntityDao;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Indice dei mesi in cui un mittente o un destinatario ha almeno una notifica.
+ * Viene aggiornato da StatusService quando scrive i metadati e consultato dalla ricerca
+ * per non interrogare le partizioni mensili vuote.
+ * Per ogni mese mantiene anche il numero di notifiche, usato da SearchPlanner per stimare il costo delle query.
+ */
+@Component
+@Slf4j
+public class MonthOccupancyIndex {
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern( "yyyyMM" ).withZone( ZoneOffset.UTC );
+    private static final long DEFAULT_CACHE_MAX_SIZE = 100_000L;
+    private static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes( 10 );
+    private static final Duration DEFAULT_WRITE_LAG = Duration.ofDays( 1 );
+
+    private final NotificationMonthOccupancyEntityDao occupancyEntityDao;
+    private final Clock clock;
+    private final String indexedSince;
+    private final String countedSince;
+    private final Duration writeLag;
+    private final Cache<String, Occupancy> cache;
+    private final Cache<String, Boolean> registeredMonths;
+
+    public MonthOccupancyIndex(NotificationMonthOccupancyEntityDao occupancyEntityDao, PnDeliveryConfigs cfg, Clock clock) {
+        this.occupancyEntityDao = occupancyEntityDao;
+        this.clock = clock;
+        PnDeliveryConfigs.MonthOccupancy occupancyCfg = cfg.getMonthOccupancy();
+        this.indexedSince = occupancyCfg != null ? occupancyCfg.getIndexedSince() : null;
+        this.countedSince = occupancyCfg != null ? occupancyCfg.getCountedSince() : null;
+        this.writeLag = occupancyCfg != null && occupancyCfg.getWriteLag() != null ? occupancyCfg.getWriteLag() : DEFAULT_WRITE_LAG;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( occupancyCfg != null && occupancyCfg.getCacheMaxSize() != null ? occupancyCfg.getCacheMaxSize() : DEFAULT_CACHE_MAX_SIZE )
+                .expireAfterWrite( occupancyCfg != null && occupancyCfg.getCacheTtl() != null ? occupancyCfg.getCacheTtl() : DEFAULT_CACHE_TTL )
+                .build();
+        // i mesi già scritti vengono ricordati anche sulle istanze che non servono ricerche per quella partizione
+        this.registeredMonths = Caffeine.newBuilder()
+                .maximumSize( occupancyCfg != null && occupancyCfg.getCacheMaxSize() != null ? occupancyCfg.getCacheMaxSize() : DEFAULT_CACHE_MAX_SIZE )
+                .expireAfterWrite( occupancyCfg != null && occupancyCfg.getCacheTtl() != null ? occupancyCfg.getCacheTtl() : DEFAULT_CACHE_TTL )
+                .build();
+    }
+
+    /**
+     * Registra la presenza di notifiche nel mese indicato. La scrittura viene evitata
+     * se il mese risulta già presente nella cache o è già stato registrato da questa istanza.
+     *
+     * @param indexName indice di ricerca (mittente o destinatario)
+     * @param cxId identificativo del mittente o del destinatario opaco
+     * @param creationMonth mese nel formato yyyyMM
+     */
+    public void registerMonth(String indexName, String cxId, String creationMonth) {
+        registerNotifications( indexName, cxId, creationMonth, 0 );
+    }
+
+    /**
+     * Registra la presenza di notifiche nel mese indicato e ne incrementa il conteggio.
+     * Se il conteggio da aggiungere è 0 la scrittura viene evitata quando il mese risulta già presente nella cache
+     * o è già stato registrato da questa istanza.
+     *
+     * @param indexName indice di ricerca
+     * @param cxId identificativo della partizione (mittente, destinatario opaco, mittente##gruppo, mittente##destinatario)
+     * @param creationMonth mese nel formato yyyyMM
+     * @param notificationsCount notifiche da aggiungere al conteggio del mese
+     */
+    public void registerNotifications(String indexName, String cxId, String creationMonth, long notificationsCount) {
+        String key = buildKey( indexName, cxId );
+        String registeredMonthKey = key + "##" + creationMonth;
+        Occupancy occupancy = cache.getIfPresent( key );
+        if ( notificationsCount == 0
+                && ( registeredMonths.getIfPresent( registeredMonthKey ) != null
+                    || ( occupancy != null && occupancy.counts.containsKey( creationMonth ) ) ) ) {
+            return;
+        }
+        log.debug( "Register month={} notificationsCount={} for key={}", creationMonth, notificationsCount, key );
+        occupancyEntityDao.addNotifications( key, creationMonth, notificationsCount );
+        registeredMonths.put( registeredMonthKey, Boolean.TRUE );
+        if ( occupancy != null ) {
+            occupancy.counts.merge( creationMonth, notificationsCount, Long::sum );
+        }
+    }
+
+    /**
+     * Filtra le partizioni mensili mantenendo solo quelle che possono contenere notifiche.
+     * I mesi antecedenti all'attivazione dell'indice e quelli più recenti del caricamento
+     * della cache (meno il ritardo di scrittura) vengono sempre mantenuti.
+     *
+     * @param indexName indice di ricerca (mittente o destinatario)
+     * @param cxId identificativo del mittente o del destinatario opaco
+     * @param months mesi nel formato yyyyMM
+     * @return mesi da interrogare, nello stesso ordine di quelli ricevuti
+     */
+    public List<String> filterOccupiedMonths(String indexName, String cxId, List<String> months) {
+        if ( indexedSince == null ) {
+            return months;
+        }
+        Occupancy occupancy = cache.get( buildKey( indexName, cxId ), this::loadOccupancy );
+        String unknownFrom = unknownFrom( occupancy );
+        List<String> result = months.stream()
+                .filter( month -> month.compareTo( indexedSince ) < 0
+                        || month.compareTo( unknownFrom ) >= 0
+                        || occupancy.counts.containsKey( month ) )
+                .collect( Collectors.toList() );
+        log.debug( "Occupied months for indexName={} cxId={} are {} of {}", indexName, cxId, result.size(), months.size() );
+        return result;
+    }
+
+    /**
+     * Numero di notifiche per mese. Sono restituiti solo i mesi il cui conteggio è completo:
+     * quelli successivi all'attivazione del conteggio e precedenti al caricamento della cache (meno il ritardo di scrittura).
+     * Le notifiche vengono contate quando sono accettate, quindi quelle ancora in validazione o rifiutate non sono incluse.
+     *
+     * @param indexName indice di ricerca
+     * @param cxId identificativo della partizione
+     * @param months mesi nel formato yyyyMM
+     * @return numero di notifiche dei mesi con conteggio completo, 0 per i mesi senza notifiche
+     */
+    public Map<String, Long> countNotifications(String indexName, String cxId, List<String> months) {
+        if ( countedSince == null ) {
+            return Collections.emptyMap();
+        }
+        Occupancy occupancy = cache.get( buildKey( indexName, cxId ), this::loadOccupancy );
+        String unknownFrom = unknownFrom( occupancy );
+        Map<String, Long> result = new HashMap<>();
+        for ( String month : months ) {
+            if ( month.compareTo( countedSince ) >= 0 && month.compareTo( unknownFrom ) < 0 ) {
+                result.put( month, occupancy.counts.getOrDefault( month, 0L ) );
+            }
+        }
+        return result;
+    }
+
+    private String unknownFrom(Occupancy occupancy) {
+        return MONTH_FORMATTER.format( occupancy.loadedAt.minus( writeLag ) );
+    }
+
+    private Occupancy loadOccupancy(String key) {
+        Instant loadedAt = clock.instant();
+        Map<String, Long> counts = new ConcurrentHashMap<>( occupancyEntityDao.countNotificationsByMonth( key ) );
+        return new Occupancy( counts, loadedAt );
+    }
+
+    private String buildKey(String indexName, String cxId) {
+        return indexName + "##" + cxId;
+    }
+
+    private static class Occupancy {
+        private final Map<String, Long> counts;
+        private final Instant loadedAt;
+
+        private Occupancy(Map<String, Long> counts, Instant loadedAt) {
+            this.counts = counts;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -10,8 +10,12 @@ import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
-import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.IunGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.time.Instant;
 import java.time.ZoneId;
@@ -19,31 +23,165 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class MultiPageSearch {
 
+    private static final int CREATION_MONTH_LENGTH = 6;
+
     private final NotificationDao notificationDao;
     private String indexName;
     private final PnLastEvaluatedKey lastEvaluatedKey;
     private final InputSearchNotificationDto inputSearchNotificationDto;
     private final PnDeliveryConfigs cfg;
-    private final PnDataVaultClientImpl dataVaultClient;
+    private final RecipientDenominationResolver recipientDenominationResolver;
+    private final ExecutorService executor;
+    private int parallelism;
+    private final MonthOccupancyIndex monthOccupancyIndex;
+    private final Integer maxPages;
+    private SearchProgressListener<PnLastEvaluatedKey> progressListener;
+    private SearchPlanner searchPlanner;
+    private SearchPlan searchPlan;
+    private PartitionGranularityResolver partitionGranularityResolver;
+    private final Map<String, PartitionGranularity> bucketGranularities = new HashMap<>();
+    private final Map<Integer, PrefetchedQuery> prefetchedQueries = new HashMap<>();
 
     public MultiPageSearch(NotificationDao notificationDao,
                            InputSearchNotificationDto inputSearchNotificationDto,
                            PnLastEvaluatedKey lastEvaluatedKey,
-                           PnDeliveryConfigs cfg, PnDataVaultClientImpl dataVaultClient) {
+                           PnDeliveryConfigs cfg, RecipientDenominationResolver recipientDenominationResolver) {
+        this( notificationDao, inputSearchNotificationDto, lastEvaluatedKey, cfg, recipientDenominationResolver, null, 1, null );
+    }
+
+    public MultiPageSearch(NotificationDao notificationDao,
+                           InputSearchNotificationDto inputSearchNotificationDto,
+                           PnLastEvaluatedKey lastEvaluatedKey,
+                           PnDeliveryConfigs cfg, RecipientDenominationResolver recipientDenominationResolver,
+                           ExecutorService executor, int parallelism,
+                           MonthOccupancyIndex monthOccupancyIndex) {
+        this( notificationDao, inputSearchNotificationDto, lastEvaluatedKey, cfg, recipientDenominationResolver, executor, parallelism, monthOccupancyIndex, null );
+    }
+
+    /**
+     * @param maxPages numero di pagine di cui calcolare la LastEvaluatedKey, se null quello configurato
+     */
+    public MultiPageSearch(NotificationDao notificationDao,
+                           InputSearchNotificationDto inputSearchNotificationDto,
+                           PnLastEvaluatedKey lastEvaluatedKey,
+                           PnDeliveryConfigs cfg, RecipientDenominationResolver recipientDenominationResolver,
+                           ExecutorService executor, int parallelism,
+                           MonthOccupancyIndex monthOccupancyIndex, Integer maxPages) {
         this.notificationDao = notificationDao;
         this.inputSearchNotificationDto = inputSearchNotificationDto;
         this.lastEvaluatedKey = lastEvaluatedKey;
         this.cfg = cfg;
-        this.dataVaultClient = dataVaultClient;
+        this.recipientDenominationResolver = recipientDenominationResolver;
+        this.executor = executor;
+        this.parallelism = executor != null ? Math.max( parallelism, 1 ) : 1;
+        this.monthOccupancyIndex = monthOccupancyIndex;
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * Rende la ricerca progressiva: le righe e le chiavi delle pagine successive vengono notificate
+     * al termine di ciascuna query invece che solo al completamento della pagina
+     */
+    public void setProgressListener( SearchProgressListener<PnLastEvaluatedKey> progressListener ) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Indice, partizioni e parallelismo della ricerca vengono scelti dal planner in base alle statistiche
+     * delle partizioni invece che con la sola regola fissa
+     */
+    public void setSearchPlanner( SearchPlanner searchPlanner ) {
+        this.searchPlanner = searchPlanner;
+    }
+
+    /**
+     * Le partizioni mensili dei mittenti configurati vengono suddivise nei bucket giornalieri o settimanali
+     * in cui sono scritti i metadati
+     */
+    public void setPartitionGranularityResolver( PartitionGranularityResolver partitionGranularityResolver ) {
+        this.partitionGranularityResolver = partitionGranularityResolver;
     }
 
     public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchNotificationMetadata() {
 
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> globalResult;
+        if ( isCompleteIunSearch() ) {
+            // ricerca per IUN completo: una lettura per chiave al posto di una query per ogni partizione mensile
+            log.debug( "Search by complete iun={}", inputSearchNotificationDto.getIunMatch() );
+            globalResult = notificationDao.searchByIun( inputSearchNotificationDto, inputSearchNotificationDto.getIunMatch() );
+            notifyRows( globalResult.getResultsPage() );
+            globalResult.setSearchPlan( "index=" + NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID );
+        } else {
+            globalResult = searchMonthPartitions();
+            if ( searchPlan != null ) {
+                globalResult.setSearchPlan( searchPlan.getDescription() );
+            }
+        }
+
+        // faccio richiesta a data-vault per restituire i CF non opachi al FE
+        // se la ricerca è progressiva le righe sono già state risolte partizione per partizione
+        if ( progressListener == null ) {
+            resolveRecipients( globalResult.getResultsPage() );
+        }
+        return globalResult;
+    }
+
+    /**
+     * Nella ricerca progressiva le righe di ciascuna query vengono risolte e notificate appena disponibili
+     */
+    private void notifyRows( List<NotificationSearchRow> rows ) {
+        if ( progressListener != null && rows != null && !rows.isEmpty() ) {
+            resolveRecipients( rows );
+            progressListener.onRows( new ArrayList<>( rows ) );
+        }
+    }
+
+    private boolean isCancelled() {
+        return progressListener != null && progressListener.isCancelled();
+    }
+
+    private void resolveRecipients( List<NotificationSearchRow> rows ) {
+        if ( rows != null && !rows.isEmpty() ) {
+            Set<String> opaqueTaxIds = rows.stream().map( NotificationSearchRow::getRecipients ).flatMap( Collection::stream ).collect(Collectors.toSet());
+            if (!opaqueTaxIds.isEmpty()) {
+                log.debug( "Opaque tax ids={}", opaqueTaxIds );
+                Map<String, BaseRecipientDto> dataVaultResults = recipientDenominationResolver.resolve( opaqueTaxIds );
+                if ( !dataVaultResults.isEmpty() ) {
+                    for (NotificationSearchRow searchRow : rows) {
+                        List<String> realTaxIds = new ArrayList<>();
+                        for (String internalId : searchRow.getRecipients() ) {
+                            BaseRecipientDto match = dataVaultResults.get( internalId );
+                            if ( match != null ) {
+                                realTaxIds.add( match.getTaxId() );
+                            }
+                        }
+                        searchRow.setRecipients( realTaxIds );
+                    }
+                } else {
+                    log.error( "No result from data-vault for internalIds={}", opaqueTaxIds );
+                }
+            }
+        }
+    }
+
+    /**
+     * Lo IUN completo, con carattere di controllo valido, identifica al più una notifica
+     */
+    private boolean isCompleteIunSearch() {
+        return lastEvaluatedKey == null && IunGenerator.isWellFormedIun( inputSearchNotificationDto.getIunMatch() );
+    }
+
+    private ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchMonthPartitions() {
+
         ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> globalResult = new ResultPaginationDto<>();
 
         // recupero dell'indice dove andrò ad eseguire la query di ricerca
@@ -52,12 +190,19 @@ public class MultiPageSearch {
         // nel caso di ricerche multi mese elenca le partizioni mensili di ricerca dalla partizione più recente a quella più lontana
         // per ricerche che non dipendono dal mese restituisce una singola partizione
         List<String> partitions = listMonthPartitions( inputSearchNotificationDto, lastEvaluatedKey );
+        if ( searchPlanner != null ) {
+            partitions = planPartitions( partitions );
+        }
+        if ( partitionGranularityResolver != null ) {
+            partitions = expandBuckets( partitions );
+        }
 
         int pIdx = 0;
         int numPages = 0;
         int missingLinesOnPage = inputSearchNotificationDto.getSize();
+        int maxPageSize = maxPages != null ? maxPages : cfg.getMaxPageSize();
 
-        while ( numPages < cfg.getMaxPageSize() && pIdx < partitions.size() ) {
+        while ( numPages < maxPageSize && pIdx < partitions.size() && !isCancelled() ) {
 
             String partition = partitions.get( pIdx );
 
@@ -77,16 +222,20 @@ public class MultiPageSearch {
             // se valorizzata dipende dalla LastEvaluatedKey fornita dal FE per query a pagine successive alla prima
             String partitionValue = computePartitionValue( inputSearchNotificationDto, partition, lastEvaluatedKey );
 
+            // dopo la prima pagina le righe non vengono restituite al FE ma servono solo a calcolare
+            // le LastEvaluatedKey delle pagine successive: è sufficiente leggere gli attributi chiave
+            boolean keysOnly = numPages > 0;
+
             ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> oneQueryResult;
-            oneQueryResult = notificationDao.searchForOneMonth(
-                    inputSearchNotificationDto,
-                    indexName,
-                    partitionValue,
-                    missingLinesOnPage,
-                    oneMonthKey);
+            if ( parallelism > 1 ) {
+                oneQueryResult = searchForOneMonthConcurrently( partitions, pIdx, partitionValue, missingLinesOnPage, oneMonthKey, keysOnly );
+            } else {
+                oneQueryResult = searchForOneMonth( new OneMonthQuery( partitionValue, missingLinesOnPage, oneMonthKey, keysOnly ) );
+            }
 
             // inserisco i risultati della query ad una singola partizione nei risultati globali di ricerca
             if( numPages == 0 ) {
+                notifyRows( oneQueryResult.getResultsPage() );
                 List<NotificationSearchRow> oldResult = globalResult.getResultsPage();
                 if (oldResult != null ) {
                     oldResult.addAll( oneQueryResult.getResultsPage() );
@@ -112,6 +261,9 @@ public class MultiPageSearch {
 
             // aggiorno la lista delle LastEvaluatedKey da restituire al FE per farmi interrogare direttamente la pagina richiesta
             if( oneQueryResult.getNextPagesKey() != null ) {
+                // il cursore riporta la granularità del bucket, necessaria a proseguire la ricerca dalla stessa partizione
+                PartitionGranularity granularity = bucketGranularities.get( partition );
+                oneQueryResult.getNextPagesKey().forEach( key -> key.setGranularity( granularity ) );
                 List<PnLastEvaluatedKey> oldLastEvaluatedKey = globalResult.getNextPagesKey();
                 if ( oldLastEvaluatedKey != null ) {
                     oldLastEvaluatedKey.addAll(oneQueryResult.getNextPagesKey());
@@ -121,29 +273,127 @@ public class MultiPageSearch {
                     globalResult.setNextPagesKey( oneQueryResult.getNextPagesKey() );
                 }
                 numPages = globalResult.getNextPagesKey().size();
+                if ( progressListener != null ) {
+                    progressListener.onNextPagesKey( new ArrayList<>( globalResult.getNextPagesKey() ) );
+                }
             }
         }
-        // faccio richiesta a data-vault per restituire i CF non opachi al FE
-        if ( globalResult.getResultsPage() != null && !globalResult.getResultsPage().isEmpty() ) {
-            Set<String> opaqueTaxIds = globalResult.getResultsPage().stream().map( NotificationSearchRow::getRecipients ).flatMap( Collection::stream ).collect(Collectors.toSet());
-            if (!opaqueTaxIds.isEmpty()) {
-                log.debug( "Opaque tax ids={}", opaqueTaxIds );
-                List<BaseRecipientDto> dataVaultResults = dataVaultClient.getRecipientDenominationByInternalId(new ArrayList<>(opaqueTaxIds));
-                if ( !dataVaultResults.isEmpty() ) {
-                    for (NotificationSearchRow searchRow : globalResult.getResultsPage()) {
-                        List<String> realTaxIds = new ArrayList<>();
-                        for (String internalId : searchRow.getRecipients() ) {
-                            Optional<BaseRecipientDto> match = dataVaultResults.stream().filter( r -> r.getInternalId().equals( internalId ) ).findFirst();
-                            match.ifPresent(baseRecipientDto -> realTaxIds.add(baseRecipientDto.getTaxId()));
-                        }
-                        searchRow.setRecipients( realTaxIds );
-                    }
-                } else {
-                    log.error( "No result from data-vault for internalIds={}", opaqueTaxIds );
+        discardPrefetchedQueries();
+        if ( globalResult.getResultsPage() == null ) {
+            // nessuna partizione da interrogare
+            globalResult.setResultsPage( new ArrayList<>() );
+        }
+        return globalResult;
+    }
+
+    /**
+     * Esegue la query sulla partizione mensile richiesta e, in parallelo, avvia in modo speculativo
+     * le query sulle partizioni successive ipotizzando che la partizione corrente non restituisca righe.
+     * Una query speculativa viene utilizzata solo se i suoi parametri coincidono con quelli
+     * che la ricerca sequenziale avrebbe usato, quindi il risultato non cambia rispetto alla ricerca sequenziale.
+     * Le query speculative scartate o annullate hanno comunque già consumato capacità di lettura su DynamoDB:
+     * con parallelismo p una pagina può costare fino a p volte le letture della ricerca sequenziale,
+     * per questo il parallelismo è disabilitato di default (pn.delivery.search.parallelism=1).
+     * Se la coda dell'executor è piena le query speculative non vengono inviate e la query corrente
+     * viene eseguita sul thread della richiesta, come nella ricerca sequenziale.
+     *
+     * @param partitions elenco delle partizioni mensili di ricerca
+     * @param pIdx indice della partizione da interrogare
+     * @param partitionValue valore della partizione da interrogare
+     * @param size numero massimo di righe richieste
+     * @param oneMonthKey LastEvaluatedKey da cui proseguire la ricerca
+     * @param keysOnly true se della query servono solo gli attributi chiave
+     * @return risultato della query sulla partizione
+     */
+    private ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchForOneMonthConcurrently(
+            List<String> partitions, int pIdx, String partitionValue, int size, PnLastEvaluatedKey oneMonthKey, boolean keysOnly ) {
+        OneMonthQuery query = new OneMonthQuery( partitionValue, size, effectiveStartKey( partitionValue, oneMonthKey ), keysOnly );
+        PrefetchedQuery prefetched = prefetchedQueries.remove( pIdx );
+
+        int lastSpeculativeIdx = Math.min( pIdx + parallelism - 1, partitions.size() - 1 );
+        for ( int nextIdx = pIdx + 1; nextIdx <= lastSpeculativeIdx; nextIdx++ ) {
+            String nextPartitionValue = computePartitionValue( inputSearchNotificationDto, partitions.get( nextIdx ), lastEvaluatedKey );
+            OneMonthQuery nextQuery = new OneMonthQuery( nextPartitionValue, size, null, keysOnly );
+            PrefetchedQuery alreadyPrefetched = prefetchedQueries.get( nextIdx );
+            if ( alreadyPrefetched == null || !alreadyPrefetched.getQuery().equals( nextQuery ) ) {
+                if ( alreadyPrefetched != null ) {
+                    alreadyPrefetched.getFuture().cancel( false );
+                    prefetchedQueries.remove( nextIdx );
                 }
+                CompletableFuture<ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey>> nextFuture = trySubmit( nextQuery );
+                if ( nextFuture == null ) {
+                    break;
+                }
+                prefetchedQueries.put( nextIdx, new PrefetchedQuery( nextQuery, nextFuture ) );
             }
         }
-        return globalResult;
+
+        CompletableFuture<ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey>> future;
+        if ( prefetched != null && prefetched.getQuery().equals( query ) ) {
+            log.debug( "Use prefetched query result for partitionValue={}", partitionValue );
+            future = prefetched.getFuture();
+        } else {
+            if ( prefetched != null ) {
+                prefetched.getFuture().cancel( false );
+            }
+            future = trySubmit( query );
+            if ( future == null ) {
+                return searchForOneMonth( query );
+            }
+        }
+        try {
+            return future.join();
+        } catch ( CompletionException ex ) {
+            if ( ex.getCause() instanceof RuntimeException ) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Invia la query all'executor
+     *
+     * @param query query da eseguire
+     * @return risultato futuro della query, null se l'executor è saturo e ha rifiutato la query
+     */
+    private CompletableFuture<ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey>> trySubmit( OneMonthQuery query ) {
+        try {
+            return CompletableFuture.supplyAsync( () -> searchForOneMonth( query ), executor );
+        } catch ( RejectedExecutionException ex ) {
+            log.warn( "Search executor saturated, run partitionValue={} sequentially", query.getPartitionValue() );
+            return null;
+        }
+    }
+
+    private ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchForOneMonth( OneMonthQuery query ) {
+        String partitionIndexName = indexNameFor( query.getPartitionValue() );
+        if ( query.isKeysOnly() ) {
+            return notificationDao.searchKeysForOneMonth(
+                    inputSearchNotificationDto,
+                    partitionIndexName,
+                    query.getPartitionValue(),
+                    query.getSize(),
+                    query.getStartKey() );
+        }
+        return notificationDao.searchForOneMonth(
+                inputSearchNotificationDto,
+                partitionIndexName,
+                query.getPartitionValue(),
+                query.getSize(),
+                query.getStartKey() );
+    }
+
+    private void discardPrefetchedQueries() {
+        prefetchedQueries.values().forEach( prefetched -> prefetched.getFuture().cancel( false ) );
+        prefetchedQueries.clear();
+    }
+
+    /**
+     * La LastEvaluatedKey viene utilizzata dal dao solo se appartiene alla partizione interrogata
+     */
+    private PnLastEvaluatedKey effectiveStartKey( String partitionValue, PnLastEvaluatedKey oneMonthKey ) {
+        return oneMonthKey != null && partitionValue.equals( oneMonthKey.getExternalLastEvaluatedKey() ) ? oneMonthKey : null;
     }
 
     private void retrieveIndexName(InputSearchNotificationDto inputSearchNotificationDto) {
@@ -158,6 +408,122 @@ public class MultiPageSearch {
         }
     }
 
+    /**
+     * Il planner restringe le partizioni da interrogare, sceglie l'indice di ciascuna e il parallelismo
+     */
+    private List<String> planPartitions( List<String> partitions ) {
+        if ( inputSearchNotificationDto.getFilterId() != null ) {
+            List<String> months = retrieveCreationMonth( inputSearchNotificationDto.getStartDate(), inputSearchNotificationDto.getEndDate() );
+            searchPlan = searchPlanner.planSenderRecipient( inputSearchNotificationDto, partitions, months, lastEvaluatedKey != null );
+        } else {
+            String resumedIndexName = lastEvaluatedKey != null && !partitions.isEmpty() ? resumedIndexName( partitions.get( 0 ) ) : null;
+            searchPlan = searchPlanner.planMonths( inputSearchNotificationDto, indexName, partitions, resumedIndexName, parallelism );
+            parallelism = Math.min( parallelism, searchPlan.getParallelism() );
+        }
+        return searchPlan.getPartitions();
+    }
+
+    /**
+     * Indice che ha prodotto la LastEvaluatedKey fornita dal FE: la LEK dell'indice senderIdOne riporta
+     * l'attributo senderIdOne_creationMonth, quelle degli indici senderId e senderIdGroup l'attributo senderId_creationMonth
+     */
+    private String resumedIndexName( String month ) {
+        String defaultIndexName = defaultIndexNameFor( cfg, inputSearchNotificationDto, indexName, month );
+        Map<String, AttributeValue> internalLastEvaluatedKey = lastEvaluatedKey.getInternalLastEvaluatedKey();
+        if ( internalLastEvaluatedKey == null || !NotificationMetadataEntity.INDEX_SENDER_ID.equals( indexName ) ) {
+            return defaultIndexName;
+        }
+        if ( internalLastEvaluatedKey.containsKey( NotificationMetadataEntity.FIELD_SENDER_ID_ONE_CREATION_MONTH ) ) {
+            return NotificationMetadataEntity.INDEX_SENDER_ID_ONE;
+        }
+        return NotificationMetadataEntity.INDEX_SENDER_ID_ONE.equals( defaultIndexName ) ? NotificationMetadataEntity.INDEX_SENDER_ID : defaultIndexName;
+    }
+
+    private String indexNameFor( String partitionValue ) {
+        String month = partitionValue.substring( partitionValue.lastIndexOf( "##" ) + 2 );
+        // l'etichetta dei bucket giornalieri e settimanali inizia con il mese
+        if ( bucketGranularities.containsKey( month ) ) {
+            month = month.substring( 0, CREATION_MONTH_LENGTH );
+        }
+        String plannedIndexName = searchPlan != null ? searchPlan.indexNameFor( month ) : null;
+        return plannedIndexName != null ? plannedIndexName : defaultIndexNameFor( cfg, inputSearchNotificationDto, indexName, month );
+    }
+
+    /**
+     * Le ricerche per mittente sui mesi coperti dall'indice sparso senderIdOne leggono una sola riga per notifica,
+     * quella del primo destinatario; i mesi precedenti restano sull'indice senderId.
+     * Le ricerche ristrette ai gruppi del mittente, sui mesi coperti dall'indice senderIdGroup,
+     * leggono solo le partizioni dei gruppi richiesti invece di filtrare l'intero mese del mittente.
+     */
+    static String defaultIndexNameFor( PnDeliveryConfigs cfg, InputSearchNotificationDto inputSearchNotificationDto, String indexName, String month ) {
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        if ( !NotificationMetadataEntity.INDEX_SENDER_ID.equals( indexName ) || searchCfg == null ) {
+            return indexName;
+        }
+        List<String> groups = inputSearchNotificationDto.getGroups();
+        String groupIndexSince = searchCfg.getGroupIndexSince();
+        if ( groups != null && !groups.isEmpty() && groupIndexSince != null && month.compareTo( groupIndexSince ) >= 0 ) {
+            return NotificationMetadataEntity.INDEX_SENDER_ID_GROUP;
+        }
+        return senderIndexNameFor( cfg, indexName, month );
+    }
+
+    /**
+     * Indice del mittente, senza restrizione ai gruppi, per il mese indicato
+     */
+    static String senderIndexNameFor( PnDeliveryConfigs cfg, String indexName, String month ) {
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        String senderOneIndexSince = searchCfg != null ? searchCfg.getSenderOneIndexSince() : null;
+        if ( senderOneIndexSince != null && month.compareTo( senderOneIndexSince ) >= 0 ) {
+            return NotificationMetadataEntity.INDEX_SENDER_ID_ONE;
+        }
+        return indexName;
+    }
+
+    /**
+     * La partizione dell'indice senderId_recipientId è sempre mittente##destinatario, sia per le ricerche
+     * del mittente filtrate per destinatario sia per quelle del destinatario filtrate per mittente
+     */
+    static String senderRecipientPartition( InputSearchNotificationDto inputSearchNotificationDto ) {
+        if ( inputSearchNotificationDto.isBySender() ) {
+            return inputSearchNotificationDto.getSenderReceiverId() + "##" + inputSearchNotificationDto.getFilterId();
+        }
+        return inputSearchNotificationDto.getFilterId() + "##" + inputSearchNotificationDto.getSenderReceiverId();
+    }
+
+    /**
+     * Sostituisce ogni mese con i suoi bucket che intersecano l'intervallo di ricerca, dal più recente.
+     * Il mese della LastEvaluatedKey usa la granularità riportata dal cursore, gli altri quella configurata per il mittente.
+     */
+    private List<String> expandBuckets( List<String> months ) {
+        if ( !inputSearchNotificationDto.isBySender() || inputSearchNotificationDto.getFilterId() != null ) {
+            return months;
+        }
+        String senderId = inputSearchNotificationDto.getSenderReceiverId();
+        Instant endDate = inputSearchNotificationDto.getEndDate();
+        String lastEvaluatedMonth = null;
+        if ( lastEvaluatedKey != null ) {
+            endDate = Instant.parse( lastEvaluatedKey.getInternalLastEvaluatedKey().get( "sentAt" ).s() );
+            lastEvaluatedMonth = PartitionGranularity.MONTH.bucketOf( endDate );
+        }
+        List<String> buckets = new ArrayList<>();
+        for ( String month : months ) {
+            PartitionGranularity granularity;
+            if ( month.equals( lastEvaluatedMonth ) ) {
+                granularity = lastEvaluatedKey.getGranularity() != null ? lastEvaluatedKey.getGranularity() : PartitionGranularity.MONTH;
+            } else {
+                granularity = partitionGranularityResolver.granularityOf( senderId, month );
+            }
+            for ( String bucket : granularity.bucketsOf( month, inputSearchNotificationDto.getStartDate(), endDate ) ) {
+                buckets.add( bucket );
+                if ( granularity != PartitionGranularity.MONTH ) {
+                    bucketGranularities.put( bucket, granularity );
+                }
+            }
+        }
+        return buckets;
+    }
+
     private List<String> listMonthPartitions( InputSearchNotificationDto inputSearchNotificationDto, PnLastEvaluatedKey lastEvaluatedKey ) {
         if ( inputSearchNotificationDto.getFilterId() != null ){
             return Collections.singletonList( "noMonthPartition" );
@@ -166,10 +532,26 @@ public class MultiPageSearch {
         if (lastEvaluatedKey != null) {
             endDate = Instant.parse( lastEvaluatedKey.getInternalLastEvaluatedKey().get( "sentAt" ).s() );
         }
-        return retrieveCreationMonth(inputSearchNotificationDto.getStartDate(), endDate);
+        List<String> creationMonths = retrieveCreationMonth(inputSearchNotificationDto.getStartDate(), endDate);
+        if ( monthOccupancyIndex != null && !creationMonths.isEmpty() ) {
+            creationMonths = filterOccupiedMonths( inputSearchNotificationDto, lastEvaluatedKey, creationMonths );
+        }
+        return creationMonths;
     }
 
-    private List<String> retrieveCreationMonth(Instant startDate, Instant endDate) {
+    private List<String> filterOccupiedMonths( InputSearchNotificationDto inputSearchNotificationDto, PnLastEvaluatedKey lastEvaluatedKey, List<String> creationMonths ) {
+        String occupancyIndexName = inputSearchNotificationDto.isBySender() ? NotificationMetadataEntity.INDEX_SENDER_ID : NotificationMetadataEntity.INDEX_RECIPIENT_ID;
+        List<String> occupiedMonths = new ArrayList<>( monthOccupancyIndex.filterOccupiedMonths(
+                occupancyIndexName, inputSearchNotificationDto.getSenderReceiverId(), creationMonths ) );
+        // il mese della LastEvaluatedKey contiene sicuramente righe e va sempre interrogato
+        String lastEvaluatedMonth = creationMonths.get( 0 );
+        if ( lastEvaluatedKey != null && !occupiedMonths.contains( lastEvaluatedMonth ) ) {
+            occupiedMonths.add( 0, lastEvaluatedMonth );
+        }
+        return occupiedMonths;
+    }
+
+    static List<String> retrieveCreationMonth(Instant startDate, Instant endDate) {
         List<String> creationMonths = new ArrayList<>();
         ZonedDateTime currentMonth = ZonedDateTime.ofInstant( startDate, ZoneId.of( "UTC" ) )
                 .truncatedTo(ChronoUnit.DAYS)
@@ -189,8 +571,7 @@ public class MultiPageSearch {
         final String senderReceiverId = inputSearchNotificationDto.getSenderReceiverId();
         final String filterId = inputSearchNotificationDto.getFilterId();
         if (filterId != null) {
-            partitionValue = senderReceiverId
-                    + "##" + filterId;
+            partitionValue = senderRecipientPartition( inputSearchNotificationDto );
         } else if (lastEvaluatedKey != null && oneMonth.equals( lastEvaluatedKey.getExternalLastEvaluatedKey()
                 .substring( lastEvaluatedKey.getExternalLastEvaluatedKey().indexOf( "##" )+2 ) )) {
             partitionValue = lastEvaluatedKey.getExternalLastEvaluatedKey();
@@ -199,4 +580,37 @@ public class MultiPageSearch {
         }
         return partitionValue;
     }
+
+    @Getter
+    @AllArgsConstructor
+    private static class OneMonthQuery {
+        private final String partitionValue;
+        private final int size;
+        private final PnLastEvaluatedKey startKey;
+        private final boolean keysOnly;
+
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof OneMonthQuery) ) {
+                return false;
+            }
+            OneMonthQuery other = (OneMonthQuery) o;
+            // la LastEvaluatedKey e' confrontata per identita', le query speculative non ne utilizzano
+            return size == other.size
+                    && keysOnly == other.keysOnly
+                    && partitionValue.equals( other.partitionValue )
+                    && startKey == other.startKey;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( partitionValue, size );
+        }
+    }
+
+    @Value
+    private static class PrefetchedQuery {
+        OneMonthQuery query;
+        CompletableFuture<ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey>> future;
+    }
 }
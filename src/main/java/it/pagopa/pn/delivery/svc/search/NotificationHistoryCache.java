@@ -0,0 +1,121 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationHistoryResponse;
+import it.pagopa.pn.delivery.utils.SingleFlight;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Cache per iun di timeline e storico degli stati restituiti da delivery-push.
+ * <p>
+ * La risposta cambia solo a una transizione di stato: quando delivery-push notifica il nuovo stato
+ * la entry dello iun viene invalidata, all'inizio e alla fine dell'elaborazione del cambio di stato.
+ * Le letture iniziate prima dell'invalidazione, o entro il periodo di quiete successivo, non vengono memorizzate:
+ * delivery-push può rendere visibile la nuova timeline dopo aver notificato lo stato.
+ * Sull'istanza che elabora il cambio di stato una risposta obsoleta può quindi restare in cache solo se delivery-push
+ * la restituisce oltre il periodo di quiete; l'invalidazione è locale all'istanza, quindi sulle altre istanze
+ * la massima obsolescenza è la durata configurata.
+ * Le letture concorrenti dello stesso iun eseguono una sola chiamata a delivery-push; dopo un'invalidazione
+ * le nuove richieste non attendono la chiamata già in corso.
+ * Le risposte sono condivise tra le richieste e non devono essere modificate.
+ */
+@Component
+@Slf4j
+public class NotificationHistoryCache {
+
+    public static final String CACHE_NAME = "pnDeliveryNotificationHistory";
+
+    private static final long DEFAULT_MAX_SIZE = 50_000L;
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds( 30 );
+    private static final Duration DEFAULT_INVALIDATION_QUIET_PERIOD = Duration.ofSeconds( 5 );
+
+    private final boolean enabled;
+    private final long quietPeriodNanos;
+    private final Cache<String, CachedHistory> histories;
+    private final Cache<String, Long> invalidations;
+    private final Counter invalidationCounter;
+    private final SingleFlight<String, NotificationHistoryResponse> loads = new SingleFlight<>( "getTimelineAndStatusHistory" );
+
+    public NotificationHistoryCache(PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.NotificationHistoryCache cacheCfg = cfg.getNotificationHistoryCache();
+        long maxSize = cacheCfg != null && cacheCfg.getMaxSize() != null ? cacheCfg.getMaxSize() : DEFAULT_MAX_SIZE;
+        Duration ttl = cacheCfg != null && cacheCfg.getTtl() != null ? cacheCfg.getTtl() : DEFAULT_TTL;
+        Duration quietPeriod = cacheCfg != null && cacheCfg.getInvalidationQuietPeriod() != null
+                ? cacheCfg.getInvalidationQuietPeriod() : DEFAULT_INVALIDATION_QUIET_PERIOD;
+        this.enabled = maxSize > 0 && !ttl.isZero();
+        this.quietPeriodNanos = quietPeriod.toNanos();
+        this.histories = Caffeine.newBuilder()
+                .maximumSize( Math.max( maxSize, 0 ) )
+                .expireAfterWrite( ttl )
+                .recordStats()
+                .build();
+        this.invalidations = Caffeine.newBuilder()
+                .expireAfterWrite( ttl.compareTo( quietPeriod ) > 0 ? ttl : quietPeriod )
+                .build();
+        CaffeineCacheMetrics.monitor( Metrics.globalRegistry, histories, CACHE_NAME );
+        this.invalidationCounter = Metrics.counter( "cache.invalidations", "cache", CACHE_NAME );
+    }
+
+    /**
+     * Restituisce timeline e storico degli stati in cache per lo iun, altrimenti li legge da delivery-push e li memorizza
+     *
+     * @param iun iun della notifica
+     * @param loader chiamata a delivery-push in caso di cache miss
+     * @return timeline e storico degli stati
+     */
+    public NotificationHistoryResponse get(String iun, Supplier<NotificationHistoryResponse> loader) {
+        if ( !enabled ) {
+            return loads.execute( iun, loader );
+        }
+        CachedHistory cached = histories.getIfPresent( iun );
+        if ( cached != null && isValid( iun, cached ) ) {
+            log.debug( "Notification history cache hit for iun={}", iun );
+            return cached.getHistory();
+        }
+        long loadStartedAt = System.nanoTime();
+        NotificationHistoryResponse history = loads.execute( iun, loader );
+        if ( history != null ) {
+            CachedHistory loaded = new CachedHistory( history, loadStartedAt );
+            // una lettura iniziata prima di un'invalidazione o nel periodo di quiete non sostituisce la entry
+            if ( isValid( iun, loaded ) ) {
+                histories.put( iun, loaded );
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Invalida timeline e storico degli stati della notifica, a seguito di un cambio di stato
+     *
+     * @param iun iun della notifica
+     */
+    public void invalidate(String iun) {
+        if ( enabled && iun != null ) {
+            loads.forget( iun );
+            invalidations.put( iun, System.nanoTime() );
+            histories.invalidate( iun );
+            invalidationCounter.increment();
+        }
+    }
+
+    private boolean isValid(String iun, CachedHistory cached) {
+        Long invalidatedAt = invalidations.getIfPresent( iun );
+        return invalidatedAt == null || cached.getLoadStartedAt() - invalidatedAt > quietPeriodNanos;
+    }
+
+    @Value
+    private static class CachedHistory {
+        NotificationHistoryResponse history;
+        long loadStartedAt;
+    }
+}
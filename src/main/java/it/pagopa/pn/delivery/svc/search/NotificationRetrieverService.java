@@ -1,6 +1,5 @@
 package it.pagopa.pn.delivery.svc.search;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
 import it.pagopa.pn.commons.exceptions.PnValidationException;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
@@ -17,6 +16,8 @@ import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
 import it.pagopa.pn.delivery.pnclient.deliverypush.PnDeliveryPushClientImpl;
 import it.pagopa.pn.delivery.pnclient.mandate.PnMandateClientImpl;
+import it.pagopa.pn.delivery.rest.dto.ConstraintViolationImpl;
+import it.pagopa.pn.delivery.springbootcfg.SearchExecutorConfig;
 import it.pagopa.pn.delivery.utils.ModelMapperFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -24,6 +25,7 @@ import org.modelmapper.Converter;
 import org.modelmapper.ModelMapper;
 import org.modelmapper.convention.MatchingStrategies;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import javax.validation.ConstraintViolation;
@@ -36,6 +38,10 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 @Service
@@ -43,6 +49,7 @@ import java.util.stream.Collectors;
 public class NotificationRetrieverService {
 
 	public static final long MAX_DOCUMENTS_AVAILABLE_DAYS = 120L;
+	private static final int DEFAULT_EXPORT_PAGE_SIZE = 200;
 
 	private final Clock clock;
 	private final NotificationViewedProducer notificationAcknowledgementProducer;
@@ -52,6 +59,17 @@ public class NotificationRetrieverService {
 	private final PnMandateClientImpl pnMandateClient;
 	private final PnDataVaultClientImpl dataVaultClient;
 	private final ModelMapperFactory modelMapperFactory;
+	private final ExecutorService searchExecutor;
+	private final MonthOccupancyIndex monthOccupancyIndex;
+	private final RecipientDenominationResolver recipientDenominationResolver;
+	private final PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec;
+	private final SearchResultCache searchResultCache;
+	private final SearchPlanner searchPlanner;
+	private final PartitionGranularityResolver partitionGranularityResolver;
+	private final NotificationHistoryCache notificationHistoryCache;
+	// configurati una sola volta: la costruzione delle TypeMap a ogni lettura della timeline è costosa
+	private final ModelMapper mapperStatusHistory = buildStatusHistoryMapper();
+	private final ModelMapper mapperTimeline = buildTimelineMapper();
 
 
 	@Autowired
@@ -60,7 +78,15 @@ public class NotificationRetrieverService {
 										NotificationDao notificationDao,
 										PnDeliveryPushClientImpl pnDeliveryPushClient,
 										PnDeliveryConfigs cfg,
-										PnMandateClientImpl pnMandateClient, PnDataVaultClientImpl dataVaultClient, ModelMapperFactory modelMapperFactory) {
+										PnMandateClientImpl pnMandateClient, PnDataVaultClientImpl dataVaultClient, ModelMapperFactory modelMapperFactory,
+										@Qualifier(SearchExecutorConfig.SEARCH_EXECUTOR) ExecutorService searchExecutor,
+										MonthOccupancyIndex monthOccupancyIndex,
+										RecipientDenominationResolver recipientDenominationResolver,
+										PnLastEvaluatedKeyCodec lastEvaluatedKeyCodec,
+										SearchResultCache searchResultCache,
+										SearchPlanner searchPlanner,
+										PartitionGranularityResolver partitionGranularityResolver,
+										NotificationHistoryCache notificationHistoryCache) {
 		this.clock = clock;
 		this.notificationAcknowledgementProducer = notificationAcknowledgementProducer;
 		this.notificationDao = notificationDao;
@@ -69,9 +95,30 @@ public class NotificationRetrieverService {
 		this.pnMandateClient = pnMandateClient;
 		this.dataVaultClient = dataVaultClient;
 		this.modelMapperFactory = modelMapperFactory;
+		this.searchExecutor = searchExecutor;
+		this.monthOccupancyIndex = monthOccupancyIndex;
+		this.recipientDenominationResolver = recipientDenominationResolver;
+		this.lastEvaluatedKeyCodec = lastEvaluatedKeyCodec;
+		this.searchResultCache = searchResultCache;
+		this.searchPlanner = searchPlanner;
+		this.partitionGranularityResolver = partitionGranularityResolver;
+		this.notificationHistoryCache = notificationHistoryCache;
 	}
 
 	public ResultPaginationDto<NotificationSearchRow,String> searchNotification(InputSearchNotificationDto searchDto ) {
+		return searchNotification( searchDto, null );
+	}
+
+	/**
+	 * Ricerca progressiva: oltre a restituire la pagina completa notifica le righe e le chiavi delle pagine successive
+	 * al termine di ciascuna query. Se la pagina è in cache viene notificata interamente in un'unica volta.
+	 *
+	 * @param searchDto parametri di ricerca
+	 * @param progressListener destinatario dei risultati parziali, se null la ricerca non è progressiva
+	 * @return pagina di risultati
+	 */
+	public ResultPaginationDto<NotificationSearchRow,String> searchNotification(InputSearchNotificationDto searchDto,
+																				 SearchProgressListener<String> progressListener) {
 		log.info("Start search notification - senderReceiverId={}", searchDto.getSenderReceiverId());
 
 		validateInput(searchDto);
@@ -85,11 +132,7 @@ public class NotificationRetrieverService {
 
 		PnLastEvaluatedKey lastEvaluatedKey = null;
 		if ( searchDto.getNextPagesKey() != null ) {
-			try {
-				lastEvaluatedKey = PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey( searchDto.getNextPagesKey() );
-			} catch (JsonProcessingException e) {
-				throw new PnInternalException( "Unable to deserialize lastEvaluatedKey", e );
-			}
+			lastEvaluatedKey = lastEvaluatedKeyCodec.decode( searchDto.getNextPagesKey() );
 		}
 
 		//devo opacizzare i campi di ricerca
@@ -100,26 +143,139 @@ public class NotificationRetrieverService {
 			searchDto.setFilterId( opaqueTaxId );
 		}
 
+		final PnLastEvaluatedKey startKey = lastEvaluatedKey;
+		if ( progressListener == null ) {
+			return searchResultCache.getOrSearch( searchDto, () -> executeSearch( searchDto, startKey, null ) );
+		}
+
+		EncodingProgressListener encodingListener = new EncodingProgressListener( progressListener );
+		ResultPaginationDto<NotificationSearchRow,String> result = searchResultCache.getOrSearch( searchDto, () -> executeSearch( searchDto, startKey, encodingListener ) );
+		if ( !encodingListener.isNotified() ) {
+			// pagina restituita dalla cache oppure ricerca senza risultati
+			if ( result.getResultsPage() != null && !result.getResultsPage().isEmpty() ) {
+				progressListener.onRows( result.getResultsPage() );
+			}
+			if ( result.getNextPagesKey() != null && !result.getNextPagesKey().isEmpty() ) {
+				progressListener.onNextPagesKey( result.getNextPagesKey() );
+			}
+		}
+		return result;
+	}
+
+	private ResultPaginationDto<NotificationSearchRow,String> executeSearch(InputSearchNotificationDto searchDto, PnLastEvaluatedKey lastEvaluatedKey,
+																			 SearchProgressListener<PnLastEvaluatedKey> progressListener) {
 		MultiPageSearch multiPageSearch = new MultiPageSearch(
 				notificationDao,
 				searchDto,
 				lastEvaluatedKey,
 				cfg,
-				dataVaultClient);
+				recipientDenominationResolver,
+				searchExecutor,
+				searchParallelism(),
+				monthOccupancyIndex);
+		multiPageSearch.setProgressListener( progressListener );
+		multiPageSearch.setSearchPlanner( searchPlanner );
+		multiPageSearch.setPartitionGranularityResolver( partitionGranularityResolver );
 
 		ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> searchResult = multiPageSearch.searchNotificationMetadata();
+		if ( progressListener != null && progressListener.isCancelled() ) {
+			// la pagina è incompleta: non deve essere restituita né salvata in cache
+			throw new CancellationException( "Search cancelled by the client" );
+		}
 
 		ResultPaginationDto.ResultPaginationDtoBuilder<NotificationSearchRow,String> builder = ResultPaginationDto.builder();
 		builder.moreResult( searchResult.getNextPagesKey() != null )
 				.resultsPage( searchResult.getResultsPage() );
+		if ( isSearchPlanEnabled() ) {
+			builder.searchPlan( searchResult.getSearchPlan() );
+		}
 		if ( searchResult.getNextPagesKey() != null ) {
 			builder.nextPagesKey( searchResult.getNextPagesKey()
-					.stream().map(PnLastEvaluatedKey::serializeInternalLastEvaluatedKey)
+					.stream().map(lastEvaluatedKeyCodec::encode)
 					.collect(Collectors.toList()) );
 		}
 		return builder.build();
 	}
 
+	/**
+	 * Prepara l'esportazione delle notifiche inviate dal mittente nell'intervallo di date indicato
+	 *
+	 * @param senderId identificativo del mittente
+	 * @param startDate inizio dell'intervallo di ricerca
+	 * @param endDate fine dell'intervallo di ricerca
+	 * @param status stato delle notifiche, se null qualsiasi stato
+	 * @param groups gruppi del mittente a cui limitare l'esportazione, se null tutti
+	 * @return esportazione da leggere una pagina alla volta
+	 */
+	public NotificationSearchExport exportSentNotifications(String senderId, Instant startDate, Instant endDate,
+															NotificationStatus status, List<String> groups) {
+		log.info("Start export sent notifications - senderId={}", senderId);
+		InputSearchNotificationDto searchDto = new InputSearchNotificationDto.Builder()
+				.bySender( true )
+				.senderReceiverId( senderId )
+				.startDate( startDate )
+				.endDate( endDate )
+				.status( status )
+				.groups( groups )
+				.size( exportPageSize() )
+				.build();
+
+		validateInput( searchDto );
+
+		NotificationSearchExport export = new NotificationSearchExport( notificationDao, searchDto, cfg, recipientDenominationResolver, monthOccupancyIndex );
+		export.setPartitionGranularityResolver( partitionGranularityResolver );
+		return export;
+	}
+
+	/**
+	 * Codifica le chiavi delle pagine successive prima di notificarle
+	 */
+	private class EncodingProgressListener implements SearchProgressListener<PnLastEvaluatedKey> {
+
+		private final SearchProgressListener<String> delegate;
+		private boolean notified;
+
+		private EncodingProgressListener(SearchProgressListener<String> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void onRows(List<NotificationSearchRow> rows) {
+			notified = true;
+			delegate.onRows( rows );
+		}
+
+		@Override
+		public void onNextPagesKey(List<PnLastEvaluatedKey> nextPagesKey) {
+			notified = true;
+			delegate.onNextPagesKey( nextPagesKey.stream().map( lastEvaluatedKeyCodec::encode ).collect( Collectors.toList() ) );
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return delegate.isCancelled();
+		}
+
+		private boolean isNotified() {
+			return notified;
+		}
+	}
+
+	private int exportPageSize() {
+		PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+		return searchCfg != null && searchCfg.getExportPageSize() != null ? searchCfg.getExportPageSize() : DEFAULT_EXPORT_PAGE_SIZE;
+	}
+
+	private boolean isSearchPlanEnabled() {
+		PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+		return searchCfg != null && Boolean.TRUE.equals( searchCfg.getPlanHeader() );
+	}
+
+	private int searchParallelism() {
+		PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+		return searchCfg != null && searchCfg.getParallelism() != null ? searchCfg.getParallelism() : 1;
+	}
+
 	/**
 	 * Check mandates for uid and cx-id
 	 *
@@ -191,6 +347,16 @@ public class NotificationRetrieverService {
 			throw new PnValidationException(searchDto.getSenderReceiverId(), errors);
 		}
 
+		// l'espressione regolare viene valutata in applicazione: se non valida la ricerca non viene eseguita
+		if ( searchDto.getSubjectRegExp() != null ) {
+			try {
+				Pattern.compile( searchDto.getSubjectRegExp() );
+			} catch ( PatternSyntaxException ex ) {
+				log.error("Validation search input ERROR invalid subjectRegExp - senderReceiverId {}", searchDto.getSenderReceiverId());
+				throw new PnValidationException( "subjectRegExp", Collections.singleton( new ConstraintViolationImpl<>( "Invalid subjectRegExp: " + ex.getDescription() ) ) );
+			}
+		}
+
 		log.debug("Validation search input OK - senderReceiverId {}",searchDto.getSenderReceiverId());
 	}
 
@@ -224,6 +390,52 @@ public class NotificationRetrieverService {
 		return getNotificationInformation( iun, true );
 	}
 
+	/**
+	 * Dettaglio della notifica senza timeline, con gli identificativi opachi dei destinatari al posto dei codici fiscali.
+	 * Non effettua chiamate a data-vault se non sono richiesti gli indirizzi.
+	 *
+	 * @param iun iun della notifica
+	 * @param withAddresses se true i destinatari sono completati con denominazioni e indirizzi
+	 * @return notifica
+	 */
+	public InternalNotification getOpaqueNotificationInformation(String iun, boolean withAddresses) {
+		log.debug( "Retrieve opaque notification by iun={} withAddresses={}", iun, withAddresses );
+		return notificationDao.getOpaqueNotificationByIun( iun, withAddresses )
+				.orElseThrow( () -> new PnInternalException( String.format( "Error retrieving opaque Notification with iun=%s", iun ) ) );
+	}
+
+	/**
+	 * Notifica senza timeline con l'ultimo stato salvato sul record della notifica, per il polling dello stato della richiesta.
+	 * Per le notifiche senza ultimo stato salvato lo stato è letto da delivery-push.
+	 *
+	 * @param iun iun della notifica
+	 * @return notifica con notificationStatus valorizzato
+	 */
+	public InternalNotification getNotificationWithLastStatus(String iun) {
+		log.debug( "Retrieve notification with last status by iun={}", iun );
+		InternalNotification notification = notificationDao.getNotificationWithLastStatusByIun( iun )
+				.orElseThrow( () -> new PnInternalException( String.format( "Error retrieving Notification with last status iun=%s", iun ) ) );
+		if ( notification.getNotificationStatus() == null ) {
+			notification = enrichWithTimelineAndStatusHistory( iun, notification );
+		}
+		return notification;
+	}
+
+	/**
+	 * IUN della richiesta di notifica individuata da numero di protocollo e token di idempotenza
+	 *
+	 * @param senderPaId mittente che ha inviato la richiesta
+	 * @param paProtocolNumber numero di protocollo
+	 * @param idempotenceToken token di idempotenza, può essere null
+	 * @return IUN della notifica
+	 */
+	public String getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken) {
+		log.debug( "Retrieve iun by senderPaId={} paProtocolNumber={} idempotenceToken={}", senderPaId, paProtocolNumber, idempotenceToken );
+		return notificationDao.getIunByRequest( senderPaId, paProtocolNumber, idempotenceToken )
+				.orElseThrow( () -> new PnNotFoundException( String.format( "No notification request by senderPaId=%s paProtocolNumber=%s idempotenceToken=%s",
+						senderPaId, paProtocolNumber, idempotenceToken ) ) );
+	}
+
 	/**
 	 * Get the full detail of a notification by IUN and notify viewed event
 	 *
@@ -241,14 +453,18 @@ public class NotificationRetrieverService {
 	private void setIsDocumentsAvailable(InternalNotification notification) {
 		log.debug( "Documents available for iun={}", notification.getIun() );
 		notification.setDocumentsAvailable( true );
-		// cerco elemento timeline con category refinement o notificationView
-		List<TimelineElement> timelineElementList = notification.getTimeline()
-				.stream()
-				.filter(tle -> TimelineElementCategory.REFINEMENT.equals( tle.getCategory() ) || TimelineElementCategory.NOTIFICATION_VIEWED.equals( tle.getCategory() ))
-				.collect(Collectors.toList());
-		// se trovo elemento confronto con data odierna e se differenza > 120 gg allora documentsAvailable = false
-		if (!timelineElementList.isEmpty()) {
-			Date refinementDate = timelineElementList.get( 0 ).getTimestamp();
+		// data di perfezionamento salvata sul record della notifica, altrimenti cerco elemento timeline con category refinement o notificationView
+		Date refinementDate = notification.getRefinementDate();
+		if ( refinementDate == null ) {
+			refinementDate = notification.getTimeline()
+					.stream()
+					.filter(tle -> TimelineElementCategory.REFINEMENT.equals( tle.getCategory() ) || TimelineElementCategory.NOTIFICATION_VIEWED.equals( tle.getCategory() ))
+					.map( TimelineElement::getTimestamp )
+					.findFirst()
+					.orElse( null );
+		}
+		// se trovo la data confronto con data odierna e se differenza > 120 gg allora documentsAvailable = false
+		if ( refinementDate != null ) {
 			long daysBetween = ChronoUnit.DAYS.between( refinementDate.toInstant(), Instant.now() );
 			if ( daysBetween > MAX_DOCUMENTS_AVAILABLE_DAYS) {
 				log.debug( "Documents not more available for iun={} from={}", notification.getIun(), refinementDate );
@@ -273,7 +489,8 @@ public class NotificationRetrieverService {
 		OffsetDateTime offsetDateTime = createdAt.toInstant()
 				.atOffset(ZoneOffset.UTC);
 
-		NotificationHistoryResponse timelineStatusHistoryDto =  pnDeliveryPushClient.getTimelineAndStatusHistory(iun,numberOfRecipients, offsetDateTime);
+		NotificationHistoryResponse timelineStatusHistoryDto = notificationHistoryCache.get( iun,
+				() -> pnDeliveryPushClient.getTimelineAndStatusHistory(iun,numberOfRecipients, offsetDateTime) );
 
 		
 		List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement> timelineList = timelineStatusHistoryDto.getTimeline()
@@ -285,21 +502,8 @@ public class NotificationRetrieverService {
 		
 		List<it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement> statusHistory = timelineStatusHistoryDto.getNotificationStatusHistory();
 
-		ModelMapper mapperStatusHistory = new ModelMapper();
-		mapperStatusHistory.createTypeMap( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement.class, NotificationStatusHistoryElement.class )
-				.addMapping( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement::getActiveFrom, NotificationStatusHistoryElement::setActiveFrom );
-		mapperStatusHistory.getConfiguration().setMatchingStrategy( MatchingStrategies.STRICT );
-		Converter<OffsetDateTime,Date> dateConverter = ctx -> ctx.getSource() != null ? fromOffsetToDate( ctx.getSource() ) : null;
-		mapperStatusHistory.addConverter( dateConverter, OffsetDateTime.class, Date.class );
-
 		ModelMapper mapperNotification = modelMapperFactory.createModelMapper( InternalNotification.class, FullSentNotification.class );
 
-		ModelMapper mapperTimeline = new ModelMapper();
-		mapperTimeline.createTypeMap( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement.class, TimelineElement.class )
-				.addMapping(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement::getTimestamp, TimelineElement::setTimestamp );
-		mapperTimeline.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
-		mapperTimeline.addConverter( dateConverter, OffsetDateTime.class, Date.class );
-
 		FullSentNotification resultFullSent = notification
 				.timeline( timelineList.stream()
 						.map( timelineElement -> mapperTimeline.map(timelineElement, TimelineElement.class ) )
@@ -313,7 +517,29 @@ public class NotificationRetrieverService {
 		return mapperNotification.map( resultFullSent, InternalNotification.class );
 	}
 
-	private Date fromOffsetToDate(OffsetDateTime source) {
+	private static ModelMapper buildStatusHistoryMapper() {
+		ModelMapper mapperStatusHistory = new ModelMapper();
+		mapperStatusHistory.createTypeMap( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement.class, NotificationStatusHistoryElement.class )
+				.addMapping( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatusHistoryElement::getActiveFrom, NotificationStatusHistoryElement::setActiveFrom );
+		mapperStatusHistory.getConfiguration().setMatchingStrategy( MatchingStrategies.STRICT );
+		mapperStatusHistory.addConverter( dateConverter(), OffsetDateTime.class, Date.class );
+		return mapperStatusHistory;
+	}
+
+	private static ModelMapper buildTimelineMapper() {
+		ModelMapper mapperTimeline = new ModelMapper();
+		mapperTimeline.createTypeMap( it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement.class, TimelineElement.class )
+				.addMapping(it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.TimelineElement::getTimestamp, TimelineElement::setTimestamp );
+		mapperTimeline.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
+		mapperTimeline.addConverter( dateConverter(), OffsetDateTime.class, Date.class );
+		return mapperTimeline;
+	}
+
+	private static Converter<OffsetDateTime,Date> dateConverter() {
+		return ctx -> ctx.getSource() != null ? fromOffsetToDate( ctx.getSource() ) : null;
+	}
+
+	private static Date fromOffsetToDate(OffsetDateTime source) {
 		return Date.from( source.toInstant() );
 	}
 
@@ -0,0 +1,108 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * Esportazione delle notifiche individuate dai parametri di ricerca, una pagina alla volta e senza limite al numero di pagine.
+ * <p>
+ * Ogni pagina è una ricerca che prosegue dalla LastEvaluatedKey della precedente, con la stessa scelta delle partizioni
+ * mensili e degli indici della ricerca paginata, senza calcolare le LastEvaluatedKey delle pagine successive.
+ * In memoria resta solo la pagina corrente: gli IUN già esportati sono ricordati solo per l'ultimo sentAt,
+ * perché le righe di una notifica con più destinatari, con lo stesso sentAt, possono trovarsi a cavallo di due pagine.
+ */
+@Slf4j
+public class NotificationSearchExport {
+
+    private final NotificationDao notificationDao;
+    private final InputSearchNotificationDto inputSearchNotificationDto;
+    private final PnDeliveryConfigs cfg;
+    private final RecipientDenominationResolver recipientDenominationResolver;
+    private final MonthOccupancyIndex monthOccupancyIndex;
+    private PartitionGranularityResolver partitionGranularityResolver;
+
+    private PnLastEvaluatedKey lastEvaluatedKey;
+    private boolean completed;
+    private Date lastSentAt;
+    private final Set<String> lastSentAtIuns = new HashSet<>();
+    private long exportedRows;
+
+    public NotificationSearchExport(NotificationDao notificationDao,
+                                    InputSearchNotificationDto inputSearchNotificationDto,
+                                    PnDeliveryConfigs cfg,
+                                    RecipientDenominationResolver recipientDenominationResolver,
+                                    MonthOccupancyIndex monthOccupancyIndex) {
+        this.notificationDao = notificationDao;
+        this.inputSearchNotificationDto = inputSearchNotificationDto;
+        this.cfg = cfg;
+        this.recipientDenominationResolver = recipientDenominationResolver;
+        this.monthOccupancyIndex = monthOccupancyIndex;
+    }
+
+    /**
+     * Le partizioni dei mittenti configurati vengono lette sugli stessi bucket della ricerca paginata
+     */
+    public void setPartitionGranularityResolver(PartitionGranularityResolver partitionGranularityResolver) {
+        this.partitionGranularityResolver = partitionGranularityResolver;
+    }
+
+    /**
+     * Legge la pagina successiva dell'esportazione
+     *
+     * @return righe della pagina, con i destinatari già risolti da data-vault; lista vuota a esportazione completata
+     */
+    public List<NotificationSearchRow> nextPage() {
+        while ( !completed ) {
+            MultiPageSearch pageSearch = new MultiPageSearch(
+                    notificationDao,
+                    inputSearchNotificationDto,
+                    lastEvaluatedKey,
+                    cfg,
+                    recipientDenominationResolver,
+                    null,
+                    1,
+                    monthOccupancyIndex,
+                    1 );
+            pageSearch.setPartitionGranularityResolver( partitionGranularityResolver );
+            ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> pageResult = pageSearch.searchNotificationMetadata();
+
+            List<PnLastEvaluatedKey> nextPagesKey = pageResult.getNextPagesKey();
+            if ( nextPagesKey != null && !nextPagesKey.isEmpty() ) {
+                lastEvaluatedKey = nextPagesKey.get( 0 );
+            } else {
+                completed = true;
+                log.info( "Export completed - senderReceiverId={} exportedRows={}", inputSearchNotificationDto.getSenderReceiverId(), exportedRows );
+            }
+
+            List<NotificationSearchRow> rows = discardAlreadyExported( pageResult.getResultsPage() );
+            if ( !rows.isEmpty() ) {
+                exportedRows += rows.size();
+                return rows;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private List<NotificationSearchRow> discardAlreadyExported(List<NotificationSearchRow> resultsPage) {
+        List<NotificationSearchRow> rows = new ArrayList<>();
+        if ( resultsPage == null ) {
+            return rows;
+        }
+        for ( NotificationSearchRow row : resultsPage ) {
+            if ( !Objects.equals( row.getSentAt(), lastSentAt ) ) {
+                lastSentAt = row.getSentAt();
+                lastSentAtIuns.clear();
+            }
+            if ( lastSentAtIuns.add( row.getIun() ) ) {
+                rows.add( row );
+            }
+        }
+        return rows;
+    }
+}
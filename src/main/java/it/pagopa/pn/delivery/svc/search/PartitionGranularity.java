@@ -0,0 +1,112 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.time.DayOfWeek.MONDAY;
+
+/**
+ * Ampiezza dei bucket temporali in cui è suddivisa la partizione mensile di un mittente.
+ * <p>
+ * I bucket sono sempre contenuti nel mese: la settimana inizia di lunedì ed è troncata ai confini del mese.
+ * L'etichetta del bucket è yyyyMM per il mese e yyyyMMdd del primo giorno per settimana e giorno, quindi
+ * inizia sempre con il mese di appartenenza. Scrittura e ricerca calcolano i bucket con questi stessi metodi.
+ */
+public enum PartitionGranularity {
+
+    MONTH( (byte) 'M' ),
+    WEEK( (byte) 'W' ),
+    DAY( (byte) 'D' );
+
+    private static final DateTimeFormatter MONTH_LABEL = DateTimeFormatter.ofPattern( "yyyyMM" );
+    private static final DateTimeFormatter DAY_LABEL = DateTimeFormatter.ofPattern( "yyyyMMdd" );
+
+    private final byte code;
+
+    PartitionGranularity(byte code) {
+        this.code = code;
+    }
+
+    /**
+     * @return codice della granularità nei cursori di paginazione
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    public static PartitionGranularity fromCode(byte code) {
+        for ( PartitionGranularity granularity : values() ) {
+            if ( granularity.code == code ) {
+                return granularity;
+            }
+        }
+        throw new IllegalArgumentException( "Unknown partition granularity code=" + code );
+    }
+
+    /**
+     * @return etichetta del bucket che contiene l'istante indicato
+     */
+    public String bucketOf(Instant instant) {
+        return label( bucketStart( instant.atZone( ZoneOffset.UTC ).toLocalDate() ) );
+    }
+
+    /**
+     * Bucket del mese che intersecano l'intervallo [startDate, endDate], dal più recente al più lontano
+     *
+     * @param month mese yyyyMM
+     */
+    public List<String> bucketsOf(String month, Instant startDate, Instant endDate) {
+        if ( this == MONTH ) {
+            return Collections.singletonList( month );
+        }
+        LocalDate firstDay = LocalDate.parse( month + "01", DAY_LABEL );
+        LocalDate nextMonth = firstDay.plusMonths( 1 );
+        List<String> buckets = new ArrayList<>();
+        for ( LocalDate bucket = firstDay; bucket.isBefore( nextMonth ); bucket = nextBucketStart( bucket ) ) {
+            Instant from = bucket.atStartOfDay( ZoneOffset.UTC ).toInstant();
+            Instant to = nextBucketStart( bucket ).atStartOfDay( ZoneOffset.UTC ).toInstant();
+            if ( to.isAfter( startDate ) && !from.isAfter( endDate ) ) {
+                buckets.add( label( bucket ) );
+            }
+        }
+        Collections.reverse( buckets );
+        return buckets;
+    }
+
+    private LocalDate bucketStart(LocalDate day) {
+        switch ( this ) {
+            case DAY:
+                return day;
+            case WEEK: {
+                LocalDate monday = day.with( TemporalAdjusters.previousOrSame( MONDAY ) );
+                return monday.getMonth() == day.getMonth() ? monday : day.withDayOfMonth( 1 );
+            }
+            default:
+                return day.withDayOfMonth( 1 );
+        }
+    }
+
+    private LocalDate nextBucketStart(LocalDate bucketStart) {
+        LocalDate nextMonth = bucketStart.withDayOfMonth( 1 ).plusMonths( 1 );
+        switch ( this ) {
+            case DAY:
+                return bucketStart.plusDays( 1 );
+            case WEEK: {
+                LocalDate nextMonday = bucketStart.with( TemporalAdjusters.next( MONDAY ) );
+                return nextMonday.isBefore( nextMonth ) ? nextMonday : nextMonth;
+            }
+            default:
+                return nextMonth;
+        }
+    }
+
+    private String label(LocalDate bucketStart) {
+        return this == MONTH ? MONTH_LABEL.format( bucketStart ) : DAY_LABEL.format( bucketStart );
+    }
+}
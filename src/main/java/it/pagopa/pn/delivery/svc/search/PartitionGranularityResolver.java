@@ -0,0 +1,84 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Granularità delle partizioni dei mittenti con molte notifiche.
+ * <p>
+ * Per i mittenti configurati, a partire dal mese indicato, le partizioni mensili degli indici del mittente
+ * sono suddivise in bucket giornalieri o settimanali; per gli altri mittenti e per i mesi precedenti
+ * la partizione resta mensile. La stessa risoluzione è usata dalla scrittura dei metadati e dalla ricerca.
+ * <p>
+ * Dal mese since le ricerche leggono solo i bucket: since deve essere un mese non ancora iniziato
+ * quando la configurazione viene introdotta, altrimenti le notifiche già scritte in quel mese sulla
+ * partizione mensile non sono più trovate. Per lo stesso motivo la granularità di un mese già scritto non va cambiata.
+ */
+@Component
+@Slf4j
+public class PartitionGranularityResolver {
+
+    private final Map<String, SenderGranularity> senders = new HashMap<>();
+
+    public PartitionGranularityResolver(PnDeliveryConfigs cfg, Clock clock) {
+        PnDeliveryConfigs.Partitioning partitioningCfg = cfg.getPartitioning();
+        Map<String, PnDeliveryConfigs.SenderPartitioning> sendersCfg = partitioningCfg != null && partitioningCfg.getSenders() != null
+                ? partitioningCfg.getSenders() : Collections.emptyMap();
+        sendersCfg.forEach( (senderId, senderCfg) -> {
+            PartitionGranularity granularity = senderCfg.getGranularity() != null
+                    ? PartitionGranularity.valueOf( senderCfg.getGranularity() ) : PartitionGranularity.MONTH;
+            log.info( "Partition granularity of senderId={} is {} since={}", senderId, granularity, senderCfg.getSince() );
+            if ( granularity != PartitionGranularity.MONTH ) {
+                checkSince( senderId, senderCfg.getSince(), PartitionGranularity.MONTH.bucketOf( clock.instant() ) );
+            }
+            senders.put( senderId, new SenderGranularity( granularity, senderCfg.getSince() ) );
+        } );
+    }
+
+    private static void checkSince(String senderId, String since, String currentMonth) {
+        if ( since == null ) {
+            throw new PnInternalException( "Missing partitioning since month for senderId=" + senderId
+                    + ": notifications already written on monthly partitions would not be searchable" );
+        }
+        if ( since.compareTo( currentMonth ) <= 0 ) {
+            log.warn( "Partitioning of senderId={} started in since={}: notifications of that month written before the configuration are not searchable",
+                    senderId, since );
+        }
+    }
+
+    /**
+     * @param senderId mittente
+     * @param creationMonth mese yyyyMM
+     * @return granularità delle partizioni del mittente nel mese indicato
+     */
+    public PartitionGranularity granularityOf(String senderId, String creationMonth) {
+        SenderGranularity senderGranularity = senders.get( senderId );
+        if ( senderGranularity == null || ( senderGranularity.getSince() != null && creationMonth.compareTo( senderGranularity.getSince() ) < 0 ) ) {
+            return PartitionGranularity.MONTH;
+        }
+        return senderGranularity.getGranularity();
+    }
+
+    /**
+     * @return etichetta del bucket in cui scrivere una notifica del mittente spedita in sentAt
+     */
+    public String bucketOf(String senderId, Instant sentAt) {
+        String creationMonth = PartitionGranularity.MONTH.bucketOf( sentAt );
+        return granularityOf( senderId, creationMonth ).bucketOf( sentAt );
+    }
+
+    @Value
+    private static class SenderGranularity {
+        PartitionGranularity granularity;
+        String since;
+    }
+}
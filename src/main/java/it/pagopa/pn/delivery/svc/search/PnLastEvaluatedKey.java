@@ -23,6 +23,8 @@ public class PnLastEvaluatedKey {
     private static final ObjectReader objectReader = new ObjectMapper().readerFor( KeyPair.class );
     private String externalLastEvaluatedKey;
     private Map<String, AttributeValue> internalLastEvaluatedKey;
+    // granularità della partizione indicata dalla chiave esterna, null per le partizioni mensili
+    private PartitionGranularity granularity;
 
 
     public String getExternalLastEvaluatedKey() {
@@ -41,6 +43,14 @@ public class PnLastEvaluatedKey {
         this.internalLastEvaluatedKey = internalLastEvaluatedKey;
     }
 
+    public PartitionGranularity getGranularity() {
+        return granularity;
+    }
+
+    public void setGranularity(PartitionGranularity granularity) {
+        this.granularity = granularity;
+    }
+
     public static PnLastEvaluatedKey deserializeInternalLastEvaluatedKey( String encodedString ) throws JsonProcessingException {
         String jsonString = new String( Base64Utils.decodeFromUrlSafeString( encodedString ), StandardCharsets.UTF_8 );
         KeyPair keyPair = objectReader.readValue( jsonString );
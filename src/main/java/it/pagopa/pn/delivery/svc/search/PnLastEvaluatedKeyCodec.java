@@ -0,0 +1,299 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.commons.exceptions.PnValidationException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.rest.dto.ConstraintViolationImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Codifica e decodifica le chiavi di paginazione restituite al client come stringhe opache.
+ * <p>
+ * Formato binario (versione 2), codificato in Base64 url-safe senza padding:
+ * <pre>
+ * version(1) | granularity(1) | knownMask(1) | ekRef(1) | [ek] | known attributes... | extraCount | (name, value)... | hmac(16)
+ * </pre>
+ * La granularità della partizione della chiave esterna (mese, settimana, giorno) permette di proseguire la ricerca
+ * sugli stessi bucket anche se la configurazione del mittente cambia; i cursori della versione 1, senza granularità,
+ * si riferiscono a partizioni mensili.
+ * Gli attributi noti degli indici di ricerca sono scritti in posizione fissa senza nome; la chiave esterna,
+ * che di norma coincide con la partizione interrogata, è scritta solo se diversa dall'attributo indicato da ekRef;
+ * sentAt è scritto come epochSecond(8) + nanos(4). Le stringhe sono precedute dalla lunghezza in varint.
+ * La firma HMAC-SHA256 troncata viene verificata prima di qualunque interpretazione del contenuto,
+ * quindi un cursore manomesso viene rifiutato senza arrivare a DynamoDB.
+ * Il segreto è obbligatorio e deve essere lo stesso su tutte le istanze: senza segreto il servizio non si avvia.
+ * I cursori JSON non firmati della versione precedente sono rifiutati, salvo abilitare pn.delivery.cursor.accept-legacy
+ * durante il rilascio; il flag e {@link #decodeLegacy(String)} vanno rimossi entro il 31/12/2026.
+ */
+@Component
+@Slf4j
+public class PnLastEvaluatedKeyCodec {
+
+    static final byte VERSION_1 = 1;
+    static final byte VERSION_2 = 2;
+    static final int HMAC_LENGTH = 16;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final byte LEGACY_JSON_FIRST_BYTE = '{';
+
+    // l'ordine degli attributi determina la posizione nel bitmask: nuovi attributi vanno solo aggiunti in coda
+    private static final String[] KNOWN_ATTRIBUTES = {
+            NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID,
+            NotificationMetadataEntity.FIELD_SENT_AT,
+            NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH,
+            NotificationMetadataEntity.FIELD_RECIPIENT_ID_CREATION_MONTH,
+            NotificationMetadataEntity.FIELD_SENDER_ID_RECIPIENT_ID,
+            NotificationMetadataEntity.FIELD_SENDER_ID_ONE_CREATION_MONTH
+    };
+    private static final int SENT_AT_POSITION = 1;
+    private static final int EXPLICIT_EK = 0xFF;
+
+    private final SecretKeySpec secretKey;
+    private final boolean acceptLegacy;
+    private final ThreadLocal<Mac> macs;
+
+    public PnLastEvaluatedKeyCodec(PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.Cursor cursorCfg = cfg.getCursor();
+        String secret = cursorCfg != null ? cursorCfg.getHmacSecret() : null;
+        if ( secret == null || secret.isBlank() ) {
+            throw new PnInternalException( "Missing pagination cursor secret: set pn.delivery.cursor.hmac-secret" );
+        }
+        this.secretKey = new SecretKeySpec( secret.getBytes( StandardCharsets.UTF_8 ), HMAC_ALGORITHM );
+        this.acceptLegacy = cursorCfg.getAcceptLegacy() != null && cursorCfg.getAcceptLegacy();
+        if ( acceptLegacy ) {
+            log.warn( "Unsigned legacy pagination cursors are accepted: disable pn.delivery.cursor.accept-legacy" );
+        }
+        this.macs = ThreadLocal.withInitial( this::newMac );
+    }
+
+    public String encode( PnLastEvaluatedKey lastEvaluatedKey ) {
+        Map<String, AttributeValue> internalKey = lastEvaluatedKey.getInternalLastEvaluatedKey();
+        String[] knownValues = new String[KNOWN_ATTRIBUTES.length];
+        int knownMask = 0;
+        int extraCount = internalKey.size();
+        for ( int i = 0; i < KNOWN_ATTRIBUTES.length; i++ ) {
+            AttributeValue value = internalKey.get( KNOWN_ATTRIBUTES[i] );
+            if ( value != null && value.s() != null && ( i != SENT_AT_POSITION || isCanonicalInstant( value.s() ) ) ) {
+                knownValues[i] = value.s();
+                knownMask |= 1 << i;
+                extraCount--;
+            }
+        }
+
+        String externalKey = lastEvaluatedKey.getExternalLastEvaluatedKey();
+        int ekRef = EXPLICIT_EK;
+        for ( int i = 0; i < KNOWN_ATTRIBUTES.length && ekRef == EXPLICIT_EK; i++ ) {
+            if ( i != SENT_AT_POSITION && knownValues[i] != null && knownValues[i].equals( externalKey ) ) {
+                ekRef = i;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate( 256 );
+        PartitionGranularity granularity = lastEvaluatedKey.getGranularity() != null ? lastEvaluatedKey.getGranularity() : PartitionGranularity.MONTH;
+        buffer.put( VERSION_2 ).put( granularity.getCode() ).put( (byte) knownMask ).put( (byte) ekRef );
+        if ( ekRef == EXPLICIT_EK ) {
+            buffer = putString( buffer, externalKey );
+        }
+        for ( int i = 0; i < KNOWN_ATTRIBUTES.length; i++ ) {
+            if ( knownValues[i] == null ) {
+                continue;
+            }
+            if ( i == SENT_AT_POSITION ) {
+                Instant sentAt = Instant.parse( knownValues[i] );
+                buffer = ensureCapacity( buffer, 12 );
+                buffer.putLong( sentAt.getEpochSecond() ).putInt( sentAt.getNano() );
+            } else {
+                buffer = putString( buffer, knownValues[i] );
+            }
+        }
+        buffer = putVarInt( buffer, extraCount );
+        for ( Map.Entry<String, AttributeValue> entry : internalKey.entrySet() ) {
+            int position = knownPosition( entry.getKey() );
+            if ( position < 0 || ( knownMask & ( 1 << position ) ) == 0 ) {
+                buffer = putString( buffer, entry.getKey() );
+                buffer = putString( buffer, entry.getValue().s() );
+            }
+        }
+
+        Mac mac = macs.get();
+        mac.update( buffer.array(), 0, buffer.position() );
+        byte[] signature = mac.doFinal();
+        buffer = ensureCapacity( buffer, HMAC_LENGTH );
+        buffer.put( signature, 0, HMAC_LENGTH );
+        return Base64.getUrlEncoder().withoutPadding().encodeToString( Arrays.copyOf( buffer.array(), buffer.position() ) );
+    }
+
+    public PnLastEvaluatedKey decode( String encodedString ) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode( encodedString );
+        } catch ( IllegalArgumentException e ) {
+            throw invalidCursor( "not a valid base64 string" );
+        }
+        if ( bytes.length > 0 && bytes[0] == LEGACY_JSON_FIRST_BYTE ) {
+            return decodeLegacy( encodedString );
+        }
+        if ( bytes.length <= HMAC_LENGTH || ( bytes[0] != VERSION_1 && bytes[0] != VERSION_2 ) ) {
+            throw invalidCursor( "unknown cursor format" );
+        }
+
+        int payloadLength = bytes.length - HMAC_LENGTH;
+        Mac mac = macs.get();
+        mac.update( bytes, 0, payloadLength );
+        byte[] expected = Arrays.copyOf( mac.doFinal(), HMAC_LENGTH );
+        byte[] actual = Arrays.copyOfRange( bytes, payloadLength, bytes.length );
+        if ( !MessageDigest.isEqual( expected, actual ) ) {
+            throw invalidCursor( "signature mismatch" );
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap( bytes, 1, payloadLength - 1 );
+            PnLastEvaluatedKey lastEvaluatedKey = new PnLastEvaluatedKey();
+            PartitionGranularity granularity = bytes[0] == VERSION_2 ? PartitionGranularity.fromCode( buffer.get() ) : PartitionGranularity.MONTH;
+            lastEvaluatedKey.setGranularity( granularity == PartitionGranularity.MONTH ? null : granularity );
+            int knownMask = buffer.get();
+            int ekRef = buffer.get() & 0xFF;
+            String externalKey = ekRef == EXPLICIT_EK ? getString( buffer ) : null;
+            Map<String, AttributeValue> internalKey = new HashMap<>();
+            for ( int i = 0; i < KNOWN_ATTRIBUTES.length; i++ ) {
+                if ( ( knownMask & ( 1 << i ) ) == 0 ) {
+                    continue;
+                }
+                String value;
+                if ( i == SENT_AT_POSITION ) {
+                    value = Instant.ofEpochSecond( buffer.getLong(), buffer.getInt() ).toString();
+                } else {
+                    value = getString( buffer );
+                }
+                internalKey.put( KNOWN_ATTRIBUTES[i], AttributeValue.builder().s( value ).build() );
+                if ( i == ekRef ) {
+                    externalKey = value;
+                }
+            }
+            if ( externalKey == null ) {
+                throw invalidCursor( "missing external key" );
+            }
+            lastEvaluatedKey.setExternalLastEvaluatedKey( externalKey );
+            int extraCount = getVarInt( buffer );
+            for ( int i = 0; i < extraCount; i++ ) {
+                String name = getString( buffer );
+                internalKey.put( name, AttributeValue.builder().s( getString( buffer ) ).build() );
+            }
+            if ( buffer.hasRemaining() ) {
+                throw invalidCursor( "trailing bytes" );
+            }
+            lastEvaluatedKey.setInternalLastEvaluatedKey( internalKey );
+            return lastEvaluatedKey;
+        } catch ( BufferUnderflowException | IllegalArgumentException | DateTimeException e ) {
+            throw invalidCursor( "malformed content" );
+        }
+    }
+
+    private PnLastEvaluatedKey decodeLegacy( String encodedString ) {
+        if ( !acceptLegacy ) {
+            throw invalidCursor( "legacy cursor not accepted" );
+        }
+        try {
+            return PnLastEvaluatedKey.deserializeInternalLastEvaluatedKey( encodedString );
+        } catch ( JsonProcessingException e ) {
+            throw new PnInternalException( "Unable to deserialize lastEvaluatedKey", e );
+        }
+    }
+
+    private static PnValidationException invalidCursor( String reason ) {
+        String message = String.format( "Invalid nextPagesKey: %s", reason );
+        log.warn( message );
+        return new PnValidationException( "nextPagesKey", Collections.singleton( new ConstraintViolationImpl<>( message ) ) );
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance( HMAC_ALGORITHM );
+            mac.init( secretKey );
+            return mac;
+        } catch ( GeneralSecurityException e ) {
+            throw new PnInternalException( "Unable to initialize pagination cursor signature", e );
+        }
+    }
+
+    private static boolean isCanonicalInstant( String value ) {
+        try {
+            return Instant.parse( value ).toString().equals( value );
+        } catch ( DateTimeException e ) {
+            return false;
+        }
+    }
+
+    private static int knownPosition( String attributeName ) {
+        for ( int i = 0; i < KNOWN_ATTRIBUTES.length; i++ ) {
+            if ( KNOWN_ATTRIBUTES[i].equals( attributeName ) ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer putString( ByteBuffer buffer, String value ) {
+        byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        buffer = putVarInt( buffer, bytes.length );
+        buffer = ensureCapacity( buffer, bytes.length );
+        return buffer.put( bytes );
+    }
+
+    private static String getString( ByteBuffer buffer ) {
+        int length = getVarInt( buffer );
+        if ( length > buffer.remaining() ) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String( buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8 );
+        buffer.position( buffer.position() + length );
+        return value;
+    }
+
+    private static ByteBuffer putVarInt( ByteBuffer buffer, int value ) {
+        buffer = ensureCapacity( buffer, 5 );
+        while ( ( value & ~0x7F ) != 0 ) {
+            buffer.put( (byte) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        return buffer.put( (byte) value );
+    }
+
+    private static int getVarInt( ByteBuffer buffer ) {
+        int value = 0;
+        for ( int shift = 0; shift < 32; shift += 7 ) {
+            byte b = buffer.get();
+            value |= ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 ) {
+                if ( value < 0 ) {
+                    throw new IllegalArgumentException( "Negative length" );
+                }
+                return value;
+            }
+        }
+        throw new IllegalArgumentException( "Malformed varint" );
+    }
+
+    private static ByteBuffer ensureCapacity( ByteBuffer buffer, int needed ) {
+        if ( buffer.remaining() >= needed ) {
+            return buffer;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate( Math.max( buffer.capacity() * 2, buffer.position() + needed ) );
+        buffer.flip();
+        return bigger.put( buffer );
+    }
+}
@@ -0,0 +1,62 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Risolve gli identificativi opachi dei destinatari nei dati anagrafici restituiti da data-vault.
+ * I risultati sono mantenuti in una cache a dimensione limitata con scadenza, in modo che solo gli
+ * identificativi non presenti in cache vengano richiesti a data-vault con un'unica chiamata.
+ */
+@Component
+@Slf4j
+public class RecipientDenominationResolver {
+
+    private static final long DEFAULT_CACHE_MAX_SIZE = 50_000L;
+    private static final Duration DEFAULT_CACHE_TTL = Duration.ofMinutes( 5 );
+
+    private final PnDataVaultClientImpl dataVaultClient;
+    private final Cache<String, BaseRecipientDto> cache;
+
+    public RecipientDenominationResolver(PnDataVaultClientImpl dataVaultClient, PnDeliveryConfigs cfg) {
+        this.dataVaultClient = dataVaultClient;
+        PnDeliveryConfigs.RecipientDenominationCache cacheCfg = cfg.getRecipientDenominationCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize( cacheCfg != null && cacheCfg.getMaxSize() != null ? cacheCfg.getMaxSize() : DEFAULT_CACHE_MAX_SIZE )
+                .expireAfterWrite( cacheCfg != null && cacheCfg.getTtl() != null ? cacheCfg.getTtl() : DEFAULT_CACHE_TTL )
+                .build();
+    }
+
+    /**
+     * Recupera i dati anagrafici dei destinatari indicati
+     *
+     * @param internalIds identificativi opachi dei destinatari
+     * @return mappa internalId - dati del destinatario, senza gli identificativi sconosciuti a data-vault
+     */
+    public Map<String, BaseRecipientDto> resolve(Collection<String> internalIds) {
+        if ( internalIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+        return cache.getAll( internalIds, this::loadFromDataVault );
+    }
+
+    private Map<String, BaseRecipientDto> loadFromDataVault(Set<? extends String> missingInternalIds) {
+        log.debug( "Cache miss for internalIds={}, send request to data-vault", missingInternalIds );
+        List<BaseRecipientDto> dataVaultResults = dataVaultClient.getRecipientDenominationByInternalId( new ArrayList<>( missingInternalIds ) );
+        Map<String, BaseRecipientDto> result = new HashMap<>();
+        if ( dataVaultResults != null ) {
+            for ( BaseRecipientDto baseRecipientDto : dataVaultResults ) {
+                result.put( baseRecipientDto.getInternalId(), baseRecipientDto );
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Piano di esecuzione di una ricerca scelto da SearchPlanner
+ */
+@Value
+@Builder
+public class SearchPlan {
+
+    /**
+     * Partizioni da interrogare, nell'ordine della ricerca
+     */
+    List<String> partitions;
+
+    /**
+     * Indice da interrogare per ciascuna partizione, se assente quello previsto dalla ricerca
+     */
+    Map<String, String> partitionIndexNames;
+
+    /**
+     * Numero di partizioni da interrogare in parallelo
+     */
+    int parallelism;
+
+    /**
+     * Descrizione del piano restituita nell'header di debug
+     */
+    String description;
+
+    public String indexNameFor(String partition) {
+        return partitionIndexNames.get( partition );
+    }
+}
@@ -0,0 +1,263 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.FilterSelectivityTracker;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Sceglie indice e partizioni di una ricerca in base al costo di lettura atteso.
+ * <p>
+ * Il costo di un piano è stimato in righe lette: ogni query costa almeno quanto la lettura di un numero
+ * configurabile di righe (planQueryCost), a cui si aggiungono le righe valutate per riempire la pagina.
+ * Le statistiche sono il numero di notifiche per partizione mensile mantenuto da MonthOccupancyIndex
+ * e la selettività dei filtri osservata da FilterSelectivityTracker. In assenza di statistiche
+ * viene usata la regola fissa di MultiPageSearch.
+ * <ul>
+ *     <li>ricerche per gruppi: per ogni mese confronta una query per gruppo sull'indice senderIdGroup
+ *     con un'unica query sull'indice del mittente filtrata per gruppo, ed esclude i mesi senza notifiche dei gruppi</li>
+ *     <li>ricerche per mittente e destinatario: esclude la partizione senderId_recipientId se la coppia
+ *     non ha notifiche nell'intervallo di date</li>
+ *     <li>parallelismo: interroga in parallelo solo le partizioni che, in base alle notifiche attese,
+ *     servono a riempire la pagina</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class SearchPlanner {
+
+    private static final int DEFAULT_QUERY_COST = 4;
+
+    private final MonthOccupancyIndex monthOccupancyIndex;
+    private final FilterSelectivityTracker filterSelectivityTracker;
+    private final PnDeliveryConfigs cfg;
+    private final int queryCost;
+
+    public SearchPlanner(MonthOccupancyIndex monthOccupancyIndex, FilterSelectivityTracker filterSelectivityTracker, PnDeliveryConfigs cfg) {
+        this.monthOccupancyIndex = monthOccupancyIndex;
+        this.filterSelectivityTracker = filterSelectivityTracker;
+        this.cfg = cfg;
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        this.queryCost = searchCfg != null && searchCfg.getPlanQueryCost() != null ? searchCfg.getPlanQueryCost() : DEFAULT_QUERY_COST;
+    }
+
+    /**
+     * Piano della ricerca sulla partizione senderId_recipientId, che non è suddivisa per mese
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param partitions partizione unica della ricerca
+     * @param months mesi dell'intervallo di ricerca nel formato yyyyMM
+     * @param resumed true se la ricerca prosegue da una LastEvaluatedKey, la partizione contiene sicuramente righe
+     * @return piano della ricerca
+     */
+    public SearchPlan planSenderRecipient(InputSearchNotificationDto inputSearchNotificationDto, List<String> partitions,
+                                          List<String> months, boolean resumed) {
+        String indexName = NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID;
+        String senderRecipient = MultiPageSearch.senderRecipientPartition( inputSearchNotificationDto );
+        Map<String, Long> counts = monthOccupancyIndex.countNotifications( indexName, senderRecipient, months );
+        boolean counted = counts.size() == months.size();
+        // i mesi con conteggio completo hanno anche l'occupazione registrata: la coppia non ha notifiche
+        // se nessun mese è occupato e tutti i mesi sono stati contati
+        boolean empty = counted && monthOccupancyIndex.filterOccupiedMonths( indexName, senderRecipient, months ).isEmpty();
+        Long expected = counted ? counts.values().stream().mapToLong( Long::longValue ).sum() : null;
+
+        List<String> plannedPartitions = empty && !resumed ? Collections.emptyList() : partitions;
+        StringBuilder description = new StringBuilder( "index=" ).append( indexName )
+                .append( ";partitions=" );
+        if ( !plannedPartitions.isEmpty() ) {
+            description.append( senderRecipient ).append( '~' ).append( expected != null ? expected.toString() : "?" );
+        }
+        return SearchPlan.builder()
+                .partitions( plannedPartitions )
+                .partitionIndexNames( Collections.emptyMap() )
+                .parallelism( 1 )
+                .description( description.toString() )
+                .build();
+    }
+
+    /**
+     * Piano della ricerca sulle partizioni mensili del mittente o del destinatario
+     *
+     * @param inputSearchNotificationDto parametri di ricerca
+     * @param indexName indice previsto dalla ricerca (senderId o recipientId)
+     * @param months mesi da interrogare, dal più recente
+     * @param resumedIndexName se la ricerca prosegue da una LastEvaluatedKey, indice che l'ha prodotta; null altrimenti
+     * @param maxParallelism massimo numero di partizioni interrogabili in parallelo
+     * @return piano della ricerca
+     */
+    public SearchPlan planMonths(InputSearchNotificationDto inputSearchNotificationDto, String indexName, List<String> months,
+                                 String resumedIndexName, int maxParallelism) {
+        String cxId = inputSearchNotificationDto.getSenderReceiverId();
+        Map<String, Long> counts = monthOccupancyIndex.countNotifications( indexName, cxId, months );
+        GroupStatistics groupStatistics = groupStatistics( inputSearchNotificationDto, indexName, months );
+        int size = inputSearchNotificationDto.getSize();
+
+        List<String> partitions = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        Map<String, String> partitionIndexNames = new HashMap<>();
+        List<Double> expectedRows = new ArrayList<>();
+        for ( String month : months ) {
+            boolean resumedMonth = resumedIndexName != null && partitions.isEmpty() && skipped.isEmpty();
+            if ( groupStatistics.isEmpty( month ) && !resumedMonth ) {
+                skipped.add( month );
+                continue;
+            }
+            String defaultIndexName = MultiPageSearch.defaultIndexNameFor( cfg, inputSearchNotificationDto, indexName, month );
+            String partitionIndexName;
+            if ( resumedMonth ) {
+                // la LastEvaluatedKey è valida solo sull'indice che l'ha prodotta
+                partitionIndexName = resumedIndexName;
+            } else {
+                partitionIndexName = chooseIndex( inputSearchNotificationDto, indexName, month, defaultIndexName,
+                        counts.get( month ), groupStatistics, size );
+            }
+            partitions.add( month );
+            partitionIndexNames.put( month, partitionIndexName );
+            expectedRows.add( expectedRows( inputSearchNotificationDto, partitionIndexName, counts.get( month ), groupStatistics.count( month ) ) );
+        }
+
+        int parallelism = parallelism( expectedRows, size, maxParallelism );
+        SearchPlan plan = SearchPlan.builder()
+                .partitions( partitions )
+                .partitionIndexNames( partitionIndexNames )
+                .parallelism( parallelism )
+                .description( describe( indexName, partitions, partitionIndexNames, expectedRows, skipped, parallelism ) )
+                .build();
+        log.debug( "Search plan for cxId={}: {}", cxId, plan.getDescription() );
+        return plan;
+    }
+
+    /**
+     * Per i mesi coperti dall'indice senderIdGroup sceglie tra una query per gruppo e un'unica query
+     * sull'indice del mittente filtrata per gruppo, in base alle righe da leggere per riempire la pagina
+     */
+    private String chooseIndex(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String month,
+                               String defaultIndexName, Long senderCount, GroupStatistics groupStatistics, int size) {
+        Long groupCount = groupStatistics.count( month );
+        if ( !NotificationMetadataEntity.INDEX_SENDER_ID_GROUP.equals( defaultIndexName ) || senderCount == null || groupCount == null ) {
+            return defaultIndexName;
+        }
+        String senderIndexName = MultiPageSearch.senderIndexNameFor( cfg, indexName, month );
+        double groupSelectivity = filterSelectivityTracker.selectivity( inputSearchNotificationDto, NotificationMetadataEntity.INDEX_SENDER_ID_GROUP );
+        double matching = groupCount * groupSelectivity;
+
+        double groupCost = (double) inputSearchNotificationDto.getGroups().size() * queryCost
+                + Math.min( groupCount, size / Math.max( groupSelectivity, Double.MIN_VALUE ) );
+        double senderCost = queryCost
+                + ( matching > 0 ? Math.min( senderCount, size * senderCount / matching ) : senderCount );
+        log.debug( "Month={} groupCost={} senderCost={}", month, groupCost, senderCost );
+        return senderCost < groupCost ? senderIndexName : defaultIndexName;
+    }
+
+    private Double expectedRows(InputSearchNotificationDto inputSearchNotificationDto, String partitionIndexName, Long count, Long groupCount) {
+        boolean byGroups = inputSearchNotificationDto.getGroups() != null && !inputSearchNotificationDto.getGroups().isEmpty();
+        Long matching = byGroups ? groupCount : count;
+        if ( matching == null ) {
+            return null;
+        }
+        return matching * filterSelectivityTracker.selectivity( inputSearchNotificationDto, partitionIndexName );
+    }
+
+    /**
+     * Numero minimo di partizioni che, in base alle righe attese, riempiono la pagina.
+     * Se una delle partizioni non ha statistiche viene usato il parallelismo massimo.
+     */
+    private int parallelism(List<Double> expectedRows, int size, int maxParallelism) {
+        double cumulative = 0;
+        int needed = 0;
+        for ( Double expected : expectedRows ) {
+            if ( expected == null ) {
+                return maxParallelism;
+            }
+            needed += 1;
+            cumulative += expected;
+            if ( cumulative >= size ) {
+                break;
+            }
+        }
+        return Math.max( 1, Math.min( needed, maxParallelism ) );
+    }
+
+    private GroupStatistics groupStatistics(InputSearchNotificationDto inputSearchNotificationDto, String indexName, List<String> months) {
+        List<String> groups = inputSearchNotificationDto.getGroups();
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        String groupIndexSince = searchCfg != null ? searchCfg.getGroupIndexSince() : null;
+        if ( !NotificationMetadataEntity.INDEX_SENDER_ID.equals( indexName ) || groups == null || groups.isEmpty() || groupIndexSince == null ) {
+            return new GroupStatistics( Collections.emptySet(), Collections.emptySet(), Collections.emptyMap() );
+        }
+        Set<String> groupMonths = new HashSet<>();
+        for ( String month : months ) {
+            if ( month.compareTo( groupIndexSince ) >= 0 ) {
+                groupMonths.add( month );
+            }
+        }
+        List<String> groupMonthList = new ArrayList<>( groupMonths );
+        Set<String> occupied = new HashSet<>();
+        Map<String, Long> counts = new HashMap<>();
+        Set<String> uncounted = new HashSet<>();
+        for ( String group : groups ) {
+            String senderGroup = inputSearchNotificationDto.getSenderReceiverId() + "##" + group;
+            occupied.addAll( monthOccupancyIndex.filterOccupiedMonths( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP, senderGroup, groupMonthList ) );
+            Map<String, Long> groupCounts = monthOccupancyIndex.countNotifications( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP, senderGroup, groupMonthList );
+            for ( String month : groupMonthList ) {
+                Long count = groupCounts.get( month );
+                if ( count == null ) {
+                    uncounted.add( month );
+                } else {
+                    counts.merge( month, count, Long::sum );
+                }
+            }
+        }
+        uncounted.forEach( counts::remove );
+        return new GroupStatistics( groupMonths, occupied, counts );
+    }
+
+    private static String describe(String indexName, List<String> partitions, Map<String, String> partitionIndexNames,
+                                   List<Double> expectedRows, List<String> skipped, int parallelism) {
+        StringBuilder description = new StringBuilder( "index=" ).append( indexName )
+                .append( ";parallelism=" ).append( parallelism )
+                .append( ";partitions=" );
+        for ( int i = 0; i < partitions.size(); i++ ) {
+            if ( i > 0 ) {
+                description.append( ',' );
+            }
+            Double expected = expectedRows.get( i );
+            description.append( partitions.get( i ) ).append( ':' ).append( partitionIndexNames.get( partitions.get( i ) ) )
+                    .append( '~' ).append( expected != null ? Long.toString( Math.round( expected ) ) : "?" );
+        }
+        if ( !skipped.isEmpty() ) {
+            description.append( ";skipped=" ).append( String.join( ",", skipped ) );
+        }
+        return description.toString();
+    }
+
+    /**
+     * Statistiche dei gruppi richiesti sui mesi coperti dall'indice senderIdGroup
+     */
+    private static class GroupStatistics {
+        private final Set<String> groupMonths;
+        private final Set<String> occupiedMonths;
+        private final Map<String, Long> counts;
+
+        private GroupStatistics(Set<String> groupMonths, Set<String> occupiedMonths, Map<String, Long> counts) {
+            this.groupMonths = groupMonths;
+            this.occupiedMonths = occupiedMonths;
+            this.counts = counts;
+        }
+
+        /**
+         * Un mese non contiene notifiche dei gruppi se è stato contato per tutti i gruppi e nessun gruppo lo occupa
+         */
+        private boolean isEmpty(String month) {
+            return groupMonths.contains( month ) && counts.containsKey( month ) && !occupiedMonths.contains( month );
+        }
+
+        private Long count(String month) {
+            return counts.get( month );
+        }
+    }
+}
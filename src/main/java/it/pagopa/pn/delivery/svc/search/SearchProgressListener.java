@@ -0,0 +1,30 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+
+import java.util.List;
+
+/**
+ * Riceve i risultati di una ricerca man mano che le query sulle partizioni mensili vengono completate
+ *
+ * @param <K> tipo delle chiavi delle pagine successive
+ */
+public interface SearchProgressListener<K> {
+
+    /**
+     * @param rows righe della pagina richiesta restituite dall'ultima query, con i destinatari già risolti da data-vault
+     */
+    void onRows(List<NotificationSearchRow> rows);
+
+    /**
+     * @param nextPagesKey tutte le chiavi delle pagine successive calcolate fino a questo momento
+     */
+    void onNextPagesKey(List<K> nextPagesKey);
+
+    /**
+     * @return true se il destinatario non è più interessato ai risultati: la ricerca non interroga altre partizioni
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
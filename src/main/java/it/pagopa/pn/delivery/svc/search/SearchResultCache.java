@@ -0,0 +1,174 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cache delle pagine di risultati di ricerca, indicizzate per parametri di ricerca normalizzati.
+ * <p>
+ * Quando vengono scritti nuovi metadati per un mittente o un destinatario viene registrato l'istante
+ * di invalidazione del suo cxId: le pagine la cui ricerca è iniziata prima di tale istante non vengono più restituite.
+ * Gli istanti di invalidazione sono mantenuti per la stessa durata delle pagine, dopo la quale le pagine sono comunque scadute.
+ * L'invalidazione è locale all'istanza: sulle altre istanze una pagina può restare valida al massimo per la durata configurata.
+ */
+@Component
+@Slf4j
+public class SearchResultCache {
+
+    public static final String CACHE_NAME = "pnDeliverySearchResult";
+
+    private static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+    private static final Duration DEFAULT_TTL = Duration.ofSeconds( 30 );
+    private static final int ROW_FIXED_WEIGHT = 256;
+
+    private final boolean enabled;
+    private final Cache<SearchKey, CachedPage> pages;
+    private final Cache<String, Long> invalidations;
+    private final Counter invalidationCounter;
+
+    public SearchResultCache(PnDeliveryConfigs cfg) {
+        PnDeliveryConfigs.Search searchCfg = cfg.getSearch();
+        long maxWeight = searchCfg != null && searchCfg.getCacheMaxWeight() != null ? searchCfg.getCacheMaxWeight() : DEFAULT_MAX_WEIGHT;
+        Duration ttl = searchCfg != null && searchCfg.getCacheTtl() != null ? searchCfg.getCacheTtl() : DEFAULT_TTL;
+        this.enabled = maxWeight > 0 && !ttl.isZero();
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight( Math.max( maxWeight, 0 ) )
+                .weigher( (SearchKey key, CachedPage page) -> page.getWeight() )
+                .expireAfterWrite( ttl )
+                .recordStats()
+                .build();
+        this.invalidations = Caffeine.newBuilder()
+                .expireAfterWrite( ttl )
+                .build();
+        CaffeineCacheMetrics.monitor( Metrics.globalRegistry, pages, CACHE_NAME );
+        this.invalidationCounter = Metrics.counter( "cache.invalidations", "cache", CACHE_NAME );
+    }
+
+    /**
+     * Restituisce la pagina in cache per i parametri di ricerca indicati, altrimenti esegue la ricerca e ne memorizza il risultato
+     *
+     * @param searchDto parametri di ricerca, già adeguati a deleghe e identificativi opachi
+     * @param search ricerca da eseguire in caso di cache miss
+     * @return pagina di risultati
+     */
+    public ResultPaginationDto<NotificationSearchRow, String> getOrSearch(InputSearchNotificationDto searchDto,
+                                                                           Supplier<ResultPaginationDto<NotificationSearchRow, String>> search) {
+        if ( !enabled ) {
+            return search.get();
+        }
+        SearchKey key = SearchKey.of( searchDto );
+        CachedPage cached = pages.getIfPresent( key );
+        if ( cached != null && isValid( key, cached ) ) {
+            log.debug( "Search result cache hit for senderReceiverId={}", key.getSenderReceiverId() );
+            return cached.getResult();
+        }
+        long searchStartedAt = System.nanoTime();
+        ResultPaginationDto<NotificationSearchRow, String> result = search.get();
+        pages.put( key, new CachedPage( result, searchStartedAt, weigh( result ) ) );
+        return result;
+    }
+
+    /**
+     * Invalida le pagine di ricerca del mittente o destinatario indicato
+     *
+     * @param cxId identificativo del mittente o identificativo opaco del destinatario
+     */
+    public void invalidate(String cxId) {
+        if ( enabled && cxId != null ) {
+            invalidations.put( cxId, System.nanoTime() );
+            invalidationCounter.increment();
+        }
+    }
+
+    private boolean isValid(SearchKey key, CachedPage cached) {
+        Long invalidatedAt = invalidations.getIfPresent( key.getSenderReceiverId() );
+        return invalidatedAt == null || cached.getSearchStartedAt() - invalidatedAt > 0;
+    }
+
+    private static int weigh(ResultPaginationDto<NotificationSearchRow, String> result) {
+        long weight = 0;
+        if ( result.getResultsPage() != null ) {
+            for ( NotificationSearchRow row : result.getResultsPage() ) {
+                weight += ROW_FIXED_WEIGHT + length( row.getSubject() ) + length( row.getPaProtocolNumber() );
+                if ( row.getRecipients() != null ) {
+                    for ( String recipient : row.getRecipients() ) {
+                        weight += length( recipient );
+                    }
+                }
+            }
+        }
+        if ( result.getNextPagesKey() != null ) {
+            for ( String nextPageKey : result.getNextPagesKey() ) {
+                weight += length( nextPageKey );
+            }
+        }
+        return (int) Math.min( weight, Integer.MAX_VALUE );
+    }
+
+    private static int length(String value) {
+        return value != null ? 2 * value.length() : 0;
+    }
+
+    @Value
+    static class SearchKey {
+        boolean bySender;
+        String senderReceiverId;
+        Instant startDate;
+        Instant endDate;
+        String mandateId;
+        String filterId;
+        NotificationStatus status;
+        List<String> groups;
+        String subjectRegExp;
+        String iunMatch;
+        Integer size;
+        String nextPagesKey;
+
+        static SearchKey of(InputSearchNotificationDto searchDto) {
+            List<String> groups = null;
+            if ( searchDto.getGroups() != null ) {
+                groups = new ArrayList<>( searchDto.getGroups() );
+                Collections.sort( groups );
+            }
+            return new SearchKey(
+                    searchDto.isBySender(),
+                    searchDto.getSenderReceiverId(),
+                    searchDto.getStartDate(),
+                    searchDto.getEndDate(),
+                    searchDto.getMandateId(),
+                    searchDto.getFilterId(),
+                    searchDto.getStatus(),
+                    groups,
+                    searchDto.getSubjectRegExp(),
+                    searchDto.getIunMatch(),
+                    searchDto.getSize(),
+                    searchDto.getNextPagesKey()
+            );
+        }
+    }
+
+    @Value
+    private static class CachedPage {
+        ResultPaginationDto<NotificationSearchRow, String> result;
+        long searchStartedAt;
+        int weight;
+    }
+}
@@ -1,16 +1,39 @@
 package it.pagopa.pn.delivery.utils;
 
+import lombok.Value;
 import org.modelmapper.ModelMapper;
 import org.modelmapper.convention.MatchingStrategies;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Fornisce i ModelMapper per coppia di classi sorgente e destinazione.
+ * <p>
+ * L'introspezione delle classi per costruire la TypeMap è costosa, quindi ogni ModelMapper viene creato e configurato
+ * una sola volta per coppia e poi riusato: dopo la configurazione il ModelMapper è thread-safe.
+ * I ModelMapper restituiti sono condivisi e non devono essere configurati ulteriormente dai chiamanti.
+ */
 @Component
 public class ModelMapperFactory {
 
+    private final ConcurrentMap<MapperKey, ModelMapper> mappers = new ConcurrentHashMap<>();
+
     public <S,D> ModelMapper createModelMapper( Class<S> sourceClass, Class<D> destinationClass ){
+        return mappers.computeIfAbsent( new MapperKey( sourceClass, destinationClass ), key -> buildModelMapper( sourceClass, destinationClass ) );
+    }
+
+    private static <S,D> ModelMapper buildModelMapper( Class<S> sourceClass, Class<D> destinationClass ){
         ModelMapper modelMapper = new ModelMapper();
         modelMapper.createTypeMap( sourceClass, destinationClass );
         modelMapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
         return modelMapper;
     }
+
+    @Value
+    private static class MapperKey {
+        Class<?> sourceClass;
+        Class<?> destinationClass;
+    }
 }
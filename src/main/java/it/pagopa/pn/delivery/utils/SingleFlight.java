@@ -0,0 +1,87 @@
+package it.pagopa.pn.delivery.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Unisce le letture concorrenti della stessa chiave: la prima chiamata esegue la lettura nel proprio thread,
+ * le chiamate che arrivano mentre è in corso ne attendono il risultato, o l'eccezione, senza ripeterla.
+ * Terminata la lettura la chiave viene rilasciata, quindi i risultati non vengono memorizzati.
+ *
+ * @param <K> chiave della lettura
+ * @param <V> risultato della lettura
+ */
+public class SingleFlight<K, V> {
+
+    private static final String LOADS_METRIC = "pn.delivery.singleflight.loads";
+    private static final String COLLAPSED_METRIC = "pn.delivery.singleflight.collapsed";
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter loadCounter;
+    private final Counter collapsedCounter;
+
+    /**
+     * @param operation nome della lettura nel tag delle metriche
+     */
+    public SingleFlight(String operation) {
+        this.loadCounter = Metrics.counter( LOADS_METRIC, "operation", operation );
+        this.collapsedCounter = Metrics.counter( COLLAPSED_METRIC, "operation", operation );
+    }
+
+    /**
+     * Esegue la lettura della chiave, o attende quella già in corso
+     *
+     * @param key chiave della lettura
+     * @param loader lettura da eseguire se non ce n'è una in corso per la chiave
+     * @return risultato della lettura
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent( key, flight );
+        if ( existing != null ) {
+            collapsedCounter.increment();
+            return await( existing );
+        }
+
+        loadCounter.increment();
+        try {
+            V result = loader.get();
+            inFlight.remove( key, flight );
+            flight.complete( result );
+            return result;
+        } catch ( RuntimeException | Error ex ) {
+            inFlight.remove( key, flight );
+            flight.completeExceptionally( ex );
+            throw ex;
+        }
+    }
+
+    /**
+     * Rilascia la chiave: le chiamate successive eseguono una nuova lettura anche se quella in corso non è terminata
+     */
+    public void forget(K key) {
+        inFlight.remove( key );
+    }
+
+    private V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch ( CompletionException ex ) {
+            Throwable cause = ex.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new PnInternalException( "Coalesced load failed", cause );
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+class FilterSelectivityTrackerTest {
+
+    private FilterSelectivityTracker tracker;
+
+    @BeforeEach
+    void setup() {
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.Search search = new PnDeliveryConfigs.Search();
+        search.setMaxFetchLimit( 100 );
+        cfg.setSearch( search );
+        tracker = new FilterSelectivityTracker( cfg );
+    }
+
+    @Test
+    void fetchLimitWithoutFilters() {
+        InputSearchNotificationDto searchDto = newSearchDto( null );
+        tracker.record( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10, 0 );
+
+        Assertions.assertEquals( 10, tracker.fetchLimit( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10 ) );
+    }
+
+    @Test
+    void fetchLimitFollowsSelectivity() {
+        InputSearchNotificationDto searchDto = newSearchDto( NotificationStatus.VIEWED );
+        Assertions.assertEquals( 10, tracker.fetchLimit( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10 ) );
+
+        tracker.record( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10, 2 );
+        Assertions.assertEquals( 50, tracker.fetchLimit( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10 ) );
+
+        tracker.record( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 50, 0 );
+        Assertions.assertEquals( 72, tracker.fetchLimit( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10 ) );
+
+        for ( int i = 0; i < 20; i++ ) {
+            tracker.record( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 100, 0 );
+        }
+        Assertions.assertEquals( 100, tracker.fetchLimit( searchDto, NotificationMetadataEntity.INDEX_SENDER_ID, 10 ) );
+    }
+
+    private InputSearchNotificationDto newSearchDto(NotificationStatus status) {
+        return new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .status( status )
+                .size( 10 )
+                .build();
+    }
+}
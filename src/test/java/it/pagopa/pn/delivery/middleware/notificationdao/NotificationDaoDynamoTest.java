@@ -1,7 +1,9 @@
 package it.pagopa.pn.delivery.middleware.notificationdao;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import it.pagopa.pn.commons.abstractions.IdConflictException;
 import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.*;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
@@ -24,14 +26,21 @@ import org.modelmapper.ModelMapper;
 import org.modelmapper.convention.MatchingStrategies;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 class NotificationDaoDynamoTest {
 
     private NotificationDaoDynamo dao;
+    private NotificationEntityDao entityDao;
+    private DtoToEntityNotificationMapper dto2Entity;
     private EntityToDtoNotificationMapper entity2dto;
     private ModelMapperFactory modelMapperFactory;
     private PnDataVaultClientImpl pnDataVaultClient;
@@ -53,12 +62,15 @@ class NotificationDaoDynamoTest {
 
     @BeforeEach
     void setup() {
-        DtoToEntityNotificationMapper dto2Entity = new DtoToEntityNotificationMapper();
+        dto2Entity = new DtoToEntityNotificationMapper();
         entity2dto = new EntityToDtoNotificationMapper();
-        NotificationEntityDao entityDao = new EntityDaoMock();
+        entityDao = Mockito.spy( new EntityDaoMock() );
         NotificationMetadataEntityDao metadataEntityDao = new MetadataEntityDaoMock();
         pnDataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
-        dao = new NotificationDaoDynamo( entityDao, metadataEntityDao, dto2Entity, entity2dto, pnDataVaultClient);
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        dao = new NotificationDaoDynamo( entityDao, metadataEntityDao, dto2Entity, entity2dto, pnDataVaultClient, Mockito.mock( SubjectTrigramIndex.class ),
+                new NotificationEntityCache( new ObjectMapper().findAndRegisterModules(), cfg ), new RecipientClearDataCache( cfg ),
+                Executors.newFixedThreadPool( 2 ), cfg );
     }
 
     @Test
@@ -160,6 +172,291 @@ class NotificationDaoDynamoTest {
         //Assertions.assertEquals( notification, saved.get() );
     }
 
+    @Test
+    void getNotificationByIunLooksUpDataVaultConcurrently() throws IdConflictException {
+        // GIVEN
+        // notifica scritta da un'altra istanza: non è nelle cache
+        InternalNotification notification = newNotificationWithoutPayments( );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( notification ) );
+
+        // ciascuna chiamata attende l'altra: completano solo se eseguite in parallelo
+        CountDownLatch bothStarted = new CountDownLatch( 2 );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenAnswer( invocation -> {
+            bothStarted.countDown();
+            if ( !bothStarted.await( 2, TimeUnit.SECONDS ) ) {
+                throw new IllegalStateException( "Data-vault lookups not concurrent" );
+            }
+            return Collections.singletonList( new BaseRecipientDto().internalId( "opaqueTaxId" ).taxId( "recipientTaxId" ).denomination( "recipientDenomination" ) );
+        } );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( Mockito.anyString() ) ).thenAnswer( invocation -> {
+            bothStarted.countDown();
+            if ( !bothStarted.await( 2, TimeUnit.SECONDS ) ) {
+                throw new IllegalStateException( "Data-vault lookups not concurrent" );
+            }
+            return Collections.singletonList( new NotificationRecipientAddressesDto().digitalAddress( new AddressDto().value( "digitalAddress" ) ) );
+        } );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getNotificationByIun( notification.getIun() );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        NotificationRecipient recipient = saved.get().getRecipients().get( 0 );
+        Assertions.assertEquals( "recipientTaxId", recipient.getTaxId() );
+        Assertions.assertEquals( "digitalAddress", recipient.getDigitalDomicile().getAddress() );
+    }
+
+    @Test
+    void getNotificationByIunDataVaultTimeout() throws IdConflictException {
+        // GIVEN
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.DataVault dataVaultCfg = new PnDeliveryConfigs.DataVault();
+        dataVaultCfg.setLookupTimeout( Duration.ofMillis( 100 ) );
+        cfg.setDataVault( dataVaultCfg );
+        NotificationDaoDynamo timeoutDao = new NotificationDaoDynamo( entityDao, new MetadataEntityDaoMock(), new DtoToEntityNotificationMapper(),
+                entity2dto, pnDataVaultClient, Mockito.mock( SubjectTrigramIndex.class ),
+                new NotificationEntityCache( new ObjectMapper().findAndRegisterModules(), cfg ), new RecipientClearDataCache( cfg ),
+                Executors.newFixedThreadPool( 2 ), cfg );
+        InternalNotification notification = newNotificationWithoutPayments( );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( notification ) );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenReturn( Collections.emptyList() );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( Mockito.anyString() ) ).thenAnswer( invocation -> {
+            Thread.sleep( 5000 );
+            return Collections.emptyList();
+        } );
+
+        // WHEN
+        Executable todo = () -> timeoutDao.getNotificationByIun( notification.getIun() );
+
+        // THEN
+        Assertions.assertThrows( PnInternalException.class, todo );
+    }
+
+    @Test
+    void getNotificationByIunDataVaultExecutorSaturated() throws IdConflictException {
+        // GIVEN
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        ExecutorService rejectingExecutor = Executors.newSingleThreadExecutor();
+        rejectingExecutor.shutdown();
+        NotificationDaoDynamo saturatedDao = new NotificationDaoDynamo( entityDao, new MetadataEntityDaoMock(), new DtoToEntityNotificationMapper(),
+                entity2dto, pnDataVaultClient, Mockito.mock( SubjectTrigramIndex.class ),
+                new NotificationEntityCache( new ObjectMapper().findAndRegisterModules(), cfg ), new RecipientClearDataCache( cfg ),
+                rejectingExecutor, cfg );
+        InternalNotification notification = newNotificationWithoutPayments( );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( notification ) );
+
+        // WHEN
+        Executable todo = () -> saturatedDao.getNotificationByIun( notification.getIun() );
+
+        // THEN
+        // la chiamata rifiutata non viene eseguita sul thread della richiesta
+        Assertions.assertThrows( PnInternalException.class, todo );
+        Mockito.verifyNoInteractions( pnDataVaultClient );
+    }
+
+    @Test
+    void getNotificationByIunAfterInsertIsCacheHit() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        Mockito.when( pnDataVaultClient.ensureRecipientByExternalId( Mockito.any(RecipientType.class), Mockito.anyString() ) ).thenReturn( "opaqueTaxId" );
+        this.dao.addNotification( notification );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getNotificationByIun( "IUN_01" );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        NotificationRecipient recipient = saved.get().getRecipients().get( 0 );
+        Assertions.assertEquals( "Codice Fiscale 01", recipient.getTaxId() );
+        Assertions.assertEquals( "Nome Cognome/Ragione Sociale", recipient.getDenomination() );
+        Assertions.assertEquals( "account@dominio.it", recipient.getDigitalDomicile().getAddress() );
+        Assertions.assertEquals( "zip", recipient.getPhysicalAddress().getZip() );
+        Assertions.assertEquals( Collections.singletonList( "opaqueTaxId" ), saved.get().getRecipientIds() );
+        Mockito.verify( entityDao, Mockito.never() ).get( Mockito.any( Key.class ) );
+        Mockito.verify( pnDataVaultClient, Mockito.never() ).getRecipientDenominationByInternalId( Mockito.anyList() );
+        Mockito.verify( pnDataVaultClient, Mockito.never() ).getNotificationAddressesByIun( Mockito.anyString() );
+    }
+
+    @Test
+    void getNotificationByIunCachesMiss() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( notification ) );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) )
+                .thenReturn( Collections.singletonList( new BaseRecipientDto().internalId( "Codice Fiscale 01" ).taxId( "recipientTaxId" ).denomination( "recipientDenomination" ) ) );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( Mockito.anyString() ) )
+                .thenReturn( Collections.singletonList( new NotificationRecipientAddressesDto().digitalAddress( new AddressDto().value( "digitalAddress" ) ) ) );
+
+        // WHEN
+        Optional<InternalNotification> first = this.dao.getNotificationByIun( "IUN_01" );
+        Optional<InternalNotification> second = this.dao.getNotificationByIun( "IUN_01" );
+
+        // THEN
+        Assertions.assertTrue( first.isPresent() );
+        Assertions.assertTrue( second.isPresent() );
+        Assertions.assertNotSame( first.get(), second.get() );
+        Assertions.assertEquals( "recipientTaxId", second.get().getRecipients().get( 0 ).getTaxId() );
+        Assertions.assertEquals( "digitalAddress", second.get().getRecipients().get( 0 ).getDigitalDomicile().getAddress() );
+        Mockito.verify( entityDao, Mockito.times( 1 ) ).get( Mockito.any( Key.class ) );
+        Mockito.verify( pnDataVaultClient, Mockito.times( 1 ) ).getRecipientDenominationByInternalId( Mockito.anyList() );
+        Mockito.verify( pnDataVaultClient, Mockito.times( 1 ) ).getNotificationAddressesByIun( "IUN_01" );
+    }
+
+    @Test
+    void getNotificationByIunNotFoundIsNotCached() throws IdConflictException {
+        // GIVEN
+        Assertions.assertFalse( this.dao.getNotificationByIun( "IUN_01" ).isPresent() );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( newNotificationWithoutPayments() ) );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenReturn( Collections.emptyList() );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( Mockito.anyString() ) ).thenReturn( Collections.emptyList() );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getNotificationByIun( "IUN_01" );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+    }
+
+    @Test
+    void getOpaqueNotificationByIunWithoutDataVault() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( notification ) );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getOpaqueNotificationByIun( "IUN_01", false );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        NotificationRecipient recipient = saved.get().getRecipients().get( 0 );
+        Assertions.assertEquals( "Codice Fiscale 01", recipient.getTaxId() );
+        Assertions.assertEquals( List.of( "Codice Fiscale 01" ), saved.get().getRecipientIds() );
+        Assertions.assertNull( recipient.getDigitalDomicile() );
+        Assertions.assertEquals( "0", saved.get().getDocuments().get( 0 ).getDocIdx() );
+        Mockito.verifyNoInteractions( pnDataVaultClient );
+    }
+
+    @Test
+    void getOpaqueNotificationByIunWithAddresses() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( notification ) );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( "IUN_01" ) ).thenReturn( Collections.singletonList( new NotificationRecipientAddressesDto()
+                .denomination( "recipientDenomination" )
+                .digitalAddress( new AddressDto().value( "digitalAddress" ) ) ) );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenReturn( Collections.singletonList( new BaseRecipientDto()
+                .internalId( "Codice Fiscale 01" )
+                .taxId( "taxId" )
+                .denomination( "registryDenomination" ) ) );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getOpaqueNotificationByIun( "IUN_01", true );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        NotificationRecipient recipient = saved.get().getRecipients().get( 0 );
+        Assertions.assertEquals( "Codice Fiscale 01", recipient.getTaxId() );
+        Assertions.assertEquals( List.of( "Codice Fiscale 01" ), saved.get().getRecipientIds() );
+        // la denominazione è quella indicata nella notifica, non quella dell'anagrafica
+        Assertions.assertEquals( "recipientDenomination", recipient.getDenomination() );
+        Assertions.assertEquals( "digitalAddress", recipient.getDigitalDomicile().getAddress() );
+        Mockito.verify( pnDataVaultClient, Mockito.never() ).getRecipientDenominationByInternalId( Mockito.anyList() );
+    }
+
+    @Test
+    void getOpaqueNotificationByIunAfterInsertUsesCachedAddresses() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        Mockito.when( pnDataVaultClient.ensureRecipientByExternalId( Mockito.any(RecipientType.class), Mockito.anyString() ) ).thenReturn( "opaqueTaxId" );
+        this.dao.addNotification( notification );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getOpaqueNotificationByIun( "IUN_01", true );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        NotificationRecipient recipient = saved.get().getRecipients().get( 0 );
+        Assertions.assertEquals( "opaqueTaxId", recipient.getTaxId() );
+        Assertions.assertEquals( "Nome Cognome/Ragione Sociale", recipient.getDenomination() );
+        Assertions.assertEquals( "account@dominio.it", recipient.getDigitalDomicile().getAddress() );
+        Mockito.verify( pnDataVaultClient, Mockito.never() ).getNotificationAddressesByIun( Mockito.anyString() );
+    }
+
+    @Test
+    void getNotificationWithLastStatusByIunAfterInsert() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        Mockito.when( pnDataVaultClient.ensureRecipientByExternalId( Mockito.any(RecipientType.class), Mockito.anyString() ) ).thenReturn( "opaqueTaxId" );
+        this.dao.addNotification( notification );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getNotificationWithLastStatusByIun( "IUN_01" );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        Assertions.assertEquals( NotificationStatus.IN_VALIDATION, saved.get().getNotificationStatus() );
+        Assertions.assertNull( saved.get().getRefinementDate() );
+        Assertions.assertEquals( "Codice Fiscale 01", saved.get().getRecipients().get( 0 ).getTaxId() );
+        // l'ultimo stato è letto da DynamoDB anche se l'entity è in cache
+        Mockito.verify( entityDao, Mockito.times( 1 ) ).get( Mockito.any( Key.class ) );
+    }
+
+    @Test
+    void getNotificationWithLastStatusByIunWithoutLastStatus() throws IdConflictException {
+        // GIVEN
+        entityDao.putIfAbsent( dto2Entity.dto2Entity( newNotificationWithoutPayments() ) );
+        Mockito.when( pnDataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenReturn( Collections.emptyList() );
+        Mockito.when( pnDataVaultClient.getNotificationAddressesByIun( Mockito.anyString() ) ).thenReturn( Collections.emptyList() );
+
+        // WHEN
+        Optional<InternalNotification> saved = this.dao.getNotificationWithLastStatusByIun( "IUN_01" );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        Assertions.assertNull( saved.get().getNotificationStatus() );
+    }
+
+    @Test
+    void updateLastStatusSetsRefinementDateOnce() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        Mockito.when( pnDataVaultClient.ensureRecipientByExternalId( Mockito.any(RecipientType.class), Mockito.anyString() ) ).thenReturn( "opaqueTaxId" );
+        this.dao.addNotification( notification );
+        Instant acceptedAt = Instant.parse( "2022-06-21T12:00:00.000Z" );
+        Instant viewedAt = Instant.parse( "2022-06-22T12:00:00.000Z" );
+        Instant effectiveAt = Instant.parse( "2022-06-30T12:00:00.000Z" );
+
+        // WHEN
+        this.dao.updateLastStatus( "IUN_01", NotificationStatus.ACCEPTED, acceptedAt );
+        this.dao.updateLastStatus( "IUN_01", NotificationStatus.VIEWED, viewedAt );
+        this.dao.updateLastStatus( "IUN_01", NotificationStatus.EFFECTIVE_DATE, effectiveAt );
+        Optional<InternalNotification> saved = this.dao.getNotificationWithLastStatusByIun( "IUN_01" );
+
+        // THEN
+        Assertions.assertTrue( saved.isPresent() );
+        Assertions.assertEquals( NotificationStatus.EFFECTIVE_DATE, saved.get().getNotificationStatus() );
+        Assertions.assertEquals( Date.from( viewedAt ), saved.get().getRefinementDate() );
+        Mockito.verify( entityDao ).updateLastStatus( "IUN_01", "ACCEPTED", acceptedAt, false );
+        Mockito.verify( entityDao ).updateLastStatus( "IUN_01", "VIEWED", viewedAt, true );
+    }
+
+    @Test
+    void getIunByRequest() throws IdConflictException {
+        // GIVEN
+        InternalNotification notification = newNotificationWithoutPayments( );
+        notification.setIdempotenceToken( "idempotenceToken_01" );
+        Mockito.when( pnDataVaultClient.ensureRecipientByExternalId( Mockito.any(RecipientType.class), Mockito.anyString() ) ).thenReturn( "opaqueTaxId" );
+        this.dao.addNotification( notification );
+
+        // WHEN
+        Optional<String> iun = this.dao.getIunByRequest( notification.getSenderPaId(), notification.getPaProtocolNumber(), "idempotenceToken_01" );
+        Optional<String> otherToken = this.dao.getIunByRequest( notification.getSenderPaId(), notification.getPaProtocolNumber(), null );
+
+        // THEN
+        Assertions.assertEquals( Optional.of( "IUN_01" ), iun );
+        Assertions.assertFalse( otherToken.isPresent() );
+    }
+
     @Test
     void testWrongRecipientJson() {
         // GIVEN
@@ -194,7 +491,7 @@ class NotificationDaoDynamoTest {
 
     }
 
-    private static class EntityDaoMock implements NotificationEntityDao {
+    static class EntityDaoMock implements NotificationEntityDao {
 
         private final Map<Key, NotificationEntity> storage = new ConcurrentHashMap<>();
 
@@ -228,6 +525,30 @@ class NotificationDaoDynamoTest {
         public void delete(Key key) {
             storage.remove( key );
         }
+
+        @Override
+        public void updateLastStatus(String iun, String lastStatus, Instant lastStatusTimestamp, boolean refinement) {
+            NotificationEntity entity = storage.get( Key.builder().partitionValue( iun ).build() );
+            if ( entity != null ) {
+                if ( entity.getLastStatusTimestamp() == null || entity.getLastStatusTimestamp() <= lastStatusTimestamp.toEpochMilli() ) {
+                    entity.setLastStatus( lastStatus );
+                    entity.setLastStatusTimestamp( lastStatusTimestamp.toEpochMilli() );
+                }
+                if ( refinement && entity.getRefinementDate() == null ) {
+                    entity.setRefinementDate( lastStatusTimestamp );
+                }
+            }
+        }
+
+        @Override
+        public Optional<String> getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken) {
+            return storage.values().stream()
+                    .filter( entity -> senderPaId.equals( entity.getSenderPaId() ) )
+                    .filter( entity -> paProtocolNumber.equals( entity.getPaNotificationId() ) )
+                    .filter( entity -> Objects.equals( idempotenceToken, entity.getIdempotenceToken() ) )
+                    .map( NotificationEntity::getIun )
+                    .findFirst();
+        }
     }
 
     private static class MetadataEntityDaoMock implements NotificationMetadataEntityDao {
@@ -256,6 +577,21 @@ class NotificationDaoDynamoTest {
         public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
             return null;
         }
+
+        @Override
+        public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchKeysForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
+            return null;
+        }
+
+        @Override
+        public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchByIunRecipientId(InputSearchNotificationDto inputSearchNotificationDto, String iunRecipientId) {
+            return null;
+        }
+
+        @Override
+        public List<NotificationMetadataEntity> batchGet(List<Key> keys) {
+            return Collections.emptyList();
+        }
     }
 
     private InternalNotification newNotificationWithoutPayments() {
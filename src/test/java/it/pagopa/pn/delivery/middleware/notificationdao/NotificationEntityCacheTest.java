@@ -0,0 +1,95 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.FullSentNotification;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NewNotificationRequest;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationRecipientEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.RecipientTypeEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class NotificationEntityCacheTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void getLoadsOnceAndCaches() {
+        NotificationEntityCache cache = new NotificationEntityCache( OBJECT_MAPPER, new PnDeliveryConfigs() );
+        AtomicInteger loads = new AtomicInteger();
+
+        Optional<NotificationEntity> first = cache.get( "IUN_01", () -> {
+            loads.incrementAndGet();
+            return Optional.of( newEntity( "IUN_01" ) );
+        } );
+        Optional<NotificationEntity> second = cache.get( "IUN_01", () -> {
+            loads.incrementAndGet();
+            return Optional.of( newEntity( "IUN_01" ) );
+        } );
+
+        Assertions.assertTrue( first.isPresent() );
+        Assertions.assertEquals( first.get(), second.orElse( null ) );
+        Assertions.assertEquals( 1, loads.get() );
+    }
+
+    @Test
+    void getDoesNotCacheMissingNotification() {
+        NotificationEntityCache cache = new NotificationEntityCache( OBJECT_MAPPER, new PnDeliveryConfigs() );
+
+        Assertions.assertFalse( cache.get( "IUN_01", Optional::empty ).isPresent() );
+        Assertions.assertTrue( cache.get( "IUN_01", () -> Optional.of( newEntity( "IUN_01" ) ) ).isPresent() );
+    }
+
+    @Test
+    void putIsWriteThrough() {
+        NotificationEntityCache cache = new NotificationEntityCache( OBJECT_MAPPER, new PnDeliveryConfigs() );
+        NotificationEntity entity = newEntity( "IUN_01" );
+
+        cache.put( entity );
+
+        Assertions.assertEquals( entity, cache.get( "IUN_01", () -> {
+            throw new IllegalStateException( "Unexpected load" );
+        } ).orElse( null ) );
+    }
+
+    @Test
+    void getReturnsCopies() {
+        NotificationEntityCache cache = new NotificationEntityCache( new ObjectMapper(), new PnDeliveryConfigs() );
+        NotificationEntity entity = newEntity( "IUN_01" );
+        cache.put( entity );
+
+        // le modifiche all'entity inserita o restituita non sono visibili alle letture successive
+        entity.setSubject( "Changed after put" );
+        NotificationEntity first = cache.get( "IUN_01", Optional::empty ).orElse( null );
+        Assertions.assertNotNull( first );
+        first.setSubject( "Changed by request" );
+        first.getRecipients().get( 0 ).setRecipientId( "changedTaxId" );
+        NotificationEntity second = cache.get( "IUN_01", Optional::empty ).orElse( null );
+
+        Assertions.assertNotSame( first, second );
+        Assertions.assertEquals( newEntity( "IUN_01" ), second );
+    }
+
+    private NotificationEntity newEntity(String iun) {
+        return NotificationEntity.builder()
+                .iun( iun )
+                .paNotificationId( "protocol_01" )
+                .subject( "Subject 01" )
+                .sentAt( Instant.parse( "2022-06-21T11:44:28.000Z" ) )
+                .senderPaId( "pa_02" )
+                .notificationFeePolicy( NewNotificationRequest.NotificationFeePolicyEnum.FLAT_RATE )
+                .physicalCommunicationType( FullSentNotification.PhysicalCommunicationTypeEnum.SIMPLE_REGISTERED_LETTER )
+                .recipients( Collections.singletonList( NotificationRecipientEntity.builder()
+                        .recipientType( RecipientTypeEntity.PF )
+                        .recipientId( "opaqueTaxId" )
+                        .build() ) )
+                .documents( Collections.emptyList() )
+                .build();
+    }
+}
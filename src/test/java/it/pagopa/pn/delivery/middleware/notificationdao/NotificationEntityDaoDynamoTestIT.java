@@ -29,7 +29,8 @@ import java.util.Optional;
         "aws.endpoint-url=http://localhost:4566",
         "pn.delivery.notification-dao.table-name=Notifications",
         "pn.delivery.notification-cost-dao.table-name=NotificationsCost",
-        "pn.delivery.notification-metadata-dao.table-name=NotificationsMetadata"
+        "pn.delivery.notification-metadata-dao.table-name=NotificationsMetadata",
+        "pn.delivery.cursor.hmac-secret=test-secret"
     })
 @SpringBootTest
 class NotificationEntityDaoDynamoTestIT {
@@ -53,6 +54,9 @@ class NotificationEntityDaoDynamoTestIT {
         Key controlKey = Key.builder()
                 .partitionValue( controlIun )
                 .build();
+        Key requestLookupKey = Key.builder()
+                .partitionValue( getRequestLookupIun( notificationToInsert ) )
+                .build();
         Key costKey1 = Key.builder()
                 .partitionValue( "creditorTaxId##noticeCode" )
                 .build();
@@ -62,6 +66,7 @@ class NotificationEntityDaoDynamoTestIT {
 
         removeItemFromDb( key );
         removeItemFromDb( controlKey );
+        removeItemFromDb( requestLookupKey );
         removeFromNotificationCostDb( costKey1 );
         removeFromNotificationCostDb( costKey2 );
 
@@ -71,14 +76,48 @@ class NotificationEntityDaoDynamoTestIT {
         //Then
         Optional<NotificationEntity> elementFromDb = notificationEntityDao.get( key );
         Optional<NotificationEntity> controlElementFromDb = notificationEntityDao.get( controlKey );
+        Optional<NotificationEntity> requestLookupElementFromDb = notificationEntityDao.get( requestLookupKey );
 
         Assertions.assertTrue( elementFromDb.isPresent() );
         Assertions.assertTrue( controlElementFromDb.isPresent() );
+        Assertions.assertTrue( requestLookupElementFromDb.isPresent() );
         Assertions.assertEquals( notificationToInsert, elementFromDb.get() );
         Assertions.assertEquals( controlIun, controlElementFromDb.get().getIun() );
+        Assertions.assertEquals( notificationToInsert.getIun(), controlElementFromDb.get().getControlledIun() );
+        Assertions.assertEquals( notificationToInsert.getIun(), requestLookupElementFromDb.get().getControlledIun() );
+        Assertions.assertEquals( Optional.of( notificationToInsert.getIun() ),
+                notificationEntityDao.getIunByRequest( "pa_02", "protocol_01", "idempotenceToken_01" ) );
 
     }
 
+    @Test
+    void updateLastStatusKeepsNewerStatus() throws IdConflictException {
+        //Given
+        NotificationEntity notificationToInsert = newNotification();
+        Key key = Key.builder()
+                .partitionValue(notificationToInsert.getIun())
+                .build();
+        removeItemFromDb( key );
+        removeItemFromDb( Key.builder().partitionValue( getControlIun( notificationToInsert ) ).build() );
+        removeItemFromDb( Key.builder().partitionValue( getRequestLookupIun( notificationToInsert ) ).build() );
+        removeFromNotificationCostDb( Key.builder().partitionValue( "creditorTaxId##noticeCode" ).build() );
+        removeFromNotificationCostDb( Key.builder().partitionValue( "77777777777##002720356512737953" ).build() );
+        notificationEntityDao.putIfAbsent( notificationToInsert );
+        Instant viewedAt = Instant.parse( "2022-06-21T11:00:00.000Z" );
+        Instant deliveredAt = Instant.parse( "2022-06-21T12:00:00.000Z" );
+
+        //When
+        notificationEntityDao.updateLastStatus( notificationToInsert.getIun(), "DELIVERED", deliveredAt, false );
+        // aggiornamento arrivato in ritardo: non sovrascrive lo stato ma salva la data di perfezionamento
+        notificationEntityDao.updateLastStatus( notificationToInsert.getIun(), "VIEWED", viewedAt, true );
+
+        //Then
+        NotificationEntity elementFromDb = notificationEntityDao.get( key ).orElseThrow();
+        Assertions.assertEquals( "DELIVERED", elementFromDb.getLastStatus() );
+        Assertions.assertEquals( deliveredAt.toEpochMilli(), elementFromDb.getLastStatusTimestamp() );
+        Assertions.assertEquals( viewedAt, elementFromDb.getRefinementDate() );
+    }
+
     @Test
     void getNotificationByPayment() {
         Optional<NotificationCost> result = notificationCostEntityDao.getNotificationByPaymentInfo( "creditorTaxId", "noticeCode" );
@@ -94,11 +133,19 @@ class NotificationEntityDaoDynamoTestIT {
                 + "##" + notificationToInsert.getCancelledIun();
     }
 
+    @NotNull
+    private String getRequestLookupIun(NotificationEntity notificationToInsert) {
+        return "REQUEST##" + notificationToInsert.getSenderPaId()
+                + "##" + notificationToInsert.getPaNotificationId()
+                + "##" + notificationToInsert.getIdempotenceToken();
+    }
+
 
     private NotificationEntity newNotification() {
         return NotificationEntity.builder()
                 .iun("IUN_01")
                 .paNotificationId("protocol_01")
+                .idempotenceToken("idempotenceToken_01")
                 .subject("Subject 01")
                 .physicalCommunicationType(FullSentNotification.PhysicalCommunicationTypeEnum.REGISTERED_LETTER_890)
                 .cancelledByIun("IUN_05")
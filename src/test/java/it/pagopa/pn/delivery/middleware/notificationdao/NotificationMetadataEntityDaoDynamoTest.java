@@ -17,7 +17,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -120,6 +122,28 @@ class NotificationMetadataEntityDaoDynamoTest {
                     .resultsPage( Collections.singletonList( entityToDto.entity2Dto( getResult ) ) )
                     .build();
         }
+
+        @Override
+        public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchKeysForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
+            return null;
+        }
+
+        @Override
+        public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchByIunRecipientId(InputSearchNotificationDto inputSearchNotificationDto, String iunRecipientId) {
+            return null;
+        }
+
+        @Override
+        public List<NotificationMetadataEntity> batchGet(List<Key> keys) {
+            List<NotificationMetadataEntity> result = new ArrayList<>();
+            for ( Key key : keys ) {
+                NotificationMetadataEntity entity = storage.get( key );
+                if ( entity != null ) {
+                    result.add( entity );
+                }
+            }
+            return result;
+        }
     }
 
 }
\ No newline at end of file
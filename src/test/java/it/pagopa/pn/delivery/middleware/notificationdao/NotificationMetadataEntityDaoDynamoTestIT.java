@@ -38,7 +38,8 @@ import java.util.*;
         "aws.profile-name=${PN_AWS_PROFILE_NAME:default}",
         "aws.endpoint-url=http://localhost:4566",
         "pn.delivery.notification-dao.table-name=Notifications",
-        "pn.delivery.notification-metadata-dao.table-name=NotificationsMetadata"
+        "pn.delivery.notification-metadata-dao.table-name=NotificationsMetadata",
+        "pn.delivery.cursor.hmac-secret=test-secret"
 })
 @SpringBootTest
 class NotificationMetadataEntityDaoDynamoTestIT {
@@ -432,6 +433,43 @@ class NotificationMetadataEntityDaoDynamoTestIT {
         Assertions.assertEquals( metadataEntityToInsert, elementFromDb.get() );
     }
 
+    @Test
+    void searchByIunRecipientIdChecksSenderFilter() throws IdConflictException {
+        //Given
+        NotificationMetadataEntity metadataEntityToInsert = newNotificationMetadata();
+        notificationMetadataEntityDao.putIfAbsent( metadataEntityToInsert );
+
+        Mockito.when( dataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) ).thenReturn( getDataVaultResults() );
+
+        InputSearchNotificationDto otherSenderSearch = new InputSearchNotificationDto.Builder()
+                .bySender( false )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-05-30T00:00:00.00Z" ) )
+                .senderReceiverId( OPAQUE_TAX_ID_R1 )
+                .filterId( "other_pa" )
+                .size( 10 )
+                .build();
+        InputSearchNotificationDto sameSenderSearch = new InputSearchNotificationDto.Builder()
+                .bySender( false )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-05-30T00:00:00.00Z" ) )
+                .senderReceiverId( OPAQUE_TAX_ID_R1 )
+                .filterId( "c_h501" )
+                .size( 10 )
+                .build();
+
+        //When
+        ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> otherSenderResult = notificationMetadataEntityDao.searchByIunRecipientId(
+                otherSenderSearch, metadataEntityToInsert.getIun_recipientId() );
+        ResultPaginationDto<NotificationSearchRow,PnLastEvaluatedKey> sameSenderResult = notificationMetadataEntityDao.searchByIunRecipientId(
+                sameSenderSearch, metadataEntityToInsert.getIun_recipientId() );
+
+        //Then
+        Assertions.assertTrue( otherSenderResult.getResultsPage().isEmpty() );
+        Assertions.assertEquals( 1, sameSenderResult.getResultsPage().size() );
+        Assertions.assertEquals( IUN, sameSenderResult.getResultsPage().get( 0 ).getIun() );
+    }
+
     private NotificationMetadataEntity newNotificationMetadata() {
         Map<String,String> tableRowMap = new HashMap<>();
         tableRowMap.put( "iun", IUN );
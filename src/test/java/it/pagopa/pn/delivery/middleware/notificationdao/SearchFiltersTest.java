@@ -0,0 +1,59 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationSearchRowEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.Predicate;
+
+class SearchFiltersTest {
+
+    private final Predicate<String> anySubject = SearchFilters.subjectPredicate( null );
+
+    @Test
+    void recipientSearchFiltersSender() {
+        NotificationMetadataEntity entity = newEntity();
+
+        Assertions.assertFalse( SearchFilters.matches( recipientSearch( "other_pa" ), entity, anySubject ) );
+        Assertions.assertTrue( SearchFilters.matches( recipientSearch( "sender_pa" ), entity, anySubject ) );
+        Assertions.assertTrue( SearchFilters.matches( recipientSearch( null ), entity, anySubject ) );
+    }
+
+    @Test
+    void senderSearchIgnoresRecipientFilter() {
+        InputSearchNotificationDto senderSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "sender_pa" )
+                .filterId( "recipient_id" )
+                .startDate( Instant.parse( "2022-05-01T00:00:00Z" ) )
+                .endDate( Instant.parse( "2022-05-30T00:00:00Z" ) )
+                .size( 10 )
+                .build();
+
+        Assertions.assertTrue( SearchFilters.matches( senderSearch, newEntity(), anySubject ) );
+    }
+
+    private InputSearchNotificationDto recipientSearch(String senderId) {
+        return new InputSearchNotificationDto.Builder()
+                .bySender( false )
+                .senderReceiverId( "recipient_id" )
+                .filterId( senderId )
+                .startDate( Instant.parse( "2022-05-01T00:00:00Z" ) )
+                .endDate( Instant.parse( "2022-05-30T00:00:00Z" ) )
+                .size( 10 )
+                .build();
+    }
+
+    private NotificationMetadataEntity newEntity() {
+        return NotificationMetadataEntity.builder()
+                .iun_recipientId( "IUN_01##recipient_id" )
+                .senderId( "sender_pa" )
+                .sentAt( Instant.parse( "2022-05-20T09:51:00Z" ) )
+                .tableRow( Map.of( NotificationSearchRowEntity.TABLE_ROW_SUBJECT, "multa" ) )
+                .build();
+    }
+}
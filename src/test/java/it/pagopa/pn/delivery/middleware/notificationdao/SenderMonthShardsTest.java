@@ -0,0 +1,76 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+class SenderMonthShardsTest {
+
+    private static final Clock CLOCK = Clock.fixed( Instant.parse( "2022-05-15T10:00:00Z" ), ZoneOffset.UTC );
+
+    private SenderMonthShards senderMonthShards;
+
+    @BeforeEach
+    void setup() {
+        PnDeliveryConfigs.SenderSharding senderSharding = new PnDeliveryConfigs.SenderSharding();
+        senderSharding.setShards( 3 );
+        senderSharding.setSince( "202206" );
+        PnDeliveryConfigs.Sharding sharding = new PnDeliveryConfigs.Sharding();
+        sharding.setSenders( Map.of( "HotSenderId", senderSharding ) );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setSharding( sharding );
+        senderMonthShards = new SenderMonthShards( cfg, CLOCK );
+    }
+
+    @Test
+    void writePartitionOfShardedSender() {
+        String iun = "KSAU-CKOB-OFKR-202206-O-1";
+
+        String partition = senderMonthShards.writePartition( "HotSenderId", "202206", iun );
+
+        Assertions.assertEquals( "HotSenderId##202206##" + Math.floorMod( iun.hashCode(), 3 ), partition );
+        Assertions.assertTrue( senderMonthShards.readPartitions( "HotSenderId##202206" ).contains( partition ) );
+    }
+
+    @Test
+    void writePartitionBeforeSharding() {
+        Assertions.assertEquals( "HotSenderId##202205", senderMonthShards.writePartition( "HotSenderId", "202205", "IUN_01" ) );
+        Assertions.assertEquals( "SenderId##202206", senderMonthShards.writePartition( "SenderId", "202206", "IUN_01" ) );
+    }
+
+    @Test
+    void readPartitions() {
+        Assertions.assertEquals( List.of( "HotSenderId##202207##0", "HotSenderId##202207##1", "HotSenderId##202207##2" ),
+                senderMonthShards.readPartitions( "HotSenderId##202207" ) );
+        Assertions.assertEquals( List.of( "HotSenderId##202205" ), senderMonthShards.readPartitions( "HotSenderId##202205" ) );
+        Assertions.assertEquals( List.of( "SenderId##202207" ), senderMonthShards.readPartitions( "SenderId##202207" ) );
+    }
+
+    @Test
+    void withoutConfiguration() {
+        SenderMonthShards unsharded = new SenderMonthShards( new PnDeliveryConfigs(), CLOCK );
+
+        Assertions.assertEquals( 1, unsharded.shardsOf( "HotSenderId", "202207" ) );
+        Assertions.assertEquals( "HotSenderId##202207", unsharded.writePartition( "HotSenderId", "202207", "IUN_01" ) );
+    }
+
+    @Test
+    void missingSinceIsRejected() {
+        PnDeliveryConfigs.SenderSharding senderSharding = new PnDeliveryConfigs.SenderSharding();
+        senderSharding.setShards( 3 );
+        PnDeliveryConfigs.Sharding sharding = new PnDeliveryConfigs.Sharding();
+        sharding.setSenders( Map.of( "HotSenderId", senderSharding ) );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setSharding( sharding );
+
+        Assertions.assertThrows( PnInternalException.class, () -> new SenderMonthShards( cfg, CLOCK ) );
+    }
+}
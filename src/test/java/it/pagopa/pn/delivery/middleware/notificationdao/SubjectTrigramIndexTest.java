@@ -0,0 +1,179 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.svc.search.PnLastEvaluatedKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class SubjectTrigramIndexTest {
+
+    private static final String PARTITION_VALUE = "SenderId##202206";
+
+    private NotificationSubjectTrigramEntityDao trigramEntityDao;
+    private NotificationMetadataEntityDao metadataEntityDao;
+    private SubjectTrigramIndex subjectTrigramIndex;
+
+    @BeforeEach
+    void setup() {
+        trigramEntityDao = Mockito.mock( NotificationSubjectTrigramEntityDao.class );
+        metadataEntityDao = Mockito.mock( NotificationMetadataEntityDao.class );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.Search searchCfg = new PnDeliveryConfigs.Search();
+        searchCfg.setSubjectIndexSince( "202201" );
+        cfg.setSearch( searchCfg );
+        subjectTrigramIndex = new SubjectTrigramIndex( trigramEntityDao, metadataEntityDao, new EntityToDtoNotificationMetadataMapper(), cfg );
+    }
+
+    @Test
+    void indexSubject() {
+        NotificationMetadataEntity entity = newMetadataEntity( "IUN_01", "2022-06-10T10:00:00Z", "Multa" );
+
+        subjectTrigramIndex.indexSubject( entity );
+
+        Mockito.verify( trigramEntityDao ).putAll( Mockito.argThat( postings -> postings.size() == 3
+                && postings.stream().allMatch( posting -> "2022-06-10T10:00:00Z##IUN_01##RecipientId".equals( posting.getSentAt_iunRecipientId() ) )
+                && postings.stream().allMatch( posting -> posting.getSenderId_creationMonth_trigram().startsWith( PARTITION_VALUE + "##" ) ) ) );
+        // nessuna lettura sulla tabella dei trigrammi in scrittura
+        Mockito.verify( trigramEntityDao, Mockito.never() ).get( Mockito.any( Key.class ) );
+    }
+
+    @Test
+    void searchForOneMonth() {
+        InputSearchNotificationDto inputSearchNotificationDto = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-06-01T00:00:00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00Z" ) )
+                .subjectRegExp( ".*Multa.*" )
+                .size( 1 )
+                .build();
+        String newer = "2022-06-12T10:00:00Z##IUN_02##RecipientId";
+        String older = "2022-06-10T10:00:00Z##IUN_01##RecipientId";
+        stubPostings( "mul", newer, older );
+        stubPostings( "ult", newer, older, "2022-06-05T10:00:00Z##IUN_00##RecipientId" );
+        stubPostings( "lta", newer, older );
+        Map<String, NotificationMetadataEntity> storage = Map.of(
+                "IUN_02##RecipientId", newMetadataEntity( "IUN_02", "2022-06-12T10:00:00Z", "Multa stradale" ),
+                "IUN_01##RecipientId", newMetadataEntity( "IUN_01", "2022-06-10T10:00:00Z", "Multa" ) );
+        Mockito.when( metadataEntityDao.batchGet( Mockito.anyList() ) ).thenAnswer( invocation -> {
+            List<Key> keys = invocation.getArgument( 0 );
+            return keys.stream().map( key -> storage.get( key.partitionKeyValue().s() ) ).collect( Collectors.toList() );
+        } );
+
+        Assertions.assertTrue( subjectTrigramIndex.supports( inputSearchNotificationDto, NotificationMetadataEntity.INDEX_SENDER_ID, PARTITION_VALUE ) );
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> firstPage = subjectTrigramIndex.searchForOneMonth( inputSearchNotificationDto,
+                NotificationMetadataEntity.INDEX_SENDER_ID, PARTITION_VALUE, 1, null, subject -> subject.matches( ".*Multa.*" ), false );
+
+        Assertions.assertEquals( "IUN_02", firstPage.getResultsPage().get( 0 ).getIun() );
+        Assertions.assertTrue( firstPage.isMoreResult() );
+        PnLastEvaluatedKey lastEvaluatedKey = firstPage.getNextPagesKey().get( 0 );
+        Assertions.assertEquals( PARTITION_VALUE, lastEvaluatedKey.getInternalLastEvaluatedKey().get( NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH ).s() );
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> secondPage = subjectTrigramIndex.searchForOneMonth( inputSearchNotificationDto,
+                NotificationMetadataEntity.INDEX_SENDER_ID, PARTITION_VALUE, 1, lastEvaluatedKey, subject -> subject.matches( ".*Multa.*" ), false );
+
+        Assertions.assertEquals( "IUN_01", secondPage.getResultsPage().get( 0 ).getIun() );
+        // la seconda pagina legge le liste solo sotto la LEK
+        Mockito.verify( trigramEntityDao, Mockito.atLeastOnce() ).listPostings( Mockito.anyString(), Mockito.anyString(),
+                Mockito.eq( "2022-06-12T10:00:00Z##IUN_02##RecipientId" ), Mockito.anyInt() );
+        // la pagina è completa: la LEK è restituita anche se i candidati sono esauriti
+        Assertions.assertTrue( secondPage.isMoreResult() );
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> thirdPage = subjectTrigramIndex.searchForOneMonth( inputSearchNotificationDto,
+                NotificationMetadataEntity.INDEX_SENDER_ID, PARTITION_VALUE, 1, secondPage.getNextPagesKey().get( 0 ), subject -> subject.matches( ".*Multa.*" ), false );
+
+        Assertions.assertTrue( thirdPage.getResultsPage().isEmpty() );
+        Assertions.assertFalse( thirdPage.isMoreResult() );
+    }
+
+    @Test
+    void searchForOneMonthReadsBoundedWindows() {
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.Search searchCfg = new PnDeliveryConfigs.Search();
+        searchCfg.setSubjectIndexSince( "202201" );
+        searchCfg.setMaxFetchLimit( 2 );
+        cfg.setSearch( searchCfg );
+        subjectTrigramIndex = new SubjectTrigramIndex( trigramEntityDao, metadataEntityDao, new EntityToDtoNotificationMetadataMapper(), cfg );
+
+        InputSearchNotificationDto inputSearchNotificationDto = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-06-01T00:00:00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00Z" ) )
+                .subjectRegExp( ".*Multa.*" )
+                .size( 3 )
+                .build();
+        String k5 = "2022-06-15T10:00:00Z##IUN_05##RecipientId";
+        String k4 = "2022-06-14T10:00:00Z##IUN_04##RecipientId";
+        String k3 = "2022-06-13T10:00:00Z##IUN_03##RecipientId";
+        String k2 = "2022-06-12T10:00:00Z##IUN_02##RecipientId";
+        String k1 = "2022-06-11T10:00:00Z##IUN_01##RecipientId";
+        stubPostings( "mul", k5, k4, k3, k2, k1 );
+        stubPostings( "ult", k5, k3, k1 );
+        stubPostings( "lta", k5, k4, k3, k1 );
+        Mockito.when( metadataEntityDao.batchGet( Mockito.anyList() ) ).thenAnswer( invocation -> {
+            List<Key> keys = invocation.getArgument( 0 );
+            return keys.stream()
+                    .map( key -> key.partitionKeyValue().s() )
+                    .map( iunRecipientId -> newMetadataEntity( iunRecipientId.substring( 0, iunRecipientId.indexOf( "##" ) ),
+                            sentAtOf( iunRecipientId, k5, k4, k3, k2, k1 ), "Multa" ) )
+                    .collect( Collectors.toList() );
+        } );
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> page = subjectTrigramIndex.searchForOneMonth( inputSearchNotificationDto,
+                NotificationMetadataEntity.INDEX_SENDER_ID, PARTITION_VALUE, 3, null, subject -> subject.matches( ".*Multa.*" ), false );
+
+        // le liste troncate vengono intersecate a finestre, senza perdere né duplicare candidati
+        Assertions.assertEquals( List.of( "IUN_05", "IUN_03", "IUN_01" ),
+                page.getResultsPage().stream().map( NotificationSearchRow::getIun ).collect( Collectors.toList() ) );
+        Mockito.verify( trigramEntityDao, Mockito.never() ).listPostings( Mockito.anyString(), Mockito.anyString(), Mockito.anyString(),
+                Mockito.intThat( limit -> limit > 3 ) );
+    }
+
+    private void stubPostings(String trigram, String... postings) {
+        // le chiavi sono in ordine decrescente, come restituite dalla query
+        Mockito.when( trigramEntityDao.listPostings( Mockito.eq( PARTITION_VALUE + "##" + trigram ), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt() ) )
+                .thenAnswer( invocation -> {
+                    String fromSortKey = invocation.getArgument( 1 );
+                    String toSortKey = invocation.getArgument( 2 );
+                    int limit = invocation.getArgument( 3 );
+                    return Stream.of( postings )
+                            .filter( posting -> posting.compareTo( fromSortKey ) >= 0 && posting.compareTo( toSortKey ) <= 0 )
+                            .limit( limit )
+                            .collect( Collectors.toList() );
+                } );
+    }
+
+    private static String sentAtOf(String iunRecipientId, String... postings) {
+        return Stream.of( postings )
+                .filter( posting -> posting.endsWith( "##" + iunRecipientId ) )
+                .map( posting -> posting.substring( 0, posting.indexOf( "##" ) ) )
+                .findFirst()
+                .orElse( null );
+    }
+
+    private static NotificationMetadataEntity newMetadataEntity(String iun, String sentAt, String subject) {
+        return NotificationMetadataEntity.builder()
+                .iun_recipientId( iun + "##RecipientId" )
+                .sentAt( Instant.parse( sentAt ) )
+                .senderId( "SenderId" )
+                .recipientIds( List.of( "RecipientId" ) )
+                .notificationStatus( "ACCEPTED" )
+                .senderId_creationMonth( PARTITION_VALUE )
+                .tableRow( Map.of( "iun", iun, "subject", subject, "paProtocolNumber", "123" ) )
+                .build();
+    }
+}
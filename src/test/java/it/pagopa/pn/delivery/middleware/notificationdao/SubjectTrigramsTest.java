@@ -0,0 +1,51 @@
+package it.pagopa.pn.delivery.middleware.notificationdao;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+class SubjectTrigramsTest {
+
+    @Test
+    void trigramsOfSubject() {
+        Assertions.assertEquals( List.of( "mul", "ult", "lta" ), List.copyOf( SubjectTrigrams.of( "Multa" ) ) );
+        Assertions.assertTrue( SubjectTrigrams.of( "ab" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.of( null ).isEmpty() );
+    }
+
+    @Test
+    void requiredByLiteralRuns() {
+        Assertions.assertEquals( Set.of( "mul", "ult", "lta" ), SubjectTrigrams.requiredBy( ".*Multa.*" ) );
+        // il carattere seguito da un quantificatore opzionale interrompe la sequenza
+        Assertions.assertEquals( Set.of( "mul" ), SubjectTrigrams.requiredBy( "Mult?a" ) );
+        Assertions.assertEquals( Set.of( "a.b" ), SubjectTrigrams.requiredBy( "a\\.b[0-9]" ) );
+        Assertions.assertEquals( Set.of( "abc", "def" ), SubjectTrigrams.requiredBy( "abc[0-9]+def" ) );
+    }
+
+    @Test
+    void requiredByUnsupportedRegExp() {
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "Multa|Tassa" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "(?i)multa" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( ".*Te.*" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( null ).isEmpty() );
+    }
+
+    @Test
+    void requiredByAlphanumericEscapes() {
+        // gli escape alfanumerici consumano un numero variabile di caratteri successivi
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "Multa\\d+" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "\\0101bcd" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "\\x41bcd" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "\\u0041bcd" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "\\Qa.b*c\\E" ).isEmpty() );
+        Assertions.assertTrue( SubjectTrigrams.requiredBy( "Multa\\" ).isEmpty() );
+    }
+
+    @Test
+    void requiredByIsSubsetOfSubjectTrigrams() {
+        Set<String> subjectTrigrams = SubjectTrigrams.of( "Avviso di pagamento TARI 2022" );
+        Assertions.assertTrue( subjectTrigrams.containsAll( SubjectTrigrams.requiredBy( ".*pagamento TARI.*" ) ) );
+    }
+}
@@ -9,6 +9,7 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.rest.utils.SearchPlanHeader;
 import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.ModelMapperFactory;
@@ -113,6 +114,7 @@ class NotificationSearchControllerTest {
         InputSearchNotificationDto searchDto = new InputSearchNotificationDto.Builder()
                 .bySender(true)
                 .senderReceiverId(SENDER_ID)
+                .groups(List.of("asdasd"))
                 .startDate(Instant.parse(START_DATE))
                 .endDate(Instant.parse(END_DATE))
                 .filterId(RECIPIENT_ID)
@@ -125,6 +127,38 @@ class NotificationSearchControllerTest {
         Mockito.verify(svc).searchNotification(searchDto);
     }
 
+    @Test
+    void getSenderSearchPlanHeader() {
+        ResultPaginationDto<NotificationSearchRow,String> result =
+                ResultPaginationDto.<NotificationSearchRow,String>builder()
+                        .resultsPage(Collections.emptyList())
+                        .moreResult(false)
+                        .searchPlan( "index=senderId;parallelism=1;partitions=202109:senderId~3" )
+                        .build();
+        Mockito.when(svc.searchNotification(Mockito.any(InputSearchNotificationDto.class))).thenReturn(result);
+
+        ModelMapper mapper = new ModelMapper();
+        mapper.createTypeMap( ResultPaginationDto.class, NotificationSearchResponse.class );
+        Mockito.when( modelMapperFactory.createModelMapper( ResultPaginationDto.class, NotificationSearchResponse.class ) ).thenReturn( mapper );
+
+        webTestClient.get()
+                .uri(uriBuilder ->
+                        uriBuilder
+                                .path( "/" + PnDeliveryRestConstants.SEND_NOTIFICATIONS_PATH )
+                                .queryParam("startDate", START_DATE)
+                                .queryParam("endDate", END_DATE)
+                                .build())
+                .accept(MediaType.APPLICATION_JSON)
+                .header( PnDeliveryRestConstants.CX_ID_HEADER, SENDER_ID)
+                .header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+                .header(PnDeliveryRestConstants.CX_TYPE_HEADER, "PA"  )
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals( SearchPlanHeader.SEARCH_PLAN_HEADER, "index=senderId;parallelism=1;partitions=202109:senderId~3" );
+    }
+
     @Test
     void getSenderNextPageSuccess() {
         //Given
@@ -175,6 +209,7 @@ class NotificationSearchControllerTest {
         InputSearchNotificationDto searchDto = new InputSearchNotificationDto.Builder()
                 .bySender(true)
                 .senderReceiverId(SENDER_ID)
+                .groups(List.of("asdasd"))
                 .startDate(Instant.parse(START_DATE))
                 .endDate(Instant.parse(END_DATE))
                 .size( SIZE )
@@ -0,0 +1,78 @@
+package it.pagopa.pn.delivery.rest;
+
+import it.pagopa.pn.api.rest.PnDeliveryRestConstants;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
+import it.pagopa.pn.delivery.svc.search.SearchProgressListener;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.Collections;
+import java.util.List;
+
+@WebFluxTest(controllers = {PnNotificationSearchStreamController.class})
+class PnNotificationSearchStreamControllerTest {
+
+    private static final String SENDER_ID = "test";
+    private static final String START_DATE = "2021-09-17T00:00:00.000Z";
+    private static final String END_DATE = "2021-09-18T00:00:00.000Z";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    private NotificationRetrieverService svc;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchSentNotificationStreamSuccess() {
+        Mockito.when( svc.searchNotification( Mockito.any(), Mockito.any() ) ).thenAnswer( invocation -> {
+            SearchProgressListener<String> listener = invocation.getArgument( 1 );
+            NotificationSearchRow firstRow = NotificationSearchRow.builder().iun( "IUN_02" ).recipients( Collections.emptyList() ).build();
+            NotificationSearchRow secondRow = NotificationSearchRow.builder().iun( "IUN_01" ).recipients( Collections.emptyList() ).build();
+            listener.onRows( List.of( firstRow ) );
+            listener.onRows( List.of( secondRow ) );
+            listener.onNextPagesKey( List.of( "nextPageKey" ) );
+            return ResultPaginationDto.<NotificationSearchRow, String>builder()
+                    .resultsPage( List.of( firstRow, secondRow ) )
+                    .nextPagesKey( List.of( "nextPageKey" ) )
+                    .moreResult( true )
+                    .build();
+        } );
+
+        String body = webTestClient.get()
+                .uri(uriBuilder ->
+                        uriBuilder
+                                .path( PnNotificationSearchStreamController.SEARCH_SENT_NOTIFICATIONS_STREAM_PATH )
+                                .queryParam( "startDate", START_DATE )
+                                .queryParam( "endDate", END_DATE )
+                                .queryParam( "size", 10 )
+                                .build())
+                .accept( MediaType.TEXT_EVENT_STREAM )
+                .header( PnDeliveryRestConstants.CX_ID_HEADER, SENDER_ID )
+                .header( PnDeliveryRestConstants.UID_HEADER, "asdasd" )
+                .header( PnDeliveryRestConstants.CX_TYPE_HEADER, "PA" )
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody( String.class )
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull( body );
+        int firstRows = body.indexOf( "event:" + PnNotificationSearchStreamController.ROWS_EVENT );
+        int secondRows = body.indexOf( "event:" + PnNotificationSearchStreamController.ROWS_EVENT, firstRows + 1 );
+        int end = body.indexOf( "event:" + PnNotificationSearchStreamController.END_EVENT );
+        Assertions.assertTrue( firstRows >= 0 && secondRows > firstRows && end > secondRows );
+        Assertions.assertTrue( body.indexOf( "IUN_02" ) < body.indexOf( "IUN_01" ) );
+        Assertions.assertTrue( body.contains( "event:" + PnNotificationSearchStreamController.NEXT_PAGES_KEY_EVENT ) );
+        Assertions.assertTrue( body.contains( "\"moreResult\":true" ) );
+    }
+}
@@ -0,0 +1,84 @@
+package it.pagopa.pn.delivery.rest;
+
+import it.pagopa.pn.api.rest.PnDeliveryRestConstants;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
+import it.pagopa.pn.delivery.svc.search.NotificationSearchExport;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+@WebFluxTest(controllers = {PnSentNotificationsExportController.class})
+class PnSentNotificationsExportControllerTest {
+
+    private static final String SENDER_ID = "test";
+    private static final String START_DATE = "2021-09-17T00:00:00.000Z";
+    private static final String END_DATE = "2021-09-18T00:00:00.000Z";
+
+    @Autowired
+    WebTestClient webTestClient;
+
+    @MockBean
+    private NotificationRetrieverService svc;
+
+    @Test
+    void exportSentNotificationsSuccess() throws IOException {
+        NotificationSearchExport export = Mockito.mock( NotificationSearchExport.class );
+        Mockito.when( export.nextPage() )
+                .thenReturn( List.of( newRow( "IUN_02" ) ) )
+                .thenReturn( List.of( newRow( "IUN_01" ) ) )
+                .thenReturn( Collections.emptyList() );
+        Mockito.when( svc.exportSentNotifications( Mockito.eq( SENDER_ID ), Mockito.any(), Mockito.any(), Mockito.isNull(), Mockito.isNull() ) )
+                .thenReturn( export );
+
+        byte[] body = webTestClient.get()
+                .uri(uriBuilder ->
+                        uriBuilder
+                                .path( PnSentNotificationsExportController.EXPORT_SENT_NOTIFICATIONS_PATH )
+                                .queryParam( "startDate", START_DATE )
+                                .queryParam( "endDate", END_DATE )
+                                .build())
+                .header( PnDeliveryRestConstants.CX_ID_HEADER, SENDER_ID )
+                .header( PnDeliveryRestConstants.UID_HEADER, "asdasd" )
+                .header( PnDeliveryRestConstants.CX_TYPE_HEADER, "PA" )
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader().valueEquals( HttpHeaders.CONTENT_ENCODING, "gzip" )
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+
+        String[] lines;
+        try ( GZIPInputStream gzip = new GZIPInputStream( new ByteArrayInputStream( body ) ) ) {
+            lines = new String( gzip.readAllBytes(), StandardCharsets.UTF_8 ).split( "\n" );
+        }
+        Assertions.assertEquals( 2, lines.length );
+        Assertions.assertTrue( lines[0].contains( "\"iun\":\"IUN_02\"" ) );
+        Assertions.assertTrue( lines[1].contains( "\"iun\":\"IUN_01\"" ) );
+        Mockito.verify( svc ).exportSentNotifications( SENDER_ID, Instant.parse( START_DATE ), Instant.parse( END_DATE ), null, null );
+    }
+
+    private static NotificationSearchRow newRow(String iun) {
+        return NotificationSearchRow.builder()
+                .iun( iun )
+                .sender( SENDER_ID )
+                .sentAt( Date.from( Instant.parse( "2021-09-17T13:45:28.00Z" ) ) )
+                .recipients( Collections.singletonList( "CGNNMO80A01H501M" ) )
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package it.pagopa.pn.delivery.rest;
 
 import it.pagopa.pn.api.rest.PnDeliveryRestConstants;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.exception.PnNotFoundException;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
@@ -9,6 +10,7 @@ import it.pagopa.pn.delivery.svc.NotificationAttachmentService;
 import it.pagopa.pn.delivery.svc.search.NotificationRetrieverService;
 import it.pagopa.pn.delivery.utils.ModelMapperFactory;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.modelmapper.ModelMapper;
@@ -89,7 +91,7 @@ class PnSentReceivedNotificationControllerTest {
 		// Given
 		InternalNotification notification = newNotification();
 
-		Mockito.when( svc.getNotificationInformation( Mockito.anyString(), Mockito.anyBoolean() ) ).thenReturn( notification );
+		Mockito.when( svc.getNotificationWithLastStatus( Mockito.anyString() ) ).thenReturn( notification );
 
 		ModelMapper mapper = new ModelMapper();
 		mapper.createTypeMap( InternalNotification.class, NewNotificationRequestStatusResponse.class );
@@ -110,7 +112,79 @@ class PnSentReceivedNotificationControllerTest {
 				.isOk()
 				.expectBody( NewNotificationRequestStatusResponse.class );
 
-		Mockito.verify( svc ).getNotificationInformation( new String(Base64Utils.decodeFromString(REQUEST_ID), StandardCharsets.UTF_8), true );
+		Mockito.verify( svc ).getNotificationWithLastStatus( new String(Base64Utils.decodeFromString(REQUEST_ID), StandardCharsets.UTF_8) );
+	}
+
+	@Test
+	void getNotificationRequestStatusByProtocolNumberSuccess() {
+		// Given
+		InternalNotification notification = newNotification();
+
+		Mockito.when( svc.getIunByRequest( PA_ID, "protocol_01", "idempotenceToken_01" ) ).thenReturn( IUN );
+		Mockito.when( svc.getNotificationWithLastStatus( IUN ) ).thenReturn( notification );
+
+		ModelMapper mapper = new ModelMapper();
+		mapper.createTypeMap( InternalNotification.class, NewNotificationRequestStatusResponse.class );
+		Mockito.when( modelMapperFactory.createModelMapper( InternalNotification.class, NewNotificationRequestStatusResponse.class ) ).thenReturn( mapper );
+
+		webTestClient.get()
+				.uri(uriBuilder ->
+						uriBuilder
+								.path( "/delivery/requests" )
+								.queryParam("paProtocolNumber", "protocol_01")
+								.queryParam("idempotenceToken", "idempotenceToken_01")
+								.build())
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, PA_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, "PF"  )
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, "asdasd" )
+				.exchange()
+				.expectStatus()
+				.isOk()
+				.expectBody( NewNotificationRequestStatusResponse.class )
+				.value( response -> Assertions.assertEquals(
+						Base64Utils.encodeToString( IUN.getBytes( StandardCharsets.UTF_8 ) ), response.getNotificationRequestId() ) );
+
+		Mockito.verify( svc ).getNotificationWithLastStatus( IUN );
+	}
+
+	@Test
+	void getNotificationRequestStatusByProtocolNumberNotFound() {
+		// Given
+		Mockito.when( svc.getIunByRequest( PA_ID, "protocol_01", "idempotenceToken_01" ) )
+				.thenThrow( new PnNotFoundException( "No notification request with paProtocolNumber=protocol_01 and idempotenceToken=idempotenceToken_01" ) );
+
+		webTestClient.get()
+				.uri(uriBuilder ->
+						uriBuilder
+								.path( "/delivery/requests" )
+								.queryParam("paProtocolNumber", "protocol_01")
+								.queryParam("idempotenceToken", "idempotenceToken_01")
+								.build())
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, PA_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, "PF"  )
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, "asdasd" )
+				.exchange()
+				.expectStatus()
+				.isNotFound();
+
+		Mockito.verify( svc, Mockito.never() ).getNotificationWithLastStatus( Mockito.anyString() );
+	}
+
+	@Test
+	void getNotificationRequestStatusMissingParameters() {
+		webTestClient.get()
+				.uri( "/delivery/requests" )
+				.header( PnDeliveryRestConstants.CX_ID_HEADER, PA_ID )
+				.header(PnDeliveryRestConstants.UID_HEADER, "asdasd")
+				.header(PnDeliveryRestConstants.CX_TYPE_HEADER, "PF"  )
+				.header(PnDeliveryRestConstants.CX_GROUPS_HEADER, "asdasd" )
+				.exchange()
+				.expectStatus()
+				.isBadRequest();
+
+		Mockito.verifyNoInteractions( svc );
 	}
 
 	@Test
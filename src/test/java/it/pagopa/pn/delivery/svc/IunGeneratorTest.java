@@ -41,6 +41,21 @@ class IunGeneratorTest {
         Assertions.assertEquals( 'N', controlChar);
     }
 
+    @Test
+    void wellFormedIun(){
+        String iun = iunGenerator.generatePredictedIun( Instant.parse( "2022-06-15T10:00:00Z" ) );
+        Assertions.assertTrue( IunGenerator.isWellFormedIun( iun ) );
+
+        // carattere di controllo errato
+        char controlChar = iun.charAt( iun.length() - 3 );
+        char wrongControlChar = controlChar == 'A' ? 'D' : 'A';
+        Assertions.assertFalse( IunGenerator.isWellFormedIun( iun.substring( 0, iun.length() - 3 ) + wrongControlChar + iun.substring( iun.length() - 2 ) ) );
+
+        // IUN parziale
+        Assertions.assertFalse( IunGenerator.isWellFormedIun( iun.substring( 0, 9 ) ) );
+        Assertions.assertFalse( IunGenerator.isWellFormedIun( null ) );
+    }
+
     @Test
     void collisionsLessThanOneInOneYear() {
         List<Long> collisions = Collections.synchronizedList( new ArrayList<>() );
@@ -8,7 +8,9 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executors;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,7 +31,9 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.EntityToDtoNotificationMapper;
 import it.pagopa.pn.delivery.middleware.notificationdao.NotificationDaoDynamo;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationEntityCache;
 import it.pagopa.pn.delivery.middleware.notificationdao.NotificationEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.RecipientClearDataCache;
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationEntity;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
@@ -79,7 +83,8 @@ class ReceivedNotificationsDocumentTest {
 		this.entityDao = Mockito.mock(NotificationEntityDao.class);
 		this.entity2DtoMapper = Mockito.mock(EntityToDtoNotificationMapper.class);
 		this.pnDataVaultClient = Mockito.mock(PnDataVaultClientImpl.class);
-		this.notificationDao = new NotificationDaoDynamo(entityDao, null, null, entity2DtoMapper, pnDataVaultClient);
+		this.notificationDao = new NotificationDaoDynamo(entityDao, null, null, entity2DtoMapper, pnDataVaultClient, null,
+				new NotificationEntityCache(new ObjectMapper(), cfg), new RecipientClearDataCache(cfg), Executors.newFixedThreadPool(2), cfg);
 	}
 
 	@Test
@@ -1,5 +1,6 @@
 package it.pagopa.pn.delivery.svc;
 
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.FullSentNotification;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
@@ -7,16 +8,27 @@ import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.RequestUpdateStatus
 import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMetadataEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.SenderMonthShards;
+import it.pagopa.pn.delivery.middleware.notificationdao.SubjectTrigramIndex;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.search.MonthOccupancyIndex;
+import it.pagopa.pn.delivery.svc.search.NotificationHistoryCache;
+import it.pagopa.pn.delivery.svc.search.PartitionGranularityResolver;
+import it.pagopa.pn.delivery.svc.search.SearchResultCache;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Clock;
 import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -30,12 +42,39 @@ class StatusServiceTest {
 
     @Mock
     private PnDataVaultClientImpl dataVaultClient;
+
+    @Mock
+    private MonthOccupancyIndex monthOccupancyIndex;
+
+    @Mock
+    private SearchResultCache searchResultCache;
+
+    @Mock
+    private SubjectTrigramIndex subjectTrigramIndex;
+
+    @Mock
+    private NotificationHistoryCache notificationHistoryCache;
     
     private StatusService statusService;
 
     @BeforeEach
     public void setup() {
-        statusService = new StatusService(notificationDao, notificationMetadataEntityDao, dataVaultClient);
+        PnDeliveryConfigs.SenderSharding senderSharding = new PnDeliveryConfigs.SenderSharding();
+        senderSharding.setShards( 4 );
+        senderSharding.setSince( "202109" );
+        PnDeliveryConfigs.Sharding sharding = new PnDeliveryConfigs.Sharding();
+        sharding.setSenders( Map.of( "SHARDED_PAID", senderSharding ) );
+        PnDeliveryConfigs.SenderPartitioning senderPartitioning = new PnDeliveryConfigs.SenderPartitioning();
+        senderPartitioning.setGranularity( "DAY" );
+        senderPartitioning.setSince( "202109" );
+        PnDeliveryConfigs.Partitioning partitioning = new PnDeliveryConfigs.Partitioning();
+        partitioning.setSenders( Map.of( "DAILY_PAID", senderPartitioning ) );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setSharding( sharding );
+        cfg.setPartitioning( partitioning );
+        Clock clock = Clock.fixed( Instant.parse( "2021-09-16T16:00:00.00Z" ), ZoneOffset.UTC );
+        statusService = new StatusService(notificationDao, notificationMetadataEntityDao, dataVaultClient, monthOccupancyIndex, searchResultCache, subjectTrigramIndex,
+                new SenderMonthShards( cfg, clock ), new PartitionGranularityResolver( cfg, clock ), notificationHistoryCache, clock);
     }
 
 
@@ -68,5 +107,154 @@ class StatusServiceTest {
         assertDoesNotThrow(() -> statusService.updateStatus(dto));
         
         Mockito.verify(notificationMetadataEntityDao).put(Mockito.any(NotificationMetadataEntity.class));
+        Mockito.verify(monthOccupancyIndex).registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, "PAID", "202109", 0 );
+        Mockito.verify(searchResultCache).invalidate( "PAID" );
+        // l'oggetto è indicizzato solo al passaggio in ACCEPTED
+        Mockito.verify(subjectTrigramIndex, Mockito.never()).indexSubject( Mockito.any(NotificationMetadataEntity.class) );
+        Mockito.verify(notificationHistoryCache, Mockito.times( 2 )).invalidate( iun );
+        Mockito.verify(notificationDao).updateLastStatus( iun, NotificationStatus.DELIVERED, Instant.parse( "2021-09-16T16:00:00.00Z" ) );
+    }
+
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void updateStatusUsesTimelineTimestamp() {
+
+        String iun = "202109-eb10750e-e876-4a5a-8762-c4348d679d35";
+
+        Optional<InternalNotification> notification = Optional.of(new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .sentAt( Date.from(Instant.parse("2021-09-16T15:00:00.00Z") ))
+                .subject( "Subject" )
+                .paProtocolNumber( "123" )
+                .senderPaId( "PAID" )
+                .notificationStatus( NotificationStatus.DELIVERED )
+                .recipients( Collections.singletonList(NotificationRecipient.builder()
+                        .taxId( "CodiceFiscale" )
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .build()) )
+                .build(), Collections.emptyMap(), Collections.emptyList()));
+        Mockito.when(notificationDao.getNotificationByIun(iun)).thenReturn(notification);
+
+        // elemento di timeline elaborato in ritardo rispetto all'istante dell'orologio
+        RequestUpdateStatusDto dto = RequestUpdateStatusDto.builder()
+                .iun(iun)
+                .nextStatus(NotificationStatus.VIEWED)
+                .timestamp( OffsetDateTime.parse( "2021-09-16T15:30:00Z" ) )
+                .build();
+
+        statusService.updateStatus(dto);
+
+        Mockito.verify(notificationDao).updateLastStatus( iun, NotificationStatus.VIEWED, Instant.parse( "2021-09-16T15:30:00.00Z" ) );
+    }
+
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void updateStatusAcceptedCountsNotification() {
+
+        String iun = "202109-eb10750e-e876-4a5a-8762-c4348d679d35";
+
+        Optional<InternalNotification> notification = Optional.of(new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .sentAt( Date.from(Instant.parse("2021-09-16T15:00:00.00Z") ))
+                .subject( "Subject" )
+                .paProtocolNumber( "123" )
+                .senderPaId( "PAID" )
+                .group( "Group1" )
+                .notificationStatus( NotificationStatus.IN_VALIDATION )
+                .recipients( Collections.singletonList(NotificationRecipient.builder()
+                        .taxId( "CodiceFiscale" )
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .build()) )
+                .build(), Collections.emptyMap(), Collections.emptyList()));
+        Mockito.when(notificationDao.getNotificationByIun(iun)).thenReturn(notification);
+        Mockito.when(dataVaultClient.ensureRecipientByExternalId( Mockito.any(), Mockito.eq( "CodiceFiscale" ) )).thenReturn( "opaqueTaxId" );
+
+        RequestUpdateStatusDto dto = RequestUpdateStatusDto.builder()
+                .iun(iun)
+                .nextStatus(NotificationStatus.ACCEPTED)
+                .build();
+
+        statusService.updateStatus(dto);
+
+        Mockito.verify(monthOccupancyIndex).registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, "PAID", "202109", 1 );
+        Mockito.verify(monthOccupancyIndex).registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP, "PAID##Group1", "202109", 1 );
+        Mockito.verify(monthOccupancyIndex).registerNotifications( NotificationMetadataEntity.INDEX_RECIPIENT_ID, "opaqueTaxId", "202109", 1 );
+        Mockito.verify(monthOccupancyIndex).registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID, "PAID##opaqueTaxId", "202109", 1 );
+        Mockito.verify(subjectTrigramIndex).indexSubject( Mockito.argThat( entity -> "PAID##opaqueTaxId".equals( entity.getSenderId_recipientId() ) ) );
+    }
+
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void updateStatusShardedSender() {
+
+        String iun = "202109-eb10750e-e876-4a5a-8762-c4348d679d35";
+
+        Optional<InternalNotification> notification = Optional.of(new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .sentAt( Date.from(Instant.parse("2021-09-16T15:00:00.00Z") ))
+                .subject( "Subject" )
+                .paProtocolNumber( "123" )
+                .senderPaId( "SHARDED_PAID" )
+                .notificationStatus( NotificationStatus.IN_VALIDATION )
+                .recipients( Collections.singletonList(NotificationRecipient.builder()
+                        .taxId( "CodiceFiscale" )
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .build()) )
+                .build(), Collections.emptyMap(), Collections.emptyList()));
+        Mockito.when(notificationDao.getNotificationByIun(iun)).thenReturn(notification);
+
+        RequestUpdateStatusDto dto = RequestUpdateStatusDto.builder()
+                .iun(iun)
+                .nextStatus(NotificationStatus.ACCEPTED)
+                .build();
+
+        statusService.updateStatus(dto);
+
+        ArgumentCaptor<NotificationMetadataEntity> entityCaptor = ArgumentCaptor.forClass( NotificationMetadataEntity.class );
+        Mockito.verify(notificationMetadataEntityDao).put( entityCaptor.capture() );
+        String expectedPartition = "SHARDED_PAID##202109##" + Math.floorMod( iun.hashCode(), 4 );
+        Assertions.assertEquals( expectedPartition, entityCaptor.getValue().getSenderId_creationMonth() );
+        Assertions.assertEquals( expectedPartition, entityCaptor.getValue().getSenderIdOne_creationMonth() );
+        // le statistiche e le invalidazioni restano sulla partizione logica
+        Mockito.verify(monthOccupancyIndex).registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, "SHARDED_PAID", "202109", 1 );
+    }
+
+    @ExtendWith(MockitoExtension.class)
+    @Test
+    void updateStatusDailyPartitionedSender() {
+
+        String iun = "202109-eb10750e-e876-4a5a-8762-c4348d679d35";
+
+        Optional<InternalNotification> notification = Optional.of(new InternalNotification(FullSentNotification.builder()
+                .iun(iun)
+                .sentAt( Date.from(Instant.parse("2021-09-16T15:00:00.00Z") ))
+                .subject( "Subject" )
+                .paProtocolNumber( "123" )
+                .senderPaId( "DAILY_PAID" )
+                .group( "Group1" )
+                .notificationStatus( NotificationStatus.IN_VALIDATION )
+                .recipients( Collections.singletonList(NotificationRecipient.builder()
+                        .taxId( "CodiceFiscale" )
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .build()) )
+                .build(), Collections.emptyMap(), Collections.emptyList()));
+        Mockito.when(notificationDao.getNotificationByIun(iun)).thenReturn(notification);
+        Mockito.when(dataVaultClient.ensureRecipientByExternalId( Mockito.any(), Mockito.eq( "CodiceFiscale" ) )).thenReturn( "opaqueTaxId" );
+
+        RequestUpdateStatusDto dto = RequestUpdateStatusDto.builder()
+                .iun(iun)
+                .nextStatus(NotificationStatus.ACCEPTED)
+                .build();
+
+        statusService.updateStatus(dto);
+
+        ArgumentCaptor<NotificationMetadataEntity> entityCaptor = ArgumentCaptor.forClass( NotificationMetadataEntity.class );
+        Mockito.verify(notificationMetadataEntityDao).put( entityCaptor.capture() );
+        NotificationMetadataEntity entity = entityCaptor.getValue();
+        Assertions.assertEquals( "DAILY_PAID##20210916", entity.getSenderId_creationMonth() );
+        Assertions.assertEquals( "DAILY_PAID##20210916", entity.getSenderIdOne_creationMonth() );
+        Assertions.assertEquals( "DAILY_PAID##Group1##20210916", entity.getSenderId_group_creationMonth() );
+        // le partizioni del destinatario restano mensili
+        Assertions.assertEquals( "opaqueTaxId##202109", entity.getRecipientId_creationMonth() );
     }
 }
@@ -0,0 +1,100 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.NotificationMonthOccupancyEntityDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+class MonthOccupancyIndexTest {
+
+    private static final String SENDER_ID = "SenderId";
+
+    private NotificationMonthOccupancyEntityDao occupancyEntityDao;
+    private MonthOccupancyIndex monthOccupancyIndex;
+
+    @BeforeEach
+    void setup() {
+        occupancyEntityDao = Mockito.mock( NotificationMonthOccupancyEntityDao.class );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.MonthOccupancy occupancyCfg = new PnDeliveryConfigs.MonthOccupancy();
+        occupancyCfg.setIndexedSince( "202201" );
+        cfg.setMonthOccupancy( occupancyCfg );
+        Clock clock = Clock.fixed( Instant.parse( "2022-06-15T10:00:00Z" ), ZoneOffset.UTC );
+        monthOccupancyIndex = new MonthOccupancyIndex( occupancyEntityDao, cfg, clock );
+    }
+
+    @Test
+    void filterOccupiedMonths() {
+        Mockito.when( occupancyEntityDao.countNotificationsByMonth( "senderId##" + SENDER_ID ) ).thenReturn( Map.of( "202203", 3L ) );
+
+        List<String> result = monthOccupancyIndex.filterOccupiedMonths( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID,
+                List.of( "202206", "202205", "202204", "202203", "202202", "202201", "202112" ) );
+
+        // il mese corrente e quelli precedenti all'attivazione dell'indice vengono sempre interrogati
+        Assertions.assertEquals( List.of( "202206", "202203", "202112" ), result );
+    }
+
+    @Test
+    void registerMonthSkipsKnownMonths() {
+        Mockito.when( occupancyEntityDao.countNotificationsByMonth( Mockito.anyString() ) ).thenReturn( Map.of( "202203", 3L ) );
+        monthOccupancyIndex.filterOccupiedMonths( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, List.of( "202203" ) );
+
+        monthOccupancyIndex.registerMonth( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202203" );
+        monthOccupancyIndex.registerMonth( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202204" );
+        monthOccupancyIndex.registerMonth( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202204" );
+
+        Mockito.verify( occupancyEntityDao, Mockito.times( 1 ) ).addNotifications( Mockito.anyString(), Mockito.anyString(), Mockito.anyLong() );
+    }
+
+    @Test
+    void registerMonthSkipsMonthsAlreadyWritten() {
+        monthOccupancyIndex.registerMonth( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202204" );
+        monthOccupancyIndex.registerMonth( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202204" );
+        monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202205", 1 );
+        monthOccupancyIndex.registerMonth( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202205" );
+
+        // senza ricerche sulla partizione i mesi già scritti non vengono riscritti e l'indice non viene letto
+        Mockito.verify( occupancyEntityDao, Mockito.times( 1 ) ).addNotifications( "senderId##" + SENDER_ID, "202204", 0 );
+        Mockito.verify( occupancyEntityDao, Mockito.times( 1 ) ).addNotifications( "senderId##" + SENDER_ID, "202205", 1 );
+        Mockito.verify( occupancyEntityDao, Mockito.never() ).addNotifications( "senderId##" + SENDER_ID, "202205", 0 );
+        Mockito.verify( occupancyEntityDao, Mockito.never() ).countNotificationsByMonth( Mockito.anyString() );
+    }
+
+    @Test
+    void registerNotificationsAlwaysCounts() {
+        Mockito.when( occupancyEntityDao.countNotificationsByMonth( Mockito.anyString() ) ).thenReturn( Map.of( "202203", 3L ) );
+        monthOccupancyIndex.filterOccupiedMonths( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, List.of( "202203" ) );
+
+        monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202203", 1 );
+        monthOccupancyIndex.registerNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, "202203", 1 );
+
+        Mockito.verify( occupancyEntityDao, Mockito.times( 2 ) ).addNotifications( "senderId##" + SENDER_ID, "202203", 1 );
+    }
+
+    @Test
+    void countNotifications() {
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.MonthOccupancy occupancyCfg = new PnDeliveryConfigs.MonthOccupancy();
+        occupancyCfg.setIndexedSince( "202201" );
+        occupancyCfg.setCountedSince( "202203" );
+        cfg.setMonthOccupancy( occupancyCfg );
+        Clock clock = Clock.fixed( Instant.parse( "2022-06-15T10:00:00Z" ), ZoneOffset.UTC );
+        monthOccupancyIndex = new MonthOccupancyIndex( occupancyEntityDao, cfg, clock );
+        Mockito.when( occupancyEntityDao.countNotificationsByMonth( "senderId##" + SENDER_ID ) ).thenReturn( Map.of( "202204", 7L, "202202", 2L ) );
+
+        Map<String, Long> result = monthOccupancyIndex.countNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID,
+                List.of( "202206", "202205", "202204", "202203", "202202" ) );
+
+        // il mese corrente e quelli precedenti all'attivazione del conteggio non hanno un conteggio completo
+        Assertions.assertEquals( Map.of( "202205", 0L, "202204", 7L, "202203", 0L ), result );
+    }
+}
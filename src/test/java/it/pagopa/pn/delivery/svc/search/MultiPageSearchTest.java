@@ -5,6 +5,7 @@ package it.pagopa.pn.delivery.svc.search;
 
 import it.pagopa.pn.commons.abstractions.IdConflictException;
 import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationStatus;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
@@ -14,18 +15,28 @@ import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
 import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import it.pagopa.pn.delivery.svc.IunGenerator;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 
+import java.time.Clock;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 class MultiPageSearchTest {
 
@@ -53,7 +64,7 @@ class MultiPageSearchTest {
                 notificationDao,
                 inputSearchNotificationDto,
                 null,
-                cfg, dataVaultClient);
+                cfg, new RecipientDenominationResolver( dataVaultClient, cfg ));
 
         Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
 
@@ -62,6 +73,359 @@ class MultiPageSearchTest {
         Assertions.assertNotNull( result );
     }
 
+    @Test
+    void searchNotificationMetadataConcurrentlySameResult() {
+        InputSearchNotificationDto multiMonthSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-01-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() ) )
+                .thenAnswer( invocation -> {
+                    String partitionValue = invocation.getArgument( 2 );
+                    List<NotificationSearchRow> rows = new ArrayList<>();
+                    if ( partitionValue.endsWith( "202203" ) || partitionValue.endsWith( "202205" ) ) {
+                        rows.add( NotificationSearchRow.builder()
+                                .iun( "IUN_" + partitionValue )
+                                .recipients( List.of( "internalId1" ) )
+                                .build() );
+                    }
+                    return ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                            .resultsPage( rows )
+                            .moreResult( false )
+                            .build();
+                });
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> sequentialResult = new MultiPageSearch(
+                monthDao, multiMonthSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) ).searchNotificationMetadata();
+
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> concurrentResult = new MultiPageSearch(
+                monthDao, multiMonthSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ), executor, 4, null ).searchNotificationMetadata();
+        executor.shutdown();
+
+        Assertions.assertEquals( 2, sequentialResult.getResultsPage().size() );
+        Assertions.assertEquals( sequentialResult.getResultsPage(), concurrentResult.getResultsPage() );
+        Assertions.assertEquals( "IUN_SenderId##202205", concurrentResult.getResultsPage().get( 0 ).getIun() );
+    }
+
+    @Test
+    void searchNotificationMetadataSaturatedExecutorRunsSequentially() {
+        InputSearchNotificationDto multiMonthSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-01-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() ) )
+                .thenAnswer( invocation -> {
+                    String partitionValue = invocation.getArgument( 2 );
+                    List<NotificationSearchRow> rows = new ArrayList<>();
+                    if ( partitionValue.endsWith( "202203" ) ) {
+                        rows.add( NotificationSearchRow.builder()
+                                .iun( "IUN_" + partitionValue )
+                                .recipients( List.of( "internalId1" ) )
+                                .build() );
+                    }
+                    return ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                            .resultsPage( rows )
+                            .moreResult( false )
+                            .build();
+                });
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        // executor saturo: ogni query viene rifiutata
+        ExecutorService executor = new ThreadPoolExecutor( 1, 1, 0L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new ThreadPoolExecutor.AbortPolicy() );
+        executor.shutdown();
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = new MultiPageSearch(
+                monthDao, multiMonthSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ), executor, 4, null ).searchNotificationMetadata();
+
+        Assertions.assertEquals( 1, result.getResultsPage().size() );
+        Assertions.assertEquals( "IUN_SenderId##202203", result.getResultsPage().get( 0 ).getIun() );
+        // senza query speculative ogni mese viene interrogato una sola volta
+        Mockito.verify( monthDao, Mockito.times( 6 ) ).searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataSenderOneIndex() {
+        InputSearchNotificationDto multiMonthSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-04-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>() )
+                        .moreResult( false )
+                        .build() );
+        PnDeliveryConfigs.Search searchCfg = new PnDeliveryConfigs.Search();
+        searchCfg.setSenderOneIndexSince( "202205" );
+        Mockito.when( cfg.getSearch() ).thenReturn( searchCfg );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        new MultiPageSearch( monthDao, multiMonthSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) ).searchNotificationMetadata();
+
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_ONE ), Mockito.eq( "SenderId##202206" ), Mockito.anyInt(), Mockito.any() );
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_ONE ), Mockito.eq( "SenderId##202205" ), Mockito.anyInt(), Mockito.any() );
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID ), Mockito.eq( "SenderId##202204" ), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataSenderGroupIndex() {
+        InputSearchNotificationDto groupSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-04-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .groups( List.of( "Group1", "Group2" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>() )
+                        .moreResult( false )
+                        .build() );
+        PnDeliveryConfigs.Search searchCfg = new PnDeliveryConfigs.Search();
+        searchCfg.setGroupIndexSince( "202206" );
+        searchCfg.setSenderOneIndexSince( "202205" );
+        Mockito.when( cfg.getSearch() ).thenReturn( searchCfg );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        new MultiPageSearch( monthDao, groupSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) ).searchNotificationMetadata();
+
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP ), Mockito.eq( "SenderId##202206" ), Mockito.anyInt(), Mockito.any() );
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_ONE ), Mockito.eq( "SenderId##202205" ), Mockito.anyInt(), Mockito.any() );
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID ), Mockito.eq( "SenderId##202204" ), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataRecipientBySender() {
+        InputSearchNotificationDto recipientSearch = new InputSearchNotificationDto.Builder()
+                .bySender( false )
+                .senderReceiverId( "RecipientId" )
+                .filterId( "SenderId" )
+                .startDate( Instant.parse( "2022-04-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>() )
+                        .moreResult( false )
+                        .build() );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        new MultiPageSearch( monthDao, recipientSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) ).searchNotificationMetadata();
+
+        // la partizione dell'indice senderId_recipientId è sempre mittente##destinatario
+        Mockito.verify( monthDao ).searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID ), Mockito.eq( "SenderId##RecipientId" ), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataPlannedEmpty() {
+        InputSearchNotificationDto senderSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .filterId( "RecipientId" )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        SearchPlanner searchPlanner = Mockito.mock( SearchPlanner.class );
+        Mockito.when( searchPlanner.planSenderRecipient( Mockito.any(), Mockito.anyList(), Mockito.eq( List.of( "202206", "202205" ) ), Mockito.eq( false ) ) )
+                .thenReturn( SearchPlan.builder()
+                        .partitions( Collections.emptyList() )
+                        .partitionIndexNames( Collections.emptyMap() )
+                        .parallelism( 1 )
+                        .description( "index=senderId_recipientId;partitions=" )
+                        .build() );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        MultiPageSearch multiPageSearch = new MultiPageSearch( monthDao, senderSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) );
+        multiPageSearch.setSearchPlanner( searchPlanner );
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = multiPageSearch.searchNotificationMetadata();
+
+        Assertions.assertNull( result.getNextPagesKey() );
+        Assertions.assertEquals( "index=senderId_recipientId;partitions=", result.getSearchPlan() );
+        Mockito.verify( monthDao, Mockito.never() ).searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataProgressively() {
+        InputSearchNotificationDto multiMonthSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##202206" ), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( NotificationSearchRow.builder().iun( "IUN_02" ).recipients( List.of( "RecipientId1" ) ).build() ) ) )
+                        .moreResult( false )
+                        .build() );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##202205" ), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( NotificationSearchRow.builder().iun( "IUN_01" ).recipients( List.of( "RecipientId1" ) ).build() ) ) )
+                        .moreResult( false )
+                        .build() );
+        Mockito.when( dataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) )
+                .thenReturn( List.of( new BaseRecipientDto().internalId( "RecipientId1" ).taxId( "TaxId1" ) ) );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        List<List<String>> notifiedIuns = new ArrayList<>();
+        MultiPageSearch multiPageSearch = new MultiPageSearch( monthDao, multiMonthSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) );
+        multiPageSearch.setProgressListener( new SearchProgressListener<>() {
+            @Override
+            public void onRows(List<NotificationSearchRow> rows) {
+                Assertions.assertEquals( List.of( "TaxId1" ), rows.get( 0 ).getRecipients() );
+                notifiedIuns.add( rows.stream().map( NotificationSearchRow::getIun ).collect( Collectors.toList() ) );
+            }
+
+            @Override
+            public void onNextPagesKey(List<PnLastEvaluatedKey> nextPagesKey) {
+                Assertions.fail( "No next page expected" );
+            }
+        } );
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = multiPageSearch.searchNotificationMetadata();
+
+        Assertions.assertEquals( List.of( List.of( "IUN_02" ), List.of( "IUN_01" ) ), notifiedIuns );
+        Assertions.assertEquals( 2, result.getResultsPage().size() );
+        // i destinatari sono risolti una sola volta, partizione per partizione
+        Assertions.assertEquals( List.of( "TaxId1" ), result.getResultsPage().get( 1 ).getRecipients() );
+    }
+
+    @Test
+    void searchNotificationMetadataProgressivelyCancelled() {
+        InputSearchNotificationDto multiMonthSearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        NotificationDao monthDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( monthDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##202206" ), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( NotificationSearchRow.builder().iun( "IUN_02" ).recipients( List.of( "RecipientId1" ) ).build() ) ) )
+                        .moreResult( false )
+                        .build() );
+        Mockito.when( dataVaultClient.getRecipientDenominationByInternalId( Mockito.anyList() ) )
+                .thenReturn( List.of( new BaseRecipientDto().internalId( "RecipientId1" ).taxId( "TaxId1" ) ) );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        List<String> notifiedIuns = new ArrayList<>();
+        MultiPageSearch multiPageSearch = new MultiPageSearch( monthDao, multiMonthSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) );
+        multiPageSearch.setProgressListener( new SearchProgressListener<>() {
+            @Override
+            public void onRows(List<NotificationSearchRow> rows) {
+                rows.forEach( row -> notifiedIuns.add( row.getIun() ) );
+            }
+
+            @Override
+            public void onNextPagesKey(List<PnLastEvaluatedKey> nextPagesKey) {
+                Assertions.fail( "No next page expected" );
+            }
+
+            @Override
+            public boolean isCancelled() {
+                // il client chiude la connessione dopo aver ricevuto le prime righe
+                return !notifiedIuns.isEmpty();
+            }
+        } );
+        multiPageSearch.searchNotificationMetadata();
+
+        Assertions.assertEquals( List.of( "IUN_02" ), notifiedIuns );
+        Mockito.verify( monthDao, Mockito.never() ).searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##202205" ), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataByCompleteIun() {
+        String iun = new IunGenerator().generatePredictedIun( Instant.parse( "2022-06-15T10:00:00Z" ) );
+        InputSearchNotificationDto iunSearch = new InputSearchNotificationDto.Builder()
+                .bySender( false )
+                .senderReceiverId( "RecipientId" )
+                .startDate( Instant.parse( "2022-01-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .iunMatch( iun )
+                .size( 10 )
+                .build();
+        NotificationDao iunDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( iunDao.searchByIun( iunSearch, iun ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( List.of( NotificationSearchRow.builder()
+                                .iun( iun )
+                                .recipients( List.of( "RecipientId" ) )
+                                .build() ) )
+                        .moreResult( false )
+                        .build() );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = new MultiPageSearch(
+                iunDao, iunSearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) ).searchNotificationMetadata();
+
+        Assertions.assertEquals( iun, result.getResultsPage().get( 0 ).getIun() );
+        Assertions.assertNull( result.getNextPagesKey() );
+        Mockito.verify( iunDao, Mockito.never() ).searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() );
+    }
+
+    @Test
+    void searchNotificationMetadataOnDailyBuckets() {
+        InputSearchNotificationDto dailySearch = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-06-10T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-11T12:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        PnLastEvaluatedKey bucketKey = new PnLastEvaluatedKey();
+        bucketKey.setExternalLastEvaluatedKey( "SenderId##20220610" );
+        bucketKey.setInternalLastEvaluatedKey( Map.of() );
+        NotificationDao bucketDao = Mockito.mock( NotificationDao.class );
+        Mockito.when( bucketDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##20220611" ), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( NotificationSearchRow.builder().iun( "IUN_02" ).recipients( List.of() ).build() ) ) )
+                        .moreResult( false )
+                        .build() );
+        Mockito.when( bucketDao.searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##20220610" ), Mockito.anyInt(), Mockito.any() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( NotificationSearchRow.builder().iun( "IUN_01" ).recipients( List.of() ).build() ) ) )
+                        .nextPagesKey( new ArrayList<>( List.of( bucketKey ) ) )
+                        .moreResult( true )
+                        .build() );
+        Mockito.when( cfg.getMaxPageSize() ).thenReturn( 4 );
+        PnDeliveryConfigs.SenderPartitioning senderPartitioning = new PnDeliveryConfigs.SenderPartitioning();
+        senderPartitioning.setGranularity( "DAY" );
+        senderPartitioning.setSince( "202206" );
+        PnDeliveryConfigs.Partitioning partitioning = new PnDeliveryConfigs.Partitioning();
+        partitioning.setSenders( Map.of( "SenderId", senderPartitioning ) );
+        PnDeliveryConfigs partitioningCfg = new PnDeliveryConfigs();
+        partitioningCfg.setPartitioning( partitioning );
+
+        MultiPageSearch multiPageSearch = new MultiPageSearch( bucketDao, dailySearch, null, cfg, new RecipientDenominationResolver( dataVaultClient, cfg ) );
+        multiPageSearch.setPartitionGranularityResolver( new PartitionGranularityResolver( partitioningCfg, Clock.fixed( Instant.parse( "2022-05-15T10:00:00Z" ), ZoneOffset.UTC ) ) );
+        ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> result = multiPageSearch.searchNotificationMetadata();
+
+        Assertions.assertEquals( List.of( "IUN_02", "IUN_01" ), result.getResultsPage().stream().map( NotificationSearchRow::getIun ).collect( Collectors.toList() ) );
+        // il cursore riporta la granularità del bucket da cui proseguire
+        Assertions.assertEquals( PartitionGranularity.DAY, result.getNextPagesKey().get( 0 ).getGranularity() );
+        Mockito.verify( bucketDao, Mockito.never() ).searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.eq( "SenderId##202206" ), Mockito.anyInt(), Mockito.any() );
+    }
+
     private static class NotificationDaoMock implements NotificationDao {
 
         private final EntityToDtoNotificationMetadataMapper entityToDto = new EntityToDtoNotificationMetadataMapper();
@@ -79,6 +443,26 @@ class MultiPageSearchTest {
             return Optional.empty();
         }
 
+        @Override
+        public Optional<InternalNotification> getOpaqueNotificationByIun(String iun, boolean withAddresses) {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<InternalNotification> getNotificationWithLastStatusByIun(String iun) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void updateLastStatus(String iun, NotificationStatus status, Instant timestamp) {
+
+        }
+
+        @Override
+        public Optional<String> getIunByRequest(String senderPaId, String paProtocolNumber, String idempotenceToken) {
+            return Optional.empty();
+        }
+
         @Override
         public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
 
@@ -95,5 +479,23 @@ class MultiPageSearchTest {
                     .moreResult( false )
                     .build();
         }
+
+        @Override
+        public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchKeysForOneMonth(InputSearchNotificationDto inputSearchNotificationDto, String indexName, String partitionValue, int size, PnLastEvaluatedKey lastEvaluatedKey) {
+            return ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                    .resultsPage(Collections.singletonList( NotificationSearchRow.builder()
+                            .iun( "IUN" )
+                            .build() ))
+                    .moreResult( false )
+                    .build();
+        }
+
+        @Override
+        public ResultPaginationDto<NotificationSearchRow, PnLastEvaluatedKey> searchByIun(InputSearchNotificationDto inputSearchNotificationDto, String iun) {
+            return ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                    .resultsPage( new ArrayList<>() )
+                    .moreResult( false )
+                    .build();
+        }
     }
 }
@@ -0,0 +1,106 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationHistoryResponse;
+import it.pagopa.pn.delivery.generated.openapi.clients.deliverypush.model.NotificationStatus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class NotificationHistoryCacheTest {
+
+    private NotificationHistoryCache notificationHistoryCache;
+    private AtomicInteger loadCount;
+    private Supplier<NotificationHistoryResponse> loader;
+
+    @BeforeEach
+    void setup() {
+        notificationHistoryCache = new NotificationHistoryCache( new PnDeliveryConfigs() );
+        loadCount = new AtomicInteger();
+        loader = () -> {
+            loadCount.incrementAndGet();
+            return new NotificationHistoryResponse().notificationStatus( NotificationStatus.ACCEPTED );
+        };
+    }
+
+    @Test
+    void getHit() {
+        notificationHistoryCache.get( "IUN_01", loader );
+        NotificationHistoryResponse result = notificationHistoryCache.get( "IUN_01", loader );
+
+        Assertions.assertEquals( NotificationStatus.ACCEPTED, result.getNotificationStatus() );
+        Assertions.assertEquals( 1, loadCount.get() );
+    }
+
+    @Test
+    void getAfterInvalidate() {
+        notificationHistoryCache.get( "IUN_01", loader );
+        notificationHistoryCache.invalidate( "IUN_02" );
+        notificationHistoryCache.get( "IUN_01", loader );
+        Assertions.assertEquals( 1, loadCount.get() );
+
+        notificationHistoryCache.invalidate( "IUN_01" );
+        notificationHistoryCache.get( "IUN_01", loader );
+        Assertions.assertEquals( 2, loadCount.get() );
+    }
+
+    @Test
+    void loadStartedBeforeInvalidateIsNotCached() {
+        // il cambio di stato arriva mentre la lettura da delivery-push è in corso
+        notificationHistoryCache.get( "IUN_01", () -> {
+            notificationHistoryCache.invalidate( "IUN_01" );
+            return loader.get();
+        } );
+        notificationHistoryCache.get( "IUN_01", loader );
+
+        Assertions.assertEquals( 2, loadCount.get() );
+    }
+
+    @Test
+    void loadInQuietPeriodIsNotCached() {
+        notificationHistoryCache.invalidate( "IUN_01" );
+        notificationHistoryCache.get( "IUN_01", loader );
+        notificationHistoryCache.get( "IUN_01", loader );
+        Assertions.assertEquals( 2, loadCount.get() );
+
+        PnDeliveryConfigs.NotificationHistoryCache cacheCfg = new PnDeliveryConfigs.NotificationHistoryCache();
+        cacheCfg.setInvalidationQuietPeriod( Duration.ZERO );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setNotificationHistoryCache( cacheCfg );
+        NotificationHistoryCache noQuietPeriodCache = new NotificationHistoryCache( cfg );
+        noQuietPeriodCache.invalidate( "IUN_01" );
+        noQuietPeriodCache.get( "IUN_01", loader );
+        noQuietPeriodCache.get( "IUN_01", loader );
+        Assertions.assertEquals( 3, loadCount.get() );
+    }
+
+    @Test
+    void invalidateDuringLoadStartsNewLoad() {
+        // una richiesta arrivata dopo il cambio di stato non attende la lettura già in corso
+        NotificationHistoryResponse result = notificationHistoryCache.get( "IUN_01", () -> {
+            notificationHistoryCache.invalidate( "IUN_01" );
+            return notificationHistoryCache.get( "IUN_01", loader );
+        } );
+
+        Assertions.assertEquals( NotificationStatus.ACCEPTED, result.getNotificationStatus() );
+        Assertions.assertEquals( 1, loadCount.get() );
+    }
+
+    @Test
+    void disabled() {
+        PnDeliveryConfigs.NotificationHistoryCache cacheCfg = new PnDeliveryConfigs.NotificationHistoryCache();
+        cacheCfg.setTtl( Duration.ZERO );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setNotificationHistoryCache( cacheCfg );
+        NotificationHistoryCache disabledCache = new NotificationHistoryCache( cfg );
+
+        disabledCache.get( "IUN_01", loader );
+        disabledCache.get( "IUN_01", loader );
+
+        Assertions.assertEquals( 2, loadCount.get() );
+    }
+}
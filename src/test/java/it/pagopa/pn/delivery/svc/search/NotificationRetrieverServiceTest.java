@@ -11,6 +11,7 @@ import it.pagopa.pn.delivery.generated.openapi.clients.mandate.model.InternalMan
 import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.*;
 import it.pagopa.pn.delivery.middleware.NotificationDao;
 import it.pagopa.pn.delivery.middleware.NotificationViewedProducer;
+import it.pagopa.pn.delivery.middleware.notificationdao.FilterSelectivityTracker;
 import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
 import it.pagopa.pn.delivery.models.InternalNotification;
 import it.pagopa.pn.delivery.models.ResultPaginationDto;
@@ -28,6 +29,7 @@ import org.modelmapper.ModelMapper;
 
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.Executors;
 
 class NotificationRetrieverServiceTest {
 
@@ -44,6 +46,7 @@ class NotificationRetrieverServiceTest {
     private PnDataVaultClientImpl dataVaultClient;
     private PnDeliveryConfigs cfg;
     private ModelMapperFactory modelMapperFactory;
+    private MonthOccupancyIndex monthOccupancyIndex;
 
     private NotificationRetrieverService svc;
 
@@ -58,6 +61,12 @@ class NotificationRetrieverServiceTest {
         this.pnMandateClient = Mockito.mock(PnMandateClientImpl.class);
         this.dataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
         this.modelMapperFactory = Mockito.mock(ModelMapperFactory.class);
+        this.monthOccupancyIndex = Mockito.mock(MonthOccupancyIndex.class);
+        PnDeliveryConfigs.Cursor cursorCfg = new PnDeliveryConfigs.Cursor();
+        cursorCfg.setHmacSecret( "test-secret" );
+        Mockito.when( cfg.getCursor() ).thenReturn( cursorCfg );
+        Mockito.when( monthOccupancyIndex.filterOccupiedMonths( Mockito.anyString(), Mockito.anyString(), Mockito.anyList() ) )
+                .thenAnswer( invocation -> invocation.getArgument( 2 ) );
         this.svc = new NotificationRetrieverService(clock,
                 notificationViewedProducer,
                 notificationDao,
@@ -65,7 +74,15 @@ class NotificationRetrieverServiceTest {
                 cfg,
                 pnMandateClient,
                 dataVaultClient,
-                modelMapperFactory);
+                modelMapperFactory,
+                Executors.newFixedThreadPool( 4 ),
+                monthOccupancyIndex,
+                new RecipientDenominationResolver( dataVaultClient, cfg ),
+                new PnLastEvaluatedKeyCodec( cfg ),
+                new SearchResultCache( cfg ),
+                new SearchPlanner( monthOccupancyIndex, new FilterSelectivityTracker( cfg ), cfg ),
+                new PartitionGranularityResolver( cfg, clock ),
+                new NotificationHistoryCache( cfg ));
     }
 
     @Test
@@ -177,6 +194,51 @@ class NotificationRetrieverServiceTest {
                 ).build(), Collections.emptyMap(), Collections.singletonList( "userId" ) );
     }
 
+    @Test
+    void getNotificationWithLastStatusWithoutTimeline() {
+        //Given
+        InternalNotification notification = getNewInternalNotification();
+        notification.setNotificationStatus( NotificationStatus.ACCEPTED );
+
+        //When
+        Mockito.when( notificationDao.getNotificationWithLastStatusByIun( IUN ) ).thenReturn( Optional.of( notification ) );
+        InternalNotification result = svc.getNotificationWithLastStatus( IUN );
+
+        //Then
+        Assertions.assertEquals( NotificationStatus.ACCEPTED, result.getNotificationStatus() );
+        Mockito.verifyNoInteractions( pnDeliveryPushClient );
+    }
+
+    @Test
+    void getNotificationWithLastStatusError() {
+        //When
+        Mockito.when( notificationDao.getNotificationWithLastStatusByIun( Mockito.anyString() ) ).thenReturn( Optional.empty() );
+        Executable todo = () -> svc.getNotificationWithLastStatus( IUN );
+
+        //Then
+        Assertions.assertThrows( PnInternalException.class, todo );
+    }
+
+    @Test
+    void getIunByRequestSuccess() {
+        //When
+        Mockito.when( notificationDao.getIunByRequest( "senderId", "protocol_01", "idempotenceToken_01" ) ).thenReturn( Optional.of( IUN ) );
+        String result = svc.getIunByRequest( "senderId", "protocol_01", "idempotenceToken_01" );
+
+        //Then
+        Assertions.assertEquals( IUN, result );
+    }
+
+    @Test
+    void getIunByRequestNotFound() {
+        //When
+        Mockito.when( notificationDao.getIunByRequest( Mockito.anyString(), Mockito.anyString(), Mockito.any() ) ).thenReturn( Optional.empty() );
+        Executable todo = () -> svc.getIunByRequest( "senderId", "protocol_01", null );
+
+        //Then
+        Assertions.assertThrows( PnNotFoundException.class, todo );
+    }
+
     @Test
     void getNotificationWithTimelineInfoError() {
         //Given
@@ -0,0 +1,88 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.middleware.NotificationDao;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.*;
+
+class NotificationSearchExportTest {
+
+    private static final String PARTITION_VALUE = "SenderId##202206";
+
+    @Test
+    void exportAllPages() {
+        PnDeliveryConfigs cfg = Mockito.mock( PnDeliveryConfigs.class );
+        NotificationDao notificationDao = Mockito.mock( NotificationDao.class );
+        InputSearchNotificationDto exportDto = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-06-01T00:00:00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00Z" ) )
+                .size( 2 )
+                .build();
+
+        // la notifica IUN_02 ha due destinatari, le sue righe si trovano a cavallo delle due pagine
+        PnLastEvaluatedKey firstPageKey = lastEvaluatedKeyOf( "IUN_02##RecipientId1", "2022-06-11T10:00:00Z" );
+        PnLastEvaluatedKey secondPageKey = lastEvaluatedKeyOf( "IUN_01##RecipientId1", "2022-06-10T10:00:00Z" );
+        Mockito.when( notificationDao.searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID ), Mockito.eq( PARTITION_VALUE ), Mockito.eq( 2 ), Mockito.isNull() ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( newRow( "IUN_03", "2022-06-12T10:00:00Z" ), newRow( "IUN_02", "2022-06-11T10:00:00Z" ) ) ) )
+                        .nextPagesKey( new ArrayList<>( List.of( firstPageKey ) ) )
+                        .moreResult( true )
+                        .build() );
+        Mockito.when( notificationDao.searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID ), Mockito.eq( PARTITION_VALUE ), Mockito.eq( 2 ), Mockito.same( firstPageKey ) ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>( List.of( newRow( "IUN_02", "2022-06-11T10:00:00Z" ), newRow( "IUN_01", "2022-06-10T10:00:00Z" ) ) ) )
+                        .nextPagesKey( new ArrayList<>( List.of( secondPageKey ) ) )
+                        .moreResult( true )
+                        .build() );
+        Mockito.when( notificationDao.searchForOneMonth( Mockito.any(), Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID ), Mockito.eq( PARTITION_VALUE ), Mockito.eq( 2 ), Mockito.same( secondPageKey ) ) )
+                .thenReturn( ResultPaginationDto.<NotificationSearchRow, PnLastEvaluatedKey>builder()
+                        .resultsPage( new ArrayList<>() )
+                        .moreResult( false )
+                        .build() );
+
+        NotificationSearchExport export = new NotificationSearchExport( notificationDao, exportDto, cfg,
+                new RecipientDenominationResolver( Mockito.mock( PnDataVaultClientImpl.class ), cfg ), null );
+
+        List<String> exportedIuns = new ArrayList<>();
+        List<NotificationSearchRow> page;
+        while ( !( page = export.nextPage() ).isEmpty() ) {
+            page.forEach( row -> exportedIuns.add( row.getIun() ) );
+        }
+
+        Assertions.assertEquals( List.of( "IUN_03", "IUN_02", "IUN_01" ), exportedIuns );
+        Assertions.assertTrue( export.nextPage().isEmpty() );
+        Mockito.verify( notificationDao, Mockito.times( 3 ) ).searchForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() );
+        Mockito.verify( notificationDao, Mockito.never() ).searchKeysForOneMonth( Mockito.any(), Mockito.anyString(), Mockito.anyString(), Mockito.anyInt(), Mockito.any() );
+    }
+
+    private static PnLastEvaluatedKey lastEvaluatedKeyOf(String iunRecipientId, String sentAt) {
+        Map<String, AttributeValue> internalLastEvaluatedKey = new HashMap<>();
+        internalLastEvaluatedKey.put( NotificationMetadataEntity.FIELD_IUN_RECIPIENT_ID, AttributeValue.builder().s( iunRecipientId ).build() );
+        internalLastEvaluatedKey.put( NotificationMetadataEntity.FIELD_SENT_AT, AttributeValue.builder().s( sentAt ).build() );
+        internalLastEvaluatedKey.put( NotificationMetadataEntity.FIELD_SENDER_ID_CREATION_MONTH, AttributeValue.builder().s( PARTITION_VALUE ).build() );
+        PnLastEvaluatedKey lastEvaluatedKey = new PnLastEvaluatedKey();
+        lastEvaluatedKey.setExternalLastEvaluatedKey( PARTITION_VALUE );
+        lastEvaluatedKey.setInternalLastEvaluatedKey( internalLastEvaluatedKey );
+        return lastEvaluatedKey;
+    }
+
+    private static NotificationSearchRow newRow(String iun, String sentAt) {
+        return NotificationSearchRow.builder()
+                .iun( iun )
+                .sentAt( Date.from( Instant.parse( sentAt ) ) )
+                .recipients( new ArrayList<>( List.of( "RecipientId1" ) ) )
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+class PartitionGranularityTest {
+
+    @Test
+    void bucketOf() {
+        Instant sentAt = Instant.parse( "2022-06-01T10:00:00Z" );
+
+        Assertions.assertEquals( "202206", PartitionGranularity.MONTH.bucketOf( sentAt ) );
+        Assertions.assertEquals( "20220601", PartitionGranularity.DAY.bucketOf( sentAt ) );
+        // mercoledì 1 giugno: la settimana iniziata a maggio è troncata al primo giorno del mese
+        Assertions.assertEquals( "20220601", PartitionGranularity.WEEK.bucketOf( sentAt ) );
+        Assertions.assertEquals( "20220613", PartitionGranularity.WEEK.bucketOf( Instant.parse( "2022-06-19T23:59:59Z" ) ) );
+    }
+
+    @Test
+    void bucketsOf() {
+        Instant startDate = Instant.parse( "2022-06-10T00:00:00Z" );
+        Instant endDate = Instant.parse( "2022-06-14T00:00:00Z" );
+
+        Assertions.assertEquals( List.of( "202206" ), PartitionGranularity.MONTH.bucketsOf( "202206", startDate, endDate ) );
+        Assertions.assertEquals( List.of( "20220614", "20220613", "20220612", "20220611", "20220610" ),
+                PartitionGranularity.DAY.bucketsOf( "202206", startDate, endDate ) );
+        Assertions.assertEquals( List.of( "20220613", "20220606" ), PartitionGranularity.WEEK.bucketsOf( "202206", startDate, endDate ) );
+    }
+
+    @Test
+    void weekBucketsCoverMonth() {
+        Instant startDate = Instant.parse( "2022-05-01T00:00:00Z" );
+        Instant endDate = Instant.parse( "2022-07-31T00:00:00Z" );
+
+        Assertions.assertEquals( List.of( "20220627", "20220620", "20220613", "20220606", "20220601" ),
+                PartitionGranularity.WEEK.bucketsOf( "202206", startDate, endDate ) );
+    }
+
+    @Test
+    void fromCode() {
+        for ( PartitionGranularity granularity : PartitionGranularity.values() ) {
+            Assertions.assertEquals( granularity, PartitionGranularity.fromCode( granularity.getCode() ) );
+        }
+        Assertions.assertThrows( IllegalArgumentException.class, () -> PartitionGranularity.fromCode( (byte) 'X' ) );
+    }
+
+    @Test
+    void resolverRejectsMissingSince() {
+        PnDeliveryConfigs.SenderPartitioning senderPartitioning = new PnDeliveryConfigs.SenderPartitioning();
+        senderPartitioning.setGranularity( "DAY" );
+        PnDeliveryConfigs.Partitioning partitioning = new PnDeliveryConfigs.Partitioning();
+        partitioning.setSenders( Map.of( "SenderId", senderPartitioning ) );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setPartitioning( partitioning );
+        Clock clock = Clock.fixed( Instant.parse( "2022-05-15T10:00:00Z" ), ZoneOffset.UTC );
+
+        Assertions.assertThrows( PnInternalException.class, () -> new PartitionGranularityResolver( cfg, clock ) );
+
+        senderPartitioning.setSince( "202206" );
+        PartitionGranularityResolver resolver = new PartitionGranularityResolver( cfg, clock );
+        Assertions.assertEquals( PartitionGranularity.MONTH, resolver.granularityOf( "SenderId", "202205" ) );
+        Assertions.assertEquals( PartitionGranularity.DAY, resolver.granularityOf( "SenderId", "202206" ) );
+    }
+}
@@ -0,0 +1,118 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.commons.exceptions.PnInternalException;
+import it.pagopa.pn.commons.exceptions.PnValidationException;
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.Base64;
+import java.util.Map;
+
+class PnLastEvaluatedKeyCodecTest {
+
+    private PnLastEvaluatedKeyCodec codec;
+
+    @BeforeEach
+    void setup() {
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.Cursor cursor = new PnDeliveryConfigs.Cursor();
+        cursor.setHmacSecret( "test-secret" );
+        cfg.setCursor( cursor );
+        codec = new PnLastEvaluatedKeyCodec( cfg );
+    }
+
+    @Test
+    void encodeDecode() {
+        //Given
+        PnLastEvaluatedKey lastEvaluatedKey = newLastEvaluatedKey();
+
+        //When
+        String encoded = codec.encode( lastEvaluatedKey );
+        PnLastEvaluatedKey decoded = codec.decode( encoded );
+
+        //Then
+        Assertions.assertEquals( lastEvaluatedKey.getExternalLastEvaluatedKey(), decoded.getExternalLastEvaluatedKey() );
+        Assertions.assertEquals( lastEvaluatedKey.getInternalLastEvaluatedKey(), decoded.getInternalLastEvaluatedKey() );
+        Assertions.assertTrue( encoded.length() < lastEvaluatedKey.serializeInternalLastEvaluatedKey().length() );
+    }
+
+    @Test
+    void encodeDecodeGranularity() {
+        //Given
+        PnLastEvaluatedKey lastEvaluatedKey = newLastEvaluatedKey();
+        lastEvaluatedKey.setExternalLastEvaluatedKey( "SenderId##20220919" );
+        lastEvaluatedKey.setGranularity( PartitionGranularity.WEEK );
+
+        //When
+        PnLastEvaluatedKey decoded = codec.decode( codec.encode( lastEvaluatedKey ) );
+
+        //Then
+        Assertions.assertEquals( PartitionGranularity.WEEK, decoded.getGranularity() );
+        Assertions.assertEquals( "SenderId##20220919", decoded.getExternalLastEvaluatedKey() );
+        Assertions.assertNull( codec.decode( codec.encode( newLastEvaluatedKey() ) ).getGranularity() );
+    }
+
+    @Test
+    void decodeTamperedFailure() {
+        //Given
+        byte[] bytes = Base64.getUrlDecoder().decode( codec.encode( newLastEvaluatedKey() ) );
+        bytes[5] ^= 1;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString( bytes );
+
+        //Then
+        Assertions.assertThrows( PnValidationException.class, () -> codec.decode( tampered ) );
+    }
+
+    @Test
+    void decodeLegacy() {
+        //Given
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.Cursor cursor = new PnDeliveryConfigs.Cursor();
+        cursor.setHmacSecret( "test-secret" );
+        cursor.setAcceptLegacy( true );
+        cfg.setCursor( cursor );
+        PnLastEvaluatedKeyCodec legacyCodec = new PnLastEvaluatedKeyCodec( cfg );
+        PnLastEvaluatedKey lastEvaluatedKey = newLastEvaluatedKey();
+
+        //When
+        PnLastEvaluatedKey decoded = legacyCodec.decode( lastEvaluatedKey.serializeInternalLastEvaluatedKey() );
+
+        //Then
+        Assertions.assertEquals( lastEvaluatedKey.getInternalLastEvaluatedKey(), decoded.getInternalLastEvaluatedKey() );
+    }
+
+    @Test
+    void decodeLegacyRejectedByDefault() {
+        //Given
+        String legacy = newLastEvaluatedKey().serializeInternalLastEvaluatedKey();
+
+        //Then
+        Assertions.assertThrows( PnValidationException.class, () -> codec.decode( legacy ) );
+    }
+
+    @Test
+    void missingSecretFailure() {
+        //Given
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        cfg.setCursor( new PnDeliveryConfigs.Cursor() );
+
+        //Then
+        Assertions.assertThrows( PnInternalException.class, () -> new PnLastEvaluatedKeyCodec( cfg ) );
+        Assertions.assertThrows( PnInternalException.class, () -> new PnLastEvaluatedKeyCodec( new PnDeliveryConfigs() ) );
+    }
+
+    private PnLastEvaluatedKey newLastEvaluatedKey() {
+        PnLastEvaluatedKey lastEvaluatedKey = new PnLastEvaluatedKey();
+        lastEvaluatedKey.setExternalLastEvaluatedKey( "SenderId##202209" );
+        lastEvaluatedKey.setInternalLastEvaluatedKey( Map.of(
+                "iun_recipientId", AttributeValue.builder().s( "KSAU-CKOB-OFKR-202209-Q-1##RecipientId" ).build(),
+                "sentAt", AttributeValue.builder().s( "2022-09-21T13:10:53.123456789Z" ).build(),
+                "senderId_creationMonth", AttributeValue.builder().s( "SenderId##202209" ).build(),
+                "otherAttribute", AttributeValue.builder().s( "otherValue" ).build()
+        ) );
+        return lastEvaluatedKey;
+    }
+}
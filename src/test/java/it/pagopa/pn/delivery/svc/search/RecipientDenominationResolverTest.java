@@ -0,0 +1,47 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.clients.datavault.model.BaseRecipientDto;
+import it.pagopa.pn.delivery.pnclient.datavault.PnDataVaultClientImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class RecipientDenominationResolverTest {
+
+    private PnDataVaultClientImpl dataVaultClient;
+    private RecipientDenominationResolver resolver;
+
+    @BeforeEach
+    void setup() {
+        dataVaultClient = Mockito.mock( PnDataVaultClientImpl.class );
+        resolver = new RecipientDenominationResolver( dataVaultClient, new PnDeliveryConfigs() );
+    }
+
+    @Test
+    void resolveRequestsOnlyCacheMisses() {
+        Mockito.when( dataVaultClient.getRecipientDenominationByInternalId( List.of( "internalId1" ) ) )
+                .thenReturn( List.of( newBaseRecipient( "internalId1", "taxId1" ) ) );
+        Mockito.when( dataVaultClient.getRecipientDenominationByInternalId( List.of( "internalId2" ) ) )
+                .thenReturn( List.of( newBaseRecipient( "internalId2", "taxId2" ) ) );
+
+        resolver.resolve( Set.of( "internalId1" ) );
+        Map<String, BaseRecipientDto> result = resolver.resolve( Set.of( "internalId1", "internalId2" ) );
+
+        Assertions.assertEquals( "taxId1", result.get( "internalId1" ).getTaxId() );
+        Assertions.assertEquals( "taxId2", result.get( "internalId2" ).getTaxId() );
+        Mockito.verify( dataVaultClient, Mockito.times( 2 ) ).getRecipientDenominationByInternalId( Mockito.anyList() );
+    }
+
+    private BaseRecipientDto newBaseRecipient(String internalId, String taxId) {
+        BaseRecipientDto baseRecipientDto = new BaseRecipientDto();
+        baseRecipientDto.setInternalId( internalId );
+        baseRecipientDto.setTaxId( taxId );
+        return baseRecipientDto;
+    }
+}
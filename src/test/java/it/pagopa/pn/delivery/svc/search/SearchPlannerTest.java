@@ -0,0 +1,131 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.middleware.notificationdao.FilterSelectivityTracker;
+import it.pagopa.pn.delivery.middleware.notificationdao.entities.NotificationMetadataEntity;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+class SearchPlannerTest {
+
+    private static final String SENDER_ID = "SenderId";
+
+    private MonthOccupancyIndex monthOccupancyIndex;
+    private SearchPlanner searchPlanner;
+
+    @BeforeEach
+    void setup() {
+        monthOccupancyIndex = Mockito.mock( MonthOccupancyIndex.class );
+        Mockito.when( monthOccupancyIndex.filterOccupiedMonths( Mockito.anyString(), Mockito.anyString(), Mockito.anyList() ) )
+                .thenAnswer( invocation -> invocation.getArgument( 2 ) );
+        PnDeliveryConfigs cfg = new PnDeliveryConfigs();
+        PnDeliveryConfigs.Search searchCfg = new PnDeliveryConfigs.Search();
+        searchCfg.setGroupIndexSince( "202205" );
+        searchCfg.setSenderOneIndexSince( "202201" );
+        cfg.setSearch( searchCfg );
+        searchPlanner = new SearchPlanner( monthOccupancyIndex, new FilterSelectivityTracker( cfg ), cfg );
+    }
+
+    @Test
+    void planMonthsChoosesSenderIndexForWideGroupFilter() {
+        List<String> groups = List.of( "G1", "G2", "G3", "G4", "G5" );
+        List<String> months = List.of( "202206" );
+        Mockito.when( monthOccupancyIndex.countNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, months ) )
+                .thenReturn( Map.of( "202206", 100L ) );
+        Mockito.when( monthOccupancyIndex.countNotifications( Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP ), Mockito.anyString(), Mockito.anyList() ) )
+                .thenReturn( Map.of( "202206", 18L ) );
+
+        SearchPlan plan = searchPlanner.planMonths( groupSearch( groups ), NotificationMetadataEntity.INDEX_SENDER_ID, months, null, 4 );
+
+        // 5 query sui gruppi costano più di un'unica query sul mittente, dove 90 notifiche su 100 sono dei gruppi
+        Assertions.assertEquals( NotificationMetadataEntity.INDEX_SENDER_ID_ONE, plan.indexNameFor( "202206" ) );
+        Assertions.assertEquals( 1, plan.getParallelism() );
+    }
+
+    @Test
+    void planMonthsKeepsGroupIndexForSelectiveGroupFilter() {
+        List<String> months = List.of( "202206" );
+        Mockito.when( monthOccupancyIndex.countNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, months ) )
+                .thenReturn( Map.of( "202206", 1000L ) );
+        Mockito.when( monthOccupancyIndex.countNotifications( Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP ), Mockito.anyString(), Mockito.anyList() ) )
+                .thenReturn( Map.of( "202206", 3L ) );
+
+        SearchPlan plan = searchPlanner.planMonths( groupSearch( List.of( "G1", "G2" ) ), NotificationMetadataEntity.INDEX_SENDER_ID, months, null, 4 );
+
+        Assertions.assertEquals( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP, plan.indexNameFor( "202206" ) );
+    }
+
+    @Test
+    void planMonthsSkipsMonthsWithoutGroupNotifications() {
+        List<String> months = List.of( "202206", "202205", "202204" );
+        Mockito.when( monthOccupancyIndex.countNotifications( Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP ), Mockito.anyString(), Mockito.anyList() ) )
+                .thenReturn( Map.of( "202206", 0L, "202205", 4L ) );
+        Mockito.when( monthOccupancyIndex.filterOccupiedMonths( Mockito.eq( NotificationMetadataEntity.INDEX_SENDER_ID_GROUP ), Mockito.anyString(), Mockito.anyList() ) )
+                .thenReturn( List.of( "202205" ) );
+
+        SearchPlan plan = searchPlanner.planMonths( groupSearch( List.of( "G1" ) ), NotificationMetadataEntity.INDEX_SENDER_ID, months, null, 4 );
+
+        // il mese 202204 precede l'indice dei gruppi e viene sempre interrogato
+        Assertions.assertEquals( List.of( "202205", "202204" ), plan.getPartitions() );
+        Assertions.assertTrue( plan.getDescription().contains( "skipped=202206" ) );
+    }
+
+    @Test
+    void planMonthsReducesParallelismWhenFirstMonthFillsPage() {
+        List<String> months = List.of( "202206", "202205", "202204" );
+        InputSearchNotificationDto search = new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( SENDER_ID )
+                .startDate( Instant.parse( "2022-04-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        Mockito.when( monthOccupancyIndex.countNotifications( NotificationMetadataEntity.INDEX_SENDER_ID, SENDER_ID, months ) )
+                .thenReturn( Map.of( "202206", 6L, "202205", 30L, "202204", 30L ) );
+
+        SearchPlan plan = searchPlanner.planMonths( search, NotificationMetadataEntity.INDEX_SENDER_ID, months, null, 4 );
+
+        Assertions.assertEquals( 2, plan.getParallelism() );
+        Assertions.assertEquals( months, plan.getPartitions() );
+    }
+
+    @Test
+    void planSenderRecipientWithoutNotifications() {
+        InputSearchNotificationDto search = new InputSearchNotificationDto.Builder()
+                .bySender( false )
+                .senderReceiverId( "RecipientId" )
+                .filterId( SENDER_ID )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .size( 10 )
+                .build();
+        List<String> months = List.of( "202206", "202205" );
+        Mockito.when( monthOccupancyIndex.countNotifications( NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID, SENDER_ID + "##RecipientId", months ) )
+                .thenReturn( Map.of( "202206", 0L, "202205", 0L ) );
+        Mockito.when( monthOccupancyIndex.filterOccupiedMonths( NotificationMetadataEntity.INDEX_SENDER_ID_RECIPIENT_ID, SENDER_ID + "##RecipientId", months ) )
+                .thenReturn( Collections.emptyList() );
+
+        SearchPlan plan = searchPlanner.planSenderRecipient( search, List.of( "noMonthPartition" ), months, false );
+
+        Assertions.assertTrue( plan.getPartitions().isEmpty() );
+    }
+
+    private InputSearchNotificationDto groupSearch(List<String> groups) {
+        return new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( SENDER_ID )
+                .startDate( Instant.parse( "2022-04-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .groups( groups )
+                .size( 10 )
+                .build();
+    }
+}
@@ -0,0 +1,66 @@
+package it.pagopa.pn.delivery.svc.search;
+
+import it.pagopa.pn.delivery.PnDeliveryConfigs;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationSearchRow;
+import it.pagopa.pn.delivery.models.InputSearchNotificationDto;
+import it.pagopa.pn.delivery.models.ResultPaginationDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+class SearchResultCacheTest {
+
+    private SearchResultCache searchResultCache;
+    private AtomicInteger searchCount;
+    private Supplier<ResultPaginationDto<NotificationSearchRow, String>> search;
+
+    @BeforeEach
+    void setup() {
+        searchResultCache = new SearchResultCache( new PnDeliveryConfigs() );
+        searchCount = new AtomicInteger();
+        search = () -> {
+            searchCount.incrementAndGet();
+            return ResultPaginationDto.<NotificationSearchRow, String>builder()
+                    .resultsPage( List.of( NotificationSearchRow.builder().iun( "IUN" ).build() ) )
+                    .moreResult( false )
+                    .build();
+        };
+    }
+
+    @Test
+    void getOrSearchHit() {
+        searchResultCache.getOrSearch( newSearchDto( List.of( "G2", "G1" ) ), search );
+        ResultPaginationDto<NotificationSearchRow, String> result = searchResultCache.getOrSearch( newSearchDto( List.of( "G1", "G2" ) ), search );
+
+        Assertions.assertEquals( "IUN", result.getResultsPage().get( 0 ).getIun() );
+        Assertions.assertEquals( 1, searchCount.get() );
+    }
+
+    @Test
+    void getOrSearchAfterInvalidate() {
+        searchResultCache.getOrSearch( newSearchDto( null ), search );
+        searchResultCache.invalidate( "OtherSenderId" );
+        searchResultCache.getOrSearch( newSearchDto( null ), search );
+        Assertions.assertEquals( 1, searchCount.get() );
+
+        searchResultCache.invalidate( "SenderId" );
+        searchResultCache.getOrSearch( newSearchDto( null ), search );
+        Assertions.assertEquals( 2, searchCount.get() );
+    }
+
+    private InputSearchNotificationDto newSearchDto(List<String> groups) {
+        return new InputSearchNotificationDto.Builder()
+                .bySender( true )
+                .senderReceiverId( "SenderId" )
+                .startDate( Instant.parse( "2022-05-01T00:00:00.00Z" ) )
+                .endDate( Instant.parse( "2022-06-30T00:00:00.00Z" ) )
+                .groups( groups )
+                .size( 10 )
+                .build();
+    }
+}
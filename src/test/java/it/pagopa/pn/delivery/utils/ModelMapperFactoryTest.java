@@ -0,0 +1,64 @@
+package it.pagopa.pn.delivery.utils;
+
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.FullSentNotification;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.NotificationRecipient;
+import it.pagopa.pn.delivery.generated.openapi.server.v1.dto.SentNotification;
+import it.pagopa.pn.delivery.models.InternalNotification;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Date;
+
+class ModelMapperFactoryTest {
+
+    private final ModelMapperFactory modelMapperFactory = new ModelMapperFactory();
+
+    @Test
+    void createModelMapperIsReused() {
+        ModelMapper first = modelMapperFactory.createModelMapper( InternalNotification.class, FullSentNotification.class );
+        ModelMapper second = modelMapperFactory.createModelMapper( InternalNotification.class, FullSentNotification.class );
+        ModelMapper other = modelMapperFactory.createModelMapper( InternalNotification.class, SentNotification.class );
+
+        Assertions.assertSame( first, second );
+        Assertions.assertNotSame( first, other );
+    }
+
+    @Test
+    void reusedModelMapperProducesSameOutput() {
+        InternalNotification notification = newNotification();
+        ModelMapper fresh = new ModelMapper();
+        fresh.createTypeMap( InternalNotification.class, FullSentNotification.class );
+        fresh.getConfiguration().setMatchingStrategy( MatchingStrategies.STRICT );
+
+        FullSentNotification expected = fresh.map( notification, FullSentNotification.class );
+        ModelMapper cached = modelMapperFactory.createModelMapper( InternalNotification.class, FullSentNotification.class );
+        FullSentNotification firstResult = cached.map( notification, FullSentNotification.class );
+        FullSentNotification secondResult = cached.map( notification, FullSentNotification.class );
+
+        Assertions.assertEquals( expected, firstResult );
+        Assertions.assertEquals( expected, secondResult );
+        Assertions.assertNotSame( firstResult, secondResult );
+    }
+
+    private InternalNotification newNotification() {
+        return new InternalNotification( FullSentNotification.builder()
+                .iun( "IUN_01" )
+                .paProtocolNumber( "protocol_01" )
+                .subject( "Subject 01" )
+                .senderPaId( "pa_02" )
+                .sentAt( Date.from( Instant.parse( "2022-06-21T11:44:28.000Z" ) ) )
+                .notificationFeePolicy( FullSentNotification.NotificationFeePolicyEnum.FLAT_RATE )
+                .physicalCommunicationType( FullSentNotification.PhysicalCommunicationTypeEnum.SIMPLE_REGISTERED_LETTER )
+                .recipients( Collections.singletonList( NotificationRecipient.builder()
+                        .recipientType( NotificationRecipient.RecipientTypeEnum.PF )
+                        .taxId( "Codice Fiscale 01" )
+                        .denomination( "Nome Cognome" )
+                        .build() ) )
+                .documents( Collections.emptyList() )
+                .build(), Collections.emptyMap(), Collections.singletonList( "opaqueTaxId" ) );
+    }
+}
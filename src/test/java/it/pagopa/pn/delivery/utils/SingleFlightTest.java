@@ -0,0 +1,108 @@
+package it.pagopa.pn.delivery.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentLoadsAreCollapsed() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>( "test" );
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loadStarted = new CountDownLatch( 1 );
+        CountDownLatch releaseLoad = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit( () -> singleFlight.execute( "IUN_01", () -> {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                await( releaseLoad );
+                return "result";
+            } ) );
+            Assertions.assertTrue( loadStarted.await( 2, TimeUnit.SECONDS ) );
+            FutureTask<String> follower = new FutureTask<>( () -> singleFlight.execute( "IUN_01",
+                    () -> Assertions.fail( "Follower must not load" ) ) );
+            Thread followerThread = new Thread( follower );
+            followerThread.start();
+
+            // la seconda chiamata attende la lettura in corso
+            awaitParked( followerThread );
+            Assertions.assertFalse( follower.isDone() );
+            releaseLoad.countDown();
+
+            Assertions.assertEquals( "result", leader.get( 2, TimeUnit.SECONDS ) );
+            Assertions.assertEquals( "result", follower.get( 2, TimeUnit.SECONDS ) );
+            Assertions.assertEquals( 1, loads.get() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sequentialLoadsAreNotCached() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>( "test" );
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute( "IUN_01", loads::incrementAndGet );
+        Integer second = singleFlight.execute( "IUN_01", loads::incrementAndGet );
+
+        Assertions.assertEquals( 2, second );
+    }
+
+    @Test
+    void failureIsSharedAndReleased() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>( "test" );
+        CountDownLatch loadStarted = new CountDownLatch( 1 );
+        CountDownLatch releaseLoad = new CountDownLatch( 1 );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit( () -> singleFlight.execute( "IUN_01", () -> {
+                loadStarted.countDown();
+                await( releaseLoad );
+                throw new IllegalStateException( "load failed" );
+            } ) );
+            Assertions.assertTrue( loadStarted.await( 2, TimeUnit.SECONDS ) );
+            FutureTask<String> follower = new FutureTask<>( () -> singleFlight.execute( "IUN_01",
+                    () -> Assertions.fail( "Follower must not load" ) ) );
+            Thread followerThread = new Thread( follower );
+            followerThread.start();
+            awaitParked( followerThread );
+            releaseLoad.countDown();
+
+            Exception leaderEx = Assertions.assertThrows( Exception.class, () -> leader.get( 2, TimeUnit.SECONDS ) );
+            Exception followerEx = Assertions.assertThrows( Exception.class, () -> follower.get( 2, TimeUnit.SECONDS ) );
+            Assertions.assertTrue( leaderEx.getCause() instanceof IllegalStateException );
+            Assertions.assertTrue( followerEx.getCause() instanceof IllegalStateException );
+            Assertions.assertEquals( "ok", singleFlight.execute( "IUN_01", () -> "ok" ) );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Attende che il thread sia sospeso in attesa della lettura in corso, senza attese di durata fissa
+     */
+    private static void awaitParked(Thread thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 2 );
+        while ( thread.getState() != Thread.State.WAITING ) {
+            Assertions.assertTrue( System.nanoTime() < deadline, "Follower is not waiting for the load in progress" );
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await( 2, TimeUnit.SECONDS );
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}